@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2010-2014, Kazuhiko Kobayashi
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package projectkyoto.jme3.mmd.nativelib;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Pure Java SkinUtilBackend, used when the native library is not loaded.
+ * Positions and limits of the given buffers are left untouched, like the
+ * native version.
+ * @author kobayasi
+ */
+public class JavaSkinUtil implements SkinUtilBackend {
+
+    private static final float[] ZERO = new float[1024];
+
+    @Override
+    public void copy(Buffer src, Buffer dist, int size) {
+        if (src instanceof FloatBuffer && dist instanceof FloatBuffer) {
+            FloatBuffer s = ((FloatBuffer) src).duplicate();
+            FloatBuffer d = ((FloatBuffer) dist).duplicate();
+            s.clear();
+            s.limit(size / 4);
+            d.clear();
+            d.put(s);
+        } else if (src instanceof ByteBuffer && dist instanceof ByteBuffer) {
+            ByteBuffer s = ((ByteBuffer) src).duplicate();
+            ByteBuffer d = ((ByteBuffer) dist).duplicate();
+            s.clear();
+            s.limit(size);
+            d.clear();
+            d.put(s);
+        } else if (src instanceof ShortBuffer && dist instanceof ShortBuffer) {
+            ShortBuffer s = ((ShortBuffer) src).duplicate();
+            ShortBuffer d = ((ShortBuffer) dist).duplicate();
+            s.clear();
+            s.limit(size / 2);
+            d.clear();
+            d.put(s);
+        } else if (src instanceof IntBuffer && dist instanceof IntBuffer) {
+            IntBuffer s = ((IntBuffer) src).duplicate();
+            IntBuffer d = ((IntBuffer) dist).duplicate();
+            s.clear();
+            s.limit(size / 4);
+            d.clear();
+            d.put(s);
+        } else {
+            throw new IllegalArgumentException("unsupported buffer types "
+                    + src.getClass().getName() + " " + dist.getClass().getName());
+        }
+    }
+
+    @Override
+    public void setSkin(FloatBuffer buf, ShortBuffer indexBuf, FloatBuffer skinBuf, float weight) {
+        int size = indexBuf.capacity();
+        for (int i = 0; i < size; i++) {
+            int index = (indexBuf.get(i) & 0xffff) * 3;
+            int s = i * 3;
+            buf.put(index, buf.get(index) + skinBuf.get(s) * weight);
+            buf.put(index + 1, buf.get(index + 1) + skinBuf.get(s + 1) * weight);
+            buf.put(index + 2, buf.get(index + 2) + skinBuf.get(s + 2) * weight);
+        }
+    }
+
+    @Override
+    public void copyBoneMatrix(FloatBuffer src, FloatBuffer dist, ShortBuffer indexBuffer) {
+        FloatBuffer s = src.duplicate();
+        FloatBuffer d = dist.duplicate();
+        s.clear();
+        d.clear();
+        int size = indexBuffer.capacity();
+        for (int i = 0; i < size; i++) {
+            int index = (indexBuffer.get(i) & 0xffff) * 16;
+            s.limit(index + 16);
+            s.position(index);
+            d.put(s);
+        }
+    }
+
+    @Override
+    public void clear(Buffer buf) {
+        if (buf instanceof FloatBuffer) {
+            FloatBuffer d = ((FloatBuffer) buf).duplicate();
+            d.clear();
+            while (d.remaining() > 0) {
+                d.put(ZERO, 0, Math.min(ZERO.length, d.remaining()));
+            }
+        } else if (buf instanceof ByteBuffer) {
+            ByteBuffer d = ((ByteBuffer) buf).duplicate();
+            d.clear();
+            while (d.remaining() >= 4) {
+                d.putInt(0);
+            }
+            while (d.remaining() > 0) {
+                d.put((byte) 0);
+            }
+        } else if (buf instanceof ShortBuffer) {
+            ShortBuffer d = ((ShortBuffer) buf).duplicate();
+            d.clear();
+            while (d.remaining() > 0) {
+                d.put((short) 0);
+            }
+        } else if (buf instanceof IntBuffer) {
+            IntBuffer d = ((IntBuffer) buf).duplicate();
+            d.clear();
+            while (d.remaining() > 0) {
+                d.put(0);
+            }
+        } else {
+            throw new IllegalArgumentException("unsupported buffer type " + buf.getClass().getName());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "java";
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2010-2014, Kazuhiko Kobayashi
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package projectkyoto.jme3.mmd.nativelib;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * SkinUtilBackend calling the JNI methods of SkinUtil (bulletjme library).
+ * Only direct buffers are supported.
+ * @author kobayasi
+ */
+public class NativeSkinUtil implements SkinUtilBackend {
+
+    /**
+     * Returns true if the native methods of SkinUtil are linked.
+     */
+    public static boolean isAvailable() {
+        try {
+            SkinUtil.clear(ByteBuffer.allocateDirect(16));
+            return true;
+        } catch (UnsatisfiedLinkError e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void copy(Buffer src, Buffer dist, int size) {
+        SkinUtil.copy(src, dist, size);
+    }
+
+    @Override
+    public void setSkin(FloatBuffer buf, ShortBuffer indexBuf, FloatBuffer skinBuf, float weight) {
+        SkinUtil.setSkin(buf, indexBuf, skinBuf, weight);
+    }
+
+    @Override
+    public void copyBoneMatrix(FloatBuffer src, FloatBuffer dist, ShortBuffer indexBuffer) {
+        SkinUtil.copyBoneMatrix(src, dist, indexBuffer);
+    }
+
+    @Override
+    public void clear(Buffer buf) {
+        SkinUtil.clear(buf);
+    }
+
+    @Override
+    public String getName() {
+        return "native";
+    }
+}
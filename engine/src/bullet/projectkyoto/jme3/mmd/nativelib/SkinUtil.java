@@ -7,12 +7,53 @@ package projectkyoto.jme3.mmd.nativelib;
 import java.nio.Buffer;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
- *
+ * JNI entry points of the bulletjme library. Callers should go through
+ * {@link #getBackend()}, which falls back to {@link JavaSkinUtil} when the
+ * native library is not loaded (headless or CI machines).
+ * The system property "projectkyoto.skinutil" can be set to "java" or
+ * "native" to force a backend.
  * @author kobayasi
  */
 public class SkinUtil {
+    private static final Logger logger = Logger.getLogger(SkinUtil.class.getName());
+    private static volatile SkinUtilBackend backend;
+
+    public static SkinUtilBackend getBackend() {
+        SkinUtilBackend b = backend;
+        if (b == null) {
+            synchronized (SkinUtil.class) {
+                b = backend;
+                if (b == null) {
+                    b = selectBackend();
+                    backend = b;
+                }
+            }
+        }
+        return b;
+    }
+
+    public static void setBackend(SkinUtilBackend backend) {
+        SkinUtil.backend = backend;
+    }
+
+    static SkinUtilBackend selectBackend() {
+        String name = System.getProperty("projectkyoto.skinutil", "auto");
+        SkinUtilBackend b;
+        if ("java".equals(name)) {
+            b = new JavaSkinUtil();
+        } else if ("native".equals(name) || NativeSkinUtil.isAvailable()) {
+            b = new NativeSkinUtil();
+        } else {
+            b = new JavaSkinUtil();
+        }
+        logger.log(Level.INFO, "SkinUtil backend = {0}", b.getName());
+        return b;
+    }
+
     public static native void copy(Buffer src, Buffer dist, int size);
     public static native void setSkin(FloatBuffer buf, ShortBuffer indexBuf, FloatBuffer skinBuf, float weight);
     public static native void copyBoneMatrix(FloatBuffer src, FloatBuffer dist, ShortBuffer indexBuffer);
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2010-2014, Kazuhiko Kobayashi
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package projectkyoto.jme3.mmd.nativelib;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Morph and bone matrix buffer operations used by PMDNode.
+ * Obtain the active implementation with {@link SkinUtil#getBackend()}.
+ * @author kobayasi
+ */
+public interface SkinUtilBackend {
+
+    /**
+     * Copies size bytes from the start of src to the start of dist.
+     */
+    public void copy(Buffer src, Buffer dist, int size);
+
+    /**
+     * Adds skinBuf[i] * weight to the vertex indexBuf[i] of buf
+     * for every index in indexBuf.
+     */
+    public void setSkin(FloatBuffer buf, ShortBuffer indexBuf, FloatBuffer skinBuf, float weight);
+
+    /**
+     * Copies the 4x4 matrices src[indexBuffer[i]] to dist[i].
+     */
+    public void copyBoneMatrix(FloatBuffer src, FloatBuffer dist, ShortBuffer indexBuffer);
+
+    public void clear(Buffer buf);
+
+    public String getName();
+}
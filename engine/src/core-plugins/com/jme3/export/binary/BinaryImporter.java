@@ -42,14 +42,15 @@ import com.jme3.export.ReadListener;
 import com.jme3.export.Savable;
 import com.jme3.math.FastMath;
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
@@ -58,6 +59,16 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
+ * Imports savables from the jME binary format (j3o).
+ * <p>
+ * Objects are read when they are first referenced, starting with the root,
+ * and their NIO buffers when the object asks for them. Files, and assets
+ * whose {@link AssetInfo#openBuffer() } returns a buffer, are read from that
+ * buffer without copying the whole file to the heap first: with a memory
+ * mapped file the NIO buffers are copied once, from the mapping into new
+ * direct buffers, and parts of the file that are not referenced are never
+ * read.
+ *
  * @author Joshua Slack
  * @author Kirill Vainer - Version number, Fast buffer reading
  */
@@ -82,7 +93,7 @@ public final class BinaryImporter implements JmeImporter {
 
     public static boolean debug = false;
 
-    private byte[] dataArray;
+    private ByteBuffer data;
     private int aliasWidth;
     private int formatVersion;
 
@@ -127,6 +138,10 @@ public final class BinaryImporter implements JmeImporter {
         if ("j3o".equals(info.getKey().getExtension())) {
             InputStream is = null;
             try {
+                ByteBuffer buffer = info.openBuffer();
+                if (buffer != null) {
+                    return load(buffer, null);
+                }
                 is = info.openStream();
                 Savable s = load(is);
 
@@ -154,9 +169,71 @@ public final class BinaryImporter implements JmeImporter {
     }
 
     public Savable load(InputStream is, ReadListener listener, ByteArrayOutputStream baos) throws IOException {
-        contentTable.clear();
         BufferedInputStream bis = new BufferedInputStream(is);
-        
+        int id = readHeader(bis, listener);
+
+        if (baos == null) {
+            // read straight into a growing array and wrap it, instead of
+            // copying it again with toByteArray()
+            ContentOutputStream content = new ContentOutputStream();
+            readContent(bis, content, listener);
+            data = content.toByteBuffer();
+        } else {
+            baos.reset();
+            readContent(bis, baos, listener);
+            data = ByteBuffer.wrap(baos.toByteArray());
+        }
+        bis = null;
+        baos = null;
+
+        return readRoot(id);
+    }
+
+    /**
+     * Loads a savable from the given buffer, from its position to its limit.
+     * If the buffer is direct and writable, the NIO buffers of the savables
+     * are slices of it instead of copies, so it should not be reused
+     * afterwards.
+     *
+     * @param buffer the j3o data
+     * @param listener notified of the bytes read from the header, or null
+     * @return the root savable
+     */
+    public Savable load(ByteBuffer buffer, ReadListener listener) throws IOException {
+        ByteBuffer source = buffer.duplicate();
+        int id = readHeader(new BufferInputStream(source), listener);
+        data = source.slice();
+        return readRoot(id);
+    }
+
+    private static void readContent(InputStream is, ByteArrayOutputStream out, ReadListener listener) throws IOException {
+        int size = -1;
+        byte[] cache = new byte[4096];
+        while((size = is.read(cache)) != -1) {
+            out.write(cache, 0, size);
+            if (listener != null) listener.readBytes(size);
+        }
+    }
+
+    private Savable readRoot(int id) {
+        Savable rVal = readObject(id);
+        if (debug) {
+            logger.info("Importer Stats: ");
+            logger.log(Level.INFO, "Tags: {0}", classes.size());
+            logger.log(Level.INFO, "Objects: {0}", locationTable.size());
+            logger.log(Level.INFO, "Data Size: {0}", data.limit());
+        }
+        data = null;
+        return rVal;
+    }
+
+    /**
+     * Reads the class and location tables.
+     *
+     * @return the id of the root savable
+     */
+    private int readHeader(InputStream bis, ReadListener listener) throws IOException {
+        contentTable.clear();
         int numClasses;
         
         // Try to read signature
@@ -247,31 +324,7 @@ public final class BinaryImporter implements JmeImporter {
         bytes += 8;
         if (listener != null) listener.readBytes(bytes);
 
-        if (baos == null) {
-                baos = new ByteArrayOutputStream(bytes);
-        } else {
-                baos.reset();
-        }
-        int size = -1;
-        byte[] cache = new byte[4096];
-        while((size = bis.read(cache)) != -1) {
-            baos.write(cache, 0, size);
-            if (listener != null) listener.readBytes(size);
-        }
-        bis = null;
-
-        dataArray = baos.toByteArray();
-        baos = null;
-
-        Savable rVal = readObject(id);
-        if (debug) {
-            logger.info("Importer Stats: ");
-            logger.log(Level.INFO, "Tags: {0}", numClasses);
-            logger.log(Level.INFO, "Objects: {0}", numLocs);
-            logger.log(Level.INFO, "Data Size: {0}", dataArray.length);
-        }
-        dataArray = null;
-        return rVal;
+        return id;
     }
 
     public Savable load(URL f) throws IOException {
@@ -290,17 +343,25 @@ public final class BinaryImporter implements JmeImporter {
     }
 
     public Savable load(File f, ReadListener listener) throws IOException {
-        FileInputStream fis = new FileInputStream(f);
-        Savable rVal = load(fis, listener);
-        fis.close();
-        return rVal;
+        return load(mapFile(f), listener);
     }
 
     public Savable load(byte[] data) throws IOException {
-        ByteArrayInputStream bais = new ByteArrayInputStream(data);
-        Savable rVal = load(bais);
-        bais.close();
-        return rVal;
+        return load(ByteBuffer.wrap(data), null);
+    }
+
+    /**
+     * Maps the given file read only. The mapping stays valid until the
+     * buffer is garbage collected.
+     */
+    private static ByteBuffer mapFile(File f) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
     }
 
     @Override
@@ -320,12 +381,53 @@ public final class BinaryImporter implements JmeImporter {
     protected String readString(int length, int offset) throws IOException {
         byte[] data = new byte[length];
         for(int j = 0; j < length; j++) {
-            data[j] = dataArray[j+offset];
+            data[j] = this.data.get(j+offset);
         }
 
         return new String(data);
     }
 
+    /**
+     * Exposes the array of the output stream, so the data is not copied.
+     */
+    private static class ContentOutputStream extends ByteArrayOutputStream {
+
+        public ContentOutputStream() {
+            super(4096);
+        }
+
+        public ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count).slice();
+        }
+    }
+
+    /**
+     * Reads the header of a buffer.
+     */
+    private static class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        public BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+    }
+
     public Savable readObject(int id) {
 
         if(contentTable.get(id) != null) {
@@ -345,13 +447,13 @@ public final class BinaryImporter implements JmeImporter {
                 return null;
             }
 
-            int dataLength = ByteUtils.convertIntFromBytes(dataArray, loc);
+            int dataLength = data.getInt(loc);
             loc+=4;
 
             Savable out = SavableClassUtil.fromName(bco.className, loaders);
             
             BinaryInputCapsule cap = new BinaryInputCapsule(this, out, bco);
-            cap.setContent(dataArray, loc, loc+dataLength);
+            cap.setContent(data, loc, loc+dataLength);
 
             capsuleTable.put(out, cap);
             contentTable.put(id, out);
@@ -40,6 +40,7 @@ import com.jme3.util.IntMap;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
@@ -62,6 +63,7 @@ final class BinaryInputCapsule implements InputCapsule {
     protected BinaryClassObject cObj;
     protected Savable savable;
     protected HashMap<Byte, Object> fieldData;
+    protected ByteBuffer content;
 
     protected int index = 0;
 
@@ -71,10 +73,16 @@ final class BinaryInputCapsule implements InputCapsule {
         this.savable = savable;
     }
 
-    public void setContent(byte[] content, int start, int limit) {
+    /**
+     * Reads the fields of the savable from the given range of the content.
+     * The content is in big endian order. NIO buffer fields are only
+     * located here and read when the savable asks for them.
+     */
+    public void setContent(ByteBuffer content, int start, int limit) {
+        this.content = content;
         fieldData = new HashMap<Byte, Object>();
         for (index = start; index < limit;) {
-            byte alias = content[index];
+            byte alias = content.get(index);
 
             index++;
 
@@ -112,7 +120,7 @@ final class BinaryInputCapsule implements InputCapsule {
                         break;
                     }
                     case BinaryClassField.BYTEBUFFER: {
-                        value = readByteBuffer(content);
+                        value = skipBuffer(content, 1);
                         break;
                     }
                     case BinaryClassField.DOUBLE: {
@@ -140,7 +148,7 @@ final class BinaryInputCapsule implements InputCapsule {
                         break;
                     }
                     case BinaryClassField.FLOATBUFFER: {
-                        value = readFloatBuffer(content);
+                        value = skipBuffer(content, 4);
                         break;
                     }
                     case BinaryClassField.FLOATBUFFER_ARRAYLIST: {
@@ -164,7 +172,7 @@ final class BinaryInputCapsule implements InputCapsule {
                         break;
                     }
                     case BinaryClassField.INTBUFFER: {
-                        value = readIntBuffer(content);
+                        value = skipBuffer(content, 4);
                         break;
                     }
                     case BinaryClassField.LONG: {
@@ -228,7 +236,7 @@ final class BinaryInputCapsule implements InputCapsule {
                         break;
                     }
                     case BinaryClassField.SHORTBUFFER: {
-                        value = readShortBuffer(content);
+                        value = skipBuffer(content, 2);
                         break;
                     }
                     case BinaryClassField.STRING: {
@@ -253,7 +261,7 @@ final class BinaryInputCapsule implements InputCapsule {
 
             } catch (IOException e) {
                 logger.logp(Level.SEVERE, this.getClass().toString(),
-                        "setContent(byte[] content)", "Exception", e);
+                        "setContent(ByteBuffer content)", "Exception", e);
             }
         }
     }
@@ -320,7 +328,7 @@ final class BinaryInputCapsule implements InputCapsule {
         BinaryClassField field = cObj.nameFields.get(name);
         if (field == null || !fieldData.containsKey(field.alias))
             return defVal;
-        return (ByteBuffer) fieldData.get(field.alias);
+        return (ByteBuffer) resolveBuffer(field.alias);
     }
 
     @SuppressWarnings("unchecked")
@@ -383,7 +391,7 @@ final class BinaryInputCapsule implements InputCapsule {
         BinaryClassField field = cObj.nameFields.get(name);
         if (field == null || !fieldData.containsKey(field.alias))
             return defVal;
-        return (FloatBuffer) fieldData.get(field.alias);
+        return (FloatBuffer) resolveBuffer(field.alias);
     }
 
     @SuppressWarnings("unchecked")
@@ -422,7 +430,7 @@ final class BinaryInputCapsule implements InputCapsule {
         BinaryClassField field = cObj.nameFields.get(name);
         if (field == null || !fieldData.containsKey(field.alias))
             return defVal;
-        return (IntBuffer) fieldData.get(field.alias);
+        return (IntBuffer) resolveBuffer(field.alias);
     }
 
     public long readLong(String name, long defVal) throws IOException {
@@ -717,7 +725,7 @@ final class BinaryInputCapsule implements InputCapsule {
         BinaryClassField field = cObj.nameFields.get(name);
         if (field == null || !fieldData.containsKey(field.alias))
             return defVal;
-        return (ShortBuffer) fieldData.get(field.alias);
+        return (ShortBuffer) resolveBuffer(field.alias);
     }
 
     public String readString(String name, String defVal) throws IOException {
@@ -745,19 +753,19 @@ final class BinaryInputCapsule implements InputCapsule {
 
     // byte primitive
 
-    protected byte readByte(byte[] content) throws IOException {
-        byte value = content[index];
+    protected byte readByte(ByteBuffer content) throws IOException {
+        byte value = content.get(index);
         index++;
         return value;
     }
 
-    protected byte readByteForBuffer(byte[] content) throws IOException {
-        byte value = content[index];
+    protected byte readByteForBuffer(ByteBuffer content) throws IOException {
+        byte value = content.get(index);
         index++;
         return value;
     }
 
-    protected byte[] readByteArray(byte[] content) throws IOException {
+    protected byte[] readByteArray(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -767,7 +775,7 @@ final class BinaryInputCapsule implements InputCapsule {
         return value;
     }
 
-    protected byte[][] readByteArray2D(byte[] content) throws IOException {
+    protected byte[][] readByteArray2D(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -779,27 +787,34 @@ final class BinaryInputCapsule implements InputCapsule {
 
     // int primitive
 
-    protected int readIntForBuffer(byte[] content){
-        int number = ((content[index+3] & 0xFF) << 24)
-                   + ((content[index+2] & 0xFF) << 16)
-                   + ((content[index+1] & 0xFF) << 8)
-                   +  (content[index]   & 0xFF);
+    protected int readIntForBuffer(ByteBuffer content){
+        int number = ((content.get(index+3) & 0xFF) << 24)
+                   + ((content.get(index+2) & 0xFF) << 16)
+                   + ((content.get(index+1) & 0xFF) << 8)
+                   +  (content.get(index)   & 0xFF);
         index += 4;
         return number;
     }
 
-    protected int readInt(byte[] content) throws IOException {
-        byte[] bytes = inflateFrom(content, index);
-        index += 1 + bytes.length;
-        bytes = ByteUtils.rightAlignBytes(bytes, 4);
-        int value = ByteUtils.convertIntFromBytes(bytes);
+    protected int readInt(ByteBuffer content) throws IOException {
+        // same as inflateFrom() without creating arrays
+        byte firstByte = content.get(index);
+        if (firstByte == BinaryOutputCapsule.NULL_OBJECT
+                || firstByte == BinaryOutputCapsule.DEFAULT_OBJECT) {
+            index++;
+            return firstByte;
+        }
+        int value = 0;
+        for (int x = 1; x <= firstByte; x++)
+            value = (value << 8) | (content.get(index + x) & 0xFF);
+        index += 1 + firstByte;
         if (value == BinaryOutputCapsule.NULL_OBJECT
                 || value == BinaryOutputCapsule.DEFAULT_OBJECT)
             index -= 4;
         return value;
     }
 
-    protected int[] readIntArray(byte[] content) throws IOException {
+    protected int[] readIntArray(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -809,7 +824,7 @@ final class BinaryInputCapsule implements InputCapsule {
         return value;
     }
 
-    protected int[][] readIntArray2D(byte[] content) throws IOException {
+    protected int[][] readIntArray2D(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -821,18 +836,18 @@ final class BinaryInputCapsule implements InputCapsule {
 
     // float primitive
 
-    protected float readFloat(byte[] content) throws IOException {
-        float value = ByteUtils.convertFloatFromBytes(content, index);
+    protected float readFloat(ByteBuffer content) throws IOException {
+        float value = content.getFloat(index);
         index += 4;
         return value;
     }
 
-    protected float readFloatForBuffer(byte[] content) throws IOException {
+    protected float readFloatForBuffer(ByteBuffer content) throws IOException {
         int number = readIntForBuffer(content);
         return Float.intBitsToFloat(number);
     }
 
-    protected float[] readFloatArray(byte[] content) throws IOException {
+    protected float[] readFloatArray(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -842,7 +857,7 @@ final class BinaryInputCapsule implements InputCapsule {
         return value;
     }
 
-    protected float[][] readFloatArray2D(byte[] content) throws IOException {
+    protected float[][] readFloatArray2D(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -854,13 +869,13 @@ final class BinaryInputCapsule implements InputCapsule {
 
     // double primitive
 
-    protected double readDouble(byte[] content) throws IOException {
-        double value = ByteUtils.convertDoubleFromBytes(content, index);
+    protected double readDouble(ByteBuffer content) throws IOException {
+        double value = content.getDouble(index);
         index += 8;
         return value;
     }
 
-    protected double[] readDoubleArray(byte[] content) throws IOException {
+    protected double[] readDoubleArray(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -870,7 +885,7 @@ final class BinaryInputCapsule implements InputCapsule {
         return value;
     }
 
-    protected double[][] readDoubleArray2D(byte[] content) throws IOException {
+    protected double[][] readDoubleArray2D(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -882,7 +897,7 @@ final class BinaryInputCapsule implements InputCapsule {
 
     // long primitive
 
-    protected long readLong(byte[] content) throws IOException {
+    protected long readLong(ByteBuffer content) throws IOException {
         byte[] bytes = inflateFrom(content, index);
         index += 1 + bytes.length;
         bytes = ByteUtils.rightAlignBytes(bytes, 8);
@@ -890,7 +905,7 @@ final class BinaryInputCapsule implements InputCapsule {
         return value;
     }
 
-    protected long[] readLongArray(byte[] content) throws IOException {
+    protected long[] readLongArray(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -900,7 +915,7 @@ final class BinaryInputCapsule implements InputCapsule {
         return value;
     }
 
-    protected long[][] readLongArray2D(byte[] content) throws IOException {
+    protected long[][] readLongArray2D(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -912,20 +927,20 @@ final class BinaryInputCapsule implements InputCapsule {
 
     // short primitive
 
-    protected short readShort(byte[] content) throws IOException {
-        short value = ByteUtils.convertShortFromBytes(content, index);
+    protected short readShort(ByteBuffer content) throws IOException {
+        short value = content.getShort(index);
         index += 2;
         return value;
     }
 
-    protected short readShortForBuffer(byte[] content) throws IOException {
-        short number = (short) ((content[index+0] & 0xFF)
-                             + ((content[index+1] & 0xFF) << 8));
+    protected short readShortForBuffer(ByteBuffer content) throws IOException {
+        short number = (short) ((content.get(index+0) & 0xFF)
+                             + ((content.get(index+1) & 0xFF) << 8));
         index += 2;
         return number;
     }
 
-    protected short[] readShortArray(byte[] content) throws IOException {
+    protected short[] readShortArray(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -935,7 +950,7 @@ final class BinaryInputCapsule implements InputCapsule {
         return value;
     }
 
-    protected short[][] readShortArray2D(byte[] content) throws IOException {
+    protected short[][] readShortArray2D(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -947,13 +962,13 @@ final class BinaryInputCapsule implements InputCapsule {
 
     // boolean primitive
 
-    protected boolean readBoolean(byte[] content) throws IOException {
-        boolean value = ByteUtils.convertBooleanFromBytes(content, index);
+    protected boolean readBoolean(ByteBuffer content) throws IOException {
+        boolean value = content.get(index) != 0;
         index += 1;
         return value;
     }
 
-    protected boolean[] readBooleanArray(byte[] content) throws IOException {
+    protected boolean[] readBooleanArray(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -963,7 +978,7 @@ final class BinaryInputCapsule implements InputCapsule {
         return value;
     }
 
-    protected boolean[][] readBooleanArray2D(byte[] content) throws IOException {
+    protected boolean[][] readBooleanArray2D(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -996,7 +1011,7 @@ final class BinaryInputCapsule implements InputCapsule {
     private final static int UTF8_ILLEGAL = 10; // not an UTF8 string
 
     // String
-    protected String readString(byte[] content) throws IOException {
+    protected String readString(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -1036,7 +1051,7 @@ final class BinaryInputCapsule implements InputCapsule {
         int utf8State = UTF8_START;
         int b;
         for (int x = 0; x < length; x++) {
-            bytes[x] =  content[index++];
+            bytes[x] =  content.get(index++);
             b = (int) bytes[x] & 0xFF; // unsign our byte
 
             switch (utf8State) {
@@ -1098,7 +1113,7 @@ final class BinaryInputCapsule implements InputCapsule {
         }
     }
 
-    protected String[] readStringArray(byte[] content) throws IOException {
+    protected String[] readStringArray(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -1108,7 +1123,7 @@ final class BinaryInputCapsule implements InputCapsule {
         return value;
     }
 
-    protected String[][] readStringArray2D(byte[] content) throws IOException {
+    protected String[][] readStringArray2D(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -1120,7 +1135,7 @@ final class BinaryInputCapsule implements InputCapsule {
 
     // BitSet
 
-    protected BitSet readBitSet(byte[] content) throws IOException {
+    protected BitSet readBitSet(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -1132,8 +1147,8 @@ final class BinaryInputCapsule implements InputCapsule {
 
     // INFLATOR for int and long
 
-    protected static byte[] inflateFrom(byte[] contents, int index) {
-        byte firstByte = contents[index];
+    protected static byte[] inflateFrom(ByteBuffer contents, int index) {
+        byte firstByte = contents.get(index);
         if (firstByte == BinaryOutputCapsule.NULL_OBJECT)
             return ByteUtils.convertToBytes(BinaryOutputCapsule.NULL_OBJECT);
         else if (firstByte == BinaryOutputCapsule.DEFAULT_OBJECT)
@@ -1143,14 +1158,14 @@ final class BinaryInputCapsule implements InputCapsule {
         else {
             byte[] rVal = new byte[firstByte];
             for (int x = 0; x < rVal.length; x++)
-                rVal[x] = contents[x + 1 + index];
+                rVal[x] = contents.get(x + 1 + index);
             return rVal;
         }
     }
 
     // BinarySavable
 
-    protected ID readSavable(byte[] content) throws IOException {
+    protected ID readSavable(ByteBuffer content) throws IOException {
         int id = readInt(content);
         if (id == BinaryOutputCapsule.NULL_OBJECT) {
             return null;
@@ -1161,7 +1176,7 @@ final class BinaryInputCapsule implements InputCapsule {
 
     // BinarySavable array
 
-    protected ID[] readSavableArray(byte[] content) throws IOException {
+    protected ID[] readSavableArray(ByteBuffer content) throws IOException {
         int elements = readInt(content);
         if (elements == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -1172,7 +1187,7 @@ final class BinaryInputCapsule implements InputCapsule {
         return rVal;
     }
 
-    protected ID[][] readSavableArray2D(byte[] content) throws IOException {
+    protected ID[][] readSavableArray2D(ByteBuffer content) throws IOException {
         int elements = readInt(content);
         if (elements == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -1183,7 +1198,7 @@ final class BinaryInputCapsule implements InputCapsule {
         return rVal;
     }
 
-    protected ID[][][] readSavableArray3D(byte[] content) throws IOException {
+    protected ID[][][] readSavableArray3D(ByteBuffer content) throws IOException {
         int elements = readInt(content);
         if (elements == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -1196,7 +1211,7 @@ final class BinaryInputCapsule implements InputCapsule {
 
     // BinarySavable map
 
-    protected ID[][] readSavableMap(byte[] content) throws IOException {
+    protected ID[][] readSavableMap(ByteBuffer content) throws IOException {
         int elements = readInt(content);
         if (elements == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -1207,7 +1222,7 @@ final class BinaryInputCapsule implements InputCapsule {
         return rVal;
     }
 
-    protected StringIDMap readStringSavableMap(byte[] content) throws IOException {
+    protected StringIDMap readStringSavableMap(ByteBuffer content) throws IOException {
         int elements = readInt(content);
         if (elements == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -1219,7 +1234,7 @@ final class BinaryInputCapsule implements InputCapsule {
         return rVal;
     }
 
-    protected IntIDMap readIntSavableMap(byte[] content) throws IOException {
+    protected IntIDMap readIntSavableMap(ByteBuffer content) throws IOException {
         int elements = readInt(content);
         if (elements == BinaryOutputCapsule.NULL_OBJECT)
             return null;
@@ -1234,7 +1249,7 @@ final class BinaryInputCapsule implements InputCapsule {
 
     // ArrayList<FloatBuffer>
 
-    protected ArrayList<FloatBuffer> readFloatBufferArrayList(byte[] content)
+    protected ArrayList<FloatBuffer> readFloatBufferArrayList(ByteBuffer content)
             throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT) {
@@ -1249,7 +1264,7 @@ final class BinaryInputCapsule implements InputCapsule {
 
     // ArrayList<ByteBuffer>
 
-    protected ArrayList<ByteBuffer> readByteBufferArrayList(byte[] content)
+    protected ArrayList<ByteBuffer> readByteBufferArrayList(ByteBuffer content)
             throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT) {
@@ -1265,16 +1280,13 @@ final class BinaryInputCapsule implements InputCapsule {
     // NIO BUFFERS
     // float buffer
 
-    protected FloatBuffer readFloatBuffer(byte[] content) throws IOException {
+    protected FloatBuffer readFloatBuffer(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
 
         if (BinaryImporter.canUseFastBuffers()){
-            ByteBuffer value = BufferUtils.createByteBuffer(length * 4);
-            value.put(content, index, length * 4).rewind();
-            index += length * 4;
-            return value.asFloatBuffer();
+            return readBufferData(content, length * 4).asFloatBuffer();
         }else{
             FloatBuffer value = BufferUtils.createFloatBuffer(length);
             for (int x = 0; x < length; x++) {
@@ -1287,16 +1299,13 @@ final class BinaryInputCapsule implements InputCapsule {
 
     // int buffer
 
-    protected IntBuffer readIntBuffer(byte[] content) throws IOException {
+    protected IntBuffer readIntBuffer(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
 
         if (BinaryImporter.canUseFastBuffers()){
-            ByteBuffer value = BufferUtils.createByteBuffer(length * 4);
-            value.put(content, index, length * 4).rewind();
-            index += length * 4;
-            return value.asIntBuffer();
+            return readBufferData(content, length * 4).asIntBuffer();
         }else{
             IntBuffer value = BufferUtils.createIntBuffer(length);
             for (int x = 0; x < length; x++) {
@@ -1309,16 +1318,13 @@ final class BinaryInputCapsule implements InputCapsule {
 
     // byte buffer
 
-    protected ByteBuffer readByteBuffer(byte[] content) throws IOException {
+    protected ByteBuffer readByteBuffer(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
 
         if (BinaryImporter.canUseFastBuffers()){
-            ByteBuffer value = BufferUtils.createByteBuffer(length);
-            value.put(content, index, length).rewind();
-            index += length;
-            return value;
+            return readBufferData(content, length);
         }else{
             ByteBuffer value = BufferUtils.createByteBuffer(length);
             for (int x = 0; x < length; x++) {
@@ -1331,16 +1337,13 @@ final class BinaryInputCapsule implements InputCapsule {
 
     // short buffer
 
-    protected ShortBuffer readShortBuffer(byte[] content) throws IOException {
+    protected ShortBuffer readShortBuffer(ByteBuffer content) throws IOException {
         int length = readInt(content);
         if (length == BinaryOutputCapsule.NULL_OBJECT)
             return null;
 
         if (BinaryImporter.canUseFastBuffers()){
-            ByteBuffer value = BufferUtils.createByteBuffer(length * 2);
-            value.put(content, index, length * 2).rewind();
-            index += length * 2;
-            return value.asShortBuffer();
+            return readBufferData(content, length * 2).asShortBuffer();
         }else{
             ShortBuffer value = BufferUtils.createShortBuffer(length);
             for (int x = 0; x < length; x++) {
@@ -1351,6 +1354,69 @@ final class BinaryInputCapsule implements InputCapsule {
         }
     }
 
+    /**
+     * Skips a buffer field in setContent, it is read by resolveBuffer.
+     */
+    private BufferRef skipBuffer(ByteBuffer content, int elementSize) throws IOException {
+        BufferRef ref = new BufferRef(index);
+        int length = readInt(content);
+        if (length != BinaryOutputCapsule.NULL_OBJECT)
+            index += length * elementSize;
+        return ref;
+    }
+
+    private Object resolveBuffer(byte alias) throws IOException {
+        Object value = fieldData.get(alias);
+        if (!(value instanceof BufferRef))
+            return value;
+
+        int end = index;
+        index = ((BufferRef) value).index;
+        switch (cObj.aliasFields.get(alias).type) {
+            case BinaryClassField.BYTEBUFFER:
+                value = readByteBuffer(content);
+                break;
+            case BinaryClassField.FLOATBUFFER:
+                value = readFloatBuffer(content);
+                break;
+            case BinaryClassField.INTBUFFER:
+                value = readIntBuffer(content);
+                break;
+            default:
+                value = readShortBuffer(content);
+                break;
+        }
+        index = end;
+        fieldData.put(alias, value);
+        return value;
+    }
+
+    /**
+     * Returns the next bytes of the content as a direct byte buffer in
+     * native order. Writable direct content is sliced, other content, as a
+     * read only mapped file, is copied.
+     */
+    private ByteBuffer readBufferData(ByteBuffer content, int bytes) {
+        ByteBuffer data = content.duplicate();
+        data.position(index);
+        data.limit(index + bytes);
+        index += bytes;
+        if (data.isDirect() && !data.isReadOnly()) {
+            return data.slice().order(ByteOrder.nativeOrder());
+        }
+        ByteBuffer value = BufferUtils.createByteBuffer(bytes);
+        value.put(data).rewind();
+        return value;
+    }
+
+    static private class BufferRef {
+        public int index;
+
+        public BufferRef(int index) {
+            this.index = index;
+        }
+    }
+
     static private class ID {
         public int id;
 
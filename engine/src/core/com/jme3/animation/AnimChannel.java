@@ -66,6 +66,13 @@ public final class AnimChannel {
     
     private float blendAmount = 1f;
     private float blendRate   = 0;
+
+    // keyframe cursors per track of the two most recent animations, tracks
+    // can be shared between channels so the cursors are kept here
+    private final Animation[] cursorAnims = new Animation[2];
+    private final int[][] cursors = new int[2][];
+    private int[] currentCursors;
+    private int currentTrack;
     
     private static float clampWrapTime(float t, float max, LoopMode loopMode){
         if (t == 0) {
@@ -349,6 +356,49 @@ public final class AnimChannel {
     BitSet getAffectedBones(){
         return affectedBones;
     }
+
+    /**
+     * Selects the keyframe cursors of the given animation for the following
+     * {@link #getKeyFrameCursor()} calls, one cursor per track.
+     */
+    void selectKeyFrameCursors(Animation anim, int trackCount) {
+        int slot;
+        if (cursorAnims[0] == anim) {
+            slot = 0;
+        } else if (cursorAnims[1] == anim) {
+            slot = 1;
+        } else {
+            // replace the slot that is not in use by the other animation
+            slot = cursorAnims[0] == animation || cursorAnims[0] == blendFrom ? 1 : 0;
+            cursorAnims[slot] = anim;
+            cursors[slot] = null;
+        }
+        if (cursors[slot] == null || cursors[slot].length < trackCount) {
+            cursors[slot] = new int[trackCount];
+        }
+        currentCursors = cursors[slot];
+    }
+
+    /**
+     * Selects the cursor of the track with the given index.
+     */
+    void selectKeyFrameTrack(int trackIndex) {
+        currentTrack = trackIndex;
+    }
+
+    /**
+     * @return the frame found by the last keyframe lookup of the current
+     * track, only a hint for the next lookup.
+     */
+    int getKeyFrameCursor() {
+        return currentCursors != null ? currentCursors[currentTrack] : 0;
+    }
+
+    void setKeyFrameCursor(int frame) {
+        if (currentCursors != null) {
+            currentCursors[currentTrack] = frame;
+        }
+    }
     
     public void reset(boolean rewind){
         if(rewind){
@@ -106,8 +106,28 @@ public class Animation implements Savable, Cloneable {
             return;
         }
 
-        for (Track track : tracks) {
-            track.setTime(time, blendAmount, control, channel, vars);
+        Track[] trackArray = tracks.getArray();
+        channel.selectKeyFrameCursors(this, trackArray.length);
+        for (int i = 0; i < trackArray.length; i++) {
+            channel.selectKeyFrameTrack(i);
+            trackArray[i].setTime(time, blendAmount, control, channel, vars);
+        }
+    }
+
+    /**
+     * Bakes the keyframes of all {@link BoneTrack}s and {@link SpatialTrack}s
+     * of this animation into contiguous arrays, trading memory for faster
+     * sampling. Useful for animations that are played often.
+     *
+     * @see BoneTrack#bake()
+     */
+    public void bake() {
+        for (Track track : tracks.getArray()) {
+            if (track instanceof BoneTrack) {
+                ((BoneTrack) track).bake();
+            } else if (track instanceof SpatialTrack) {
+                ((SpatialTrack) track).bake();
+            }
         }
     }
 
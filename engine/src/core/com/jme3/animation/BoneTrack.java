@@ -57,6 +57,11 @@ public final class BoneTrack implements Track {
     private CompactQuaternionArray rotations;
     private CompactVector3Array scales;
     private float[] times;
+
+    /**
+     * Keyframes expanded by {@link #bake()}, or null.
+     */
+    private transient float[] baked;
     
     /**
      * Serialization-only. Do not use.
@@ -156,6 +161,9 @@ public final class BoneTrack implements Track {
         this.rotations = new CompactQuaternionArray();
         this.rotations.add(rotations);
         this.rotations.freeze();
+        if (baked != null) {
+            bake();
+        }
     }
 
     /**
@@ -166,6 +174,8 @@ public final class BoneTrack implements Track {
      * @param scales the scale of the bone for each frame
      */
     public void setKeyframes(float[] times, Vector3f[] translations, Quaternion[] rotations, Vector3f[] scales) {
+        boolean rebake = baked != null;
+        baked = null;
         this.setKeyframes(times, translations, rotations);
         assert times.length == scales.length;
         if (scales != null) {
@@ -173,6 +183,40 @@ public final class BoneTrack implements Track {
             this.scales.add(scales);
             this.scales.freeze();
         }
+        if (rebake) {
+            bake();
+        }
+    }
+
+    /**
+     * Expands the keyframes of this track into one contiguous array that is
+     * used by {@link #setTime(float, float, com.jme3.animation.AnimControl,
+     * com.jme3.animation.AnimChannel, com.jme3.util.TempVars) setTime}
+     * instead of the compact arrays. The baked data takes about 40 bytes per
+     * keyframe and is not saved.
+     */
+    public void bake() {
+        baked = KeyFrames.bake(times.length, translations, rotations, scales);
+    }
+
+    /**
+     * @return true if the keyframes of this track are baked.
+     * @see #bake()
+     */
+    public boolean isBaked() {
+        return baked != null;
+    }
+
+    private void getFrame(int frame, Vector3f translation, Quaternion rotation, Vector3f scale) {
+        if (baked != null) {
+            KeyFrames.get(baked, frame, translation, rotation, scale);
+            return;
+        }
+        rotations.get(frame, rotation);
+        translations.get(frame, translation);
+        if (scales != null) {
+            scales.get(frame, scale);
+        }
     }
 
     /**
@@ -204,40 +248,19 @@ public final class BoneTrack implements Track {
         
         int lastFrame = times.length - 1;
         if (time < 0 || lastFrame == 0) {
-            rotations.get(0, tempQ);
-            translations.get(0, tempV);
-            if (scales != null) {
-                scales.get(0, tempS);
-            }
+            getFrame(0, tempV, tempQ, tempS);
         } else if (time >= times[lastFrame]) {
-            rotations.get(lastFrame, tempQ);
-            translations.get(lastFrame, tempV);
-            if (scales != null) {
-                scales.get(lastFrame, tempS);
-            }
+            getFrame(lastFrame, tempV, tempQ, tempS);
         } else {
-            int startFrame = 0;
-            int endFrame = 1;
-            // use lastFrame so we never overflow the array
-            int i;
-            for (i = 0; i < lastFrame && times[i] < time; i++) {
-                startFrame = i;
-                endFrame = i + 1;
-            }
+            int startFrame = KeyFrames.findFrame(times, time, channel.getKeyFrameCursor());
+            channel.setKeyFrameCursor(startFrame);
+            int endFrame = startFrame + 1;
 
             float blend = (time - times[startFrame])
                     / (times[endFrame] - times[startFrame]);
 
-            rotations.get(startFrame, tempQ);
-            translations.get(startFrame, tempV);
-            if (scales != null) {
-                scales.get(startFrame, tempS);
-            }
-            rotations.get(endFrame, tempQ2);
-            translations.get(endFrame, tempV2);
-            if (scales != null) {
-                scales.get(endFrame, tempS2);
-            }
+            getFrame(startFrame, tempV, tempQ, tempS);
+            getFrame(endFrame, tempV2, tempQ2, tempS2);
             tempQ.nlerp(tempQ2, blend);
             tempV.interpolate(tempV2, blend);
             tempS.interpolate(tempS2, blend);
@@ -280,7 +303,11 @@ public final class BoneTrack implements Track {
         }
         
         // Need to use the constructor here because of the final fields used in this class
-        return new BoneTrack(targetBoneIndex, times, translations, rotations, scales);
+        BoneTrack result = new BoneTrack(targetBoneIndex, times, translations, rotations, scales);
+        if (baked != null) {
+            result.bake();
+        }
+        return result;
     }
     
     @Override
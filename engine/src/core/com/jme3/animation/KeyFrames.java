@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2009-2010 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.animation;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+
+/**
+ * Keyframe lookup and baked keyframe data shared by {@link BoneTrack} and
+ * {@link SpatialTrack}.
+ * <p>
+ * Baked keyframes are stored frame by frame in one float array,
+ * translation, rotation and scale (10 floats per frame), so sampling a
+ * track reads two neighbouring blocks instead of going through the index
+ * tables of the compact arrays.
+ */
+final class KeyFrames {
+
+    /**
+     * Floats per frame in a baked array.
+     */
+    static final int BAKED_STRIDE = 10;
+
+    private KeyFrames() {
+    }
+
+    /**
+     * Returns the frame starting the interval that contains the given time:
+     * the last frame before the final one whose time is less than
+     * <code>time</code>, or 0.
+     * <p>
+     * The frame found by the previous lookup, <code>cursor</code>, and the
+     * frame after it are tried first, which covers continuous playback.
+     * Any other time is found with a binary search.
+     *
+     * @param times the frame times, sorted
+     * @param time the time, less than the time of the last frame
+     * @param cursor the frame returned by the previous lookup
+     * @return the start frame of the interval
+     */
+    static int findFrame(float[] times, float time, int cursor) {
+        int lastFrame = times.length - 1;
+        if (cursor >= 0 && cursor < lastFrame) {
+            if (time <= times[cursor + 1]) {
+                if (cursor == 0 || times[cursor] < time) {
+                    return cursor;
+                }
+            } else if (cursor + 1 < lastFrame && time <= times[cursor + 2]) {
+                return cursor + 1;
+            }
+        }
+
+        // first frame with a time greater or equal to time
+        int low = 0;
+        int high = lastFrame;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low > 0 ? low - 1 : 0;
+    }
+
+    /**
+     * Expands the given keyframes into one baked array. Missing channels
+     * are left as zero translation, identity rotation and unit scale.
+     */
+    static float[] bake(int frameCount, CompactVector3Array translations,
+            CompactQuaternionArray rotations, CompactVector3Array scales) {
+        float[] baked = new float[frameCount * BAKED_STRIDE];
+        Vector3f v = new Vector3f();
+        Quaternion q = new Quaternion();
+        for (int i = 0; i < frameCount; i++) {
+            int j = i * BAKED_STRIDE;
+            if (translations != null) {
+                translations.get(i, v);
+                baked[j] = v.x;
+                baked[j + 1] = v.y;
+                baked[j + 2] = v.z;
+            }
+            if (rotations != null) {
+                rotations.get(i, q);
+            } else {
+                q.loadIdentity();
+            }
+            baked[j + 3] = q.getX();
+            baked[j + 4] = q.getY();
+            baked[j + 5] = q.getZ();
+            baked[j + 6] = q.getW();
+            if (scales != null) {
+                scales.get(i, v);
+            } else {
+                v.set(1f, 1f, 1f);
+            }
+            baked[j + 7] = v.x;
+            baked[j + 8] = v.y;
+            baked[j + 9] = v.z;
+        }
+        return baked;
+    }
+
+    /**
+     * Reads one frame of a baked array.
+     */
+    static void get(float[] baked, int frame, Vector3f translation,
+            Quaternion rotation, Vector3f scale) {
+        int j = frame * BAKED_STRIDE;
+        translation.set(baked[j], baked[j + 1], baked[j + 2]);
+        rotation.set(baked[j + 3], baked[j + 4], baked[j + 5], baked[j + 6]);
+        scale.set(baked[j + 7], baked[j + 8], baked[j + 9]);
+    }
+}
@@ -33,7 +33,6 @@ package com.jme3.animation;
 
 import com.jme3.export.*;
 import com.jme3.material.Material;
-import com.jme3.math.FastMath;
 import com.jme3.math.Matrix4f;
 import com.jme3.renderer.RenderManager;
 import com.jme3.renderer.RendererException;
@@ -44,11 +43,8 @@ import com.jme3.scene.control.AbstractControl;
 import com.jme3.scene.control.Control;
 import com.jme3.shader.VarType;
 import com.jme3.util.SafeArrayList;
-import com.jme3.util.TempVars;
 import java.io.IOException;
 import java.nio.Buffer;
-import java.nio.ByteBuffer;
-import java.nio.FloatBuffer;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -108,6 +104,19 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
      * Material references used for hardware skinning
      */
     private Set<Material> materials = new HashSet<Material>();
+    /**
+     * Service skinning the targets in software, null for the default one
+     */
+    private transient SkinningService skinningService;
+    /**
+     * Offset matrices the targets were last skinned with in software
+     */
+    private transient float[] palette;
+    /**
+     * Targets skinned with the palette, null if the targets are not in
+     * that pose
+     */
+    private transient Mesh[] skinnedTargets;
 
     /**
      * Serialization only. Do not use.
@@ -129,6 +138,7 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
     }
 
     private void switchToSoftware() {
+        skinnedTargets = null;
         for (Material m : materials) {
             if (m.getParam("NumberOfBones") != null) {
                 m.clearParam("NumberOfBones");
@@ -194,6 +204,21 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
         return hwSkinningEnabled;
     }
     
+    /**
+     * Sets the service skinning the targets when hardware skinning is not
+     * used.
+     *
+     * @param skinningService the service, null for
+     * {@link SkinningService#getDefault() the default one}
+     */
+    public void setSkinningService(SkinningService skinningService) {
+        this.skinningService = skinningService;
+    }
+
+    public SkinningService getSkinningService() {
+        return skinningService;
+    }
+
     /**
      * Creates a skeleton control. The list of targets will be acquired
      * automatically when the control is attached to a node.
@@ -263,20 +288,39 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
         updateTargetsAndMaterials(spatial);
     }
 
-    private void controlRenderSoftware() {
-        resetToBind(); // reset morph meshes to bind pose
-
+    private void controlRenderSoftware(RenderManager rm) {
         offsetMatrices = skeleton.computeSkinningMatrices();
 
-        for (Mesh mesh : targets) {
-            // NOTE: This assumes that code higher up
-            // Already ensured those targets are animated
-            // otherwise a crash will happen in skin update
-            softwareSkinUpdate(mesh, offsetMatrices);
-        }     
+        int paletteSize = offsetMatrices.length * SkinningService.PALETTE_STRIDE;
+        boolean changed = false;
+        if (palette == null || palette.length != paletteSize) {
+            palette = new float[paletteSize];
+            changed = true;
+        }
+        changed |= SkinningService.fillPalette(offsetMatrices, palette);
+
+        // NOTE: This assumes that code higher up
+        // Already ensured those targets are animated
+        // otherwise a crash will happen in skin update
+        Mesh[] meshes = targets.getArray();
+        if (!changed && Arrays.equals(meshes, skinnedTargets)) {
+            // the meshes are still in the pose they were skinned to
+            return;
+        }
+        for (Mesh mesh : meshes) {
+            Buffer bwBuff = mesh.getBuffer(Type.BoneWeight).getData();
+            Buffer biBuff = mesh.getBuffer(Type.BoneIndex).getData();
+            if (!biBuff.hasArray() || !bwBuff.hasArray()) {
+                mesh.prepareForAnim(true); // prepare for software animation
+            }
+        }
+        SkinningService service = skinningService != null ? skinningService : SkinningService.getDefault();
+        rm.addPendingTask(service.skin(meshes, palette));
+        skinnedTargets = meshes.clone();
     }
 
     private void controlRenderHardware() {
+        skinnedTargets = null;
         offsetMatrices = skeleton.computeSkinningMatrices();
         for (Material m : materials) {
             m.setParam("BoneMatrices", VarType.Matrix4Array, offsetMatrices);
@@ -315,7 +359,7 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
             if (hwSkinningEnabled) {
                 controlRenderHardware();
             } else {
-                controlRenderSoftware();
+                controlRenderSoftware(rm);
             }
 
             wasMeshUpdated = true;
@@ -327,46 +371,6 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
         wasMeshUpdated = false;
      }
 
-    //only do this for software updates
-    void resetToBind() {
-        for (Mesh mesh : targets) {
-            if (mesh.isAnimated()) {
-                Buffer bwBuff = mesh.getBuffer(Type.BoneWeight).getData();
-                Buffer biBuff = mesh.getBuffer(Type.BoneIndex).getData();
-                if (!biBuff.hasArray() || !bwBuff.hasArray()) {
-                    mesh.prepareForAnim(true); // prepare for software animation
-                }
-                VertexBuffer bindPos = mesh.getBuffer(Type.BindPosePosition);
-                VertexBuffer bindNorm = mesh.getBuffer(Type.BindPoseNormal);
-                VertexBuffer pos = mesh.getBuffer(Type.Position);
-                VertexBuffer norm = mesh.getBuffer(Type.Normal);
-                FloatBuffer pb = (FloatBuffer) pos.getData();
-                FloatBuffer nb = (FloatBuffer) norm.getData();
-                FloatBuffer bpb = (FloatBuffer) bindPos.getData();
-                FloatBuffer bnb = (FloatBuffer) bindNorm.getData();
-                pb.clear();
-                nb.clear();
-                bpb.clear();
-                bnb.clear();
-
-                //reseting bind tangents if there is a bind tangent buffer
-                VertexBuffer bindTangents = mesh.getBuffer(Type.BindPoseTangent);
-                if (bindTangents != null) {
-                    VertexBuffer tangents = mesh.getBuffer(Type.Tangent);
-                    FloatBuffer tb = (FloatBuffer) tangents.getData();
-                    FloatBuffer btb = (FloatBuffer) bindTangents.getData();
-                    tb.clear();
-                    btb.clear();
-                    tb.put(btb).clear();
-                }
-
-
-                pb.put(bpb).clear();
-                nb.put(bnb).clear();
-            }
-        }
-    }
-
     public Control cloneForSpatial(Spatial spatial) {
         Node clonedNode = (Node) spatial;
         AnimControl ctrl = spatial.getControl(AnimControl.class);
@@ -432,282 +436,6 @@ public class SkeletonControl extends AbstractControl implements Cloneable {
         return targets.toArray(new Mesh[targets.size()]);
     }
 
-    /**
-     * Update the mesh according to the given transformation matrices
-     *
-     * @param mesh then mesh
-     * @param offsetMatrices the transformation matrices to apply
-     */
-    private void softwareSkinUpdate(Mesh mesh, Matrix4f[] offsetMatrices) {
-
-        VertexBuffer tb = mesh.getBuffer(Type.Tangent);
-        if (tb == null) {
-            //if there are no tangents use the classic skinning
-            applySkinning(mesh, offsetMatrices);
-        } else {
-            //if there are tangents use the skinning with tangents
-            applySkinningTangents(mesh, offsetMatrices, tb);
-        }
-
-
-    }
-
-    /**
-     * Method to apply skinning transforms to a mesh's buffers
-     *
-     * @param mesh the mesh
-     * @param offsetMatrices the offset matices to apply
-     */
-    private void applySkinning(Mesh mesh, Matrix4f[] offsetMatrices) {
-        int maxWeightsPerVert = mesh.getMaxNumWeights();
-        if (maxWeightsPerVert <= 0) {
-            throw new IllegalStateException("Max weights per vert is incorrectly set!");
-        }
-
-        int fourMinusMaxWeights = 4 - maxWeightsPerVert;
-
-        // NOTE: This code assumes the vertex buffer is in bind pose
-        // resetToBind() has been called this frame
-        VertexBuffer vb = mesh.getBuffer(Type.Position);
-        FloatBuffer fvb = (FloatBuffer) vb.getData();
-        fvb.rewind();
-
-        VertexBuffer nb = mesh.getBuffer(Type.Normal);
-        FloatBuffer fnb = (FloatBuffer) nb.getData();
-        fnb.rewind();
-
-        // get boneIndexes and weights for mesh
-        ByteBuffer ib = (ByteBuffer) mesh.getBuffer(Type.BoneIndex).getData();
-        FloatBuffer wb = (FloatBuffer) mesh.getBuffer(Type.BoneWeight).getData();
-
-        ib.rewind();
-        wb.rewind();
-
-        float[] weights = wb.array();
-        byte[] indices = ib.array();
-        int idxWeights = 0;
-
-        TempVars vars = TempVars.get();
-
-        float[] posBuf = vars.skinPositions;
-        float[] normBuf = vars.skinNormals;
-
-        int iterations = (int) FastMath.ceil(fvb.limit() / ((float) posBuf.length));
-        int bufLength = posBuf.length;
-        for (int i = iterations - 1; i >= 0; i--) {
-            // read next set of positions and normals from native buffer
-            bufLength = Math.min(posBuf.length, fvb.remaining());
-            fvb.get(posBuf, 0, bufLength);
-            fnb.get(normBuf, 0, bufLength);
-            int verts = bufLength / 3;
-            int idxPositions = 0;
-
-            // iterate vertices and apply skinning transform for each effecting bone
-            for (int vert = verts - 1; vert >= 0; vert--) {
-                // Skip this vertex if the first weight is zero.
-                if (weights[idxWeights] == 0) {
-                    idxPositions += 3;
-                    idxWeights += 4;
-                    continue;
-                }
-
-                float nmx = normBuf[idxPositions];
-                float vtx = posBuf[idxPositions++];
-                float nmy = normBuf[idxPositions];
-                float vty = posBuf[idxPositions++];
-                float nmz = normBuf[idxPositions];
-                float vtz = posBuf[idxPositions++];
-
-                float rx = 0, ry = 0, rz = 0, rnx = 0, rny = 0, rnz = 0;
-
-                for (int w = maxWeightsPerVert - 1; w >= 0; w--) {
-                    float weight = weights[idxWeights];
-                    Matrix4f mat = offsetMatrices[indices[idxWeights++] & 0xff];
-
-                    rx += (mat.m00 * vtx + mat.m01 * vty + mat.m02 * vtz + mat.m03) * weight;
-                    ry += (mat.m10 * vtx + mat.m11 * vty + mat.m12 * vtz + mat.m13) * weight;
-                    rz += (mat.m20 * vtx + mat.m21 * vty + mat.m22 * vtz + mat.m23) * weight;
-
-                    rnx += (nmx * mat.m00 + nmy * mat.m01 + nmz * mat.m02) * weight;
-                    rny += (nmx * mat.m10 + nmy * mat.m11 + nmz * mat.m12) * weight;
-                    rnz += (nmx * mat.m20 + nmy * mat.m21 + nmz * mat.m22) * weight;
-                }
-
-                idxWeights += fourMinusMaxWeights;
-
-                idxPositions -= 3;
-                normBuf[idxPositions] = rnx;
-                posBuf[idxPositions++] = rx;
-                normBuf[idxPositions] = rny;
-                posBuf[idxPositions++] = ry;
-                normBuf[idxPositions] = rnz;
-                posBuf[idxPositions++] = rz;
-            }
-
-            fvb.position(fvb.position() - bufLength);
-            fvb.put(posBuf, 0, bufLength);
-            fnb.position(fnb.position() - bufLength);
-            fnb.put(normBuf, 0, bufLength);
-        }
-
-        vars.release();
-
-        vb.updateData(fvb);
-        nb.updateData(fnb);
-
-    }
-
-    /**
-     * Specific method for skinning with tangents to avoid cluttering the
-     * classic skinning calculation with null checks that would slow down the
-     * process even if tangents don't have to be computed. Also the iteration
-     * has additional indexes since tangent has 4 components instead of 3 for
-     * pos and norm
-     *
-     * @param maxWeightsPerVert maximum number of weights per vertex
-     * @param mesh the mesh
-     * @param offsetMatrices the offsetMaytrices to apply
-     * @param tb the tangent vertexBuffer
-     */
-    private void applySkinningTangents(Mesh mesh, Matrix4f[] offsetMatrices, VertexBuffer tb) {
-        int maxWeightsPerVert = mesh.getMaxNumWeights();
-
-        if (maxWeightsPerVert <= 0) {
-            throw new IllegalStateException("Max weights per vert is incorrectly set!");
-        }
-
-        int fourMinusMaxWeights = 4 - maxWeightsPerVert;
-
-        // NOTE: This code assumes the vertex buffer is in bind pose
-        // resetToBind() has been called this frame
-        VertexBuffer vb = mesh.getBuffer(Type.Position);
-        FloatBuffer fvb = (FloatBuffer) vb.getData();
-        fvb.rewind();
-
-        VertexBuffer nb = mesh.getBuffer(Type.Normal);
-
-        FloatBuffer fnb = (FloatBuffer) nb.getData();
-        fnb.rewind();
-
-
-        FloatBuffer ftb = (FloatBuffer) tb.getData();
-        ftb.rewind();
-
-
-        // get boneIndexes and weights for mesh
-        ByteBuffer ib = (ByteBuffer) mesh.getBuffer(Type.BoneIndex).getData();
-        FloatBuffer wb = (FloatBuffer) mesh.getBuffer(Type.BoneWeight).getData();
-
-        ib.rewind();
-        wb.rewind();
-
-        float[] weights = wb.array();
-        byte[] indices = ib.array();
-        int idxWeights = 0;
-
-        TempVars vars = TempVars.get();
-
-
-        float[] posBuf = vars.skinPositions;
-        float[] normBuf = vars.skinNormals;
-        float[] tanBuf = vars.skinTangents;
-
-        int iterations = (int) FastMath.ceil(fvb.limit() / ((float) posBuf.length));
-        int bufLength = 0;
-        int tanLength = 0;
-        for (int i = iterations - 1; i >= 0; i--) {
-            // read next set of positions and normals from native buffer
-            bufLength = Math.min(posBuf.length, fvb.remaining());
-            tanLength = Math.min(tanBuf.length, ftb.remaining());
-            fvb.get(posBuf, 0, bufLength);
-            fnb.get(normBuf, 0, bufLength);
-            ftb.get(tanBuf, 0, tanLength);
-            int verts = bufLength / 3;
-            int idxPositions = 0;
-            //tangents has their own index because of the 4 components
-            int idxTangents = 0;
-
-            // iterate vertices and apply skinning transform for each effecting bone
-            for (int vert = verts - 1; vert >= 0; vert--) {
-                // Skip this vertex if the first weight is zero.
-                if (weights[idxWeights] == 0) {
-                    idxTangents += 4;
-                    idxPositions += 3;
-                    idxWeights += 4;
-                    continue;
-                }
-
-                float nmx = normBuf[idxPositions];
-                float vtx = posBuf[idxPositions++];
-                float nmy = normBuf[idxPositions];
-                float vty = posBuf[idxPositions++];
-                float nmz = normBuf[idxPositions];
-                float vtz = posBuf[idxPositions++];
-
-                float tnx = tanBuf[idxTangents++];
-                float tny = tanBuf[idxTangents++];
-                float tnz = tanBuf[idxTangents++];
-
-                // skipping the 4th component of the tangent since it doesn't have to be transformed
-                idxTangents++;
-
-                float rx = 0, ry = 0, rz = 0, rnx = 0, rny = 0, rnz = 0, rtx = 0, rty = 0, rtz = 0;
-
-                for (int w = maxWeightsPerVert - 1; w >= 0; w--) {
-                    float weight = weights[idxWeights];
-                    Matrix4f mat = offsetMatrices[indices[idxWeights++]];
-
-                    rx += (mat.m00 * vtx + mat.m01 * vty + mat.m02 * vtz + mat.m03) * weight;
-                    ry += (mat.m10 * vtx + mat.m11 * vty + mat.m12 * vtz + mat.m13) * weight;
-                    rz += (mat.m20 * vtx + mat.m21 * vty + mat.m22 * vtz + mat.m23) * weight;
-
-                    rnx += (nmx * mat.m00 + nmy * mat.m01 + nmz * mat.m02) * weight;
-                    rny += (nmx * mat.m10 + nmy * mat.m11 + nmz * mat.m12) * weight;
-                    rnz += (nmx * mat.m20 + nmy * mat.m21 + nmz * mat.m22) * weight;
-
-                    rtx += (tnx * mat.m00 + tny * mat.m01 + tnz * mat.m02) * weight;
-                    rty += (tnx * mat.m10 + tny * mat.m11 + tnz * mat.m12) * weight;
-                    rtz += (tnx * mat.m20 + tny * mat.m21 + tnz * mat.m22) * weight;
-                }
-
-                idxWeights += fourMinusMaxWeights;
-
-                idxPositions -= 3;
-
-                normBuf[idxPositions] = rnx;
-                posBuf[idxPositions++] = rx;
-                normBuf[idxPositions] = rny;
-                posBuf[idxPositions++] = ry;
-                normBuf[idxPositions] = rnz;
-                posBuf[idxPositions++] = rz;
-
-                idxTangents -= 4;
-
-                tanBuf[idxTangents++] = rtx;
-                tanBuf[idxTangents++] = rty;
-                tanBuf[idxTangents++] = rtz;
-
-                //once again skipping the 4th component of the tangent
-                idxTangents++;
-            }
-
-            fvb.position(fvb.position() - bufLength);
-            fvb.put(posBuf, 0, bufLength);
-            fnb.position(fnb.position() - bufLength);
-            fnb.put(normBuf, 0, bufLength);
-            ftb.position(ftb.position() - tanLength);
-            ftb.put(tanBuf, 0, tanLength);
-        }
-
-        vars.release();
-
-        vb.updateData(fvb);
-        nb.updateData(fnb);
-        tb.updateData(ftb);
-
-
-    }
-
     @Override
     public void write(JmeExporter ex) throws IOException {
         super.write(ex);
@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) 2009-2010 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.animation;
+
+import com.jme3.math.Matrix4f;
+import com.jme3.renderer.RenderManager;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Type;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Software skinning of the meshes of {@link SkeletonControl}s.
+ * <p>
+ * Meshes are split into ranges of vertices which are skinned by a pool of
+ * worker threads. {@link #skin(com.jme3.scene.Mesh[], float[]) } returns
+ * without waiting, the controls add the returned future to the
+ * {@link RenderManager#addPendingTask(java.util.concurrent.Future) render manager},
+ * so the meshes of all controls rendered in a frame are skinned at the same
+ * time and the render thread waits once, before the scene is drawn. A
+ * thread waiting for a future skins the ranges no worker has started yet
+ * itself.
+ * <p>
+ * Vertices are skinned from the bind pose buffers into the position,
+ * normal and tangent buffers.
+ */
+public class SkinningService {
+
+    /**
+     * Vertices skinned by one task.
+     */
+    static final int VERTICES_PER_TASK = 4096;
+    /**
+     * Vertices copied from the buffers at once.
+     */
+    static final int CHUNK_SIZE = 512;
+    /**
+     * 3 x 4 row major matrix per bone.
+     */
+    public static final int PALETTE_STRIDE = 12;
+
+    private static final int NORMAL_OFFSET = CHUNK_SIZE * 3;
+    private static final int TANGENT_OFFSET = CHUNK_SIZE * 6;
+
+    private static SkinningService defaultService;
+
+    private final ThreadPoolExecutor executor;
+    private final int threadCount;
+    private final ThreadLocal<float[]> chunkBuffer = new ThreadLocal<float[]>() {
+
+        @Override
+        protected float[] initialValue() {
+            // positions, normals, tangents
+            return new float[CHUNK_SIZE * 10];
+        }
+    };
+
+    /**
+     * @param threadCount threads skinning at the same time, including the
+     * thread waiting for the result. 1 skins on the calling thread only.
+     */
+    public SkinningService(int threadCount) {
+        this.threadCount = Math.max(threadCount, 1);
+        if (this.threadCount > 1) {
+            executor = new ThreadPoolExecutor(this.threadCount - 1, this.threadCount - 1,
+                    0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "SkinningService-" + count.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * The service used by SkeletonControls without their own one. It uses
+     * one thread per processor.
+     */
+    public static synchronized SkinningService getDefault() {
+        if (defaultService == null) {
+            defaultService = new SkinningService(Runtime.getRuntime().availableProcessors());
+        }
+        return defaultService;
+    }
+
+    public static synchronized void setDefault(SkinningService service) {
+        defaultService = service;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Copies the given matrices to the palette as 3 x 4 row major matrices.
+     *
+     * @return true if the palette changed
+     */
+    public static boolean fillPalette(Matrix4f[] offsetMatrices, float[] palette) {
+        boolean changed = false;
+        int p = 0;
+        for (int i = 0; i < offsetMatrices.length; i++) {
+            Matrix4f m = offsetMatrices[i];
+            changed |= set(palette, p++, m.m00);
+            changed |= set(palette, p++, m.m01);
+            changed |= set(palette, p++, m.m02);
+            changed |= set(palette, p++, m.m03);
+            changed |= set(palette, p++, m.m10);
+            changed |= set(palette, p++, m.m11);
+            changed |= set(palette, p++, m.m12);
+            changed |= set(palette, p++, m.m13);
+            changed |= set(palette, p++, m.m20);
+            changed |= set(palette, p++, m.m21);
+            changed |= set(palette, p++, m.m22);
+            changed |= set(palette, p++, m.m23);
+        }
+        return changed;
+    }
+
+    private static boolean set(float[] palette, int index, float value) {
+        if (palette[index] == value) {
+            return false;
+        }
+        palette[index] = value;
+        return true;
+    }
+
+    /**
+     * Starts skinning the given animated meshes with the palette, see
+     * {@link #fillPalette(com.jme3.math.Matrix4f[], float[]) }. The bone
+     * weights and indexes of the meshes must be heap buffers, the mesh
+     * buffers and the palette must not be changed until the returned future
+     * is done.
+     *
+     * @param meshes the meshes, in bind pose
+     * @param palette the bone matrices
+     * @return the future to wait for
+     */
+    public Future<Void> skin(Mesh[] meshes, float[] palette) {
+        ArrayList<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>();
+        for (Mesh mesh : meshes) {
+            SkinJob job = new SkinJob(mesh, palette);
+            for (int start = 0; start < job.vertexCount; start += VERTICES_PER_TASK) {
+                tasks.add(new FutureTask<Void>(new SkinTask(job, start,
+                        Math.min(job.vertexCount, start + VERTICES_PER_TASK))));
+            }
+        }
+        if (executor == null) {
+            for (FutureTask<Void> task : tasks) {
+                task.run();
+            }
+        } else {
+            for (FutureTask<Void> task : tasks) {
+                executor.execute(task);
+            }
+        }
+        return new Batch(tasks);
+    }
+
+    /**
+     * One mesh, the buffers are duplicated by each range.
+     */
+    private static class SkinJob {
+
+        final float[] palette;
+        final int maxWeights;
+        final float[] weights;
+        final byte[] indices;
+        final FloatBuffer bindPos;
+        final FloatBuffer bindNorm;
+        final FloatBuffer bindTan;
+        final FloatBuffer pos;
+        final FloatBuffer norm;
+        final FloatBuffer tan;
+        final int vertexCount;
+
+        SkinJob(Mesh mesh, float[] palette) {
+            this.palette = palette;
+            maxWeights = mesh.getMaxNumWeights();
+            if (maxWeights <= 0) {
+                throw new IllegalStateException("Max weights per vert is incorrectly set!");
+            }
+            weights = ((FloatBuffer) mesh.getBuffer(Type.BoneWeight).getData()).array();
+            indices = ((ByteBuffer) mesh.getBuffer(Type.BoneIndex).getData()).array();
+            bindPos = (FloatBuffer) mesh.getBuffer(Type.BindPosePosition).getData();
+            bindNorm = (FloatBuffer) mesh.getBuffer(Type.BindPoseNormal).getData();
+            VertexBuffer posBuffer = mesh.getBuffer(Type.Position);
+            VertexBuffer normBuffer = mesh.getBuffer(Type.Normal);
+            pos = (FloatBuffer) posBuffer.getData();
+            norm = (FloatBuffer) normBuffer.getData();
+            VertexBuffer tanBuffer = mesh.getBuffer(Type.Tangent);
+            if (tanBuffer != null) {
+                tan = (FloatBuffer) tanBuffer.getData();
+                VertexBuffer bindTanBuffer = mesh.getBuffer(Type.BindPoseTangent);
+                // without bind tangents the tangents are skinned in place
+                bindTan = bindTanBuffer != null ? (FloatBuffer) bindTanBuffer.getData() : tan;
+                tanBuffer.setUpdateNeeded();
+            } else {
+                tan = null;
+                bindTan = null;
+            }
+            posBuffer.setUpdateNeeded();
+            normBuffer.setUpdateNeeded();
+            vertexCount = pos.limit() / 3;
+        }
+    }
+
+    private class SkinTask implements Callable<Void> {
+
+        final SkinJob job;
+        final int start;
+        final int end;
+
+        SkinTask(SkinJob job, int start, int end) {
+            this.job = job;
+            this.start = start;
+            this.end = end;
+        }
+
+        public Void call() {
+            skin(job, start, end, chunkBuffer.get());
+            return null;
+        }
+    }
+
+    private static FloatBuffer range(FloatBuffer buffer, int start, int end, int components) {
+        FloatBuffer range = buffer.duplicate();
+        range.limit(end * components).position(start * components);
+        return range;
+    }
+
+    /**
+     * Skins the vertices [start, end) of the job.
+     */
+    static void skin(SkinJob job, int start, int end, float[] buf) {
+        float[] palette = job.palette;
+        float[] weights = job.weights;
+        byte[] indices = job.indices;
+        int maxWeights = job.maxWeights;
+        boolean tangents = job.tan != null;
+        FloatBuffer bindPos = range(job.bindPos, start, end, 3);
+        FloatBuffer bindNorm = range(job.bindNorm, start, end, 3);
+        FloatBuffer pos = range(job.pos, start, end, 3);
+        FloatBuffer norm = range(job.norm, start, end, 3);
+        FloatBuffer bindTan = tangents ? range(job.bindTan, start, end, 4) : null;
+        FloatBuffer tan = tangents ? range(job.tan, start, end, 4) : null;
+
+        for (int chunkStart = start; chunkStart < end; chunkStart += CHUNK_SIZE) {
+            int verts = Math.min(CHUNK_SIZE, end - chunkStart);
+            bindPos.get(buf, 0, verts * 3);
+            bindNorm.get(buf, NORMAL_OFFSET, verts * 3);
+            if (tangents) {
+                bindTan.get(buf, TANGENT_OFFSET, verts * 4);
+            }
+            int w = chunkStart * 4;
+            for (int v = 0; v < verts; v++, w += 4) {
+                // vertices without weight stay in bind pose
+                if (weights[w] == 0) {
+                    continue;
+                }
+                float a00 = 0, a01 = 0, a02 = 0, a03 = 0;
+                float a10 = 0, a11 = 0, a12 = 0, a13 = 0;
+                float a20 = 0, a21 = 0, a22 = 0, a23 = 0;
+                for (int i = 0; i < maxWeights; i++) {
+                    float weight = weights[w + i];
+                    int m = (indices[w + i] & 0xff) * PALETTE_STRIDE;
+                    a00 += palette[m] * weight;
+                    a01 += palette[m + 1] * weight;
+                    a02 += palette[m + 2] * weight;
+                    a03 += palette[m + 3] * weight;
+                    a10 += palette[m + 4] * weight;
+                    a11 += palette[m + 5] * weight;
+                    a12 += palette[m + 6] * weight;
+                    a13 += palette[m + 7] * weight;
+                    a20 += palette[m + 8] * weight;
+                    a21 += palette[m + 9] * weight;
+                    a22 += palette[m + 10] * weight;
+                    a23 += palette[m + 11] * weight;
+                }
+                int p = v * 3;
+                float x = buf[p];
+                float y = buf[p + 1];
+                float z = buf[p + 2];
+                buf[p] = a00 * x + a01 * y + a02 * z + a03;
+                buf[p + 1] = a10 * x + a11 * y + a12 * z + a13;
+                buf[p + 2] = a20 * x + a21 * y + a22 * z + a23;
+                int n = NORMAL_OFFSET + p;
+                x = buf[n];
+                y = buf[n + 1];
+                z = buf[n + 2];
+                buf[n] = a00 * x + a01 * y + a02 * z;
+                buf[n + 1] = a10 * x + a11 * y + a12 * z;
+                buf[n + 2] = a20 * x + a21 * y + a22 * z;
+                if (tangents) {
+                    // the 4th component of the tangent is not transformed
+                    int t = TANGENT_OFFSET + v * 4;
+                    x = buf[t];
+                    y = buf[t + 1];
+                    z = buf[t + 2];
+                    buf[t] = a00 * x + a01 * y + a02 * z;
+                    buf[t + 1] = a10 * x + a11 * y + a12 * z;
+                    buf[t + 2] = a20 * x + a21 * y + a22 * z;
+                }
+            }
+            pos.put(buf, 0, verts * 3);
+            norm.put(buf, NORMAL_OFFSET, verts * 3);
+            if (tangents) {
+                tan.put(buf, TANGENT_OFFSET, verts * 4);
+            }
+        }
+    }
+
+    /**
+     * The tasks of one skin() call. Waiting threads run the tasks that are
+     * still queued.
+     */
+    private class Batch implements Future<Void> {
+
+        private final ArrayList<FutureTask<Void>> tasks;
+
+        Batch(ArrayList<FutureTask<Void>> tasks) {
+            this.tasks = tasks;
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        public boolean isCancelled() {
+            return false;
+        }
+
+        public boolean isDone() {
+            for (FutureTask<Void> task : tasks) {
+                if (!task.isDone()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public Void get() throws InterruptedException, ExecutionException {
+            if (executor != null) {
+                for (FutureTask<Void> task : tasks) {
+                    if (executor.remove(task)) {
+                        task.run();
+                    }
+                }
+            }
+            for (FutureTask<Void> task : tasks) {
+                task.get();
+            }
+            return null;
+        }
+
+        public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            long end = System.nanoTime() + unit.toNanos(timeout);
+            for (FutureTask<Void> task : tasks) {
+                task.get(Math.max(0, end - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+            return null;
+        }
+    }
+}
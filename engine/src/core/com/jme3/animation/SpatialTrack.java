@@ -69,6 +69,11 @@ public class SpatialTrack implements Track {
      */
     private float[] times;
 
+    /**
+     * Keyframes expanded by {@link #bake()}, or null.
+     */
+    private transient float[] baked;
+
     public SpatialTrack() {
     }
 
@@ -108,46 +113,23 @@ public class SpatialTrack implements Track {
         
         int lastFrame = times.length - 1;
         if (time < 0 || lastFrame == 0) {
-            if (rotations != null)
-                rotations.get(0, tempQ);
-            if (translations != null)
-                translations.get(0, tempV);
-            if (scales != null) {
-                scales.get(0, tempS);
-            }
+            getFrame(0, tempV, tempQ, tempS);
         } else if (time >= times[lastFrame]) {
-            if (rotations != null)
-                rotations.get(lastFrame, tempQ);
-            if (translations != null)
-                translations.get(lastFrame, tempV);
-            if (scales != null) {
-                scales.get(lastFrame, tempS);
-            }
+            getFrame(lastFrame, tempV, tempQ, tempS);
         } else {
-            int startFrame = 0;
-            int endFrame = 1;
-            // use lastFrame so we never overflow the array
-            for (int i = 0; i < lastFrame && times[i] < time; ++i) {
-                startFrame = i;
-                endFrame = i + 1;
+            int startFrame;
+            if (channel != null) {
+                startFrame = KeyFrames.findFrame(times, time, channel.getKeyFrameCursor());
+                channel.setKeyFrameCursor(startFrame);
+            } else {
+                startFrame = KeyFrames.findFrame(times, time, 0);
             }
+            int endFrame = startFrame + 1;
 
             float blend = (time - times[startFrame]) / (times[endFrame] - times[startFrame]);
 
-            if (rotations != null)
-                rotations.get(startFrame, tempQ);
-            if (translations != null)
-                translations.get(startFrame, tempV);
-            if (scales != null) {
-                scales.get(startFrame, tempS);
-            }
-            if (rotations != null)
-                rotations.get(endFrame, tempQ2);
-            if (translations != null)
-                translations.get(endFrame, tempV2);
-            if (scales != null) {
-                scales.get(endFrame, tempS2);
-            }
+            getFrame(startFrame, tempV, tempQ, tempS);
+            getFrame(endFrame, tempV2, tempQ2, tempS2);
             tempQ.nlerp(tempQ2, blend);
             tempV.interpolate(tempV2, blend);
             tempS.interpolate(tempS2, blend);
@@ -199,6 +181,41 @@ public class SpatialTrack implements Track {
             this.scales.add(scales);
             this.scales.freeze();
         }
+        if (baked != null) {
+            bake();
+        }
+    }
+
+    /**
+     * Expands the keyframes of this track into one contiguous array that is
+     * used by {@link #setTime(float, float, com.jme3.animation.AnimControl,
+     * com.jme3.animation.AnimChannel, com.jme3.util.TempVars) setTime}
+     * instead of the compact arrays. The baked data is not saved.
+     */
+    public void bake() {
+        baked = KeyFrames.bake(times.length, translations, rotations, scales);
+    }
+
+    /**
+     * @return true if the keyframes of this track are baked.
+     * @see #bake()
+     */
+    public boolean isBaked() {
+        return baked != null;
+    }
+
+    private void getFrame(int frame, Vector3f translation, Quaternion rotation, Vector3f scale) {
+        if (baked != null) {
+            KeyFrames.get(baked, frame, translation, rotation, scale);
+            return;
+        }
+        if (rotations != null)
+            rotations.get(frame, rotation);
+        if (translations != null)
+            translations.get(frame, translation);
+        if (scales != null) {
+            scales.get(frame, scale);
+        }
     }
 
     /**
@@ -250,7 +267,11 @@ public class SpatialTrack implements Track {
         Vector3f[] scalesCopy = this.getScales() == null ? null : Arrays.copyOf(this.getScales(), tablesLength);
 
         //need to use the constructor here because of the final fields used in this class
-        return new SpatialTrack(timesCopy, translationsCopy, rotationsCopy, scalesCopy);
+        SpatialTrack result = new SpatialTrack(timesCopy, translationsCopy, rotationsCopy, scalesCopy);
+        if (baked != null) {
+            result.bake();
+        }
+        return result;
     }
 	
     @Override
@@ -584,6 +584,11 @@ public class Application implements SystemListener {
             }
             task.invoke();
         } while (((task = taskQueue.poll()) != null));
+
+        // Listeners of asynchronous asset loads, also while paused
+        if (assetManager != null){
+            assetManager.update();
+        }
     
         if (speed == 0 || paused)
             return;
@@ -627,6 +632,8 @@ public class Application implements SystemListener {
         destroyInput();
         if (audioRenderer != null)
             audioRenderer.cleanup();
+        if (renderManager != null)
+            renderManager.cleanup();
         
         timer.reset();
     }
@@ -32,7 +32,9 @@
 
 package com.jme3.asset;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * The result of locating an asset through an AssetKey. Provides
@@ -70,4 +72,17 @@ public abstract class AssetInfo {
      */
     public abstract InputStream openStream();
 
+    /**
+     * Returns the asset data as a buffer, if the locator can provide it
+     * without reading it through {@link #openStream() }, for example by
+     * mapping a file. Loaders of large assets may use it to avoid copying
+     * the data.
+     *
+     * @return The asset data, or null if only the stream is available.
+     * @throws IOException If the data could not be read.
+     */
+    public ByteBuffer openBuffer() throws IOException {
+        return null;
+    }
+
 }
@@ -40,6 +40,7 @@ import com.jme3.scene.Spatial;
 import com.jme3.shader.Shader;
 import com.jme3.shader.ShaderKey;
 import com.jme3.texture.Texture;
+import java.util.concurrent.Future;
 
 /**
  * <code>AssetManager</code> provides an interface for managing the data assets
@@ -243,4 +244,26 @@ public interface AssetManager {
      * @see AssetManager#loadAsset(com.jme3.asset.AssetKey) 
      */
     public BitmapFont loadFont(String name);
+
+    /**
+     * Loads an asset on a loading thread. Requests for a key which is
+     * already being loaded share that load.
+     *
+     * @param key Asset key of the asset to load
+     * @param priority Queued loads of a higher priority are started first
+     * @param listener Called from {@link #update() } when the load is done,
+     * may be null.
+     * @return The future asset
+     */
+    public <T> Future<T> loadAssetAsync(AssetKey<T> key, AssetLoadPriority priority,
+                                        AssetLoadListener<T> listener);
+
+    /**
+     * Calls the listeners of finished asynchronous loads.
+     * {@link com.jme3.app.Application} calls this once per frame on the
+     * update thread.
+     *
+     * @see #loadAssetAsync(com.jme3.asset.AssetKey, com.jme3.asset.AssetLoadPriority, com.jme3.asset.AssetLoadListener) 
+     */
+    public void update();
 }
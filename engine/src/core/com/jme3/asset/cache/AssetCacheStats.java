@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2009-2010 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.asset.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a {@link LRUAssetCache} for one type of asset key.
+ * <p><font color="red">Thread-Safe</font>
+ */
+public final class AssetCacheStats {
+
+    private final Class<?> keyType;
+    final AtomicLong hits = new AtomicLong();
+    final AtomicLong misses = new AtomicLong();
+    final AtomicLong evictions = new AtomicLong();
+    final AtomicLong loads = new AtomicLong();
+    final AtomicLong loadTime = new AtomicLong();
+
+    AssetCacheStats(Class<?> keyType) {
+        this.keyType = keyType;
+    }
+
+    public Class<?> getKeyType() {
+        return keyType;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Assets removed to stay within the byte budget. Assets removed with
+     * {@link AssetCache#deleteFromCache(com.jme3.asset.AssetKey) } or
+     * {@link AssetCache#clearCache() } are not counted.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    /**
+     * Total time spent loading assets of this key type, in nanoseconds.
+     */
+    public long getTotalLoadTime() {
+        return loadTime.get();
+    }
+
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    public void reset() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+        loads.set(0);
+        loadTime.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return keyType.getSimpleName() + "[hits=" + hits.get()
+                + ", misses=" + misses.get()
+                + ", evictions=" + evictions.get()
+                + ", loads=" + loads.get()
+                + ", loadTime=" + (loadTime.get() / 1000000) + "ms]";
+    }
+}
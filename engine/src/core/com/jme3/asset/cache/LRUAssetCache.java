@@ -0,0 +1,471 @@
+/*
+ * Copyright (c) 2009-2010 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.asset.cache;
+
+import com.jme3.asset.AssetKey;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture;
+import java.lang.ref.SoftReference;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <code>LRUAssetCache</code> keeps strong references to assets up to a byte
+ * budget. When the budget is exceeded the least recently used assets
+ * (or the least frequently used, see {@link EvictionPolicy}) are removed.
+ * The size of an asset is estimated from its image data and vertex buffers,
+ * or reported by the asset itself through {@link SizedAsset}, see
+ * {@link #estimateSize(java.lang.Object) }. Assets that cannot be measured
+ * are only held by soft references, as the garbage collector is the only
+ * one that knows their size.
+ * <p>
+ * The cache is split into segments with their own lock, so lookups of
+ * different keys do not contend. Hit, miss, eviction and load time counters
+ * are kept per asset key type, see {@link #getStats(java.lang.Class) }.
+ * <p>
+ * Cloneable assets are not tracked, {@link #registerAssetClone(com.jme3.asset.AssetKey, java.lang.Object) }
+ * and {@link #notifyNoAssetClone() } do nothing.
+ */
+public class LRUAssetCache implements AssetCache {
+
+    public enum EvictionPolicy {
+        /**
+         * Evict the asset that was not used for the longest time.
+         */
+        LRU,
+        /**
+         * Evict the asset with the fewest hits among the least recently
+         * used assets of each segment.
+         */
+        LFU
+    }
+
+    public static final long DEFAULT_MAX_BYTES = 128L * 1024 * 1024;
+    /**
+     * Size of assets that have no image or mesh data. Assets that cannot be
+     * measured count as this size too.
+     */
+    public static final long DEFAULT_ASSET_SIZE = 1024;
+    /**
+     * Returned by {@link #estimateSize(java.lang.Object) } for assets that
+     * cannot be measured.
+     */
+    public static final long UNKNOWN_SIZE = -1;
+    private static final int SEGMENT_COUNT = 16;
+    private static final int LFU_SAMPLE_SIZE = 8;
+
+    private static final class Entry {
+        final AssetKey key;
+        final Object asset;
+        final SoftReference<Object> softAsset;
+        final long size;
+        long lastAccess;
+        int hits;
+
+        Entry(AssetKey key, Object asset, long size, long lastAccess) {
+            this.key = key;
+            if (size == UNKNOWN_SIZE) {
+                this.asset = null;
+                this.softAsset = new SoftReference<Object>(asset);
+                this.size = DEFAULT_ASSET_SIZE;
+            } else {
+                this.asset = asset;
+                this.softAsset = null;
+                this.size = size;
+            }
+            this.lastAccess = lastAccess;
+        }
+
+        /**
+         * @return The asset, or null if it was only softly referenced
+         * and has been collected.
+         */
+        Object getAsset() {
+            return softAsset != null ? softAsset.get() : asset;
+        }
+    }
+
+    private static final class Segment extends LinkedHashMap<AssetKey, Entry> {
+
+        private static final long serialVersionUID = 1L;
+
+        Segment() {
+            super(16, 0.75f, true);
+        }
+    }
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong clock = new AtomicLong();
+    private final ConcurrentHashMap<Class<?>, AssetCacheStats> stats
+            = new ConcurrentHashMap<Class<?>, AssetCacheStats>();
+    private volatile long maxBytes;
+    private volatile EvictionPolicy policy = EvictionPolicy.LRU;
+
+    public LRUAssetCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    public LRUAssetCache(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes cannot be negative");
+        }
+        this.maxBytes = maxBytes;
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    private Segment segmentFor(AssetKey key) {
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return segments[h & (SEGMENT_COUNT - 1)];
+    }
+
+    /**
+     * Adds an asset to the cache. Assets larger than the whole budget are
+     * not cached.
+     * <p><font color="red">Thread-Safe</font>
+     */
+    public <T> void addToCache(AssetKey<T> key, T obj) {
+        long assetSize = estimateSize(obj);
+        if (assetSize > maxBytes) {
+            deleteFromCache(key);
+            return;
+        }
+        Segment segment = segmentFor(key);
+        Entry entry = new Entry(key, obj, assetSize, clock.incrementAndGet());
+        Entry old;
+        synchronized (segment) {
+            old = segment.put(key, entry);
+            size.addAndGet(old == null ? entry.size : entry.size - old.size);
+        }
+        evict(key);
+    }
+
+    public <T> void registerAssetClone(AssetKey<T> key, T clone) {
+    }
+
+    public void notifyNoAssetClone() {
+    }
+
+    public <T> T getFromCache(AssetKey<T> key) {
+        Segment segment = segmentFor(key);
+        Object asset = null;
+        synchronized (segment) {
+            Entry entry = segment.get(key);
+            if (entry != null) {
+                asset = entry.getAsset();
+                if (asset == null) {
+                    // collected by the GC, drop the entry
+                    segment.remove(key);
+                    size.addAndGet(-entry.size);
+                } else {
+                    entry.lastAccess = clock.incrementAndGet();
+                    entry.hits++;
+                }
+            }
+        }
+        AssetCacheStats s = getOrCreateStats(key.getClass());
+        if (asset == null) {
+            s.misses.incrementAndGet();
+            return null;
+        }
+        s.hits.incrementAndGet();
+        return (T) asset;
+    }
+
+    public boolean deleteFromCache(AssetKey key) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            Entry entry = segment.remove(key);
+            if (entry == null) {
+                return false;
+            }
+            size.addAndGet(-entry.size);
+            return true;
+        }
+    }
+
+    public void clearCache() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (Entry entry : segment.values()) {
+                    size.addAndGet(-entry.size);
+                }
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Adds the time spent loading an asset to the counters of its key type.
+     * The asset manager calls this after loading an asset that was not
+     * in the cache.
+     * <p><font color="red">Thread-Safe</font>
+     *
+     * @param key The key of the loaded asset.
+     * @param nanos The load time in nanoseconds.
+     */
+    public void recordLoad(AssetKey key, long nanos) {
+        AssetCacheStats s = getOrCreateStats(key.getClass());
+        s.loads.incrementAndGet();
+        s.loadTime.addAndGet(nanos);
+    }
+
+    /**
+     * Removes assets until the cache is within its budget. The asset with
+     * the given key was just added and is kept.
+     */
+    private void evict(AssetKey keep) {
+        while (size.get() > maxBytes) {
+            Entry victim = null;
+            Segment victimSegment = null;
+            for (Segment segment : segments) {
+                synchronized (segment) {
+                    Entry candidate = selectVictim(segment, keep);
+                    if (candidate != null && isWorse(candidate, victim)) {
+                        victim = candidate;
+                        victimSegment = segment;
+                    }
+                }
+            }
+            if (victim == null) {
+                return;
+            }
+            synchronized (victimSegment) {
+                // the entry may have been removed or replaced meanwhile
+                if (victimSegment.get(victim.key) == victim) {
+                    victimSegment.remove(victim.key);
+                    size.addAndGet(-victim.size);
+                    getOrCreateStats(victim.key.getClass()).evictions.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private Entry selectVictim(Segment segment, AssetKey keep) {
+        Entry result = null;
+        int sampled = 0;
+        int sampleSize = policy == EvictionPolicy.LFU ? LFU_SAMPLE_SIZE : 1;
+        Iterator<Entry> it = segment.values().iterator();
+        while (sampled < sampleSize && it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.key.equals(keep)) {
+                continue;
+            }
+            sampled++;
+            if (isWorse(entry, result)) {
+                result = entry;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true if a should be evicted before b.
+     */
+    private boolean isWorse(Entry a, Entry b) {
+        if (b == null) {
+            return true;
+        }
+        if (policy == EvictionPolicy.LFU && a.hits != b.hits) {
+            return a.hits < b.hits;
+        }
+        return a.lastAccess < b.lastAccess;
+    }
+
+    private AssetCacheStats getOrCreateStats(Class<?> keyType) {
+        AssetCacheStats s = stats.get(keyType);
+        if (s == null) {
+            s = new AssetCacheStats(keyType);
+            AssetCacheStats old = stats.putIfAbsent(keyType, s);
+            if (old != null) {
+                s = old;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Estimates the memory used by an asset in bytes. Assets implementing
+     * {@link SizedAsset} report their own size. Textures and images are
+     * measured by their image data, meshes by their vertex buffers and
+     * spatials by the meshes of their geometries.
+     *
+     * @return The size in bytes, or {@link #UNKNOWN_SIZE} for other assets.
+     * These are held by soft references and count as
+     * {@link #DEFAULT_ASSET_SIZE}.
+     */
+    protected long estimateSize(Object asset) {
+        if (asset instanceof SizedAsset) {
+            return Math.max(((SizedAsset) asset).getEstimatedSize(), 0);
+        } else if (asset instanceof Texture) {
+            return estimateImageSize(((Texture) asset).getImage());
+        } else if (asset instanceof Image) {
+            return estimateImageSize((Image) asset);
+        } else if (asset instanceof Mesh) {
+            return estimateMeshSize((Mesh) asset);
+        } else if (asset instanceof Spatial) {
+            long result = estimateSpatialSize((Spatial) asset,
+                    new IdentityHashMap<Mesh, Boolean>());
+            return Math.max(result, DEFAULT_ASSET_SIZE);
+        } else if (asset instanceof String) {
+            return 2L * ((String) asset).length();
+        }
+        return UNKNOWN_SIZE;
+    }
+
+    private static long estimateImageSize(Image image) {
+        if (image == null) {
+            return DEFAULT_ASSET_SIZE;
+        }
+        List<ByteBuffer> data = image.getData();
+        long result = 0;
+        if (data != null) {
+            for (ByteBuffer buf : data) {
+                if (buf != null) {
+                    result += buf.capacity();
+                }
+            }
+        }
+        if (result == 0) {
+            result = (long) image.getWidth() * image.getHeight()
+                    * Math.max(1, image.getDepth())
+                    * image.getFormat().getBitsPerPixel() / 8;
+        }
+        return Math.max(result, DEFAULT_ASSET_SIZE);
+    }
+
+    private static long estimateMeshSize(Mesh mesh) {
+        long result = 0;
+        for (VertexBuffer vb : mesh.getBufferList().getArray()) {
+            Buffer data = vb.getData();
+            if (data != null) {
+                result += (long) data.capacity() * vb.getFormat().getComponentSize();
+            }
+        }
+        return result;
+    }
+
+    private static long estimateSpatialSize(Spatial spatial, IdentityHashMap<Mesh, Boolean> visited) {
+        long result = 0;
+        if (spatial instanceof Geometry) {
+            Mesh mesh = ((Geometry) spatial).getMesh();
+            if (mesh != null && visited.put(mesh, Boolean.TRUE) == null) {
+                result += estimateMeshSize(mesh);
+            }
+        } else if (spatial instanceof Node) {
+            for (Spatial child : ((Node) spatial).getChildren()) {
+                result += estimateSpatialSize(child, visited);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets the byte budget, evicting assets if the cache is larger.
+     */
+    public void setMaxBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes cannot be negative");
+        }
+        this.maxBytes = maxBytes;
+        evict(null);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return The estimated size of all cached assets in bytes.
+     */
+    public long getSize() {
+        return size.get();
+    }
+
+    public int getAssetCount() {
+        int count = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                count += segment.size();
+            }
+        }
+        return count;
+    }
+
+    public void setEvictionPolicy(EvictionPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy cannot be null");
+        }
+        this.policy = policy;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return The counters of the given key type, or null if no asset
+     * with that key type was requested yet.
+     */
+    public AssetCacheStats getStats(Class<? extends AssetKey> keyType) {
+        return stats.get(keyType);
+    }
+
+    /**
+     * @return The counters of all key types requested so far.
+     */
+    public List<AssetCacheStats> getStats() {
+        return new ArrayList<AssetCacheStats>(stats.values());
+    }
+
+    public void resetStats() {
+        for (AssetCacheStats s : stats.values()) {
+            s.reset();
+        }
+    }
+}
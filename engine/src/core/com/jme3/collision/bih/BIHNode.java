@@ -116,6 +116,21 @@ public final class BIHNode implements Savable {
         this.rightPlane = rightPlane;
     }
 
+    /**
+     * @return The split axis, or 3 for a leaf.
+     */
+    int getAxis() {
+        return axis;
+    }
+
+    int getLeftIndex() {
+        return leftIndex;
+    }
+
+    int getRightIndex() {
+        return rightIndex;
+    }
+
     public void write(JmeExporter ex) throws IOException {
         OutputCapsule oc = ex.getCapsule(this);
         oc.write(leftIndex, "left_index", 0);
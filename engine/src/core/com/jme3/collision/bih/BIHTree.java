@@ -38,6 +38,7 @@ import com.jme3.scene.Mesh.Mode;
 import com.jme3.bounding.BoundingBox;
 import com.jme3.bounding.BoundingVolume;
 import com.jme3.collision.Collidable;
+import com.jme3.collision.CollisionResult;
 import com.jme3.collision.CollisionResults;
 import com.jme3.collision.UnsupportedCollisionException;
 import com.jme3.export.JmeExporter;
@@ -47,6 +48,7 @@ import com.jme3.export.OutputCapsule;
 import com.jme3.math.FastMath;
 import com.jme3.math.Matrix4f;
 import com.jme3.math.Ray;
+import com.jme3.math.Triangle;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.CollisionData;
 import com.jme3.scene.Mesh;
@@ -58,7 +60,17 @@ import java.io.IOException;
 import java.nio.FloatBuffer;
 
 import static java.lang.Math.max;
-
+import static java.lang.Math.min;
+
+/**
+ * Bounding Interval Hierarchy of the triangles of a mesh.
+ * <p>
+ * After {@link #construct() } or loading, the node graph is flattened into
+ * arrays that are traversed with stacks from {@link TempVars}, so any number
+ * of threads can collide with the same tree at once.
+ * {@link #intersectRays(float[], int, int, float, com.jme3.math.Matrix4f, float[], int[]) }
+ * finds the closest hits of many rays without creating collision results.
+ */
 public class BIHTree implements CollisionData {
 
     public static final int MAX_TREE_DEPTH = 100;
@@ -69,8 +81,15 @@ public class BIHTree implements CollisionData {
     private int numTris;
     private float[] pointData;
     private int[] triIndices;
-    private transient CollisionResults boundResults = new CollisionResults();
     private transient float[] bihSwapTmp;
+    // flattened tree, 3 ints per node: axis (3 for leaves), then the left
+    // and right child, or the first and last triangle of a leaf
+    private transient int[] nodes;
+    // 2 floats per node: left and right plane
+    private transient float[] planes;
+    private transient int treeDepth;
+    // bounds of all triangles in model space, min then max
+    private transient float[] treeBounds;
     private static final TriangleAxisComparator[] comparators = new TriangleAxisComparator[3];
 
     static {
@@ -137,6 +156,59 @@ public class BIHTree implements CollisionData {
     public void construct() {
         BoundingBox sceneBbox = createBox(0, numTris - 1);
         root = createNode(0, numTris - 1, sceneBbox, 0);
+        flatten();
+    }
+
+    private void flatten() {
+        int count = countNodes(root);
+        int[] flatNodes = new int[count * 3];
+        float[] flatPlanes = new float[count * 2];
+        treeDepth = flattenNode(root, 0, flatNodes, flatPlanes, new int[1], 1);
+
+        float[] bounds = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+            Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+        for (int i = 0; i < numTris * 9; i++) {
+            int axis = i % 3;
+            bounds[axis] = Math.min(bounds[axis], pointData[i]);
+            bounds[axis + 3] = Math.max(bounds[axis + 3], pointData[i]);
+        }
+        treeBounds = bounds;
+        planes = flatPlanes;
+        nodes = flatNodes;
+    }
+
+    private static int countNodes(BIHNode node) {
+        if (node.getAxis() == 3) {
+            return 1;
+        }
+        return 1 + countNodes(node.getLeftChild()) + countNodes(node.getRightChild());
+    }
+
+    /**
+     * Stores the node at the given index, its left subtree after it and
+     * its right subtree after that.
+     *
+     * @return The depth of the subtree.
+     */
+    private static int flattenNode(BIHNode node, int index, int[] flatNodes,
+            float[] flatPlanes, int[] next, int depth) {
+        next[0] = index + 1;
+        int axis = node.getAxis();
+        flatNodes[index * 3] = axis;
+        if (axis == 3) {
+            flatNodes[index * 3 + 1] = node.getLeftIndex();
+            flatNodes[index * 3 + 2] = node.getRightIndex();
+            return depth;
+        }
+        flatPlanes[index * 2] = node.getLeftPlane();
+        flatPlanes[index * 2 + 1] = node.getRightPlane();
+        int left = next[0];
+        flatNodes[index * 3 + 1] = left;
+        int leftDepth = flattenNode(node.getLeftChild(), left, flatNodes, flatPlanes, next, depth + 1);
+        int right = next[0];
+        flatNodes[index * 3 + 2] = right;
+        int rightDepth = flattenNode(node.getRightChild(), right, flatNodes, flatPlanes, next, depth + 1);
+        return Math.max(leftDepth, rightDepth);
     }
 
     private BoundingBox createBox(int l, int r) {
@@ -161,6 +233,13 @@ public class BIHTree implements CollisionData {
         return bbox;
     }
 
+    /**
+     * @return The root of the node graph the flattened tree was built from.
+     */
+    public BIHNode getRoot() {
+        return root;
+    }
+
     int getTriangleIndex(int triIndex) {
         return triIndices[triIndex];
     }
@@ -399,7 +478,7 @@ public class BIHTree implements CollisionData {
             BoundingVolume worldBound,
             CollisionResults results) {
 
-        boundResults.clear();
+        CollisionResults boundResults = new CollisionResults();
         worldBound.collideWith(r, boundResults);
         if (boundResults.size() > 0) {
             float tMin = boundResults.getClosestCollision().getDistance();
@@ -419,29 +498,381 @@ public class BIHTree implements CollisionData {
                 tMax = Math.min(tMax, r.getLimit());
             }
 
-//            return root.intersectBrute(r, worldMatrix, this, tMin, tMax, results);
-            return root.intersectWhere(r, worldMatrix, this, tMin, tMax, results);
+            TempVars vars = TempVars.get();
+            try {
+                Ray modelRay = vars.bihRay;
+                toModelSpace(r.getOrigin(), r.getDirection(), worldMatrix, modelRay, vars);
+                return intersectRay(modelRay, tMin, tMax, r, worldMatrix, results, null, null, vars);
+            } finally {
+                vars.release();
+            }
         }
         return 0;
     }
 
+    /**
+     * Transforms a ray into model space. The direction is not normalized,
+     * so that distances along both rays are in the same units.
+     */
+    private static void toModelSpace(Vector3f origin, Vector3f direction,
+            Matrix4f worldMatrix, Ray store, TempVars vars) {
+        if (worldMatrix == null) {
+            store.getOrigin().set(origin);
+            store.getDirection().set(direction);
+            return;
+        }
+        Matrix4f inv = vars.tempMat42.set(worldMatrix).invertLocal();
+        inv.mult(origin, store.getOrigin());
+        inv.multNormal(direction, store.getDirection());
+    }
+
+    /**
+     * Traverses the flattened tree with a model space ray. If results is
+     * not null, every hit is added to it in world space. Otherwise only
+     * the closest hit up to closest[1] is kept, its distance in closest[0]
+     * and its triangle in closestIndex[0].
+     */
+    private int intersectRay(Ray modelRay, float tMin, float tMax,
+            Ray worldRay, Matrix4f worldMatrix, CollisionResults results,
+            float[] closest, int[] closestIndex, TempVars vars) {
+        int[] nodeStack = vars.bihNodeStack;
+        float[] rangeStack = vars.bihRangeStack;
+        if (nodeStack.length < treeDepth) {
+            nodeStack = new int[treeDepth];
+            rangeStack = new float[treeDepth * 2];
+        }
+
+        Vector3f origin = modelRay.getOrigin();
+        Vector3f direction = modelRay.getDirection();
+        float ox = origin.x, oy = origin.y, oz = origin.z;
+        float idx = 1f / direction.x, idy = 1f / direction.y, idz = 1f / direction.z;
+
+        Vector3f v1 = vars.vect3,
+                v2 = vars.vect4,
+                v3 = vars.vect5;
+        int[] flatNodes = nodes;
+        float[] flatPlanes = planes;
+        int cols = 0;
+
+        int sp = 0;
+        nodeStack[0] = 0;
+        rangeStack[0] = tMin;
+        rangeStack[1] = tMax;
+        sp++;
+        stackloop:
+        while (sp > 0) {
+            sp--;
+            int node = nodeStack[sp];
+            tMin = rangeStack[sp * 2];
+            tMax = rangeStack[sp * 2 + 1];
+
+            if (tMax < tMin || (closest != null && tMin > closest[0])) {
+                continue;
+            }
+
+            while (flatNodes[node * 3] != 3) { // while node is not a leaf
+                int a = flatNodes[node * 3];
+                float o, invDirection;
+                if (a == 0) {
+                    o = ox;
+                    invDirection = idx;
+                } else if (a == 1) {
+                    o = oy;
+                    invDirection = idy;
+                } else {
+                    o = oz;
+                    invDirection = idz;
+                }
+
+                float tNearSplit = (flatPlanes[node * 2] - o) * invDirection;
+                float tFarSplit = (flatPlanes[node * 2 + 1] - o) * invDirection;
+                int nearNode = flatNodes[node * 3 + 1];
+                int farNode = flatNodes[node * 3 + 2];
+
+                if (invDirection < 0) {
+                    float tmpSplit = tNearSplit;
+                    tNearSplit = tFarSplit;
+                    tFarSplit = tmpSplit;
+
+                    int tmpNode = nearNode;
+                    nearNode = farNode;
+                    farNode = tmpNode;
+                }
+
+                if (tMin > tNearSplit && tMax < tFarSplit) {
+                    continue stackloop;
+                }
+
+                if (tMin > tNearSplit) {
+                    tMin = max(tMin, tFarSplit);
+                    node = farNode;
+                } else if (tMax < tFarSplit) {
+                    tMax = min(tMax, tNearSplit);
+                    node = nearNode;
+                } else {
+                    nodeStack[sp] = farNode;
+                    rangeStack[sp * 2] = max(tMin, tFarSplit);
+                    rangeStack[sp * 2 + 1] = tMax;
+                    sp++;
+                    tMax = min(tMax, tNearSplit);
+                    node = nearNode;
+                }
+            }
+
+            // a leaf
+            int last = flatNodes[node * 3 + 2];
+            for (int i = flatNodes[node * 3 + 1]; i <= last; i++) {
+                getTriangle(i, v1, v2, v3);
+
+                float t = modelRay.intersects(v1, v2, v3);
+                if (Float.isInfinite(t)) {
+                    continue;
+                }
+                if (closest != null) {
+                    if (t < closest[0] && t <= closest[1]) {
+                        closest[0] = t;
+                        closestIndex[0] = triIndices[i];
+                        cols = 1;
+                    }
+                    continue;
+                }
+
+                if (worldMatrix != null) {
+                    worldMatrix.mult(v1, v1);
+                    worldMatrix.mult(v2, v2);
+                    worldMatrix.mult(v3, v3);
+                }
+                Vector3f contactNormal = Triangle.computeTriangleNormal(v1, v2, v3, null);
+                Vector3f contactPoint = new Vector3f(worldRay.getDirection()).multLocal(t).addLocal(worldRay.getOrigin());
+                float worldSpaceDist = worldRay.getOrigin().distance(contactPoint);
+
+                CollisionResult cr = new CollisionResult(contactPoint, worldSpaceDist);
+                cr.setContactNormal(contactNormal);
+                cr.setTriangleIndex(triIndices[i]);
+                results.addCollision(cr);
+                cols++;
+            }
+        }
+        return cols;
+    }
+
+    /**
+     * Finds the closest hit of each ray in a batch. The rays are given in
+     * world space as origin and direction, 6 floats per ray. Distances are
+     * in units of the ray direction, so they are world space distances if
+     * the directions are normalized.
+     * <p>
+     * Unlike {@link #collideWith(com.jme3.collision.Collidable, com.jme3.math.Matrix4f, com.jme3.bounding.BoundingVolume, com.jme3.collision.CollisionResults) }
+     * no collision results are created. The tree is not modified, so a large
+     * batch can be split into ranges cast from several threads.
+     *
+     * @param rays Origin and direction of each ray.
+     * @param offset The first ray to cast.
+     * @param count Number of rays to cast.
+     * @param maxDistance Hits further away are ignored, can be
+     * Float.POSITIVE_INFINITY.
+     * @param worldMatrix Transforms the mesh into world space, or null.
+     * @param distances Receives the distance of the closest hit of each ray,
+     * Float.POSITIVE_INFINITY if there was no hit. Indexed like the rays,
+     * distances[offset] for the first ray.
+     * @param triangleIndices Receives the triangle index of the closest hit,
+     * or -1. Can be null.
+     * @return The number of rays that hit the mesh.
+     */
+    public int intersectRays(float[] rays, int offset, int count, float maxDistance,
+            Matrix4f worldMatrix, float[] distances, int[] triangleIndices) {
+        TempVars vars = TempVars.get();
+        try {
+            Ray modelRay = vars.bihRay;
+            Vector3f worldOrigin = vars.vect6;
+            Vector3f worldDirection = vars.vect7;
+            float[] range = new float[2];
+            float[] closest = new float[2];
+            int[] closestIndex = new int[1];
+            int hits = 0;
+            for (int i = offset; i < offset + count; i++) {
+                worldOrigin.set(rays[i * 6], rays[i * 6 + 1], rays[i * 6 + 2]);
+                worldDirection.set(rays[i * 6 + 3], rays[i * 6 + 4], rays[i * 6 + 5]);
+                toModelSpace(worldOrigin, worldDirection, worldMatrix, modelRay, vars);
+
+                closest[0] = Float.POSITIVE_INFINITY;
+                closest[1] = maxDistance;
+                closestIndex[0] = -1;
+                if (nodes != null && clipToBounds(modelRay, maxDistance, range)) {
+                    intersectRay(modelRay, range[0], range[1], null, null, null,
+                            closest, closestIndex, vars);
+                }
+                distances[i] = closest[0];
+                if (triangleIndices != null) {
+                    triangleIndices[i] = closestIndex[0];
+                }
+                if (closestIndex[0] >= 0) {
+                    hits++;
+                }
+            }
+            return hits;
+        } finally {
+            vars.release();
+        }
+    }
+
+    /**
+     * Clips a model space ray to the bounds of all triangles.
+     *
+     * @return false if the ray misses the bounds.
+     */
+    private boolean clipToBounds(Ray modelRay, float maxDistance, float[] range) {
+        float tMin = 0;
+        float tMax = maxDistance;
+        for (int axis = 0; axis < 3; axis++) {
+            float o = modelRay.getOrigin().get(axis);
+            float d = modelRay.getDirection().get(axis);
+            float lo = treeBounds[axis];
+            float hi = treeBounds[axis + 3];
+            if (d == 0) {
+                if (o < lo || o > hi) {
+                    return false;
+                }
+                continue;
+            }
+            float t1 = (lo - o) / d;
+            float t2 = (hi - o) / d;
+            if (t1 > t2) {
+                float tmp = t1;
+                t1 = t2;
+                t2 = tmp;
+            }
+            tMin = Math.max(tMin, t1);
+            tMax = Math.min(tMax, t2);
+            if (tMin > tMax) {
+                return false;
+            }
+        }
+        range[0] = tMin;
+        range[1] = tMax;
+        return true;
+    }
+
     private int collideWithBoundingVolume(BoundingVolume bv,
             Matrix4f worldMatrix,
             CollisionResults results) {
-        BoundingBox bbox;
-        if (bv instanceof BoundingSphere) {
-            BoundingSphere sphere = (BoundingSphere) bv;
-            bbox = new BoundingBox(bv.getCenter().clone(), sphere.getRadius(),
-                    sphere.getRadius(),
-                    sphere.getRadius());
-        } else if (bv instanceof BoundingBox) {
-            bbox = new BoundingBox((BoundingBox) bv);
-        } else {
-            throw new UnsupportedCollisionException();
+        TempVars vars = TempVars.get();
+        try {
+            BoundingBox bbox = vars.bihBox;
+            if (bv instanceof BoundingSphere) {
+                BoundingSphere sphere = (BoundingSphere) bv;
+                bbox.setCenter(bv.getCenter());
+                bbox.setXExtent(sphere.getRadius());
+                bbox.setYExtent(sphere.getRadius());
+                bbox.setZExtent(sphere.getRadius());
+            } else if (bv instanceof BoundingBox) {
+                BoundingBox box = (BoundingBox) bv;
+                bbox.setCenter(box.getCenter());
+                bbox.setXExtent(box.getXExtent());
+                bbox.setYExtent(box.getYExtent());
+                bbox.setZExtent(box.getZExtent());
+            } else {
+                throw new UnsupportedCollisionException();
+            }
+
+            bbox.transform(vars.tempMat42.set(worldMatrix).invertLocal(), bbox);
+            return intersectBox(bv, bbox, worldMatrix, results, vars);
+        } finally {
+            vars.release();
+        }
+    }
+
+    /**
+     * Traverses the flattened tree with a model space box and collides
+     * the triangles of the leaves it overlaps with col.
+     */
+    private int intersectBox(Collidable col, BoundingBox box, Matrix4f worldMatrix,
+            CollisionResults results, TempVars vars) {
+        int[] nodeStack = vars.bihNodeStack;
+        if (nodeStack.length < treeDepth) {
+            nodeStack = new int[treeDepth];
         }
 
-        bbox.transform(worldMatrix.invert(), bbox);
-        return root.intersectWhere(bv, bbox, worldMatrix, this, results);
+        Vector3f center = box.getCenter();
+        float minX = center.x - box.getXExtent(),
+                minY = center.y - box.getYExtent(),
+                minZ = center.z - box.getZExtent();
+        float maxX = center.x + box.getXExtent(),
+                maxY = center.y + box.getYExtent(),
+                maxZ = center.z + box.getZExtent();
+
+        Triangle t = vars.triangle;
+        int[] flatNodes = nodes;
+        float[] flatPlanes = planes;
+        int cols = 0;
+
+        int sp = 0;
+        nodeStack[sp++] = 0;
+        stackloop:
+        while (sp > 0) {
+            int node = nodeStack[--sp];
+
+            while (flatNodes[node * 3] != 3) {
+                int a = flatNodes[node * 3];
+
+                float minExt, maxExt;
+                if (a == 0) {
+                    minExt = minX;
+                    maxExt = maxX;
+                } else if (a == 1) {
+                    minExt = minY;
+                    maxExt = maxY;
+                } else {
+                    minExt = minZ;
+                    maxExt = maxZ;
+                }
+                float leftPlane = flatPlanes[node * 2];
+                float rightPlane = flatPlanes[node * 2 + 1];
+
+                if (leftPlane < rightPlane) {
+                    // means there's a gap in the middle
+                    // if the box is in that gap, we stop there
+                    if (minExt > leftPlane
+                            && maxExt < rightPlane) {
+                        continue stackloop;
+                    }
+                }
+
+                if (maxExt < rightPlane) {
+                    node = flatNodes[node * 3 + 1];
+                } else if (minExt > leftPlane) {
+                    node = flatNodes[node * 3 + 2];
+                } else {
+                    nodeStack[sp++] = flatNodes[node * 3 + 2];
+                    node = flatNodes[node * 3 + 1];
+                }
+            }
+
+            int last = flatNodes[node * 3 + 2];
+            for (int i = flatNodes[node * 3 + 1]; i <= last; i++) {
+                getTriangle(i, t.get1(), t.get2(), t.get3());
+                if (worldMatrix != null) {
+                    worldMatrix.mult(t.get1(), t.get1());
+                    worldMatrix.mult(t.get2(), t.get2());
+                    worldMatrix.mult(t.get3(), t.get3());
+                }
+
+                int added = col.collideWith(t, results);
+
+                if (added > 0) {
+                    int index = triIndices[i];
+                    int start = results.size() - added;
+
+                    for (int j = start; j < results.size(); j++) {
+                        CollisionResult cr = results.getCollisionDirect(j);
+                        cr.setTriangleIndex(index);
+                    }
+
+                    cols += added;
+                }
+            }
+        }
+        return cols;
     }
 
     public int collideWith(Collidable other,
@@ -476,5 +907,9 @@ public class BIHTree implements CollisionData {
         maxTrisPerNode = ic.readInt("tris_per_node", 0);
         pointData = ic.readFloatArray("points", null);
         triIndices = ic.readIntArray("indices", null);
+        numTris = triIndices == null ? 0 : triIndices.length;
+        if (root != null) {
+            flatten();
+        }
     }
 }
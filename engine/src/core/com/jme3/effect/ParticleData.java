@@ -0,0 +1,332 @@
+/*
+ * Copyright (c) 2009-2010 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jme3.effect;
+
+import com.jme3.math.ColorRGBA;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+
+/**
+ * The particles of a {@link ParticleEmitter#setPacked(boolean) packed}
+ * {@link ParticleEmitter}, stored in one primitive array per component
+ * instead of one {@link Particle} object per particle.
+ * <p>
+ * The live particles are kept at the start of the arrays in spawn order,
+ * indices 0 to <code>getCount() - 1</code>. A particle killed with
+ * {@link #kill(int) } keeps its index, with zero life, until the next update.
+ * 
+ * @see Particle
+ */
+public class ParticleData {
+
+    public final float[] positionX;
+    public final float[] positionY;
+    public final float[] positionZ;
+    public final float[] velocityX;
+    public final float[] velocityY;
+    public final float[] velocityZ;
+    public final float[] colorR;
+    public final float[] colorG;
+    public final float[] colorB;
+    public final float[] colorA;
+    public final float[] size;
+    public final float[] life;
+    public final float[] startlife;
+    public final float[] angle;
+    public final float[] rotateSpeed;
+    public final int[] imageIndex;
+    private int count;
+
+    public ParticleData(int capacity) {
+        positionX = new float[capacity];
+        positionY = new float[capacity];
+        positionZ = new float[capacity];
+        velocityX = new float[capacity];
+        velocityY = new float[capacity];
+        velocityZ = new float[capacity];
+        colorR = new float[capacity];
+        colorG = new float[capacity];
+        colorB = new float[capacity];
+        colorA = new float[capacity];
+        size = new float[capacity];
+        life = new float[capacity];
+        startlife = new float[capacity];
+        angle = new float[capacity];
+        rotateSpeed = new float[capacity];
+        imageIndex = new int[capacity];
+    }
+
+    /**
+     * @return the maximum number of particles
+     */
+    public int getCapacity() {
+        return life.length;
+    }
+
+    /**
+     * @return the number of particles, including the ones killed since
+     * the last update
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Adds a particle after the last one.
+     * 
+     * @param p The particle to copy
+     * @return the index of the particle, or -1 if the arrays are full
+     */
+    public int add(Particle p) {
+        if (count == life.length) {
+            return -1;
+        }
+        set(count, p);
+        return count++;
+    }
+
+    /**
+     * Copies a particle into the arrays.
+     */
+    public void set(int index, Particle p) {
+        positionX[index] = p.position.x;
+        positionY[index] = p.position.y;
+        positionZ[index] = p.position.z;
+        velocityX[index] = p.velocity.x;
+        velocityY[index] = p.velocity.y;
+        velocityZ[index] = p.velocity.z;
+        colorR[index] = p.color.r;
+        colorG[index] = p.color.g;
+        colorB[index] = p.color.b;
+        colorA[index] = p.color.a;
+        size[index] = p.size;
+        life[index] = p.life;
+        startlife[index] = p.startlife;
+        angle[index] = p.angle;
+        rotateSpeed[index] = p.rotateSpeed;
+        imageIndex[index] = p.imageIndex;
+    }
+
+    /**
+     * Copies a particle out of the arrays.
+     */
+    public void get(int index, Particle store) {
+        store.position.set(positionX[index], positionY[index], positionZ[index]);
+        store.velocity.set(velocityX[index], velocityY[index], velocityZ[index]);
+        store.color.set(colorR[index], colorG[index], colorB[index], colorA[index]);
+        store.size = size[index];
+        store.life = life[index];
+        store.startlife = startlife[index];
+        store.angle = angle[index];
+        store.rotateSpeed = rotateSpeed[index];
+        store.imageIndex = imageIndex[index];
+    }
+
+    /**
+     * Copies all particles into <code>store</code>, which must have
+     * {@link #getCapacity() } elements. The elements after the last particle
+     * are set to dead particles.
+     */
+    public void toParticles(Particle[] store) {
+        for (int i = 0; i < count; i++) {
+            get(i, store[i]);
+        }
+        for (int i = count; i < store.length; i++) {
+            Particle p = store[i];
+            p.life = 0;
+            p.size = 0f;
+            p.color.set(0, 0, 0, 0);
+            p.imageIndex = 0;
+            p.angle = 0;
+            p.rotateSpeed = 0;
+        }
+    }
+
+    /**
+     * Returns the color of a particle like {@link ColorRGBA#asIntABGR() }.
+     */
+    public int getColorABGR(int index) {
+        return (((int) (colorA[index] * 255) & 0xFF) << 24)
+                | (((int) (colorB[index] * 255) & 0xFF) << 16)
+                | (((int) (colorG[index] * 255) & 0xFF) << 8)
+                | (((int) (colorR[index] * 255) & 0xFF));
+    }
+
+    /**
+     * Kills a particle. It stays invisible at its index until the next
+     * update removes it.
+     */
+    public void kill(int index) {
+        life[index] = 0;
+        size[index] = 0f;
+        colorR[index] = 0;
+        colorG[index] = 0;
+        colorB[index] = 0;
+        colorA[index] = 0;
+        imageIndex[index] = 0;
+        angle[index] = 0;
+        rotateSpeed[index] = 0;
+    }
+
+    /**
+     * Removes all particles.
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Removes the last particle.
+     */
+    void removeLast() {
+        count--;
+    }
+
+    /**
+     * Ages and moves the particles from <code>start</code> to
+     * <code>end - 1</code> like the particles of an emitter without packing.
+     * Particles whose life ends are killed. Only the given range is written,
+     * so ranges can be updated by different threads.
+     * 
+     * @param bounds Receives the min (0 to 2) and max (3 to 5) corners of the
+     * updated particles, starting at <code>boundsOffset</code>.
+     * Not reset.
+     * @return the number of particles killed
+     */
+    int update(ParticleEmitter emitter, float tpf, int start, int end, float[] bounds, int boundsOffset) {
+        Vector3f gravity = emitter.getGravity();
+        float gx = gravity.x * tpf;
+        float gy = gravity.y * tpf;
+        float gz = gravity.z * tpf;
+        ColorRGBA startColor = emitter.getStartColor();
+        ColorRGBA endColor = emitter.getEndColor();
+        float startSize = emitter.getStartSize();
+        float endSize = emitter.getEndSize();
+        boolean selectRandomImage = emitter.isSelectRandomImage();
+        int imageCount = emitter.getImagesX() * emitter.getImagesY();
+        float minX = bounds[boundsOffset];
+        float minY = bounds[boundsOffset + 1];
+        float minZ = bounds[boundsOffset + 2];
+        float maxX = bounds[boundsOffset + 3];
+        float maxY = bounds[boundsOffset + 4];
+        float maxZ = bounds[boundsOffset + 5];
+        int killed = 0;
+
+        for (int i = start; i < end; i++) {
+            float l = life[i] - tpf;
+            if (l <= 0) {
+                kill(i);
+                killed++;
+                continue;
+            }
+            life[i] = l;
+
+            // applying gravity
+            float vx = velocityX[i] - gx;
+            float vy = velocityY[i] - gy;
+            float vz = velocityZ[i] - gz;
+            velocityX[i] = vx;
+            velocityY[i] = vy;
+            velocityZ[i] = vz;
+            float x = positionX[i] + vx * tpf;
+            float y = positionY[i] + vy * tpf;
+            float z = positionZ[i] + vz * tpf;
+            positionX[i] = x;
+            positionY[i] = y;
+            positionZ[i] = z;
+
+            // affecting color, size and angle
+            float b = (startlife[i] - l) / startlife[i];
+            float a = 1 - b;
+            colorR[i] = a * startColor.r + b * endColor.r;
+            colorG[i] = a * startColor.g + b * endColor.g;
+            colorB[i] = a * startColor.b + b * endColor.b;
+            colorA[i] = a * startColor.a + b * endColor.a;
+            float s = FastMath.interpolateLinear(b, startSize, endSize);
+            size[i] = s;
+            angle[i] += rotateSpeed[i] * tpf;
+
+            // Computing bounding volume
+            minX = Math.min(minX, x - s);
+            minY = Math.min(minY, y - s);
+            minZ = Math.min(minZ, z - s);
+            maxX = Math.max(maxX, x + s);
+            maxY = Math.max(maxY, y + s);
+            maxZ = Math.max(maxZ, z + s);
+
+            if (!selectRandomImage) {
+                imageIndex[i] = (int) (b * imageCount);
+            }
+        }
+
+        bounds[boundsOffset] = minX;
+        bounds[boundsOffset + 1] = minY;
+        bounds[boundsOffset + 2] = minZ;
+        bounds[boundsOffset + 3] = maxX;
+        bounds[boundsOffset + 4] = maxY;
+        bounds[boundsOffset + 5] = maxZ;
+        return killed;
+    }
+
+    /**
+     * Removes the killed particles, keeping the order of the others.
+     */
+    void compact() {
+        int j = 0;
+        for (int i = 0; i < count; i++) {
+            if (life[i] == 0) {
+                continue;
+            }
+            if (i != j) {
+                positionX[j] = positionX[i];
+                positionY[j] = positionY[i];
+                positionZ[j] = positionZ[i];
+                velocityX[j] = velocityX[i];
+                velocityY[j] = velocityY[i];
+                velocityZ[j] = velocityZ[i];
+                colorR[j] = colorR[i];
+                colorG[j] = colorG[i];
+                colorB[j] = colorB[i];
+                colorA[j] = colorA[i];
+                size[j] = size[i];
+                life[j] = life[i];
+                startlife[j] = startlife[i];
+                angle[j] = angle[i];
+                rotateSpeed[j] = rotateSpeed[i];
+                imageIndex[j] = imageIndex[i];
+            }
+            j++;
+        }
+        count = j;
+    }
+}
@@ -55,6 +55,12 @@ import com.jme3.scene.Spatial;
 import com.jme3.scene.control.Control;
 import com.jme3.util.TempVars;
 import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * <code>ParticleEmitter</code> is a special kind of geometry which simulates
@@ -106,6 +112,17 @@ public class ParticleEmitter extends Geometry {
     private boolean worldSpace = true;
     //variable that helps with computations
     private transient Vector3f temp = new Vector3f();
+    // particle arrays of a packed emitter, updated in parallel chunks
+    private static final int UPDATE_CHUNK_SIZE = 4096;
+    private static ExecutorService updateExecutor;
+    private boolean packed;
+    private ParticleData particleData;
+    private transient Particle emitted;
+    private int updateThreadCount = Math.min(4, Runtime.getRuntime().availableProcessors());
+    private transient float[] updateBounds;
+    private transient int[] updateKilled;
+    private transient UpdateTask[] updateTasks;
+    private transient Future<?>[] updateFutures;
 
     public static class ParticleEmitterControl implements Control {
 
@@ -160,7 +177,13 @@ public class ParticleEmitter extends Geometry {
         clone.shape = shape.deepClone();
 
         // Reinitialize particle list
-        clone.setNumParticles(particles.length);
+        clone.particles = null;
+        clone.emitted = null;
+        clone.updateBounds = null;
+        clone.updateKilled = null;
+        clone.updateTasks = null;
+        clone.updateFutures = null;
+        clone.setNumParticles(getMaxNumParticles());
 
         clone.faceNormal = faceNormal.clone();
         clone.startColor = startColor.clone();
@@ -186,7 +209,7 @@ public class ParticleEmitter extends Geometry {
             default:
                 throw new IllegalStateException("Unrecognized particle type: " + meshType);
         }
-        clone.particleMesh.initParticleData(clone, clone.particles.length);
+        clone.particleMesh.initParticleData(clone, clone.getMaxNumParticles());
         clone.particleMesh.setImagesXY(clone.imagesX, clone.imagesY);
 
         return clone;
@@ -301,7 +324,7 @@ public class ParticleEmitter extends Geometry {
             default:
                 throw new IllegalStateException("Unrecognized particle type: " + meshType);
         }
-        this.setNumParticles(particles.length);
+        this.setNumParticles(getMaxNumParticles());
     }
 
     /**
@@ -338,6 +361,9 @@ public class ParticleEmitter extends Geometry {
      */
     public int getNumVisibleParticles() {
 //        return unusedIndices.size() + next;
+        if (packed) {
+            return particleData.getCount();
+        }
         return lastUsed + 1;
     }
 
@@ -350,19 +376,98 @@ public class ParticleEmitter extends Geometry {
      * can exist at the same time with this emitter.
      */
     public final void setNumParticles(int numParticles) {
-        particles = new Particle[numParticles];
-        for (int i = 0; i < numParticles; i++) {
-            particles[i] = new Particle();
+        if (packed) {
+            particleData = new ParticleData(numParticles);
+            particles = null;
+        } else {
+            particles = new Particle[numParticles];
+            for (int i = 0; i < numParticles; i++) {
+                particles[i] = new Particle();
+            }
+            particleData = null;
         }
         //We have to reinit the mesh's buffers with the new size
-        particleMesh.initParticleData(this, particles.length);
+        particleMesh.initParticleData(this, numParticles);
         particleMesh.setImagesXY(this.imagesX, this.imagesY);
         firstUnUsed = 0;
         lastUsed = -1;
     }
 
     public int getMaxNumParticles() {
-        return particles.length;
+        return packed ? particleData.getCapacity() : particles.length;
+    }
+
+    /**
+     * Returns true if the particles are stored in a {@link ParticleData}.
+     * 
+     * @return true if the particles are stored in a {@link ParticleData}.
+     * 
+     * @see ParticleEmitter#setPacked(boolean) 
+     */
+    public boolean isPacked() {
+        return packed;
+    }
+
+    /**
+     * Set to true to store the particles in the primitive arrays of a
+     * {@link ParticleData} instead of {@link Particle} objects.
+     * 
+     * <p>A packed emitter updates large numbers of particles in parallel
+     * chunks (see {@link #setUpdateThreadCount(int) }) and its mesh writes
+     * the vertex buffers from the arrays in bulk. The particles behave the
+     * same. {@link #getParticles() } returns a copy of the particles. 
+     * Changing this kills all particles.
+     * 
+     * @param packed true to store the particles in a {@link ParticleData}.
+     */
+    public void setPacked(boolean packed) {
+        if (this.packed != packed) {
+            int numParticles = getMaxNumParticles();
+            this.packed = packed;
+            setNumParticles(numParticles);
+        }
+    }
+
+    /**
+     * Returns the particles of a packed emitter, or null.
+     * 
+     * @return the particles of a packed emitter, or null.
+     * 
+     * @see ParticleEmitter#setPacked(boolean) 
+     */
+    public ParticleData getParticleData() {
+        return particleData;
+    }
+
+    /**
+     * Returns the maximum number of threads that update the particles of
+     * a packed emitter.
+     * 
+     * @return the maximum number of update threads.
+     * 
+     * @see ParticleEmitter#setUpdateThreadCount(int) 
+     */
+    public int getUpdateThreadCount() {
+        return updateThreadCount;
+    }
+
+    /**
+     * Sets the maximum number of threads that update the particles of
+     * a packed emitter. The particles are split into chunks of at least
+     * 4096 particles. One chunk is updated by the calling thread, the others
+     * by a pool of daemon threads shared by all emitters. The default is
+     * the number of processors, at most 4. Spawning particles is not
+     * parallel, since the influencer and the random numbers are not thread
+     * safe.
+     * 
+     * @param updateThreadCount the maximum number of update threads, at
+     * least 1.
+     */
+    public void setUpdateThreadCount(int updateThreadCount) {
+        if (updateThreadCount < 1) {
+            throw new IllegalArgumentException("updateThreadCount must be at least 1");
+        }
+        this.updateThreadCount = updateThreadCount;
     }
 
     /**
@@ -374,9 +479,23 @@ public class ParticleEmitter extends Geometry {
      * specified in the constructor or {@link ParticleEmitter#setNumParticles(int) }
      * method. 
      * 
+     * <p>
+     * If the emitter is {@link #setPacked(boolean) packed}, this is a copy
+     * of the particles, and changes to it have no effect. Use 
+     * {@link #getParticleData() } instead.
+     * 
      * @return a list of all particles.
      */
     public Particle[] getParticles() {
+        if (packed) {
+            if (particles == null) {
+                particles = new Particle[particleData.getCapacity()];
+                for (int i = 0; i < particles.length; i++) {
+                    particles[i] = new Particle();
+                }
+            }
+            particleData.toParticles(particles);
+        }
         return particles;
     }
 
@@ -827,6 +946,34 @@ public class ParticleEmitter extends Geometry {
         }
 
         Particle p = particles[idx];
+        initParticle(p, min, max);
+
+        ++lastUsed;
+        firstUnUsed = idx + 1;
+        return p;
+    }
+
+    /**
+     * Adds a particle to the particle data of a packed emitter.
+     * 
+     * @return the index of the particle, or -1 if there is no free particle.
+     */
+    private int emitPackedParticle(Vector3f min, Vector3f max) {
+        if (particleData.getCount() == particleData.getCapacity()) {
+            return -1;
+        }
+        if (emitted == null) {
+            emitted = new Particle();
+        }
+        // as reset by freeParticle()
+        emitted.imageIndex = 0;
+        emitted.angle = 0;
+        emitted.rotateSpeed = 0;
+        initParticle(emitted, min, max);
+        return particleData.add(emitted);
+    }
+
+    private void initParticle(Particle p, Vector3f min, Vector3f max) {
         if (selectRandomImage) {
             p.imageIndex = FastMath.nextRandomInt(0, imagesY - 1) * imagesX + FastMath.nextRandomInt(0, imagesX - 1);
         }
@@ -853,10 +1000,6 @@ public class ParticleEmitter extends Geometry {
         max.maxLocal(temp);
         temp.set(p.position).subtractLocal(p.size, p.size, p.size);
         min.minLocal(temp);
-
-        ++lastUsed;
-        firstUnUsed = idx + 1;
-        return p;
     }
 
     /**
@@ -884,7 +1027,11 @@ public class ParticleEmitter extends Geometry {
             max.set(Vector3f.NEGATIVE_INFINITY);
         }
 
-        while (emitParticle(min, max) != null);
+        if (packed) {
+            while (emitPackedParticle(min, max) >= 0);
+        } else {
+            while (emitParticle(min, max) != null);
+        }
 
         bbox.setMinMax(min, max);
         this.setBoundRefresh();
@@ -897,6 +1044,10 @@ public class ParticleEmitter extends Geometry {
      * particles will be dead and no longer visible.
      */
     public void killAllParticles() {
+        if (packed) {
+            particleData.clear();
+            return;
+        }
         for (int i = 0; i < particles.length; ++i) {
             if (particles[i].life > 0) {
                 this.freeParticle(i);
@@ -911,6 +1062,10 @@ public class ParticleEmitter extends Geometry {
      * @see #getParticles() 
      */
     public void killParticle(int index){
+        if (packed) {
+            particleData.kill(index);
+            return;
+        }
         freeParticle(index);
     }
 
@@ -973,6 +1128,12 @@ public class ParticleEmitter extends Geometry {
         Vector3f min = vars.vect1.set(Vector3f.POSITIVE_INFINITY);
         Vector3f max = vars.vect2.set(Vector3f.NEGATIVE_INFINITY);
 
+        if (packed) {
+            updatePackedState(tpf, min, max);
+            vars.release();
+            return;
+        }
+
         for (int i = 0; i < particles.length; ++i) {
             Particle p = particles[i];
             if (p.life == 0) { // particle is dead
@@ -1021,6 +1182,153 @@ public class ParticleEmitter extends Geometry {
         vars.release();
     }
 
+    /**
+     * The same as updateParticleState() for a packed emitter. The live
+     * particles are updated in parallel chunks, then the killed ones are
+     * removed and new ones are spawned on the calling thread.
+     */
+    private void updatePackedState(float tpf, Vector3f min, Vector3f max) {
+        int count = particleData.getCount();
+        int chunks = Math.min(updateThreadCount, (count + UPDATE_CHUNK_SIZE - 1) / UPDATE_CHUNK_SIZE);
+        chunks = Math.max(1, chunks);
+        if (updateBounds == null || updateBounds.length < chunks * 6) {
+            updateBounds = new float[Math.max(chunks, updateThreadCount) * 6];
+            updateKilled = new int[Math.max(chunks, updateThreadCount)];
+        }
+        for (int i = 0; i < chunks; i++) {
+            resetBounds(updateBounds, i * 6);
+        }
+        if (chunks == 1) {
+            updateKilled[0] = particleData.update(this, tpf, 0, count, updateBounds, 0);
+        } else {
+            updateChunks(tpf, count, chunks);
+        }
+        int killed = 0;
+        for (int i = 0; i < chunks; i++) {
+            killed += updateKilled[i];
+            addBounds(updateBounds, i * 6, min, max);
+        }
+        if (killed > 0) {
+            particleData.compact();
+        }
+
+        // Spawns particles within the tpf timeslot with proper age
+        float interval = 1f / particlesPerSec;
+        tpf += timeDifference;
+        while (tpf > interval){
+            tpf -= interval;
+            int idx = emitPackedParticle(min, max);
+            if (idx >= 0){
+                resetBounds(updateBounds, 0);
+                if (particleData.update(this, tpf, idx, idx + 1, updateBounds, 0) > 0){
+                    particleData.removeLast();
+                }else{
+                    addBounds(updateBounds, 0, min, max);
+                }
+            }
+        }
+        timeDifference = tpf;
+
+        BoundingBox bbox = (BoundingBox) this.getMesh().getBound();
+        bbox.setMinMax(min, max);
+        this.setBoundRefresh();
+    }
+
+    private static void resetBounds(float[] bounds, int offset) {
+        bounds[offset] = Float.POSITIVE_INFINITY;
+        bounds[offset + 1] = Float.POSITIVE_INFINITY;
+        bounds[offset + 2] = Float.POSITIVE_INFINITY;
+        bounds[offset + 3] = Float.NEGATIVE_INFINITY;
+        bounds[offset + 4] = Float.NEGATIVE_INFINITY;
+        bounds[offset + 5] = Float.NEGATIVE_INFINITY;
+    }
+
+    private static void addBounds(float[] bounds, int offset, Vector3f min, Vector3f max) {
+        min.x = Math.min(min.x, bounds[offset]);
+        min.y = Math.min(min.y, bounds[offset + 1]);
+        min.z = Math.min(min.z, bounds[offset + 2]);
+        max.x = Math.max(max.x, bounds[offset + 3]);
+        max.y = Math.max(max.y, bounds[offset + 4]);
+        max.z = Math.max(max.z, bounds[offset + 5]);
+    }
+
+    private static synchronized ExecutorService getUpdateExecutor() {
+        if (updateExecutor == null) {
+            int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()) - 1);
+            updateExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+                private int count = 0;
+
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ParticleEmitter-Update-" + (++count));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return updateExecutor;
+    }
+
+    private class UpdateTask implements Callable<Object> {
+
+        float tpf;
+        int chunk;
+        int start;
+        int end;
+
+        public Object call() {
+            updateKilled[chunk] = particleData.update(ParticleEmitter.this, tpf, start, end, updateBounds, chunk * 6);
+            return null;
+        }
+    }
+
+    /**
+     * Updates the particles in <code>chunks</code> chunks. The first chunk is
+     * updated on the calling thread.
+     */
+    private void updateChunks(float tpf, int count, int chunks) {
+        if (updateTasks == null || updateTasks.length < chunks - 1) {
+            updateTasks = new UpdateTask[chunks - 1];
+            for (int i = 0; i < updateTasks.length; i++) {
+                updateTasks[i] = new UpdateTask();
+            }
+            updateFutures = new Future<?>[chunks - 1];
+        }
+        ExecutorService executor = getUpdateExecutor();
+        int chunkSize = (count + chunks - 1) / chunks;
+        for (int i = 1; i < chunks; i++) {
+            UpdateTask task = updateTasks[i - 1];
+            task.tpf = tpf;
+            task.chunk = i;
+            task.start = i * chunkSize;
+            task.end = Math.min(count, task.start + chunkSize);
+            updateFutures[i - 1] = executor.submit(task);
+        }
+        RuntimeException error = null;
+        try {
+            updateKilled[0] = particleData.update(this, tpf, 0, chunkSize, updateBounds, 0);
+        } catch (RuntimeException ex) {
+            error = ex;
+        }
+        for (int i = 1; i < chunks; i++) {
+            try {
+                updateFutures[i - 1].get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                if (error == null) {
+                    error = ex.getCause() instanceof RuntimeException
+                            ? (RuntimeException) ex.getCause()
+                            : new RuntimeException(ex.getCause());
+                }
+            }
+            updateFutures[i - 1] = null;
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
     /**
      * Set to enable or disable the particle emitter
      * 
@@ -1078,7 +1386,11 @@ public class ParticleEmitter extends Geometry {
 
             inverseRotation = this.getWorldRotation().toRotationMatrix(vars.tempMat3).invertLocal();
         }
-        particleMesh.updateParticleData(particles, cam, inverseRotation);
+        if (packed) {
+            particleMesh.updateParticleData(particleData, cam, inverseRotation);
+        } else {
+            particleMesh.updateParticleData(particles, cam, inverseRotation);
+        }
         if (!worldSpace) {
             vars.release();
         }
@@ -1086,7 +1398,11 @@ public class ParticleEmitter extends Geometry {
 
     public void preload(RenderManager rm, ViewPort vp) {
         this.updateParticleState(0);
-        particleMesh.updateParticleData(particles, vp.getCamera(), Matrix3f.IDENTITY);
+        if (packed) {
+            particleMesh.updateParticleData(particleData, vp.getCamera(), Matrix3f.IDENTITY);
+        } else {
+            particleMesh.updateParticleData(particles, vp.getCamera(), Matrix3f.IDENTITY);
+        }
     }
 
     @Override
@@ -1096,7 +1412,7 @@ public class ParticleEmitter extends Geometry {
         oc.write(shape, "shape", DEFAULT_SHAPE);
         oc.write(meshType, "meshType", ParticleMesh.Type.Triangle);
         oc.write(enabled, "enabled", true);
-        oc.write(particles.length, "numParticles", 0);
+        oc.write(getMaxNumParticles(), "numParticles", 0);
         oc.write(particlesPerSec, "particlesPerSec", 0);
         oc.write(lowLife, "lowLife", 0);
         oc.write(highLife, "highLife", 0);
@@ -1114,6 +1430,7 @@ public class ParticleEmitter extends Geometry {
         oc.write(selectRandomImage, "selectRandomImage", false);
         oc.write(randomAngle, "randomAngle", false);
         oc.write(rotateSpeed, "rotateSpeed", 0);
+        oc.write(packed, "packed", false);
 
         oc.write(particleInfluencer, "influencer", DEFAULT_INFLUENCER);
     }
@@ -1152,6 +1469,7 @@ public class ParticleEmitter extends Geometry {
         selectRandomImage = ic.readBoolean("selectRandomImage", false);
         randomAngle = ic.readBoolean("randomAngle", false);
         rotateSpeed = ic.readFloat("rotateSpeed", 0);
+        packed = ic.readBoolean("packed", false);
 
         switch (meshType) {
             case Point:
@@ -45,6 +45,8 @@ import com.jme3.scene.Mesh;
  */
 public abstract class ParticleMesh extends Mesh {
 
+    private Particle[] particleCopies;
+
     /**
      * Type of particle mesh
      */
@@ -83,4 +85,21 @@ public abstract class ParticleMesh extends Mesh {
      */
     public abstract void updateParticleData(Particle[] particles, Camera cam, Matrix3f inverseRotation);
 
+    /**
+     * Update the particle visual data of a {@link ParticleEmitter#setPacked(boolean) packed}
+     * emitter. The default implementation copies the particles into 
+     * {@link Particle} objects and calls
+     * {@link #updateParticleData(com.jme3.effect.Particle[], com.jme3.renderer.Camera, com.jme3.math.Matrix3f) }.
+     */
+    public void updateParticleData(ParticleData data, Camera cam, Matrix3f inverseRotation) {
+        if (particleCopies == null || particleCopies.length != data.getCapacity()) {
+            particleCopies = new Particle[data.getCapacity()];
+            for (int i = 0; i < particleCopies.length; i++) {
+                particleCopies[i] = new Particle();
+            }
+        }
+        data.toParticles(particleCopies);
+        updateParticleData(particleCopies, cam, inverseRotation);
+    }
+
 }
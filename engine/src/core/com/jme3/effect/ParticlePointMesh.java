@@ -40,6 +40,8 @@ import com.jme3.scene.VertexBuffer.Usage;
 import com.jme3.util.BufferUtils;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 
 public class ParticlePointMesh extends ParticleMesh {
 
@@ -47,6 +49,13 @@ public class ParticlePointMesh extends ParticleMesh {
 
     private int imagesX = 1;
     private int imagesY = 1;
+    // vertex data of a packed emitter, written to the buffers in bulk
+    private float[] positionArray;
+    private float[] sizeArray;
+    private int[] colorArray;
+    private float[] texCoordArray;
+    private IntBuffer colorInts;
+    private int packedCount;
 
     @Override
     public void setImagesXY(int imagesX, int imagesY) {
@@ -59,6 +68,12 @@ public class ParticlePointMesh extends ParticleMesh {
         setMode(Mode.Points);
 
         this.emitter = emitter;
+        positionArray = null;
+        sizeArray = null;
+        colorArray = null;
+        texCoordArray = null;
+        colorInts = null;
+        packedCount = 0;
 
         // set positions
         FloatBuffer pb = BufferUtils.createVector3Buffer(numParticles);
@@ -163,4 +178,84 @@ public class ParticlePointMesh extends ParticleMesh {
         svb.updateData(sizes);
         tvb.updateData(texcoords);
     }
+
+    /**
+     * Fills the vertex data like {@link #updateParticleData(com.jme3.effect.Particle[], com.jme3.renderer.Camera, com.jme3.math.Matrix3f) }
+     * into arrays and puts them into the buffers at once. Particles that
+     * died since the last update get zero size and color.
+     */
+    @Override
+    public void updateParticleData(ParticleData data, Camera cam, Matrix3f inverseRotation) {
+        VertexBuffer pvb = getBuffer(VertexBuffer.Type.Position);
+        FloatBuffer positions = (FloatBuffer) pvb.getData();
+
+        VertexBuffer cvb = getBuffer(VertexBuffer.Type.Color);
+        ByteBuffer colors = (ByteBuffer) cvb.getData();
+
+        VertexBuffer svb = getBuffer(VertexBuffer.Type.Size);
+        FloatBuffer sizes = (FloatBuffer) svb.getData();
+
+        VertexBuffer tvb = getBuffer(VertexBuffer.Type.TexCoord);
+        FloatBuffer texcoords = (FloatBuffer) tvb.getData();
+
+        int capacity = data.getCapacity();
+        if (positionArray == null) {
+            positionArray = new float[capacity * 3];
+            sizeArray = new float[capacity];
+            colorArray = new int[capacity];
+            texCoordArray = new float[capacity * 4];
+        }
+        if (colorInts == null) {
+            colorInts = colors.duplicate().order(colors.order()).asIntBuffer();
+        }
+
+        float sizeScale = emitter.getWorldScale().x;
+        int count = data.getCount();
+
+        for (int i = 0; i < count; i++){
+            positionArray[i * 3]     = data.positionX[i];
+            positionArray[i * 3 + 1] = data.positionY[i];
+            positionArray[i * 3 + 2] = data.positionZ[i];
+
+            sizeArray[i] = data.size[i] * sizeScale;
+            colorArray[i] = data.getColorABGR(i);
+
+            int imgX = data.imageIndex[i] % imagesX;
+            int imgY = (data.imageIndex[i] - imgX) / imagesY;
+
+            float startX = ((float) imgX) / imagesX;
+            float startY = ((float) imgY) / imagesY;
+            texCoordArray[i * 4]     = startX;
+            texCoordArray[i * 4 + 1] = startY;
+            texCoordArray[i * 4 + 2] = startX + (1f / imagesX);
+            texCoordArray[i * 4 + 3] = startY + (1f / imagesY);
+        }
+
+        // points of the particles that died since the last update
+        int written = Math.max(count, packedCount);
+        if (packedCount > count) {
+            Arrays.fill(sizeArray, count, packedCount, 0f);
+            Arrays.fill(colorArray, count, packedCount, 0);
+        }
+        packedCount = count;
+
+        positions.clear();
+        positions.put(positionArray, 0, written * 3);
+        positions.clear();
+        sizes.clear();
+        sizes.put(sizeArray, 0, written);
+        sizes.clear();
+        colorInts.clear();
+        colorInts.put(colorArray, 0, written);
+        colors.clear();
+        texcoords.clear();
+        texcoords.put(texCoordArray, 0, written * 4);
+        texcoords.clear();
+
+        // force renderer to re-send data to GPU
+        pvb.updateData(positions);
+        cvb.updateData(colors);
+        svb.updateData(sizes);
+        tvb.updateData(texcoords);
+    }
 }
@@ -43,7 +43,9 @@ import com.jme3.util.BufferUtils;
 import com.jme3.util.SortUtil;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
+import java.util.Arrays;
 
 public class ParticleTriMesh extends ParticleMesh {
 
@@ -53,6 +55,12 @@ public class ParticleTriMesh extends ParticleMesh {
     private ParticleComparator comparator = new ParticleComparator();
     private ParticleEmitter emitter;
     private Particle[] particlesCopy;
+    // vertex data of a packed emitter, written to the buffers in bulk
+    private float[] positionArray;
+    private int[] colorArray;
+    private float[] texCoordArray;
+    private IntBuffer colorInts;
+    private int packedCount;
 
     @Override
     public void initParticleData(ParticleEmitter emitter, int numParticles) {
@@ -61,6 +69,11 @@ public class ParticleTriMesh extends ParticleMesh {
         this.emitter = emitter;
 
         particlesCopy = new Particle[numParticles];
+        positionArray = null;
+        colorArray = null;
+        texCoordArray = null;
+        colorInts = null;
+        packedCount = 0;
 
         // set positions
         FloatBuffer pb = BufferUtils.createVector3Buffer(numParticles * 4);
@@ -281,4 +294,163 @@ public class ParticleTriMesh extends ParticleMesh {
         cvb.updateData(colors);
     }
 
+    /**
+     * Fills the vertex data like {@link #updateParticleData(com.jme3.effect.Particle[], com.jme3.renderer.Camera, com.jme3.math.Matrix3f) }
+     * into arrays and puts them into the buffers at once. The particles are
+     * not sorted, like the objects, since the comparator is unused.
+     * Quads of particles that died since the last update are set to zero.
+     */
+    @Override
+    public void updateParticleData(ParticleData data, Camera cam, Matrix3f inverseRotation) {
+        VertexBuffer pvb = getBuffer(VertexBuffer.Type.Position);
+        FloatBuffer positions = (FloatBuffer) pvb.getData();
+
+        VertexBuffer cvb = getBuffer(VertexBuffer.Type.Color);
+        ByteBuffer colors = (ByteBuffer) cvb.getData();
+
+        VertexBuffer tvb = getBuffer(VertexBuffer.Type.TexCoord);
+        FloatBuffer texcoords = (FloatBuffer) tvb.getData();
+
+        int capacity = data.getCapacity();
+        if (positionArray == null) {
+            positionArray = new float[capacity * 12];
+            colorArray = new int[capacity * 4];
+        }
+        if (uniqueTexCoords && texCoordArray == null) {
+            texCoordArray = new float[capacity * 8];
+        }
+        if (colorInts == null) {
+            colorInts = colors.duplicate().order(colors.order()).asIntBuffer();
+        }
+
+        Vector3f camUp   = cam.getUp();
+        Vector3f camLeft = cam.getLeft();
+        Vector3f camDir  = cam.getDirection();
+
+        inverseRotation.multLocal(camUp);
+        inverseRotation.multLocal(camLeft);
+        inverseRotation.multLocal(camDir);
+
+        boolean facingVelocity = emitter.isFacingVelocity();
+
+        Vector3f up = new Vector3f(),
+                 left = new Vector3f();
+
+        if (!facingVelocity){
+            up.set(camUp);
+            left.set(camLeft);
+        }
+
+        Vector3f faceNormal = emitter.getFaceNormal();
+        float[] pos = positionArray;
+        int count = data.getCount();
+
+        for (int i = 0; i < count; i++){
+            int v = i * 12;
+            float size = data.size[i];
+            if (data.life[i] == 0){
+                Arrays.fill(pos, v, v + 12, 0f);
+                colorArray[i * 4] = 0;
+                colorArray[i * 4 + 1] = 0;
+                colorArray[i * 4 + 2] = 0;
+                colorArray[i * 4 + 3] = 0;
+                continue;
+            }
+
+            if (facingVelocity){
+                left.set(data.velocityX[i], data.velocityY[i], data.velocityZ[i]).normalizeLocal();
+                camDir.cross(left, up);
+                up.multLocal(size);
+                left.multLocal(size);
+            }else if (faceNormal != null){
+                up.set(faceNormal).crossLocal(Vector3f.UNIT_X);
+                faceNormal.cross(up, left);
+                up.multLocal(size);
+                left.multLocal(size);
+            }else if (data.angle[i] != 0){
+                float cos = FastMath.cos(data.angle[i]) * size;
+                float sin = FastMath.sin(data.angle[i]) * size;
+
+                left.x = camLeft.x * cos + camUp.x * sin;
+                left.y = camLeft.y * cos + camUp.y * sin;
+                left.z = camLeft.z * cos + camUp.z * sin;
+
+                up.x = camLeft.x * -sin + camUp.x * cos;
+                up.y = camLeft.y * -sin + camUp.y * cos;
+                up.z = camLeft.z * -sin + camUp.z * cos;
+            }else{
+                up.set(camUp);
+                left.set(camLeft);
+                up.multLocal(size);
+                left.multLocal(size);
+            }
+
+            float x = data.positionX[i];
+            float y = data.positionY[i];
+            float z = data.positionZ[i];
+            pos[v]      = x + left.x + up.x;
+            pos[v + 1]  = y + left.y + up.y;
+            pos[v + 2]  = z + left.z + up.z;
+            pos[v + 3]  = x - left.x + up.x;
+            pos[v + 4]  = y - left.y + up.y;
+            pos[v + 5]  = z - left.z + up.z;
+            pos[v + 6]  = x + left.x - up.x;
+            pos[v + 7]  = y + left.y - up.y;
+            pos[v + 8]  = z + left.z - up.z;
+            pos[v + 9]  = x - left.x - up.x;
+            pos[v + 10] = y - left.y - up.y;
+            pos[v + 11] = z - left.z - up.z;
+
+            if (uniqueTexCoords){
+                int imgX = data.imageIndex[i] % imagesX;
+                int imgY = (data.imageIndex[i] - imgX) / imagesY;
+
+                float startX = ((float) imgX) / imagesX;
+                float startY = ((float) imgY) / imagesY;
+                float endX   = startX + (1f / imagesX);
+                float endY   = startY + (1f / imagesY);
+
+                int t = i * 8;
+                texCoordArray[t]     = startX;
+                texCoordArray[t + 1] = endY;
+                texCoordArray[t + 2] = endX;
+                texCoordArray[t + 3] = endY;
+                texCoordArray[t + 4] = startX;
+                texCoordArray[t + 5] = startY;
+                texCoordArray[t + 6] = endX;
+                texCoordArray[t + 7] = startY;
+            }
+
+            int abgr = data.getColorABGR(i);
+            colorArray[i * 4] = abgr;
+            colorArray[i * 4 + 1] = abgr;
+            colorArray[i * 4 + 2] = abgr;
+            colorArray[i * 4 + 3] = abgr;
+        }
+
+        // quads of the particles that died since the last update
+        int written = Math.max(count, packedCount);
+        if (packedCount > count) {
+            Arrays.fill(pos, count * 12, packedCount * 12, 0f);
+            Arrays.fill(colorArray, count * 4, packedCount * 4, 0);
+        }
+        packedCount = count;
+
+        positions.clear();
+        positions.put(pos, 0, written * 12);
+        positions.clear();
+        colorInts.clear();
+        colorInts.put(colorArray, 0, written * 4);
+        colors.clear();
+        if (uniqueTexCoords){
+            texcoords.clear();
+            texcoords.put(texCoordArray, 0, written * 8);
+            texcoords.clear();
+            tvb.updateData(texcoords);
+        }
+
+        // force renderer to re-send data to GPU
+        pvb.updateData(positions);
+        cvb.updateData(colors);
+    }
 }
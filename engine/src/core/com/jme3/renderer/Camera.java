@@ -1049,6 +1049,46 @@ public class Camera implements Savable, Cloneable {
         return rVal;
     }
 
+    /**
+     * <code>contains</code> tests a bounding volume against the planes of the
+     * camera's frustum that are not marked in the given plane state.
+     * Unlike {@link #contains(com.jme3.bounding.BoundingVolume) } the plane
+     * state of the camera is neither read nor changed, so different bounds
+     * can be checked from several threads at once.
+     *
+     * @param bound the bound to check for culling
+     * @param planeState the planes already known to contain the bound,
+     * e.g. the plane state after checking its parent.
+     * @return See enums in <code>FrustumIntersect</code>
+     */
+    public FrustumIntersect contains(BoundingVolume bound, int planeState) {
+        if (bound == null) {
+            return FrustumIntersect.Inside;
+        }
+
+        FrustumIntersect rVal = FrustumIntersect.Inside;
+
+        for (int planeCounter = FRUSTUM_PLANES; planeCounter >= 0; planeCounter--) {
+            if (planeCounter == bound.getCheckPlane()) {
+                continue; // we have already checked this plane at first iteration
+            }
+            int planeId = (planeCounter == FRUSTUM_PLANES) ? bound.getCheckPlane() : planeCounter;
+
+            if ((planeState & (1 << planeId)) == 0) {
+                Plane.Side side = bound.whichSide(worldPlane[planeId]);
+
+                if (side == Plane.Side.Negative) {
+                    bound.setCheckPlane(planeId);
+                    return FrustumIntersect.Outside;
+                } else if (side == Plane.Side.None) {
+                    rVal = FrustumIntersect.Intersects;
+                }
+            }
+        }
+
+        return rVal;
+    }
+
     /**
      * <code>containsGui</code> tests a bounding volume against the ortho
      * bounding box of the camera. A bounding box spanning from
@@ -62,6 +62,12 @@ import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 
 /**
@@ -112,6 +118,19 @@ public class RenderManager {
     //temp technique
     private String tmpTech;
     private boolean handleTranlucentBucket = true;
+    // geometries found by renderScene, culled in parallel chunks
+    private static final int CULL_CHUNK_SIZE = 1024;
+    private Geometry[] cullGeometries = new Geometry[CULL_CHUNK_SIZE];
+    private int[] cullPlaneStates = new int[CULL_CHUNK_SIZE];
+    private boolean[] cullVisible = new boolean[CULL_CHUNK_SIZE];
+    private int cullCount;
+    private boolean culling;
+    private int cullThreadCount = Math.min(4, Runtime.getRuntime().availableProcessors());
+    private ExecutorService cullExecutor;
+    private CullTask[] cullTasks;
+    private Future<?>[] cullFutures;
+    // work started by controls while a scene is queued
+    private final ArrayList<Future<?>> pendingTasks = new ArrayList<Future<?>>();
 
     /**
      * Create a high-level rendering interface over the
@@ -780,6 +799,13 @@ public class RenderManager {
      * this process does not check for frustum culling on any 
      * {@link ShadowMode#Cast shadow casters}, as they don't have to be
      * in the eye camera frustum to cast shadows on objects that are inside it.
+     * <p>
+     * Nodes are checked on the calling thread. The geometries of visible nodes
+     * are collected and checked against the frustum in parallel chunks
+     * (see {@link #setCullingThreadCount(int) }), then enqueued in scene graph
+     * order. Controls of visible geometries are rendered while enqueuing.
+     * Before returning, the tasks added by controls with
+     * {@link #addPendingTask(java.util.concurrent.Future) } are waited for.
      * 
      * @param scene The scene to flatten into the queue
      * @param vp The ViewPort provides the {@link ViewPort#getCamera() camera}
@@ -787,6 +813,268 @@ public class RenderManager {
      * contain the flattened scene graph.
      */
     public void renderScene(Spatial scene, ViewPort vp) {
+        if (culling) {
+            // called by a control while this scene is queued
+            renderSceneSerial(scene, vp);
+            return;
+        }
+        culling = true;
+        try {
+            collectGeometries(scene, vp);
+            cullGeometries(vp.getCamera());
+            queueGeometries(vp);
+        } finally {
+            for (int i = 0; i < cullCount; i++) {
+                cullGeometries[i] = null;
+            }
+            cullCount = 0;
+            culling = false;
+            waitPendingTasks();
+        }
+    }
+
+    /**
+     * Adds work a control started in {@link com.jme3.scene.control.Control#render(com.jme3.renderer.RenderManager, com.jme3.renderer.ViewPort) }
+     * on other threads, for example skinning its meshes, that has to be done
+     * before the geometries are rendered. The task is waited for before
+     * {@link #renderScene(com.jme3.scene.Spatial, com.jme3.renderer.ViewPort) }
+     * returns, so the work of all controls of the scene runs while the scene
+     * is culled and queued. Outside of renderScene the task is waited for
+     * at once.
+     * 
+     * @param task The task to wait for
+     */
+    public void addPendingTask(Future<?> task) {
+        pendingTasks.add(task);
+        if (!culling) {
+            waitPendingTasks();
+        }
+    }
+
+    private void waitPendingTasks() {
+        RuntimeException error = null;
+        for (int i = 0; i < pendingTasks.size(); i++) {
+            try {
+                pendingTasks.get(i).get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                if (error == null) {
+                    error = ex.getCause() instanceof RuntimeException
+                            ? (RuntimeException) ex.getCause()
+                            : new RuntimeException(ex.getCause());
+                }
+            }
+        }
+        pendingTasks.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Culls the nodes of the scene like {@link #renderSceneSerial(com.jme3.scene.Spatial, com.jme3.renderer.ViewPort) },
+     * and collects the geometries of visible nodes with the plane state of
+     * the camera after checking their parent.
+     */
+    private void collectGeometries(Spatial scene, ViewPort vp) {
+        if (scene.getParent() == null) {
+            vp.getCamera().setPlaneState(0);
+        }
+        if (scene instanceof Geometry) {
+            addCullGeometry((Geometry) scene, vp.getCamera().getPlaneState());
+            return;
+        }
+        // check culling first.
+        if (!scene.checkCulling(vp.getCamera())) {
+            // move on to shadow-only render
+            if (scene.getCullHint()!=Spatial.CullHint.Always) {
+                renderShadow(scene, vp.getQueue());
+            }
+            return;
+        }
+
+        scene.runControlRender(this, vp);
+        if (scene instanceof Node) {
+            // recurse for all children
+            Node n = (Node) scene;
+            List<Spatial> children = n.getChildren();
+            //saving cam state for culling
+            int camState = vp.getCamera().getPlaneState();
+            for (int i = 0; i < children.size(); i++) {
+                //restoring cam state before proceeding children recusively
+                vp.getCamera().setPlaneState(camState);
+                collectGeometries(children.get(i), vp);
+            }
+        }
+    }
+
+    private void addCullGeometry(Geometry g, int planeState) {
+        if (cullCount == cullGeometries.length) {
+            int size = cullCount * 2;
+            Geometry[] geometries = new Geometry[size];
+            System.arraycopy(cullGeometries, 0, geometries, 0, cullCount);
+            cullGeometries = geometries;
+            int[] planeStates = new int[size];
+            System.arraycopy(cullPlaneStates, 0, planeStates, 0, cullCount);
+            cullPlaneStates = planeStates;
+            cullVisible = new boolean[size];
+        }
+        cullGeometries[cullCount] = g;
+        cullPlaneStates[cullCount] = planeState;
+        cullCount++;
+    }
+
+    private void cullRange(Camera cam, int start, int end) {
+        for (int i = start; i < end; i++) {
+            cullVisible[i] = cullGeometries[i].checkCulling(cam, cullPlaneStates[i]);
+        }
+    }
+
+    private class CullTask implements Callable<Object> {
+
+        Camera cam;
+        int start;
+        int end;
+
+        public Object call() {
+            cullRange(cam, start, end);
+            return null;
+        }
+    }
+
+    /**
+     * Checks the collected geometries against the frustum, in chunks of
+     * {@link #CULL_CHUNK_SIZE} on up to {@link #getCullingThreadCount() }
+     * threads.
+     */
+    private void cullGeometries(Camera cam) {
+        int chunks = Math.min(cullThreadCount, (cullCount + CULL_CHUNK_SIZE - 1) / CULL_CHUNK_SIZE);
+        if (chunks <= 1) {
+            cullRange(cam, 0, cullCount);
+            return;
+        }
+        if (cullExecutor == null) {
+            cullExecutor = Executors.newFixedThreadPool(cullThreadCount - 1, new ThreadFactory() {
+
+                private int count = 0;
+
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "RenderManager-Cull-" + (++count));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            cullTasks = new CullTask[cullThreadCount - 1];
+            for (int i = 0; i < cullTasks.length; i++) {
+                cullTasks[i] = new CullTask();
+            }
+            cullFutures = new Future<?>[cullThreadCount - 1];
+        }
+        int chunkSize = (cullCount + chunks - 1) / chunks;
+        for (int i = 1; i < chunks; i++) {
+            CullTask task = cullTasks[i - 1];
+            task.cam = cam;
+            task.start = i * chunkSize;
+            task.end = Math.min(cullCount, task.start + chunkSize);
+            cullFutures[i - 1] = cullExecutor.submit(task);
+        }
+        RuntimeException error = null;
+        try {
+            cullRange(cam, 0, chunkSize);
+        } catch (RuntimeException ex) {
+            error = ex;
+        }
+        for (int i = 1; i < chunks; i++) {
+            try {
+                cullFutures[i - 1].get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                if (error == null) {
+                    error = ex.getCause() instanceof RuntimeException
+                            ? (RuntimeException) ex.getCause()
+                            : new RuntimeException(ex.getCause());
+                }
+            }
+            cullFutures[i - 1] = null;
+            cullTasks[i - 1].cam = null;
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Adds the collected geometries to the queue in scene graph order.
+     */
+    private void queueGeometries(ViewPort vp) {
+        RenderQueue queue = vp.getQueue();
+        for (int i = 0; i < cullCount; i++) {
+            Geometry gm = cullGeometries[i];
+            if (!cullVisible[i]) {
+                // move on to shadow-only render
+                if (gm.getShadowMode() != RenderQueue.ShadowMode.Off && gm.getCullHint()!=Spatial.CullHint.Always) {
+                    renderShadow(gm, queue);
+                }
+                continue;
+            }
+
+            gm.runControlRender(this, vp);
+            if (gm.getMaterial() == null) {
+                throw new IllegalStateException("No material is set for Geometry: " + gm.getName());
+            }
+
+            queue.addToQueue(gm, gm.getQueueBucket());
+
+            // add to shadow queue if needed
+            RenderQueue.ShadowMode shadowMode = gm.getShadowMode();
+            if (shadowMode != RenderQueue.ShadowMode.Off) {
+                queue.addToShadowQueue(gm, shadowMode);
+            }
+        }
+    }
+
+    /**
+     * Sets the number of threads checking geometries against the camera
+     * frustum in {@link #renderScene(com.jme3.scene.Spatial, com.jme3.renderer.ViewPort) }.
+     * The render thread is one of them, so 1 culls on the render thread only.
+     * Scenes are split in chunks of at least 1024 geometries.
+     * The default is the number of processors, at most 4.
+     */
+    public void setCullingThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be at least 1");
+        }
+        if (threadCount == cullThreadCount) {
+            return;
+        }
+        if (cullExecutor != null) {
+            cullExecutor.shutdown();
+            cullExecutor = null;
+        }
+        cullThreadCount = threadCount;
+    }
+
+    public int getCullingThreadCount() {
+        return cullThreadCount;
+    }
+
+    /**
+     * Stops the culling threads. Called by the application when it is
+     * destroyed; the threads are started again if the RenderManager is
+     * used afterwards.
+     */
+    public void cleanup() {
+        if (cullExecutor != null) {
+            cullExecutor.shutdown();
+            cullExecutor = null;
+        }
+        cullTasks = null;
+        cullFutures = null;
+    }
+
+    private void renderSceneSerial(Spatial scene, ViewPort vp) {
         if (scene.getParent() == null) {
             vp.getCamera().setPlaneState(0);
         }
@@ -809,7 +1097,7 @@ public class RenderManager {
             for (int i = 0; i < children.size(); i++) {
                 //restoring cam state before proceeding children recusively
                 vp.getCamera().setPlaneState(camState);
-                renderScene(children.get(i), vp);
+                renderSceneSerial(children.get(i), vp);
 
             }
         } else if (scene instanceof Geometry) {
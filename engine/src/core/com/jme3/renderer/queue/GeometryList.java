@@ -50,6 +50,9 @@ public class GeometryList {
 
     private Geometry[] geometries;
     private Geometry[] geometries2;
+    private long[] keys;
+    private long[] keys2;
+    private int[] radixCounts;
     private int size;
     private GeometryComparator comparator;
 
@@ -127,9 +130,16 @@ public class GeometryList {
 
     /**
      * Sorts the elements in the list according to their Comparator.
+     * If the comparator is a {@link SortKeyComparator}, one key is computed
+     * per geometry and the keys are radix sorted.
      */
     public void sort() {
         if (size > 1) {
+            if (comparator instanceof SortKeyComparator) {
+                radixSort((SortKeyComparator) comparator);
+                return;
+            }
+
             // sort the spatial list using the comparator
             
 //            SortUtil.qsort(geometries, 0, size, comparator);
@@ -141,4 +151,18 @@ public class GeometryList {
 
         }
     }
+
+    private void radixSort(SortKeyComparator keyComparator) {
+        if (keys == null || keys.length < geometries.length) {
+            keys = new long[geometries.length];
+            keys2 = new long[geometries.length];
+        }
+        if (radixCounts == null) {
+            radixCounts = new int[SortUtil.RADIX_COUNTS_SIZE];
+        }
+        for (int i = 0; i < size; i++) {
+            keys[i] = keyComparator.getSortKey(geometries[i]);
+        }
+        SortUtil.rsort(keys, keys2, geometries, geometries2, size, radixCounts);
+    }
 }
\ No newline at end of file
@@ -41,11 +41,15 @@ import com.jme3.scene.Geometry;
  * 
  * @author Kirill Vainer
  */
-public class NullComparator implements GeometryComparator {
+public class NullComparator implements SortKeyComparator {
     public int compare(Geometry o1, Geometry o2) {
         return 0;
     }
 
+    public long getSortKey(Geometry g) {
+        return 0;
+    }
+
     public void setCamera(Camera cam) {
     }
 }
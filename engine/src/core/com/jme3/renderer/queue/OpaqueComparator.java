@@ -36,8 +36,9 @@ import com.jme3.material.Material;
 import com.jme3.math.Vector3f;
 import com.jme3.renderer.Camera;
 import com.jme3.scene.Geometry;
+import com.jme3.util.SortUtil;
 
-public class OpaqueComparator implements GeometryComparator {
+public class OpaqueComparator implements SortKeyComparator {
 
     private Camera cam;
     private final Vector3f tempVec  = new Vector3f();
@@ -93,4 +94,14 @@ public class OpaqueComparator implements GeometryComparator {
         }
     }
 
+    /**
+     * The high 32 bits are the material sort id, descending like
+     * {@link Material#compareTo(com.jme3.material.Material) }, the low 32 bits
+     * the distance to the camera, ascending.
+     */
+    public long getSortKey(Geometry g) {
+        long materialKey = (g.getMaterial().getSortId() ^ 0x7fffffff) & 0xffffffffL;
+        return (materialKey << 32) | SortUtil.floatToSortKey(distanceToCam(g));
+    }
+
 }
@@ -35,8 +35,9 @@ package com.jme3.renderer.queue;
 import com.jme3.math.Vector3f;
 import com.jme3.renderer.Camera;
 import com.jme3.scene.Geometry;
+import com.jme3.util.SortUtil;
 
-public class TransparentComparator implements GeometryComparator {
+public class TransparentComparator implements SortKeyComparator {
 
     private Camera cam;
     private final Vector3f tempVec = new Vector3f();
@@ -99,4 +100,11 @@ public class TransparentComparator implements GeometryComparator {
         else
             return -1;
     }
+
+    /**
+     * The distance to the camera, descending.
+     */
+    public long getSortKey(Geometry g) {
+        return SortUtil.floatToSortKey(distanceToCam(g)) ^ 0xffffffffL;
+    }
 }
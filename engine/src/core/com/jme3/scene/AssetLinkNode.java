@@ -169,6 +169,7 @@ public class AssetLinkNode extends Node {
             if (child != null) {
                 child.parent = this;
                 children.add(child);
+                addRefreshChild(child);
                 assetChildren.put(modelKey, child);
             } else {
                 Logger.getLogger(this.getClass().getName()).log(Level.WARNING, "Could not load linked child spatial: {0}", modelKey.getName());
@@ -99,6 +99,8 @@ public class BatchNode extends Node implements Savable {
 
     @Override
     public void updateGeometricState() {
+        boolean all = (refreshFlags & (RF_TRANSFORM | RF_LIGHTLIST)) != 0;
+
         if ((refreshFlags & RF_LIGHTLIST) != 0) {
             updateWorldLightList();
         }
@@ -116,9 +118,7 @@ public class BatchNode extends Node implements Savable {
             // NOTE 9/19/09
             // Although it does save a round trip,
 
-            for (Spatial child : children.getArray()) {
-                child.updateGeometricState();
-            }
+            updateChildrenGeometricState(all);
 
             for (Batch batch : batches.getArray()) {
                 if (batch.needMeshUpdate) {
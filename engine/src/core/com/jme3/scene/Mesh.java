@@ -162,7 +162,7 @@ public class Mesh implements Savable, Cloneable {
      */
     private BoundingVolume meshBound =  new BoundingBox();
 
-    private CollisionData collisionTree = null;
+    private volatile CollisionData collisionTree = null;
 
     private SafeArrayList<VertexBuffer> buffersList = new SafeArrayList<VertexBuffer>(VertexBuffer.class);
     private IntMap<VertexBuffer> buffers = new IntMap<VertexBuffer>();
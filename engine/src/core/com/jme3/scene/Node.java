@@ -67,6 +67,12 @@ public class Node extends Spatial implements Savable {
      * This node's children.
      */
     protected SafeArrayList<Spatial> children = new SafeArrayList<Spatial>(Spatial.class);
+    /**
+     * Children whose refresh flags were set since the last
+     * updateGeometricState(). May contain children detached since.
+     */
+    transient Spatial[] refreshChildren;
+    transient int refreshCount;
 
     /**
      * Serialization only. Do not use.
@@ -155,8 +161,62 @@ public class Node extends Spatial implements Savable {
         }
     }
 
+    void addRefreshChild(Spatial child) {
+        child.refreshQueued = true;
+        if (refreshChildren == null) {
+            refreshChildren = new Spatial[4];
+        } else if (refreshCount == refreshChildren.length) {
+            Spatial[] list = new Spatial[refreshCount * 2];
+            System.arraycopy(refreshChildren, 0, list, 0, refreshCount);
+            refreshChildren = list;
+        }
+        refreshChildren[refreshCount++] = child;
+    }
+
+    /**
+     * Updates the geometric state of the children. If only some of the
+     * children changed since the last update, only those are visited, so
+     * the cost of an update depends on the changed subtrees, not the
+     * size of the scene.
+     * 
+     * @param all True to update all children, if the transform or light list
+     * of this node changed.
+     */
+    protected void updateChildrenGeometricState(boolean all) {
+        if (all) {
+            for (int i = 0; i < refreshCount; i++) {
+                if (refreshChildren[i].parent == this) {
+                    refreshChildren[i].refreshQueued = false;
+                }
+                refreshChildren[i] = null;
+            }
+            refreshCount = 0;
+            for (Spatial child : children.getArray()) {
+                child.updateGeometricState();
+            }
+        } else {
+            for (int i = 0; i < refreshCount; i++) {
+                Spatial child = refreshChildren[i];
+                refreshChildren[i] = null;
+                // skip children detached since they were queued
+                if (child.parent == this) {
+                    child.refreshQueued = false;
+                    child.updateGeometricState();
+                }
+            }
+            refreshCount = 0;
+        }
+    }
+
+    /**
+     * Updates the world state of this node, and of the children that
+     * changed since the last update.
+     */
     @Override
     public void updateGeometricState(){
+        // all children inherit a changed transform or light list
+        boolean all = (refreshFlags & (RF_TRANSFORM | RF_LIGHTLIST)) != 0;
+
         if ((refreshFlags & RF_LIGHTLIST) != 0){
             updateWorldLightList();
         }
@@ -167,16 +227,10 @@ public class Node extends Spatial implements Savable {
             updateWorldTransforms();
         }
 
-        if (!children.isEmpty()) {
-            // the important part- make sure child geometric state is refreshed
-            // first before updating own world bound. This saves
-            // a round-trip later on.
-            // NOTE 9/19/09
-            // Although it does save a round trip,
-            for (Spatial child : children.getArray()) {
-                child.updateGeometricState();
-            }
-        }            
+        // the important part- make sure child geometric state is refreshed
+        // first before updating own world bound. This saves
+        // a round-trip later on.
+        updateChildrenGeometricState(all);
 
         if ((refreshFlags & RF_BOUND) != 0){
             updateWorldBound();
@@ -576,10 +630,13 @@ public class Node extends Spatial implements Savable {
     public Spatial deepClone(){
         Node nodeClone = (Node) super.clone();
         nodeClone.children = new SafeArrayList<Spatial>(Spatial.class);
+        nodeClone.refreshChildren = null;
+        nodeClone.refreshCount = 0;
         for (Spatial child : children){
             Spatial childClone = child.deepClone();
             childClone.parent = nodeClone;
             nodeClone.children.add(childClone);
+            nodeClone.addRefreshChild(childClone);
         }
         return nodeClone;
     }
@@ -603,6 +660,7 @@ public class Node extends Spatial implements Savable {
         if (children != null) {
             for (Spatial child : children.getArray()) {
                 child.parent = this;
+                addRefreshChild(child);
             }
         }
         
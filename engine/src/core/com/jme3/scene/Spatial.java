@@ -160,6 +160,12 @@ public abstract class Spatial implements Savable, Cloneable, Collidable, Cloneab
      * updated to reflect the correct state.
      */
     protected transient int refreshFlags = 0;
+    /**
+     * Set while this spatial is in the refresh list of its parent.
+     * Only the children in that list are visited by 
+     * {@link Node#updateGeometricState() }.
+     */
+    transient boolean refreshQueued;
 
     /**
      * Serialization only. Do not use.
@@ -206,6 +212,7 @@ public abstract class Spatial implements Savable, Cloneable, Collidable, Cloneab
 
     protected void setLightListRefresh() {
         refreshFlags |= RF_LIGHTLIST;
+        queueRefresh();
     }
 
     /**
@@ -214,6 +221,7 @@ public abstract class Spatial implements Savable, Cloneable, Collidable, Cloneab
      */
     protected void setBoundRefresh() {
         refreshFlags |= RF_BOUND;
+        queueRefresh();
 
         Spatial p = parent;
         while (p != null) {
@@ -226,6 +234,18 @@ public abstract class Spatial implements Savable, Cloneable, Collidable, Cloneab
         }
     }
     
+    /**
+     * Adds this spatial to the refresh list of its parent, and the parent
+     * to the list of its own parent, up to the first spatial already queued.
+     */
+    void queueRefresh() {
+        Spatial s = this;
+        while (s.parent != null && !s.refreshQueued) {
+            s.parent.addRefreshChild(s);
+            s = s.parent;
+        }
+    }
+    
     /**
      * (Internal use only) Forces a refresh of the given types of data.
      * 
@@ -289,6 +309,54 @@ public abstract class Spatial implements Savable, Cloneable, Collidable, Cloneab
         return frustrumIntersects != Camera.FrustumIntersect.Outside;
     }
 
+    /**
+     * <code>checkCulling</code> checks the spatial with the camera to see if it
+     * should be culled, starting from the given plane state instead of the
+     * plane state of the camera. The camera is not modified, so several
+     * threads can check different spatials against the same camera, as long
+     * as their parents were checked before.
+     * <p>
+     * This method is called by the renderer. Usually it should not be called
+     * directly.
+     *
+     * @param cam The camera to check against.
+     * @param planeState The plane state of the camera after checking the parent.
+     * @return true if inside or intersecting camera frustum
+     * (should be rendered), false if outside.
+     * @see Camera#contains(com.jme3.bounding.BoundingVolume, int) 
+     */
+    public boolean checkCulling(Camera cam, int planeState) {
+        if (refreshFlags != 0) {
+            throw new IllegalStateException("Scene graph is not properly updated for rendering.\n"
+                    + "State was changed after rootNode.updateGeometricState() call. \n"
+                    + "Make sure you do not modify the scene from another thread!\n"
+                    + "Problem spatial name: " + getName());
+        }
+
+        CullHint cm = getCullHint();
+        assert cm != CullHint.Inherit;
+        if (cm == Spatial.CullHint.Always) {
+            setLastFrustumIntersection(Camera.FrustumIntersect.Outside);
+            return false;
+        } else if (cm == Spatial.CullHint.Never) {
+            setLastFrustumIntersection(Camera.FrustumIntersect.Intersects);
+            return true;
+        }
+
+        frustrumIntersects = (parent != null ? parent.frustrumIntersects
+                : Camera.FrustumIntersect.Intersects);
+
+        if (frustrumIntersects == Camera.FrustumIntersect.Intersects) {
+            if (getQueueBucket() == Bucket.Gui) {
+                return cam.containsGui(getWorldBound());
+            } else {
+                frustrumIntersects = cam.contains(getWorldBound(), planeState);
+            }
+        }
+
+        return frustrumIntersects != Camera.FrustumIntersect.Outside;
+    }
+
     /**
      * Sets the name of this spatial.
      *
@@ -771,6 +839,8 @@ public abstract class Spatial implements Savable, Cloneable, Collidable, Cloneab
      */
     protected void setParent(Node parent) {
         this.parent = parent;
+        // an entry in the list of the old parent is skipped
+        refreshQueued = false;
     }
 
     /**
@@ -1169,14 +1239,18 @@ public abstract class Spatial implements Savable, Cloneable, Collidable, Cloneab
                 Node node = (Node) this;
                 Node nodeClone = (Node) clone;
                 nodeClone.children = new SafeArrayList<Spatial>(Spatial.class);
+                nodeClone.refreshChildren = null;
+                nodeClone.refreshCount = 0;
                 for (Spatial child : node.children) {
                     Spatial childClone = child.clone(cloneMaterial);
                     childClone.parent = nodeClone;
                     nodeClone.children.add(childClone);
+                    nodeClone.addRefreshChild(childClone);
                 }
             }
 
             clone.parent = null;
+            clone.refreshQueued = false;
             clone.setBoundRefresh();
             clone.setTransformRefresh();
             clone.setLightListRefresh();
@@ -35,8 +35,9 @@ import java.util.Arrays;
 import java.util.Comparator;
 
 /**
- * Quick and merge sort implementations that create no garbage, unlike {@link
- * Arrays#sort}. The merge sort is stable, the quick sort is not.
+ * Quick, merge and radix sort implementations that create no garbage, unlike
+ * {@link Arrays#sort}. The merge and radix sorts are stable, the quick sort
+ * is not.
  */
 public class SortUtil {
 
@@ -349,4 +350,85 @@ end procedure
             src[high] = dest[high];
         }
     }
+
+    /**
+     * Number of counters needed by
+     * {@link #rsort(long[], long[], Object[], Object[], int, int[]) }.
+     */
+    public static final int RADIX_COUNTS_SIZE = 8 * 256;
+
+    /**
+     * Sorts values by their keys with a stable LSD radix sort, 8 bits per
+     * pass. Keys are compared as unsigned values. Passes in which all keys
+     * have the same digit are skipped, so keys that only differ in their
+     * low bits sort in a few passes.
+     *
+     * @param keys The keys, sorted in place.
+     * @param keysTmp Temporary keys, at least size long.
+     * @param values The values, keys[i] is the key of values[i]. Sorted in place.
+     * @param valuesTmp Temporary values, at least size long.
+     * @param size Number of keys to sort.
+     * @param counts Temporary counters, at least {@link #RADIX_COUNTS_SIZE} long.
+     */
+    public static void rsort(long[] keys, long[] keysTmp, Object[] values,
+            Object[] valuesTmp, int size, int[] counts) {
+        if (size < 2) {
+            return;
+        }
+        Arrays.fill(counts, 0, RADIX_COUNTS_SIZE, 0);
+        for (int i = 0; i < size; i++) {
+            long key = keys[i];
+            for (int pass = 0; pass < 8; pass++) {
+                counts[(pass << 8) | (int) ((key >>> (pass << 3)) & 0xff)]++;
+            }
+        }
+
+        long[] srcKeys = keys;
+        long[] dstKeys = keysTmp;
+        Object[] src = values;
+        Object[] dst = valuesTmp;
+        for (int pass = 0; pass < 8; pass++) {
+            int shift = pass << 3;
+            int base = pass << 8;
+            if (counts[base | (int) ((srcKeys[0] >>> shift) & 0xff)] == size) {
+                // all keys have the same digit
+                continue;
+            }
+            int offset = 0;
+            for (int i = base; i < base + 256; i++) {
+                int count = counts[i];
+                counts[i] = offset;
+                offset += count;
+            }
+            for (int i = 0; i < size; i++) {
+                long key = srcKeys[i];
+                int pos = counts[base | (int) ((key >>> shift) & 0xff)]++;
+                dstKeys[pos] = key;
+                dst[pos] = src[i];
+            }
+            long[] tmpKeys = srcKeys;
+            srcKeys = dstKeys;
+            dstKeys = tmpKeys;
+            Object[] tmp = src;
+            src = dst;
+            dst = tmp;
+        }
+        if (srcKeys != keys) {
+            System.arraycopy(srcKeys, 0, keys, 0, size);
+            System.arraycopy(src, 0, values, 0, size);
+        }
+    }
+
+    /**
+     * Maps a float to an unsigned 32-bit key with the same order,
+     * for use in radix sort keys. -0 and 0 map to the same key.
+     *
+     * @param f The value, not NaN.
+     * @return The key, between 0 and 0xffffffffL.
+     */
+    public static long floatToSortKey(float f) {
+        int bits = Float.floatToIntBits(f + 0.0f);
+        bits ^= (bits >> 31) | 0x80000000;
+        return bits & 0xffffffffL;
+    }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2009-2010 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.asset;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The result of {@link DesktopAssetManager#loadAssetAsync(AssetKey) }.
+ * Each request gets its own future and its own instance of the asset, even
+ * when the load was shared with other requests for the same key.
+ * Listeners are called on the thread calling
+ * {@link DesktopAssetManager#update() }.
+ */
+public class AssetFuture<T> implements Future<T> {
+
+    private static final Logger logger = Logger.getLogger(AssetFuture.class.getName());
+
+    private final ThreadingManager manager;
+    private final AssetKey<T> key;
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final ArrayList<AssetLoadListener<T>> listeners
+            = new ArrayList<AssetLoadListener<T>>(1);
+    private int notifiedCount = 0;
+    private boolean queuedForDelivery = false;
+    ThreadingManager.LoadingTask task;
+    private volatile boolean done = false;
+    private volatile boolean cancelled = false;
+    private T asset;
+    private Throwable cause;
+
+    AssetFuture(ThreadingManager manager, AssetKey<T> key) {
+        this.manager = manager;
+        this.key = key;
+    }
+
+    public AssetKey<T> getKey() {
+        return key;
+    }
+
+    /**
+     * The listener is called once, on the next
+     * {@link DesktopAssetManager#update() } after the load finished.
+     * It is not called if the future is cancelled.
+     */
+    public AssetFuture<T> addListener(AssetLoadListener<T> listener) {
+        boolean deliver;
+        synchronized (listeners) {
+            listeners.add(listener);
+            deliver = done && !queuedForDelivery;
+            queuedForDelivery |= deliver;
+        }
+        if (deliver) {
+            manager.queueDelivery(this);
+        }
+        return this;
+    }
+
+    /**
+     * Called by the loading thread with the original asset, or the error.
+     */
+    void complete(Object original, Throwable cause) {
+        if (cause == null) {
+            try {
+                asset = manager.getOwner().createInstance(key, original);
+            } catch (Throwable t) {
+                cause = t;
+            }
+        }
+        this.cause = cause;
+        boolean deliver;
+        synchronized (listeners) {
+            done = true;
+            deliver = !queuedForDelivery && !listeners.isEmpty();
+            queuedForDelivery |= deliver;
+        }
+        // queue before waking get() so that update() after get() delivers
+        if (deliver) {
+            manager.queueDelivery(this);
+        }
+        latch.countDown();
+    }
+
+    /**
+     * Calls the listeners not called yet. Runs on the update thread.
+     */
+    void deliver() {
+        while (true) {
+            AssetLoadListener<T> listener;
+            synchronized (listeners) {
+                if (notifiedCount == listeners.size() || cancelled) {
+                    queuedForDelivery = false;
+                    return;
+                }
+                listener = listeners.get(notifiedCount++);
+            }
+            try {
+                if (cause == null) {
+                    listener.assetLoaded(key, asset);
+                } else {
+                    listener.assetFailed(key, cause);
+                }
+            } catch (RuntimeException ex) {
+                logger.log(Level.SEVERE, "AssetLoadListener failed for " + key, ex);
+            }
+        }
+    }
+
+    /**
+     * Cancels this request. The asset is still loaded if other requests
+     * for the same key are waiting for it.
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (done) {
+            return false;
+        }
+        cancelled = true;
+        manager.cancel(this);
+        latch.countDown();
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return done || cancelled;
+    }
+
+    public T get() throws InterruptedException, ExecutionException {
+        latch.await();
+        return getResult();
+    }
+
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!latch.await(timeout, unit)) {
+            throw new TimeoutException(key.toString());
+        }
+        return getResult();
+    }
+
+    private T getResult() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException(key.toString());
+        }
+        if (cause != null) {
+            throw new ExecutionException(cause);
+        }
+        return asset;
+    }
+}
@@ -33,6 +33,8 @@
 package com.jme3.asset;
 
 import com.jme3.asset.AssetCache.SmartAssetInfo;
+import com.jme3.asset.cache.AssetCache;
+import com.jme3.asset.cache.LRUAssetCache;
 import com.jme3.audio.AudioKey;
 import com.jme3.audio.AudioData;
 import com.jme3.font.BitmapFont;
@@ -58,13 +60,12 @@ public class DesktopAssetManager implements AssetManager {
 
     private static final Logger logger = Logger.getLogger(AssetManager.class.getName());
 
-    private final SoftRefCache cache = new SoftRefCache();
+    private volatile AssetCache cache = new LRUAssetCache();
     private final ImplHandler handler = new ImplHandler(this);
 
     private AssetEventListener eventListener = null;
 
-//    private final ThreadingManager threadingMan = new ThreadingManager(this);
-//    private final Set<AssetKey> alreadyLoadingSet = new HashSet<AssetKey>();
+    private final ThreadingManager threadingMan = new ThreadingManager(this);
 
     public DesktopAssetManager(){
         this(null);
@@ -152,7 +153,25 @@ public class DesktopAssetManager implements AssetManager {
     }
 
     public void clearCache(){
-        cache.deleteAllAssets();
+        cache.clearCache();
+    }
+
+    /**
+     * Replaces the cache of this asset manager. The assets in the old cache
+     * are not moved. This asset manager does not call
+     * {@link AssetCache#registerAssetClone(com.jme3.asset.AssetKey, java.lang.Object) },
+     * so caches tracking clones should not be used.
+     * The default is a {@link LRUAssetCache} with
+     * {@link LRUAssetCache#DEFAULT_MAX_BYTES}.
+     */
+    public void setAssetCache(AssetCache cache){
+        if (cache == null)
+            throw new IllegalArgumentException("cache cannot be null");
+        this.cache = cache;
+    }
+
+    public AssetCache getAssetCache(){
+        return cache;
     }
 
     /**
@@ -199,13 +218,20 @@ public class DesktopAssetManager implements AssetManager {
      * @return
      */
     public <T> T loadAsset(AssetKey<T> key){
+        return createInstance(key, loadOriginal(key));
+    }
+
+    /**
+     * Loads the asset or gets it from the cache, without creating the
+     * instance for the user.
+     */
+    Object loadOriginal(AssetKey key){
         if (key == null)
             throw new IllegalArgumentException("key cannot be null");
         
         if (eventListener != null)
             eventListener.assetRequested(key);
 
-        AssetKey smartKey = null;
         Object o = null;
         if (key.shouldCache()){
 //            if (key.useSmartCache()){
@@ -239,6 +265,7 @@ public class DesktopAssetManager implements AssetManager {
                 throw new AssetNotFoundException(key.toString());
             }
 
+            long startTime = System.nanoTime();
             try {
                 o = loader.load(info);
             } catch (IOException ex) {
@@ -255,31 +282,91 @@ public class DesktopAssetManager implements AssetManager {
                 // do processing on asset before caching
                 o = key.postProcess(o);
 
+                AssetCache c = cache;
+                if (c instanceof LRUAssetCache)
+                    ((LRUAssetCache) c).recordLoad(key, System.nanoTime() - startTime);
+
                 if (key.shouldCache())
-                    cache.addToCache(key, o);
+                    c.addToCache(key, o);
 
                 if (eventListener != null)
                     eventListener.assetLoaded(key);
             }
         }
+        return o;
+    }
 
+    <T> T createInstance(AssetKey<T> key, Object o){
         // object o is the asset
         // create an instance for user
         T clone = (T) key.createClonedInstance(o);
 
         if (key.useSmartCache()){
-            if (smartKey != null){
-                // smart asset was already cached, use original key
-                ((Asset)clone).setKey(smartKey);
-            }else{
-                // smart asset was cached on this call, use our key
-                ((Asset)clone).setKey(key);
-            }
+            // smart asset was cached with our key
+            ((Asset)clone).setKey(key);
         }
         
         return clone;
     }
 
+    /**
+     * Loads an asset on a loading thread with normal priority.
+     * <br/><br/>
+     * <font color="red">Thread-safe.</font>
+     *
+     * @see #loadAssetAsync(com.jme3.asset.AssetKey, com.jme3.asset.AssetLoadPriority, com.jme3.asset.AssetLoadListener) 
+     */
+    public <T> AssetFuture<T> loadAssetAsync(AssetKey<T> key){
+        return loadAssetAsync(key, AssetLoadPriority.NORMAL, null);
+    }
+
+    public <T> AssetFuture<T> loadAssetAsync(AssetKey<T> key, AssetLoadPriority priority){
+        return loadAssetAsync(key, priority, null);
+    }
+
+    /**
+     * Loads an asset on a loading thread. Requests for a key which is
+     * already being loaded share that load, and a cached asset completes
+     * the future immediately. The listener is called from {@link #update() }.
+     * <br/><br/>
+     * <font color="red">Thread-safe.</font>
+     *
+     * @param listener may be null.
+     */
+    public <T> AssetFuture<T> loadAssetAsync(AssetKey<T> key, AssetLoadPriority priority,
+                                             AssetLoadListener<T> listener){
+        if (key == null)
+            throw new IllegalArgumentException("key cannot be null");
+        if (priority == null)
+            throw new IllegalArgumentException("priority cannot be null");
+
+        AssetFuture<T> future;
+        Object o = key.shouldCache() ? cache.getFromCache(key) : null;
+        if (o != null){
+            if (eventListener != null)
+                eventListener.assetRequested(key);
+            future = threadingMan.completed(key, o);
+        }else{
+            future = threadingMan.loadAsset(key, priority);
+        }
+        if (listener != null)
+            future.addListener(listener);
+        return future;
+    }
+
+    /**
+     * Calls the listeners of finished asynchronous loads.
+     * {@link com.jme3.app.Application} calls this once per frame on the
+     * update thread.
+     */
+    public void update(){
+        threadingMan.update();
+    }
+
+    public ThreadingManager getThreadingManager(){
+        return threadingMan;
+    }
+
     public Object loadAsset(String name){
         return loadAsset(new AssetKey(name));
     }
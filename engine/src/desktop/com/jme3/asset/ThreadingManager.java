@@ -29,32 +29,55 @@
  * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
-
 package com.jme3.asset;
 
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * <code>ThreadingManager</code> manages the threads used to load content
  * within the Content Manager system. A pool of threads and a task queue
  * is used to load resource data and perform I/O while the application's
  * render thread is active. 
+ * <p>
+ * Queued loads are ordered by {@link AssetLoadPriority}, and requests for
+ * a key which is already queued or loading share that load.
  */
 public class ThreadingManager {
 
-    protected final ExecutorService executor =
-            Executors.newFixedThreadPool(2,
-                                         new LoadingThreadFactory());
+    private static final Logger logger = Logger.getLogger(ThreadingManager.class.getName());
+
+    public static final int DEFAULT_THREAD_COUNT = 2;
+
+    protected final ThreadPoolExecutor executor;
 
-    protected final AssetManager owner;
+    protected final DesktopAssetManager owner;
 
     protected int nextThreadId = 0;
 
-    public ThreadingManager(AssetManager owner){
+    private long nextSequence = 0;
+
+    // guarded by pendingTasks
+    private final HashMap<AssetKey, LoadingTask> pendingTasks = new HashMap<AssetKey, LoadingTask>();
+
+    private final ConcurrentLinkedQueue<AssetFuture<?>> deliveryQueue = new ConcurrentLinkedQueue<AssetFuture<?>>();
+
+    public ThreadingManager(DesktopAssetManager owner){
+        this(owner, DEFAULT_THREAD_COUNT);
+    }
+
+    public ThreadingManager(DesktopAssetManager owner, int threadCount){
         this.owner = owner;
+        executor = new ThreadPoolExecutor(threadCount, threadCount, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new LoadingThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
     }
 
     protected class LoadingThreadFactory implements ThreadFactory {
@@ -66,34 +89,165 @@ public class ThreadingManager {
         }
     }
 
-    protected class LoadingTask implements Callable<Object> {
-        private final String resourceName;
-        public LoadingTask(String resourceName){
-            this.resourceName = resourceName;
+    /**
+     * Loads one key for all the futures waiting for it.
+     */
+    protected class LoadingTask implements Runnable, Comparable<LoadingTask> {
+        private final AssetKey key;
+        private AssetLoadPriority priority;
+        private long sequence;
+        private boolean started = false;
+        private final ArrayList<AssetFuture<?>> futures = new ArrayList<AssetFuture<?>>(1);
+
+        public LoadingTask(AssetKey key, AssetLoadPriority priority){
+            this.key = key;
+            this.priority = priority;
+            this.sequence = nextSequence++;
+        }
+
+        public AssetKey getKey() {
+            return key;
         }
-        public Object call() throws Exception {
-            return owner.loadAsset(new AssetKey(resourceName));
+
+        public AssetLoadPriority getPriority() {
+            return priority;
+        }
+
+        public int compareTo(LoadingTask other) {
+            int c = priority.compareTo(other.priority);
+            if (c != 0) {
+                return c;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+
+        public void run() {
+            synchronized (pendingTasks) {
+                if (futures.isEmpty()) {
+                    return;
+                }
+                started = true;
+            }
+            Object asset = null;
+            Throwable cause = null;
+            try {
+                asset = owner.loadOriginal(key);
+            } catch (Throwable t) {
+                logger.log(Level.WARNING, "Failed to load " + key, t);
+                cause = t;
+            }
+            ArrayList<AssetFuture<?>> list;
+            synchronized (pendingTasks) {
+                pendingTasks.remove(key);
+                list = new ArrayList<AssetFuture<?>>(futures);
+                futures.clear();
+            }
+            for (AssetFuture<?> future : list) {
+                future.complete(asset, cause);
+            }
+        }
+    }
+
+    DesktopAssetManager getOwner() {
+        return owner;
+    }
+
+    /**
+     * Queues a load of key, or joins the queued or running load of an equal
+     * key. Joining a queued load with a higher priority moves it up.
+     */
+    public <T> AssetFuture<T> loadAsset(AssetKey<T> key, AssetLoadPriority priority) {
+        AssetFuture<T> future = new AssetFuture<T>(this, key);
+        synchronized (pendingTasks) {
+            LoadingTask task = pendingTasks.get(key);
+            if (task == null) {
+                task = new LoadingTask(key, priority);
+                pendingTasks.put(key, task);
+                task.futures.add(future);
+                future.task = task;
+                executor.execute(task);
+            } else {
+                task.futures.add(future);
+                future.task = task;
+                if (!task.started && priority.compareTo(task.priority) < 0
+                        && executor.getQueue().remove(task)) {
+                    task.priority = priority;
+                    task.sequence = nextSequence++;
+                    executor.execute(task);
+                }
+            }
         }
+        return future;
     }
 
-//    protected class MultiLoadingTask implements Callable<Void> {
-//        private final String[] resourceNames;
-//        public MultiLoadingTask(String[] resourceNames){
-//            this.resourceNames = resourceNames;
-//        }
-//        public Void call(){
-//            owner.loadContents(resourceNames);
-//            return null;
-//        }
-//    }
-
-//    public Future<Void> loadContents(String ... names){
-//        return executor.submit(new MultiLoadingTask(names));
-//    }
-
-//    public Future<Object> loadContent(String name) {
-//        return executor.submit(new LoadingTask(name));
-//    }
+    /**
+     * Returns a future completed with an asset found in the cache.
+     */
+    <T> AssetFuture<T> completed(AssetKey<T> key, Object asset) {
+        AssetFuture<T> future = new AssetFuture<T>(this, key);
+        future.complete(asset, null);
+        return future;
+    }
+
+    void cancel(AssetFuture<?> future) {
+        synchronized (pendingTasks) {
+            LoadingTask task = future.task;
+            if (task == null || !task.futures.remove(future)) {
+                return;
+            }
+            if (task.futures.isEmpty() && !task.started) {
+                executor.getQueue().remove(task);
+                pendingTasks.remove(task.key);
+            }
+        }
+    }
+
+    void queueDelivery(AssetFuture<?> future) {
+        deliveryQueue.add(future);
+    }
+
+    /**
+     * Calls the listeners of finished loads on the calling thread.
+     */
+    public void update() {
+        AssetFuture<?> future;
+        while ((future = deliveryQueue.poll()) != null) {
+            future.deliver();
+        }
+    }
+
+    /**
+     * Number of loads queued or running.
+     */
+    public int getPendingCount() {
+        synchronized (pendingTasks) {
+            return pendingTasks.size();
+        }
+    }
+
+    public int getThreadCount() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Sets the number of loading threads.
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount = " + threadCount);
+        }
+        if (threadCount < executor.getCorePoolSize()) {
+            executor.setCorePoolSize(threadCount);
+            executor.setMaximumPoolSize(threadCount);
+        } else {
+            executor.setMaximumPoolSize(threadCount);
+            executor.setCorePoolSize(threadCount);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
 
     public static boolean isLoadingThread() {
         return Thread.currentThread().getName().startsWith("pool");
@@ -43,6 +43,9 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * <code>FileLocator</code> allows you to specify a folder where to
@@ -86,6 +89,20 @@ public class FileLocator implements AssetLocator {
                 throw new AssetLoadException("Failed to open file: " + file, ex);
             }
         }
+
+        /**
+         * Maps the file read only.
+         */
+        @Override
+        public ByteBuffer openBuffer() throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                raf.close();
+            }
+        }
     }
 
     public AssetInfo locate(AssetManager manager, AssetKey key) {
@@ -40,6 +40,7 @@ import com.jme3.asset.AssetManager;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -69,6 +70,32 @@ public class ZipLocator implements AssetLocator {
                 throw new AssetLoadException("Failed to load zip entry: "+entry, ex);
             }
         }
+
+        /**
+         * Entries are usually compressed and cannot be mapped, they are
+         * read once into an array of the entry size.
+         */
+        @Override
+        public ByteBuffer openBuffer() throws IOException {
+            long size = entry.getSize();
+            if (size < 0 || size > Integer.MAX_VALUE)
+                return null;
+
+            byte[] data = new byte[(int) size];
+            InputStream in = zipfile.getInputStream(entry);
+            try {
+                int read = 0;
+                while (read < data.length) {
+                    int n = in.read(data, read, data.length - read);
+                    if (n < 0)
+                        throw new IOException("Unexpected end of zip entry: " + entry);
+                    read += n;
+                }
+            } finally {
+                in.close();
+            }
+            return ByteBuffer.wrap(data);
+        }
     }
 
     public void setRootPath(String rootPath) {
@@ -66,6 +66,7 @@ import java.util.logging.Logger;
 import projectkyoto.mmd.file.*;
 import projectkyoto.mmd.file.util2.MeshConverter;
 import projectkyoto.mmd.file.util2.MeshData;
+import projectkyoto.mmd.file.util2.PMDCacheManager;
 import projectkyoto.mmd.file.util2.PMDFileUtil;
 import projectkyoto.mmd.file.util2.SkinMeshData;
 
@@ -96,6 +97,10 @@ public class PMDLoaderGLSLSkinning2 implements AssetLoader{
     HashMap<String, Texture> textureMap = new HashMap<String, Texture>();
     public static final Logger logger = Logger.getLogger(PMDLoaderGLSLSkinning2.class.getName());
     public static boolean interleaveEnabled = true;
+    /**
+     * If set, converted .pmd meshes are read from and written to this cache.
+     */
+    public static PMDCacheManager cacheManager = null;
     public PMDLoaderGLSLSkinning2() {
     }
     public PMDLoaderGLSLSkinning2(AssetManager assetManager, PMDModel model) {
@@ -210,7 +215,7 @@ public class PMDLoaderGLSLSkinning2 implements AssetLoader{
 //        go.optimize();
         FloatBuffer fb = (FloatBuffer)skinvb.getData();
         node.skinPosBuffer = BufferUtils.createFloatBuffer(fb.limit());
-        projectkyoto.jme3.mmd.nativelib.SkinUtil.copy(fb, node.skinPosBuffer, fb.limit() * 4);
+        projectkyoto.jme3.mmd.nativelib.SkinUtil.getBackend().copy(fb, node.skinPosBuffer, fb.limit() * 4);
         node.init();
         node.calcOffsetMatrices();
         node.update();
@@ -649,10 +654,16 @@ public class PMDLoaderGLSLSkinning2 implements AssetLoader{
     }
     private Object load2(AssetInfo ai) throws IOException {
         this.assetManager = ai.getManager();
-        model = new PMDModel(ai.openStream());
         folderName = ai.getKey().getFolder();
-        meshConverter = new MeshConverter(model);
-        meshConverter.convertMesh();
+        PMDCacheManager cm = cacheManager;
+        if (cm != null) {
+            meshConverter = cm.load(ai.openStream(), MeshConverter.DEFAULT_MAX_BONE_SIZE);
+            model = meshConverter.getModel();
+        } else {
+            model = new PMDModel(ai.openStream());
+            meshConverter = new MeshConverter(model);
+            meshConverter.convertMesh();
+        }
 //        PMNData pmdData = meshConverter.createPMNData();
 //        model.setVertexList(null);
         model.setFaceVertIndex(null);
@@ -675,7 +686,11 @@ public class PMDLoaderGLSLSkinning2 implements AssetLoader{
         this.assetManager = ai.getManager();
         folderName = ai.getKey().getFolder();
         InputStream is = ai.openStream();
-        meshConverter = PMDFileUtil.readPMDCache1(is);
+        if (ai.getKey().getName().toLowerCase().endsWith(".pmdcache2")) {
+            meshConverter = PMDFileUtil.readPMDCache2(is);
+        } else {
+            meshConverter = PMDFileUtil.readPMDCache1(is);
+        }
         is.close();
         model = meshConverter.getModel();
         PMDNode pmdNode = createNode(ai.getKey().getName());
@@ -55,6 +55,8 @@ public class PMDMesh extends Mesh {
     VertexBuffer nbBackup;
     ShortBuffer boneIndexBuffer;
     FloatBuffer boneMatrixBuffer;
+    // set while the mesh has software skinning buffers
+    SoftwareSkinner.SkinJob skinJob;
     
     int boneMatricesParamIndex = -1;
 
@@ -99,6 +101,7 @@ public class PMDMesh extends Mesh {
         }
         newMesh.setBuffer(getBuffer(VertexBuffer.Type.BoneIndex));
         newMesh.setBuffer(getBuffer(VertexBuffer.Type.TexCoord));
+        newMesh.skinJob = null;
         releaseSoftwareSkinningBufferes();
         FloatBuffer newBoneMatrixBuffer = BufferUtils.createFloatBuffer(boneMatrixBuffer.capacity());
         boneMatrixBuffer.position(0);
@@ -163,9 +166,16 @@ public class PMDMesh extends Mesh {
                 }
             }
         }
+        skinJob = new SoftwareSkinner.SkinJob(boneIndexArray.length,
+                (FloatBuffer) vbBackup.getData(), (FloatBuffer) nbBackup.getData(),
+                (ShortBuffer) getBuffer(VertexBuffer.Type.BoneIndex).getData(),
+                (FloatBuffer) getBuffer(VertexBuffer.Type.BoneWeight).getData(),
+                (FloatBuffer) getBuffer(VertexBuffer.Type.Position).getData(),
+                (FloatBuffer) getBuffer(VertexBuffer.Type.Normal).getData());
     }
 
     public void releaseSoftwareSkinningBufferes() {
+        skinJob = null;
         clearBuffer(VertexBuffer.Type.Position);
         setBuffer(vbBackup);
         clearBuffer(VertexBuffer.Type.Normal);
@@ -74,6 +74,8 @@ import projectkyoto.mmd.file.PMDSkinData;
 import projectkyoto.mmd.file.PMDSkinVertData;
 import projectkyoto.mmd.file.PMDVertex;
 import projectkyoto.mmd.file.util2.SavableUtil;
+import projectkyoto.jme3.mmd.nativelib.SkinUtil;
+import projectkyoto.jme3.mmd.nativelib.SkinUtilBackend;
 
 /**
  *
@@ -89,6 +91,9 @@ public class PMDNode extends Node {
     Map<String, Skin> skinMap = new HashMap<String, Skin>();
     Skin[] skinArray = new Skin[0];
     FloatBuffer skinPosBuffer;
+    static final int MAX_INCREMENTAL_SKIN_UPDATES = 256;
+    SkinBufferState[] skinBufferStates = createSkinBufferStates();
+    boolean skinBackDataChanged = false;
     AssetManager assetManager;
     Matrix4f[] offsetMatrices;
     FloatBuffer offsetMatrixbuffer;
@@ -104,6 +109,8 @@ public class PMDNode extends Node {
     Node rigidBodyNode;
     Node jointNode;
     boolean glslSkinning = true;
+    SoftwareSkinner softwareSkinner;
+    SoftwareSkinner.SkinJob[] skinJobs;
     private PMDNode original = null;
 
     @Override
@@ -239,6 +246,7 @@ public class PMDNode extends Node {
         for (Skin skin : skinAray) {
             skinMap.put(skin.getSkinName(), skin);
         }
+        skinArray = skinAray;
     }
 
     public PMDModel getPmdModel() {
@@ -294,7 +302,7 @@ boolean setBoneMatricesFlag = true;
 //                        offsetMatrices[pmdMesh.getBoneIndexBuffer().get(i)].fillFloatBuffer(fb, true);
 ////                        pmdMesh.getBoneMatrixArray()[i].fillFloatBuffer(fb, true);
 //                    }
-                    projectkyoto.jme3.mmd.nativelib.SkinUtil.copyBoneMatrix(offsetMatrixbuffer, fb, pmdMesh.getBoneIndexBuffer());
+                    SkinUtil.getBackend().copyBoneMatrix(offsetMatrixbuffer, fb, pmdMesh.getBoneIndexBuffer());
 
 //                    fb.position(0);
                     if (pmdMesh.boneMatricesParamIndex < 0) {
@@ -322,23 +330,20 @@ boolean setBoneMatricesFlag = true;
                         if (fb == null) {
                             fb = skinMesh.getBoneMatrixBuffer();
                             fb.position(0);
-                            projectkyoto.jme3.mmd.nativelib.SkinUtil.copyBoneMatrix(offsetMatrixbuffer, fb, skinMesh.getBoneIndexBuffer());
+                            SkinUtil.getBackend().copyBoneMatrix(offsetMatrixbuffer, fb, skinMesh.getBoneIndexBuffer());
                         }
-                        if (glslSkinning) {
-                            if (skinMesh.boneMatricesParamIndex < 0) {
-                                m.setParam("BoneMatrices", VarType.Matrix4Array, fb);
-                                skinMesh.boneMatricesParamIndex = g.getMaterial().getParamIndex("BoneMatrices");
-                            } else {
-                                m.setParam(skinMesh.boneMatricesParamIndex, VarType.Matrix4Array, fb);
-                            }
+                        // skin meshes are always skinned by the shader
+                        if (skinMesh.boneMatricesParamIndex < 0) {
+                            m.setParam("BoneMatrices", VarType.Matrix4Array, fb);
+                            skinMesh.boneMatricesParamIndex = g.getMaterial().getParamIndex("BoneMatrices");
+                        } else {
+                            m.setParam(skinMesh.boneMatricesParamIndex, VarType.Matrix4Array, fb);
                         }
                     }
                 }
             }
             if (!glslSkinning) {
-                for (PMDMesh mesh : targets) {
-                    softwareSkinUpdate(mesh);
-                }
+                softwareSkinUpdate();
             }
 //            updateSkinMesh(skinTargets[0]);
 //            if (skinUpdateNeeded) {
@@ -373,9 +378,10 @@ boolean setBoneMatricesFlag = true;
         }
     }
     private void swapSkinMesh() {
-        if (skinTargets.length == 0) {
+        if (skinTargets.length == 0 || !skinBackDataChanged) {
             return;
         }
+        skinBackDataChanged = false;
         VertexBuffer vb = skinTargets[0].getBuffer(VertexBuffer.Type.Position);
 //        VertexBuffer nb = skinTargets[0].getBuffer(VertexBuffer.Type.Normal);
         skinTargets[0].skinvb2.setUpdateNeeded();
@@ -394,99 +400,51 @@ boolean setBoneMatricesFlag = true;
 //        vb.setUpdateNeeded();
 //        nb.setUpdateNeeded();
     }
-    private void softwareSkinUpdate(PMDMesh mesh){
-        int maxWeightsPerVert = 2;//mesh.getMaxNumWeights();
-        int fourMinusMaxWeights = 4 - maxWeightsPerVert;
-//        Matrix4f[] offsetMatrices = mesh.getBoneMatrixArray();
-
-        // NOTE: This code assumes the vertex buffer is in bind pose
-        // resetToBind() has been called this frame
-        resetToBind(mesh);
-        VertexBuffer vb = mesh.getBuffer(VertexBuffer.Type.Position);
-        FloatBuffer fvb = (FloatBuffer) vb.getData();
-        fvb.rewind();
-
-        VertexBuffer nb = mesh.getBuffer(VertexBuffer.Type.Normal);
-        FloatBuffer fnb = (FloatBuffer) nb.getData();
-        fnb.rewind();
-        
-        FloatBuffer fvb2 = (FloatBuffer)mesh.getVbBackup().getData();
-        fvb2.rewind();
-        FloatBuffer fnb2 = (FloatBuffer)mesh.getNbBackup().getData();
-        fnb2.rewind();
-        
-        // get boneIndexes and weights for mesh
-        ShortBuffer ib = (ShortBuffer) mesh.getBuffer(VertexBuffer.Type.BoneIndex).getData();
-        FloatBuffer wb = (FloatBuffer) mesh.getBuffer(VertexBuffer.Type.BoneWeight).getData();
-
-        ib.rewind();
-        wb.rewind();
-
-//        float[] weights = wb.array();
-//        short[] indices = ib.array();
-        int idxWeights = 0;
-
-        TempVars vars = TempVars.get();
-        float[] posBuf = vars.skinPositions;
-        float[] normBuf = vars.skinNormals;
-
-        int iterations = (int) FastMath.ceil(fvb.capacity() / ((float)posBuf.length));
-        int bufLength = posBuf.length * 3;
-        for (int i = iterations-1; i >= 0; i--){
-            // read next set of positions and normals from native buffer
-            bufLength = Math.min(posBuf.length, fvb.remaining());
-            fvb2.get(posBuf, 0, bufLength);
-            fnb2.get(normBuf, 0, bufLength);
-            int verts = bufLength / 3;
-            int idxPositions = 0;
-
-            // iterate vertices and apply skinning transform for each effecting bone
-            for (int vert = verts - 1; vert >= 0; vert--){
-                float nmx = normBuf[idxPositions];
-                float vtx = posBuf[idxPositions++];
-                float nmy = normBuf[idxPositions];
-                float vty = posBuf[idxPositions++];
-                float nmz = normBuf[idxPositions];
-                float vtz = posBuf[idxPositions++];
-
-                float rx=0, ry=0, rz=0, rnx=0, rny=0, rnz=0;
-
-                for (int w = maxWeightsPerVert - 1; w >= 0; w--){
-                    float weight = wb.get(idxWeights); //weights[idxWeights];
-                    Matrix4f mat = mesh.getBoneMatrixArray()[ib.get(idxWeights++)];//offsetMatrices[indices[idxWeights++]];
-
-                    rx += (mat.m00 * vtx + mat.m01 * vty + mat.m02 * vtz + mat.m03) * weight;
-                    ry += (mat.m10 * vtx + mat.m11 * vty + mat.m12 * vtz + mat.m13) * weight;
-                    rz += (mat.m20 * vtx + mat.m21 * vty + mat.m22 * vtz + mat.m23) * weight;
-
-                    rnx += (nmx * mat.m00 + nmy * mat.m01 + nmz * mat.m02) * weight;
-                    rny += (nmx * mat.m10 + nmy * mat.m11 + nmz * mat.m12) * weight;
-                    rnz += (nmx * mat.m20 + nmy * mat.m21 + nmz * mat.m22) * weight;
-                }
-
-                idxWeights += fourMinusMaxWeights;
-
-                idxPositions -= 3;
-                normBuf[idxPositions] = rnx;
-                posBuf[idxPositions++] = rx;
-                normBuf[idxPositions] = rny;
-                posBuf[idxPositions++] = ry;
-                normBuf[idxPositions] = rnz;
-                posBuf[idxPositions++] = rz;
+    /**
+     * Skins the vertices of all PMDMeshes on the CPU with getSoftwareSkinner().
+     */
+    private void softwareSkinUpdate() {
+        if (offsetMatrices == null) {
+            calcOffsetMatrices();
+        }
+        if (skinJobs == null || skinJobs.length != targets.length) {
+            skinJobs = new SoftwareSkinner.SkinJob[targets.length];
+        }
+        for (int i = 0; i < targets.length; i++) {
+            PMDMesh mesh = targets[i];
+            if (mesh.skinJob == null) {
+                // cloned meshes share the buffers until they are skinned once
+                mesh.createSoftwareSkinningBuffers();
             }
+            SoftwareSkinner.fillPalette(offsetMatrices, mesh.getBoneIndexArray(), mesh.skinJob.palette);
+            skinJobs[i] = mesh.skinJob;
+        }
+        getSoftwareSkinner().skin(skinJobs);
+        for (PMDMesh mesh : targets) {
+            mesh.getBuffer(VertexBuffer.Type.Position).setUpdateNeeded();
+            mesh.getBuffer(VertexBuffer.Type.Normal).setUpdateNeeded();
+        }
+    }
 
+    public SoftwareSkinner getSoftwareSkinner() {
+        return softwareSkinner != null ? softwareSkinner : SoftwareSkinner.getDefault();
+    }
 
-//            fvb.position(fvb2.position()-bufLength);
-            fvb.put(posBuf, 0, bufLength);
-//            fnb.position(fnb2.position()-bufLength);
-            fnb.put(normBuf, 0, bufLength);
-        }
-        vb.setUpdateNeeded();
-        nb.setUpdateNeeded();
-        vars.release();
-        
-//        mesh.updateBound();
+    /**
+     * Sets the skinner used when glslSkinning is false.
+     * null uses SoftwareSkinner.getDefault().
+     */
+    public void setSoftwareSkinner(SoftwareSkinner softwareSkinner) {
+        this.softwareSkinner = softwareSkinner;
     }
+    /**
+     * Applies the current skin weights to the back position buffer
+     * (skinvb2). Each of the two swapped buffers remembers the weights it
+     * was built with, so only skins whose weight changed are added as a
+     * weight delta, and nothing is written when no weight changed.
+     * The buffer is rebuilt from skinPosBuffer every
+     * MAX_INCREMENTAL_SKIN_UPDATES updates to drop accumulated rounding error.
+     */
     public void updateSkinBackData() {
         if (skinTargets.length == 0) {
             return;
@@ -494,35 +452,73 @@ boolean setBoneMatricesFlag = true;
         PMDSkinMesh skinMesh = skinTargets[0];
         VertexBuffer vb = skinMesh.getSkinvb2(); //.getBuffer(Type.Position);
         FloatBuffer fvb = (FloatBuffer) vb.getData();
-        fvb.position(0);
-//        float[] floatBuf = skinPosBuffer.array();
-        int length = fvb.capacity();
-//        for(int i=0;i<length;i++) {
-//            fvb.put(floatBuf[i]);
-//        }
-        projectkyoto.jme3.mmd.nativelib.SkinUtil.copy(skinPosBuffer, fvb, fvb.limit() * 4);
-        for (Skin skin : skinArray) {
-            if (true || skin.isUpdateNeeded()) {
+        SkinBufferState state = getSkinBufferState(vb);
+        SkinUtilBackend skinUtil = SkinUtil.getBackend();
+        float[] appliedWeights = state.appliedWeights;
+        boolean changed = false;
+        if (appliedWeights == null || appliedWeights.length != skinArray.length
+                || state.incrementalUpdates >= MAX_INCREMENTAL_SKIN_UPDATES) {
+            if (appliedWeights == null || appliedWeights.length != skinArray.length) {
+                appliedWeights = new float[skinArray.length];
+                state.appliedWeights = appliedWeights;
+            }
+            skinUtil.copy(skinPosBuffer, fvb, fvb.limit() * 4);
+            for (int i = 0; i < skinArray.length; i++) {
+                Skin skin = skinArray[i];
                 float weight = skin.getWeight();
                 if (weight != 0f) {
-//                    for (PMDSkinVertData svd : skin.getSkinData().getSkinVertData()) {
-//                        javax.vecmath.Vector3f svp = svd.getSkinVertPos();
-//                        javax.vecmath.Vector3f svop = skinPosArrayOrig[svd.getSkinVertIndex()];
-//                        fvb.position(svd.getSkinVertIndex() * 3);
-//                        fvb.put(svp.x*weight+svop.x).put(svp.y*weight+svop.y).put(svp.z*weight+svop.z);
-//                    }
-                    projectkyoto.jme3.mmd.nativelib.SkinUtil.setSkin(fvb, skin.getIndexBuf(), skin.getSkinBuf(), weight);
-                    
+                    skinUtil.setSkin(fvb, skin.getIndexBuf(), skin.getSkinBuf(), weight);
+                }
+                appliedWeights[i] = weight;
+                skin.setUpdateNeeded(false);
+            }
+            state.incrementalUpdates = 0;
+            changed = true;
+        } else {
+            for (int i = 0; i < skinArray.length; i++) {
+                Skin skin = skinArray[i];
+                float weight = skin.getWeight();
+                float delta = weight - appliedWeights[i];
+                if (delta != 0f) {
+                    skinUtil.setSkin(fvb, skin.getIndexBuf(), skin.getSkinBuf(), delta);
+                    appliedWeights[i] = weight;
+                    changed = true;
                 }
                 skin.setUpdateNeeded(false);
             }
+            if (changed) {
+                state.incrementalUpdates++;
+            }
+        }
+        if (changed) {
+            vb.setUpdateNeeded();
+            skinBackDataChanged = true;
         }
-
-        vb.setUpdateNeeded();
 //        nb.setUpdateNeeded();
         skinUpdateNeeded = false;
     }
 
+    private SkinBufferState getSkinBufferState(VertexBuffer vb) {
+        for (SkinBufferState state : skinBufferStates) {
+            if (state.vb == vb) {
+                return state;
+            }
+        }
+        // a new buffer (first update or setSkinvb2()), replace the older state
+        SkinBufferState state = skinBufferStates[skinBufferStates.length - 1];
+        skinBufferStates[skinBufferStates.length - 1] = skinBufferStates[0];
+        skinBufferStates[0] = state;
+        state.vb = vb;
+        state.appliedWeights = null;
+        return state;
+    }
+
+    static final class SkinBufferState {
+
+        VertexBuffer vb;
+        float[] appliedWeights;
+        int incrementalUpdates;
+    }
 
     public void resetToBind() {
         for (int i = 0; i < skeleton.getBoneCount(); i++) {
@@ -596,6 +592,35 @@ boolean setBoneMatricesFlag = true;
         vb.setUpdateNeeded();
 //        nb.setUpdateNeeded();
     }
+    private static SkinBufferState[] createSkinBufferStates() {
+        return new SkinBufferState[]{new SkinBufferState(), new SkinBufferState()};
+    }
+
+    public Skin[] getSkinArray() {
+        return skinArray;
+    }
+
+    /**
+     * Returns the index of the skin in getSkinArray(), or -1.
+     */
+    public int getSkinIndex(String skinName) {
+        for (int i = 0; i < skinArray.length; i++) {
+            if (skinArray[i].getSkinName().equals(skinName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public float getSkinWeight(int skinIndex) {
+        return skinArray[skinIndex].getWeight();
+    }
+
+    public void setSkinWeight(int skinIndex, float weight) {
+        skinArray[skinIndex].setWeight(weight);
+        skinUpdateNeeded = true;
+    }
+
     public Set<String> getSkinSet() {
         return skinMap.keySet();
     }
@@ -801,27 +826,26 @@ boolean setBoneMatricesFlag = true;
         return glslSkinning;
     }
 
+    /**
+     * false skins the PMDMeshes on the CPU with getSoftwareSkinner(), for
+     * renderers without GLSL skinning. Skin (morph) meshes are always
+     * skinned by the shader.
+     */
     public void setGlslSkinning(boolean glslSkinning) {
-//        this.glslSkinning = glslSkinning;
-//        for (Spatial sp : getChildren()) {
-//            if (sp instanceof PMDGeometry) {
-//                Mesh mesh = ((PMDGeometry) sp).getMesh();
-//                if (mesh instanceof PMDMesh) {
-//                    PMDMesh pmdMesh = (PMDMesh)mesh;
-//                    resetToBind(pmdMesh);
-//                    if (glslSkinning) {
-//                        pmdMesh.releaseSoftwareSkinningBufferes();
-//                        mesh.getBuffer(Type.Position).setUsage(Usage.Static);
-//                        mesh.getBuffer(Type.Normal).setUsage(Usage.Static);
-//                    } else {
-//                        pmdMesh.createSoftwareSkinningBuffers();
-//                        mesh.getBuffer(Type.Position).setUsage(Usage.Dynamic);
-//                        mesh.getBuffer(Type.Normal).setUsage(Usage.Dynamic);
-//                    }
-//                }
-//            }
-//        }
-//        initMaterials();
+        if (this.glslSkinning == glslSkinning) {
+            return;
+        }
+        this.glslSkinning = glslSkinning;
+        for (PMDMesh pmdMesh : targets) {
+            resetToBind(pmdMesh);
+            if (glslSkinning) {
+                pmdMesh.releaseSoftwareSkinningBufferes();
+            } else {
+                pmdMesh.createSoftwareSkinningBuffers();
+            }
+        }
+        skinJobs = null;
+        initMaterials();
     }
 
     @Override
@@ -894,13 +918,19 @@ boolean setBoneMatricesFlag = true;
                 }
             }
             newPMDNode.skinMap = new HashMap<String, Skin>();
-            for(String skinName : skinMap.keySet()) {
-                Skin skin = skinMap.get(skinName);
-                skin = skin.clone();
+            // keep the order of skinArray so skin indexes match the original
+            Skin[] skins = skinArray.length == skinMap.size() ? skinArray
+                    : skinMap.values().toArray(new Skin[skinMap.size()]);
+            newPMDNode.skinArray = new Skin[skins.length];
+            for(int i=0;i<skins.length;i++) {
+                Skin skin = skins[i].clone();
                 skin.pmdNode = newPMDNode;
-                newPMDNode.skinMap.put(skinName, skin);
+                newPMDNode.skinMap.put(skin.getSkinName(), skin);
+                newPMDNode.skinArray[i] = skin;
             }
-            newPMDNode.skinArray = newPMDNode.skinMap.values().toArray(new Skin[newPMDNode.skinMap.size()]);
+            newPMDNode.skinBufferStates = createSkinBufferStates();
+            newPMDNode.skinBackDataChanged = false;
+            newPMDNode.skinJobs = null;
 //            newPMDNode.skinPosArray = new javax.vecmath.Vector3f[skinPosArray.length];
 //            for(int i=0;i<skinPosArray.length;i++) {
 //                newPMDNode.skinPosArray[i] = new javax.vecmath.Vector3f(skinPosArray[i]);
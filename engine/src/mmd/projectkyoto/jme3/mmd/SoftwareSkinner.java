@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2010-2014, Kazuhiko Kobayashi
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package projectkyoto.jme3.mmd;
+
+import com.jme3.math.Matrix4f;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CPU skinning used by PMDNode when glslSkinning is false.
+ * The vertices of all meshes are split into ranges which are skinned in
+ * parallel. Bone matrices are read from a flat float[] palette, and
+ * positions and normals are written in one pass.
+ * @author kobayasi
+ */
+public class SoftwareSkinner {
+
+    /**
+     * Smallest vertex range given to a thread.
+     */
+    static final int MIN_VERTICES_PER_TASK = 2048;
+    /**
+     * Vertices copied from the buffers at once.
+     */
+    static final int CHUNK_SIZE = 512;
+    /**
+     * 3 x 4 row major matrix per bone.
+     */
+    public static final int PALETTE_STRIDE = 12;
+    private static SoftwareSkinner defaultSkinner;
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+    private final int threadCount;
+    private final ThreadLocal<float[]> chunkBuffer = new ThreadLocal<float[]>() {
+
+        @Override
+        protected float[] initialValue() {
+            // positions, normals, weights
+            return new float[CHUNK_SIZE * 8];
+        }
+    };
+    private final ThreadLocal<short[]> chunkIndexBuffer = new ThreadLocal<short[]>() {
+
+        @Override
+        protected short[] initialValue() {
+            return new short[CHUNK_SIZE * 2];
+        }
+    };
+
+    /**
+     * @param threadCount threads skinning at the same time, including the
+     * calling thread. 1 skins on the calling thread only.
+     */
+    public SoftwareSkinner(int threadCount) {
+        this(threadCount > 1 ? Executors.newFixedThreadPool(threadCount - 1, new SkinnerThreadFactory()) : null,
+                Math.max(threadCount, 1), true);
+    }
+
+    /**
+     * @param executor the executor is not shut down by shutdown().
+     * @param threadCount threads skinning at the same time, including the
+     * calling thread.
+     */
+    public SoftwareSkinner(ExecutorService executor, int threadCount) {
+        this(executor, Math.max(threadCount, 1), false);
+    }
+
+    private SoftwareSkinner(ExecutorService executor, int threadCount, boolean ownExecutor) {
+        this.executor = executor;
+        this.threadCount = threadCount;
+        this.ownExecutor = ownExecutor;
+    }
+
+    /**
+     * The skinner used by PMDNodes without their own one. It uses one thread
+     * per processor.
+     */
+    public static synchronized SoftwareSkinner getDefault() {
+        if (defaultSkinner == null) {
+            defaultSkinner = new SoftwareSkinner(Runtime.getRuntime().availableProcessors());
+        }
+        return defaultSkinner;
+    }
+
+    public static synchronized void setDefault(SoftwareSkinner skinner) {
+        defaultSkinner = skinner;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void shutdown() {
+        if (ownExecutor && executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Copies offsetMatrices[boneIndexArray[i]] to palette as 3 x 4 row
+     * major matrices.
+     */
+    public static void fillPalette(Matrix4f[] offsetMatrices, int[] boneIndexArray, float[] palette) {
+        int p = 0;
+        for (int i = 0; i < boneIndexArray.length; i++) {
+            Matrix4f m = offsetMatrices[boneIndexArray[i]];
+            palette[p++] = m.m00;
+            palette[p++] = m.m01;
+            palette[p++] = m.m02;
+            palette[p++] = m.m03;
+            palette[p++] = m.m10;
+            palette[p++] = m.m11;
+            palette[p++] = m.m12;
+            palette[p++] = m.m13;
+            palette[p++] = m.m20;
+            palette[p++] = m.m21;
+            palette[p++] = m.m22;
+            palette[p++] = m.m23;
+        }
+    }
+
+    /**
+     * Skins all jobs and returns when every vertex is written.
+     */
+    public void skin(SkinJob[] jobs) {
+        int vertexCount = 0;
+        for (SkinJob job : jobs) {
+            vertexCount += job.vertexCount;
+        }
+        int taskCount = Math.min(threadCount, vertexCount / MIN_VERTICES_PER_TASK);
+        if (taskCount <= 1 || executor == null) {
+            for (SkinJob job : jobs) {
+                skin(job, 0, job.vertexCount);
+            }
+            return;
+        }
+        // split the vertices of all jobs into taskCount equal parts
+        int verticesPerTask = (vertexCount + taskCount - 1) / taskCount;
+        ArrayList<SkinTask> tasks = new ArrayList<SkinTask>(taskCount);
+        SkinTask task = new SkinTask();
+        for (SkinJob job : jobs) {
+            int start = 0;
+            while (start < job.vertexCount) {
+                int end = Math.min(job.vertexCount, start + verticesPerTask - task.vertexCount);
+                task.add(job, start, end);
+                start = end;
+                if (task.vertexCount >= verticesPerTask) {
+                    tasks.add(task);
+                    task = new SkinTask();
+                }
+            }
+        }
+        if (task.vertexCount > 0) {
+            tasks.add(task);
+        }
+        ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>(tasks.size() - 1);
+        for (int i = 1; i < tasks.size(); i++) {
+            futures.add(executor.submit(tasks.get(i)));
+        }
+        RuntimeException exception = null;
+        try {
+            tasks.get(0).call();
+        } catch (RuntimeException ex) {
+            exception = ex;
+        }
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            if (exception == null) {
+                exception = cause instanceof RuntimeException
+                        ? (RuntimeException) cause : new RuntimeException(cause);
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * Skins the vertices [start, end) of job on the calling thread.
+     */
+    void skin(SkinJob job, int start, int end) {
+        float[] buf = chunkBuffer.get();
+        short[] indexBuf = chunkIndexBuffer.get();
+        float[] palette = job.palette;
+        // duplicates, because other threads use the positions of the buffers
+        FloatBuffer srcPos = job.srcPos.duplicate();
+        FloatBuffer srcNorm = job.srcNorm.duplicate();
+        ShortBuffer boneIndex = job.boneIndex.duplicate();
+        FloatBuffer boneWeight = job.boneWeight.duplicate();
+        FloatBuffer dstPos = job.dstPos.duplicate();
+        FloatBuffer dstNorm = job.dstNorm.duplicate();
+        srcPos.clear().position(start * 3);
+        srcNorm.clear().position(start * 3);
+        boneIndex.clear().position(start * 2);
+        boneWeight.clear().position(start * 2);
+        dstPos.clear().position(start * 3);
+        dstNorm.clear().position(start * 3);
+        final int normOffset = CHUNK_SIZE * 3;
+        final int weightOffset = CHUNK_SIZE * 6;
+        for (int chunkStart = start; chunkStart < end; chunkStart += CHUNK_SIZE) {
+            int verts = Math.min(CHUNK_SIZE, end - chunkStart);
+            srcPos.get(buf, 0, verts * 3);
+            srcNorm.get(buf, normOffset, verts * 3);
+            boneWeight.get(buf, weightOffset, verts * 2);
+            boneIndex.get(indexBuf, 0, verts * 2);
+            for (int v = 0; v < verts; v++) {
+                int p = v * 3;
+                int n = normOffset + p;
+                float vtx = buf[p];
+                float vty = buf[p + 1];
+                float vtz = buf[p + 2];
+                float nmx = buf[n];
+                float nmy = buf[n + 1];
+                float nmz = buf[n + 2];
+                float w1 = buf[weightOffset + v * 2];
+                float w2 = buf[weightOffset + v * 2 + 1];
+                int m1 = (indexBuf[v * 2] & 0xffff) * PALETTE_STRIDE;
+                int m2 = (indexBuf[v * 2 + 1] & 0xffff) * PALETTE_STRIDE;
+                // blend the two matrices, then transform once
+                float a00 = palette[m1] * w1 + palette[m2] * w2;
+                float a01 = palette[m1 + 1] * w1 + palette[m2 + 1] * w2;
+                float a02 = palette[m1 + 2] * w1 + palette[m2 + 2] * w2;
+                float a03 = palette[m1 + 3] * w1 + palette[m2 + 3] * w2;
+                float a10 = palette[m1 + 4] * w1 + palette[m2 + 4] * w2;
+                float a11 = palette[m1 + 5] * w1 + palette[m2 + 5] * w2;
+                float a12 = palette[m1 + 6] * w1 + palette[m2 + 6] * w2;
+                float a13 = palette[m1 + 7] * w1 + palette[m2 + 7] * w2;
+                float a20 = palette[m1 + 8] * w1 + palette[m2 + 8] * w2;
+                float a21 = palette[m1 + 9] * w1 + palette[m2 + 9] * w2;
+                float a22 = palette[m1 + 10] * w1 + palette[m2 + 10] * w2;
+                float a23 = palette[m1 + 11] * w1 + palette[m2 + 11] * w2;
+                buf[p] = a00 * vtx + a01 * vty + a02 * vtz + a03;
+                buf[p + 1] = a10 * vtx + a11 * vty + a12 * vtz + a13;
+                buf[p + 2] = a20 * vtx + a21 * vty + a22 * vtz + a23;
+                buf[n] = a00 * nmx + a01 * nmy + a02 * nmz;
+                buf[n + 1] = a10 * nmx + a11 * nmy + a12 * nmz;
+                buf[n + 2] = a20 * nmx + a21 * nmy + a22 * nmz;
+            }
+            dstPos.put(buf, 0, verts * 3);
+            dstNorm.put(buf, normOffset, verts * 3);
+        }
+    }
+
+    /**
+     * One mesh to skin. palette holds PALETTE_STRIDE floats for each bone of
+     * the mesh and is filled by the caller before skin().
+     */
+    public static class SkinJob {
+
+        final float[] palette;
+        final FloatBuffer srcPos;
+        final FloatBuffer srcNorm;
+        final ShortBuffer boneIndex;
+        final FloatBuffer boneWeight;
+        final FloatBuffer dstPos;
+        final FloatBuffer dstNorm;
+        final int vertexCount;
+
+        /**
+         * @param boneIndex 2 unsigned bone indexes per vertex.
+         * @param boneWeight 2 weights per vertex.
+         */
+        public SkinJob(int boneCount, FloatBuffer srcPos, FloatBuffer srcNorm,
+                ShortBuffer boneIndex, FloatBuffer boneWeight,
+                FloatBuffer dstPos, FloatBuffer dstNorm) {
+            this.palette = new float[boneCount * PALETTE_STRIDE];
+            this.srcPos = srcPos;
+            this.srcNorm = srcNorm;
+            this.boneIndex = boneIndex;
+            this.boneWeight = boneWeight;
+            this.dstPos = dstPos;
+            this.dstNorm = dstNorm;
+            this.vertexCount = srcPos.capacity() / 3;
+        }
+
+        public float[] getPalette() {
+            return palette;
+        }
+
+        public int getVertexCount() {
+            return vertexCount;
+        }
+    }
+
+    class SkinTask implements Callable<Void> {
+
+        final ArrayList<SkinJob> jobs = new ArrayList<SkinJob>(2);
+        final ArrayList<int[]> ranges = new ArrayList<int[]>(2);
+        int vertexCount;
+
+        void add(SkinJob job, int start, int end) {
+            jobs.add(job);
+            ranges.add(new int[]{start, end});
+            vertexCount += end - start;
+        }
+
+        public Void call() {
+            for (int i = 0; i < jobs.size(); i++) {
+                int[] range = ranges.get(i);
+                skin(jobs.get(i), range[0], range[1]);
+            }
+            return null;
+        }
+    }
+
+    static class SkinnerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "SoftwareSkinner-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
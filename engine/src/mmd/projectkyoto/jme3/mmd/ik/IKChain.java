@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2010-2014, Kazuhiko Kobayashi
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package projectkyoto.jme3.mmd.ik;
+
+import com.jme3.animation.Bone;
+import com.jme3.animation.Skeleton;
+import com.jme3.math.FastMath;
+import java.util.ArrayList;
+import projectkyoto.mmd.file.PMDBone;
+import projectkyoto.mmd.file.PMDIKData;
+
+/**
+ * One IK chain of a PMDNode, resolved to bones once, with solver statistics.
+ * The statistics are written by the thread updating the IKControl.
+ * @author kobayasi
+ */
+public class IKChain {
+
+    final PMDIKData ikData;
+    final Bone ikBone;
+    final Bone targetBone;
+    final Bone[] bones;
+    final int iterations;
+    final float controlWeight;
+    /**
+     * cos, sin of controlWeight / 2. The rotation of a step is limited
+     * to controlWeight.
+     */
+    final float limitCos;
+    final float limitHalfCos;
+    final float limitHalfSin;
+    /**
+     * Index of the knee bone in bones, or -1.
+     */
+    final int hizaIndex;
+    /**
+     * Bones from the last (root side) chain bone to the target bone.
+     * While solving only this path is updated, and the subtree is updated
+     * once at the end. null if the chain bones are not all on the path.
+     */
+    final Bone[] path;
+    final int[] pathStart;
+
+    int lastIterationCount;
+    long totalIterationCount;
+    long solveCount;
+    long earlyExitCount;
+    float lastError;
+
+    IKChain(PMDIKData ikData, PMDBone[] pmdBones, Skeleton skeleton) {
+        this.ikData = ikData;
+        ikBone = skeleton.getBone(ikData.getIkBoneIndex());
+        targetBone = skeleton.getBone(ikData.getIkTargetBoneIndex());
+        int[] ikChildBoneIndex = ikData.getIkChildBoneIndex();
+        bones = new Bone[ikData.getIkChainLength()];
+        int hiza = -1;
+        for (int i = 0; i < bones.length; i++) {
+            bones[i] = skeleton.getBone(ikChildBoneIndex[i]);
+            PMDBone pmdBone = pmdBones[ikChildBoneIndex[i]];
+            if (pmdBone.isHiza() && hiza < 0) {
+                if (bones.length < 2) {
+                    pmdBone.setHiza(false);
+                } else {
+                    hiza = i;
+                }
+            }
+        }
+        hizaIndex = hiza;
+        iterations = ikData.getIterations();
+        controlWeight = ikData.getControlWeight();
+        limitCos = controlWeight < FastMath.PI ? FastMath.cos(controlWeight) : -1f;
+        limitHalfCos = FastMath.cos(controlWeight * 0.5f);
+        limitHalfSin = FastMath.sin(controlWeight * 0.5f);
+
+        Bone[] p = null;
+        int[] start = null;
+        if (hiza < 0 && bones.length > 0) {
+            ArrayList<Bone> list = new ArrayList<Bone>();
+            Bone top = bones[bones.length - 1];
+            for (Bone b = targetBone; b != null; b = b.getParent()) {
+                list.add(0, b);
+                if (b == top) {
+                    break;
+                }
+            }
+            if (list.get(0) == top && !isDescendant(ikBone, top)) {
+                start = new int[bones.length];
+                for (int i = 0; i < bones.length; i++) {
+                    start[i] = list.indexOf(bones[i]);
+                    if (start[i] < 0) {
+                        start = null;
+                        break;
+                    }
+                }
+                if (start != null) {
+                    p = list.toArray(new Bone[list.size()]);
+                }
+            }
+        }
+        path = p;
+        pathStart = start;
+    }
+
+    private static boolean isDescendant(Bone bone, Bone ancestor) {
+        for (Bone b = bone; b != null; b = b.getParent()) {
+            if (b == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public PMDIKData getIkData() {
+        return ikData;
+    }
+
+    public Bone getIkBone() {
+        return ikBone;
+    }
+
+    public Bone getTargetBone() {
+        return targetBone;
+    }
+
+    /**
+     * Iterations run by the last solve.
+     */
+    public int getLastIterationCount() {
+        return lastIterationCount;
+    }
+
+    public long getTotalIterationCount() {
+        return totalIterationCount;
+    }
+
+    public long getSolveCount() {
+        return solveCount;
+    }
+
+    /**
+     * Solves that stopped before getIkData().getIterations() because the
+     * target was reached or the error stopped decreasing.
+     */
+    public long getEarlyExitCount() {
+        return earlyExitCount;
+    }
+
+    /**
+     * Squared model space distance between the target bone and the IK bone
+     * after the last solve.
+     */
+    public float getLastError() {
+        return lastError;
+    }
+
+    public void resetStatistics() {
+        lastIterationCount = 0;
+        totalIterationCount = 0;
+        solveCount = 0;
+        earlyExitCount = 0;
+        lastError = 0f;
+    }
+}
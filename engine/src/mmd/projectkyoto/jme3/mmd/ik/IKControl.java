@@ -73,8 +73,6 @@ public class IKControl extends AbstractControl{
     private static final float kMinDistance = 0.0001f;
     private static final float kMinAngle = 0.00000001f;
     private static final float kMinAxis = 0.0000001f;
-    private static final float kMinRotSum = 0.002f;
-    private static final float kMinRotation = 0.00001f;
     float buf[] = new float[3];
     Vector3f tmpV1 = new Vector3f();
     Vector3f tmpV2 = new Vector3f();
@@ -84,151 +82,129 @@ public class IKControl extends AbstractControl{
     Matrix4f tmpM41 = new Matrix4f();
     Matrix3f tmpM31 = new Matrix3f();
     Quaternion tmpQ1 = new Quaternion();
+    Quaternion tmpQ2 = new Quaternion();
+    IKChain[] chains;
+    /**
+     * A chain stops iterating when an iteration reduces the squared
+     * distance to the target by less than this ratio.
+     */
+    float minErrorImprovement = 0.001f;
 
     public void updateIKBoneRotation() {
-        final PMDModel pmdModel = pmdNode.getPmdModel();
-        final Skeleton skeleton = pmdNode.getSkeleton();
-//        skeleton.updateWorldVectors();
-        l1:
-        for (PMDIKData ikData : pmdModel.getIkList().getPmdIKData()) {
-            if (boneEnabled != null && boneEnabled[ikData.getIkBoneIndex()] != 1) {
-                continue l1;
-            }
-            final Bone ikBone = skeleton.getBone(ikData.getIkBoneIndex());
-            final Bone targetBone = skeleton.getBone(ikData.getIkTargetBoneIndex());
-            final int iterations = ikData.getIterations();
-            l2:
-            for (int iterationCount = 0; iterationCount < iterations; iterationCount++) {
-                final int ikChainLength = ikData.getIkChainLength();
-                final int[] ikChildBoneIndex = ikData.getIkChildBoneIndex();
-                l3:
-                for (int boneCount = 0; boneCount < ikChainLength; boneCount++) {
-                    Bone currentBone = skeleton.getBone(ikChildBoneIndex[boneCount]);
-                    Vector3f effectorModelPos = tmpV1.set(targetBone.getModelSpacePosition());
-                    Vector3f targetModelPos = tmpV2.set(ikBone.getModelSpacePosition());
-                    boolean hizaFlag = pmdModel.getBoneList().getBones()[ikData.getIkChildBoneIndex()[boneCount]].isHiza();
-                    if (hizaFlag) {
-                        if (ikData.getIkChainLength() < 2) {
-                            pmdModel.getBoneList().getBones()[ikData.getIkChildBoneIndex()[boneCount]].setHiza(false);
-                        } else {
-                            hizaIK(ikData);
-                            break l2;
-                        }
-                    }
-//                    hizaFlag = false;
-//                    if (hizaFlag)
-//                    System.out.println("ひざ");
-//                    if (!calcIk(ikData, currentBone, effectorModelPos,
-//                            targetModelPos, iterationCount, hizaFlag)) {
-//                        break l2;
-//                    }
-                    {
-                        Matrix4f m = BoneUtil.getModelToBoneMatrix(currentBone, tmpM41, tmpM31);
-                        Vector3f targetBonePos = tmpV3;
-                        m.mult(targetModelPos, targetBonePos);
-                        Vector3f effectorBonePos = tmpV4;
-                        m.mult(effectorModelPos, effectorBonePos);
-
-                        if (targetBonePos.distanceSquared(effectorBonePos) < kMinDistance) {
-//                            System.out.println("iteration = "+iterationCount);
-                            break l2;
-                        }
-                        Quaternion rot = tmpQ1;
-                        {
-                            targetBonePos.normalizeLocal();
-                            effectorBonePos.normalizeLocal();
-                            float dot = targetBonePos.dot(effectorBonePos);
-//        System.out.println("dot = " + dot);
-                            if (dot > 1.0f) {
-                                continue l3;
-                            }
-                            float angle = FastMath.acos(dot);
-//                            System.out.println(currentBone.getName()+ " angle = "+angle);
-                            if (FastMath.abs(angle) >= kMinAngle) {
-//            System.out.println("angle = " + angle);
-                                if (angle < -ikData.getControlWeight()) {
-                                    angle = -ikData.getControlWeight();
-                                } else if (angle > ikData.getControlWeight()) {
-                                    angle = ikData.getControlWeight();
-                                }
-
-                                Vector3f axis = effectorBonePos.cross(targetBonePos, tmpV5);
-//                                Vector3f axis = targetBonePos.cross(effectorBonePos);
-                                if (axis.lengthSquared() < kMinAxis && iterationCount > 0) {
-                                    continue l3;
-                                }
-                                axis.normalizeLocal();
-//            System.out.println("axis = " + axis);
-                                rot.fromAngleNormalAxis(angle, axis);
-//            rot.normalize();
-                                if (hizaFlag) {
-                                    if (iterationCount == -1) {
-                                        if (angle < 0.0f) {
-                                            angle = -angle;
-                                            rot.fromAngleAxis(angle, axis);
-//                                            rot.toAngles(buf);
-//                                            rot.fromAngles(buf[0],0f,0f);
-                                        }
-////                                        rot.fromAngles(FastMath.PI/2f,0f,0f);
-//                                        currentBone.getLocalRotation().set(rot);
-//                                        updateWorldVectors(currentBone);
-//                                        continue;
-//                                        rot.fromAngleAxis(angle, axis);
-//                                        rot.toAngles(buf);
-//                                        if (buf[0] < 0.0f) {
-//                                            buf[0] = -buf[0];
-//                                        }
-//                                        currentBone.getLocalRotation().fromAngles(FastMath.PI*0.1f,0f,0f);
+        for (IKChain chain : getChains()) {
+            solve(chain);
+        }
+    }
 
-//                                        updateWorldVectors(currentBone);
-//                                        continue;                                        
-                                    } else {
-                                        rot.toAngles(buf);
-                                        float x = buf[0];
-                                        Quaternion currentRot = currentBone.getLocalRotation();
-                                        currentRot.toAngles(buf);
-                                        float x2 = buf[0];
-                                        if (x2 + x > FastMath.PI) {
-                                            x = FastMath.PI - x2;
-                                        }
-                                        if (kMinRotSum > x + x2) {
-                                            x = kMinRotSum - x2;
-                                        }
-                                        if (x + x2 < 0) {
-                                            x = -(x + x2) - x2;
-                                        } else if (x < -ikData.getControlWeight()) {
-                                            x = -ikData.getControlWeight();
-                                        } else if (x > ikData.getControlWeight()) {
-                                            x = ikData.getControlWeight();
-                                        }
-                                        if (FastMath.abs(x) < kMinRotation) {
-                                            continue l3;
-                                        }
-                                        rot.fromAngles(x, 0f, 0f);
-                                    }
-                                }
-                            } else {
-                                continue l3;
-                            }
-                        }
-//                        if (hizaFlag) {
-//                        rot.multLocal(currentBone.getLocalRotation());
-                        currentBone.getLocalRotation().multLocal(rot);
-//                        if (hizaFlag) {
-//                            rot.toAngles(buf);
-//                            if (buf[0] < 0f) {
-//                                buf[0] = -buf[0];
-//                            }
-//                            rot.fromAngles(buf[0],0f,0f);
-//                        }
-//                        currentBone.getLocalRotation().set(rot);
-//                        }
-//                        skeleton.updateWorldVectors();
+    void solve(IKChain chain) {
+        final Bone ikBone = chain.ikBone;
+        final Bone targetBone = chain.targetBone;
+        final Bone[] bones = chain.bones;
+        final Bone[] path = chain.path;
+        final int iterations = chain.iterations;
+        Vector3f targetBonePos = tmpV3;
+        Vector3f effectorBonePos = tmpV4;
+        Quaternion rot = tmpQ1;
+        float prevError = Float.MAX_VALUE;
+        boolean rotated = false;
+        boolean earlyExit = false;
+        int iterationCount = 0;
+        l2:
+        while (iterationCount < iterations) {
+            iterationCount++;
+            l3:
+            for (int boneCount = 0; boneCount < bones.length; boneCount++) {
+                if (boneCount == chain.hizaIndex) {
+                    hizaIK(chain.ikData);
+                    break l2;
+                }
+                Bone currentBone = bones[boneCount];
+                toBoneSpace(currentBone, ikBone.getModelSpacePosition(), targetBonePos);
+                toBoneSpace(currentBone, targetBone.getModelSpacePosition(), effectorBonePos);
+                if (targetBonePos.distanceSquared(effectorBonePos) < kMinDistance) {
+                    earlyExit = true;
+                    break l2;
+                }
+                targetBonePos.normalizeLocal();
+                effectorBonePos.normalizeLocal();
+                float dot = targetBonePos.dot(effectorBonePos);
+                if (dot >= 1.0f) {
+                    // angle < kMinAngle
+                    continue l3;
+                }
+                Vector3f axis = effectorBonePos.cross(targetBonePos, tmpV5);
+                if (axis.lengthSquared() < kMinAxis && iterationCount > 1) {
+                    continue l3;
+                }
+                axis.normalizeLocal();
+                // half angle formulas instead of acos and fromAngleNormalAxis
+                float halfCos;
+                float halfSin;
+                if (dot < chain.limitCos) {
+                    halfCos = chain.limitHalfCos;
+                    halfSin = chain.limitHalfSin;
+                } else {
+                    halfCos = FastMath.sqrt(Math.max(0f, (1f + dot) * 0.5f));
+                    halfSin = FastMath.sqrt(Math.max(0f, (1f - dot) * 0.5f));
+                }
+                rot.set(axis.x * halfSin, axis.y * halfSin, axis.z * halfSin, halfCos);
+                currentBone.getLocalRotation().multLocal(rot);
+                rotated = true;
+                if (path != null) {
+                    for (int i = chain.pathStart[boneCount]; i < path.length; i++) {
+                        path[i].updateWorldVectors();
                     }
+                } else {
                     updateWorldVectors(currentBone);
                 }
             }
+            float error = targetBone.getModelSpacePosition().distanceSquared(ikBone.getModelSpacePosition());
+            if (error > prevError * (1f - minErrorImprovement)) {
+                earlyExit = iterationCount < iterations;
+                break;
+            }
+            prevError = error;
+        }
+        if (path != null && rotated) {
+            updateWorldVectors(bones[bones.length - 1]);
+        }
+        chain.lastIterationCount = iterationCount;
+        chain.totalIterationCount += iterationCount;
+        chain.solveCount++;
+        if (earlyExit) {
+            chain.earlyExitCount++;
+        }
+        chain.lastError = targetBone.getModelSpacePosition().distanceSquared(ikBone.getModelSpacePosition());
+    }
+
+    /**
+     * Same as BoneUtil.getModelToBoneMatrix(bone).mult(modelPos, store)
+     * without building and inverting a matrix.
+     */
+    Vector3f toBoneSpace(Bone bone, Vector3f modelPos, Vector3f store) {
+        store.set(modelPos).subtractLocal(bone.getModelSpacePosition());
+        tmpQ2.set(bone.getModelSpaceRotation()).inverseLocal().multLocal(store);
+        return store.divideLocal(bone.getModelSpaceScale());
+    }
+
+    public IKChain[] getChains() {
+        if (chains == null) {
+            chains = createChains();
+        }
+        return chains;
+    }
+
+    IKChain[] createChains() {
+        final PMDModel pmdModel = pmdNode.getPmdModel();
+        final Skeleton skeleton = pmdNode.getSkeleton();
+        ArrayList<IKChain> list = new ArrayList<IKChain>();
+        for (PMDIKData ikData : pmdModel.getIkList().getPmdIKData()) {
+            if (boneEnabled != null && boneEnabled[ikData.getIkBoneIndex()] != 1) {
+                continue;
+            }
+            list.add(new IKChain(ikData, pmdModel.getBoneList().getBones(), skeleton));
         }
+        return list.toArray(new IKChain[list.size()]);
     }
 
     void hizaIK(PMDIKData ikData) {
@@ -360,12 +336,21 @@ public class IKControl extends AbstractControl{
         }
     }
 
+    public float getMinErrorImprovement() {
+        return minErrorImprovement;
+    }
+
+    public void setMinErrorImprovement(float minErrorImprovement) {
+        this.minErrorImprovement = minErrorImprovement;
+    }
+
     public int[] getBoneEnabled() {
         return boneEnabled;
     }
 
     public void setBoneEnabled(int[] boneEnabled) {
         this.boneEnabled = boneEnabled;
+        chains = null;
     }
     
 }
@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2010-2014, Kazuhiko Kobayashi
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package projectkyoto.jme3.mmd.net;
+
+import com.jme3.animation.Bone;
+import com.jme3.animation.Skeleton;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import projectkyoto.jme3.mmd.PMDNode;
+
+/**
+ * Reads the PoseMessages of a PoseEncoder into a ring of the latest
+ * snapshots and interpolates between the two snapshots around a given
+ * time. Snapshots that do not follow the last applied one are dropped
+ * until the next keyframe.
+ * @author kobayasi
+ */
+public class PoseDecoder {
+
+    /**
+     * Default number of snapshots kept for interpolation.
+     */
+    public static final int DEFAULT_SNAPSHOT_COUNT = 8;
+
+    private final int boneCount;
+    private final int skinCount;
+    private float positionStep = 1f / 512f;
+
+    // the latest pose, deltas are applied to it
+    private final float[] rotations;
+    private final float[] positions;
+    private final float[] skins;
+    private int sequence;
+    private boolean hasPose;
+
+    // ring of decoded snapshots, oldest at snapshotStart
+    private final float[][] snapshotRotations;
+    private final float[][] snapshotPositions;
+    private final float[][] snapshotSkins;
+    private final float[] snapshotTimes;
+    private int snapshotStart;
+    private int snapshotSize;
+
+    private final byte[] rotationMask;
+    private final byte[] positionMask;
+    private final byte[] skinMask;
+    private final short[] rotationData = new short[3];
+    private final Quaternion tmpQuat1 = new Quaternion();
+    private final Quaternion tmpQuat2 = new Quaternion();
+
+    private long messageCount;
+    private long droppedCount;
+    private long byteCount;
+    private long decodeNanos;
+
+    public PoseDecoder(int boneCount, int skinCount) {
+        this(boneCount, skinCount, DEFAULT_SNAPSHOT_COUNT);
+    }
+
+    /**
+     * @param snapshotCount number of snapshots kept, at least 2. The
+     * interpolation delay of a PoseReplicaControl should be shorter than
+     * snapshotCount - 1 send intervals.
+     */
+    public PoseDecoder(int boneCount, int skinCount, int snapshotCount) {
+        if (snapshotCount < 2) {
+            throw new IllegalArgumentException("snapshotCount must be at least 2");
+        }
+        this.boneCount = boneCount;
+        this.skinCount = skinCount;
+        rotations = new float[boneCount * 4];
+        positions = new float[boneCount * 3];
+        skins = new float[skinCount];
+        snapshotRotations = new float[snapshotCount][boneCount * 4];
+        snapshotPositions = new float[snapshotCount][boneCount * 3];
+        snapshotSkins = new float[snapshotCount][skinCount];
+        snapshotTimes = new float[snapshotCount];
+        rotationMask = new byte[(boneCount + 7) / 8];
+        positionMask = new byte[(boneCount + 7) / 8];
+        skinMask = new byte[(skinCount + 7) / 8];
+    }
+
+    public PoseDecoder(PMDNode pmdNode) {
+        this(pmdNode.getSkeleton().getBoneCount(), pmdNode.getSkinArray().length);
+    }
+
+    /**
+     * Applies a snapshot. Returns false if it was dropped because it does
+     * not follow the last applied snapshot or does not match the model.
+     */
+    public boolean apply(PoseMessage message) {
+        long start = System.nanoTime();
+        try {
+            if (!message.isKeyframe() && (!hasPose || message.getBaseSequence() != sequence)) {
+                droppedCount++;
+                return false;
+            }
+            ByteBuffer data = ByteBuffer.wrap(message.getData());
+            if (data.getShort() != boneCount || data.getShort() != skinCount) {
+                droppedCount++;
+                return false;
+            }
+            data.get(rotationMask);
+            data.get(positionMask);
+            data.get(skinMask);
+
+            for (int i = 0; i < boneCount; i++) {
+                if (PoseEncoder.isBitSet(rotationMask, i)) {
+                    rotationData[0] = data.getShort();
+                    rotationData[1] = data.getShort();
+                    rotationData[2] = data.getShort();
+                    PoseEncoder.dequantizeRotation(rotationData, 0, rotations, i * 4);
+                }
+                if (PoseEncoder.isBitSet(positionMask, i)) {
+                    positions[i * 3] = data.getShort() * positionStep;
+                    positions[i * 3 + 1] = data.getShort() * positionStep;
+                    positions[i * 3 + 2] = data.getShort() * positionStep;
+                }
+            }
+            for (int i = 0; i < skinCount; i++) {
+                if (PoseEncoder.isBitSet(skinMask, i)) {
+                    skins[i] = PoseEncoder.dequantizeWeight(data.get());
+                }
+            }
+
+            addSnapshot(message.getTime());
+            sequence = message.getSequence();
+            hasPose = true;
+            messageCount++;
+            byteCount += message.getData().length;
+            return true;
+        } catch (BufferUnderflowException ex) {
+            // Truncated data. The pose may be partly updated, wait for a
+            // keyframe.
+            hasPose = false;
+            snapshotSize = 0;
+            droppedCount++;
+            return false;
+        } finally {
+            decodeNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Copies the latest pose into the ring, replacing the oldest snapshot
+     * if the ring is full, or the latest one if it has the same time.
+     */
+    private void addSnapshot(float time) {
+        int slot;
+        int capacity = snapshotTimes.length;
+        float latest = snapshotSize > 0 ? snapshotTimes[index(snapshotSize - 1)] : 0f;
+        if (snapshotSize > 0 && time < latest) {
+            // the sender's clock went back, start over
+            snapshotSize = 0;
+        }
+        if (snapshotSize > 0 && time == latest) {
+            slot = index(snapshotSize - 1);
+        } else if (snapshotSize == capacity) {
+            slot = snapshotStart;
+            snapshotStart = (snapshotStart + 1) % capacity;
+        } else {
+            slot = index(snapshotSize);
+            snapshotSize++;
+        }
+        System.arraycopy(rotations, 0, snapshotRotations[slot], 0, rotations.length);
+        System.arraycopy(positions, 0, snapshotPositions[slot], 0, positions.length);
+        System.arraycopy(skins, 0, snapshotSkins[slot], 0, skins.length);
+        snapshotTimes[slot] = time;
+    }
+
+    private int index(int i) {
+        return (snapshotStart + i) % snapshotTimes.length;
+    }
+
+    public boolean hasPose() {
+        return snapshotSize > 0;
+    }
+
+    /**
+     * Sender time of the latest snapshot.
+     */
+    public float getTime() {
+        return snapshotSize > 0 ? snapshotTimes[index(snapshotSize - 1)] : 0f;
+    }
+
+    /**
+     * Sender time of the oldest snapshot kept.
+     */
+    public float getOldestTime() {
+        return snapshotSize > 0 ? snapshotTimes[snapshotStart] : 0f;
+    }
+
+    /**
+     * Number of snapshots kept for interpolation.
+     */
+    public int getSnapshotCount() {
+        return snapshotSize;
+    }
+
+    /**
+     * Sets the local bone transforms and skin weights to the pose at the
+     * given sender time, interpolated between the snapshots before and
+     * after it. Times outside the kept snapshots are clamped to the oldest
+     * or latest one. skinWeights may be null.
+     */
+    public void interpolate(float t, Skeleton skeleton, float[] skinWeights) {
+        if (snapshotSize == 0) {
+            return;
+        }
+        int from = snapshotSize - 1;
+        int to = from;
+        float alpha = 0f;
+        if (t <= snapshotTimes[snapshotStart]) {
+            from = 0;
+            to = 0;
+        } else {
+            for (int i = 1; i < snapshotSize; i++) {
+                float t1 = snapshotTimes[index(i)];
+                if (t < t1) {
+                    float t0 = snapshotTimes[index(i - 1)];
+                    from = i - 1;
+                    to = i;
+                    alpha = FastMath.clamp((t - t0) / (t1 - t0), 0f, 1f);
+                    break;
+                }
+            }
+        }
+        float[] prevRotations = snapshotRotations[index(from)];
+        float[] prevPositions = snapshotPositions[index(from)];
+        float[] prevSkins = snapshotSkins[index(from)];
+        float[] nextRotations = snapshotRotations[index(to)];
+        float[] nextPositions = snapshotPositions[index(to)];
+        float[] nextSkins = snapshotSkins[index(to)];
+        for (int i = 0; i < boneCount; i++) {
+            Bone bone = skeleton.getBone(i);
+            int r = i * 4;
+            tmpQuat1.set(prevRotations[r], prevRotations[r + 1], prevRotations[r + 2], prevRotations[r + 3]);
+            tmpQuat2.set(nextRotations[r], nextRotations[r + 1], nextRotations[r + 2], nextRotations[r + 3]);
+            bone.getLocalRotation().slerp(tmpQuat1, tmpQuat2, alpha);
+            int p = i * 3;
+            bone.getLocalPosition().set(
+                    FastMath.interpolateLinear(alpha, prevPositions[p], nextPositions[p]),
+                    FastMath.interpolateLinear(alpha, prevPositions[p + 1], nextPositions[p + 1]),
+                    FastMath.interpolateLinear(alpha, prevPositions[p + 2], nextPositions[p + 2]));
+        }
+        if (skinWeights != null) {
+            for (int i = 0; i < skinCount; i++) {
+                skinWeights[i] = FastMath.interpolateLinear(alpha, prevSkins[i], nextSkins[i]);
+            }
+        }
+    }
+
+    /**
+     * Resolution of the positions, the same as the encoder's.
+     */
+    public void setPositionStep(float positionStep) {
+        this.positionStep = positionStep;
+    }
+
+    public float getPositionStep() {
+        return positionStep;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * Snapshots dropped because one before them was missed.
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Total time spent in apply().
+     */
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    public void resetStatistics() {
+        messageCount = 0;
+        droppedCount = 0;
+        byteCount = 0;
+        decodeNanos = 0;
+    }
+}
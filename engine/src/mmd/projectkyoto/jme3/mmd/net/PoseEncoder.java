@@ -0,0 +1,444 @@
+/*
+ * Copyright (c) 2010-2014, Kazuhiko Kobayashi
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package projectkyoto.jme3.mmd.net;
+
+import com.jme3.animation.Bone;
+import com.jme3.animation.Skeleton;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import java.nio.ByteBuffer;
+import projectkyoto.jme3.mmd.PMDNode;
+import projectkyoto.jme3.mmd.Skin;
+
+/**
+ * Writes the pose of a skeleton and the skin (morph) weights of a model as
+ * PoseMessages. Only bones and skins that moved more than the thresholds
+ * since the last snapshot are written, rotations as the three smallest
+ * quaternion components in 16 bits each, positions as 16 bit fixed point
+ * and skin weights as one byte. The encoder compares against the values
+ * the receiver decodes, so quantization errors do not add up.
+ * <p>
+ * Snapshots must be delivered in order, as reliable messages do. A receiver
+ * that missed one waits for the next keyframe, which is written every
+ * keyframeInterval snapshots.
+ * @author kobayasi
+ */
+public class PoseEncoder {
+
+    static final float QUAT_RANGE = FastMath.sqrt(0.5f);
+    static final int QUAT_MAX = 0x7fff;
+
+    private final int boneCount;
+    private final int skinCount;
+    private float rotationThreshold = 0.002f;
+    private float positionThreshold = 0.001f;
+    private float skinThreshold = 1f / 255f;
+    private float positionStep = 1f / 512f;
+    private int keyframeInterval = 60;
+
+    /**
+     * The values the receiver holds.
+     */
+    private final float[] sentRotations;
+    private final float[] sentPositions;
+    private final float[] sentSkins;
+    private final short[] rotationData;
+    private final short[] positionData;
+    private final byte[] skinData;
+    private final byte[] rotationMask;
+    private final byte[] positionMask;
+    private final byte[] skinMask;
+    private final ByteBuffer buffer;
+    private final float[] skinWeights;
+    private final Quaternion tmpQuat = new Quaternion();
+
+    private int sequence;
+    private int lastSequence = PoseMessage.KEYFRAME;
+    private int lastKeyframe;
+    private boolean keyframeRequested = true;
+
+    private long messageCount;
+    private long keyframeCount;
+    private long byteCount;
+    private long boneUpdateCount;
+    private long encodeNanos;
+
+    public PoseEncoder(int boneCount, int skinCount) {
+        this.boneCount = boneCount;
+        this.skinCount = skinCount;
+        sentRotations = new float[boneCount * 4];
+        sentPositions = new float[boneCount * 3];
+        sentSkins = new float[skinCount];
+        rotationData = new short[boneCount * 3];
+        positionData = new short[boneCount * 3];
+        skinData = new byte[skinCount];
+        rotationMask = new byte[(boneCount + 7) / 8];
+        positionMask = new byte[(boneCount + 7) / 8];
+        skinMask = new byte[(skinCount + 7) / 8];
+        buffer = ByteBuffer.allocate(getMaxDataSize(boneCount, skinCount));
+        skinWeights = new float[skinCount];
+    }
+
+    public PoseEncoder(PMDNode pmdNode) {
+        this(pmdNode.getSkeleton().getBoneCount(), pmdNode.getSkinArray().length);
+    }
+
+    static int getMaxDataSize(int boneCount, int skinCount) {
+        return 4 + (boneCount + 7) / 8 * 2 + (skinCount + 7) / 8 + boneCount * 12 + skinCount;
+    }
+
+    /**
+     * Encodes the pose of the model, see encode(Skeleton, float[], int, float).
+     */
+    public PoseMessage encode(PMDNode pmdNode, int modelId, float time) {
+        Skin[] skins = pmdNode.getSkinArray();
+        for (int i = 0; i < skinCount; i++) {
+            skinWeights[i] = skins[i].getWeight();
+        }
+        return encode(pmdNode.getSkeleton(), skinWeights, modelId, time);
+    }
+
+    /**
+     * Returns a snapshot of the local bone transforms and skin weights, or
+     * null if nothing changed beyond the thresholds. skinWeights may be null
+     * if the encoder has no skins.
+     */
+    public PoseMessage encode(Skeleton skeleton, float[] skinWeights, int modelId, float time) {
+        long start = System.nanoTime();
+        boolean keyframe = keyframeRequested
+                || (keyframeInterval > 0 && sequence - lastKeyframe >= keyframeInterval);
+        float cosHalfThreshold = FastMath.cos(rotationThreshold * 0.5f);
+        float positionThresholdSquared = positionThreshold * positionThreshold;
+
+        clear(rotationMask);
+        clear(positionMask);
+        clear(skinMask);
+        int rotationCount = 0;
+        int positionCount = 0;
+        int skinChangeCount = 0;
+        for (int i = 0; i < boneCount; i++) {
+            Bone bone = skeleton.getBone(i);
+            Quaternion q = bone.getLocalRotation();
+            int r = i * 4;
+            float dot = q.getX() * sentRotations[r] + q.getY() * sentRotations[r + 1]
+                    + q.getZ() * sentRotations[r + 2] + q.getW() * sentRotations[r + 3];
+            if (keyframe || FastMath.abs(dot) < cosHalfThreshold) {
+                tmpQuat.set(q).normalizeLocal();
+                quantizeRotation(tmpQuat, rotationData, i * 3);
+                dequantizeRotation(rotationData, i * 3, sentRotations, r);
+                setBit(rotationMask, i);
+                rotationCount++;
+            }
+            Vector3f v = bone.getLocalPosition();
+            int p = i * 3;
+            float dx = v.x - sentPositions[p];
+            float dy = v.y - sentPositions[p + 1];
+            float dz = v.z - sentPositions[p + 2];
+            if (keyframe || dx * dx + dy * dy + dz * dz > positionThresholdSquared) {
+                positionData[p] = quantizePosition(v.x, positionStep);
+                positionData[p + 1] = quantizePosition(v.y, positionStep);
+                positionData[p + 2] = quantizePosition(v.z, positionStep);
+                sentPositions[p] = positionData[p] * positionStep;
+                sentPositions[p + 1] = positionData[p + 1] * positionStep;
+                sentPositions[p + 2] = positionData[p + 2] * positionStep;
+                setBit(positionMask, i);
+                positionCount++;
+            }
+        }
+        for (int i = 0; i < skinCount; i++) {
+            float w = skinWeights[i];
+            if (keyframe || FastMath.abs(w - sentSkins[i]) > skinThreshold) {
+                skinData[i] = quantizeWeight(w);
+                sentSkins[i] = dequantizeWeight(skinData[i]);
+                setBit(skinMask, i);
+                skinChangeCount++;
+            }
+        }
+        if (!keyframe && rotationCount == 0 && positionCount == 0 && skinChangeCount == 0) {
+            encodeNanos += System.nanoTime() - start;
+            return null;
+        }
+
+        buffer.clear();
+        buffer.putShort((short) boneCount);
+        buffer.putShort((short) skinCount);
+        buffer.put(rotationMask);
+        buffer.put(positionMask);
+        buffer.put(skinMask);
+        for (int i = 0; i < boneCount; i++) {
+            if (isBitSet(rotationMask, i)) {
+                buffer.putShort(rotationData[i * 3]);
+                buffer.putShort(rotationData[i * 3 + 1]);
+                buffer.putShort(rotationData[i * 3 + 2]);
+            }
+            if (isBitSet(positionMask, i)) {
+                buffer.putShort(positionData[i * 3]);
+                buffer.putShort(positionData[i * 3 + 1]);
+                buffer.putShort(positionData[i * 3 + 2]);
+            }
+        }
+        for (int i = 0; i < skinCount; i++) {
+            if (isBitSet(skinMask, i)) {
+                buffer.put(skinData[i]);
+            }
+        }
+        buffer.flip();
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+
+        PoseMessage message = new PoseMessage(modelId, sequence,
+                keyframe ? PoseMessage.KEYFRAME : lastSequence, time, data);
+        if (keyframe) {
+            lastKeyframe = sequence;
+            keyframeRequested = false;
+            keyframeCount++;
+        }
+        lastSequence = sequence++;
+        messageCount++;
+        byteCount += data.length;
+        boneUpdateCount += Math.max(rotationCount, positionCount);
+        encodeNanos += System.nanoTime() - start;
+        return message;
+    }
+
+    /**
+     * Makes the next snapshot a keyframe, e.g. when a client joins.
+     */
+    public void requestKeyframe() {
+        keyframeRequested = true;
+    }
+
+    /**
+     * Rotation change in radians below which a bone is not sent.
+     */
+    public void setRotationThreshold(float rotationThreshold) {
+        this.rotationThreshold = rotationThreshold;
+    }
+
+    public float getRotationThreshold() {
+        return rotationThreshold;
+    }
+
+    /**
+     * Position change below which a bone is not sent.
+     */
+    public void setPositionThreshold(float positionThreshold) {
+        this.positionThreshold = positionThreshold;
+    }
+
+    public float getPositionThreshold() {
+        return positionThreshold;
+    }
+
+    public void setSkinThreshold(float skinThreshold) {
+        this.skinThreshold = skinThreshold;
+    }
+
+    public float getSkinThreshold() {
+        return skinThreshold;
+    }
+
+    /**
+     * Resolution of the positions. Positions are limited to
+     * +-32767 * positionStep, the receiver has to use the same step.
+     */
+    public void setPositionStep(float positionStep) {
+        this.positionStep = positionStep;
+        requestKeyframe();
+    }
+
+    public float getPositionStep() {
+        return positionStep;
+    }
+
+    /**
+     * Number of snapshots between keyframes, 0 for only the first one.
+     */
+    public void setKeyframeInterval(int keyframeInterval) {
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public long getKeyframeCount() {
+        return keyframeCount;
+    }
+
+    /**
+     * Total size of the snapshot data written.
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Total number of bones written.
+     */
+    public long getBoneUpdateCount() {
+        return boneUpdateCount;
+    }
+
+    /**
+     * Total time spent in encode().
+     */
+    public long getEncodeNanos() {
+        return encodeNanos;
+    }
+
+    public void resetStatistics() {
+        messageCount = 0;
+        keyframeCount = 0;
+        byteCount = 0;
+        boneUpdateCount = 0;
+        encodeNanos = 0;
+    }
+
+    /**
+     * Writes the three smallest components of a normalized quaternion.
+     * The index of the largest component is stored in the top bits of the
+     * first two values.
+     */
+    static void quantizeRotation(Quaternion q, short[] out, int offset) {
+        float x = q.getX(), y = q.getY(), z = q.getZ(), w = q.getW();
+        int largest = 0;
+        float max = FastMath.abs(x);
+        if (FastMath.abs(y) > max) {
+            largest = 1;
+            max = FastMath.abs(y);
+        }
+        if (FastMath.abs(z) > max) {
+            largest = 2;
+            max = FastMath.abs(z);
+        }
+        if (FastMath.abs(w) > max) {
+            largest = 3;
+        }
+        float a, b, c, l;
+        switch (largest) {
+            case 0:
+                l = x; a = y; b = z; c = w;
+                break;
+            case 1:
+                l = y; a = x; b = z; c = w;
+                break;
+            case 2:
+                l = z; a = x; b = y; c = w;
+                break;
+            default:
+                l = w; a = x; b = y; c = z;
+                break;
+        }
+        if (l < 0) {
+            // q and -q are the same rotation
+            a = -a;
+            b = -b;
+            c = -c;
+        }
+        out[offset] = (short) (((largest >> 1) << 15) | quantizeComponent(a));
+        out[offset + 1] = (short) (((largest & 1) << 15) | quantizeComponent(b));
+        out[offset + 2] = (short) quantizeComponent(c);
+    }
+
+    static void dequantizeRotation(short[] in, int offset, float[] out, int outOffset) {
+        int largest = ((in[offset] >> 14) & 2) | ((in[offset + 1] >> 15) & 1);
+        float a = dequantizeComponent(in[offset] & QUAT_MAX);
+        float b = dequantizeComponent(in[offset + 1] & QUAT_MAX);
+        float c = dequantizeComponent(in[offset + 2] & QUAT_MAX);
+        float l = FastMath.sqrt(Math.max(0f, 1f - a * a - b * b - c * c));
+        switch (largest) {
+            case 0:
+                out[outOffset] = l;
+                out[outOffset + 1] = a;
+                out[outOffset + 2] = b;
+                out[outOffset + 3] = c;
+                break;
+            case 1:
+                out[outOffset] = a;
+                out[outOffset + 1] = l;
+                out[outOffset + 2] = b;
+                out[outOffset + 3] = c;
+                break;
+            case 2:
+                out[outOffset] = a;
+                out[outOffset + 1] = b;
+                out[outOffset + 2] = l;
+                out[outOffset + 3] = c;
+                break;
+            default:
+                out[outOffset] = a;
+                out[outOffset + 1] = b;
+                out[outOffset + 2] = c;
+                out[outOffset + 3] = l;
+                break;
+        }
+    }
+
+    private static int quantizeComponent(float v) {
+        int q = Math.round((v / QUAT_RANGE + 1f) * 0.5f * QUAT_MAX);
+        return Math.max(0, Math.min(QUAT_MAX, q));
+    }
+
+    private static float dequantizeComponent(int q) {
+        return ((float) q / QUAT_MAX * 2f - 1f) * QUAT_RANGE;
+    }
+
+    static short quantizePosition(float v, float step) {
+        int q = Math.round(v / step);
+        return (short) Math.max(-Short.MAX_VALUE, Math.min(Short.MAX_VALUE, q));
+    }
+
+    static byte quantizeWeight(float w) {
+        return (byte) Math.round(Math.max(0f, Math.min(1f, w)) * 255f);
+    }
+
+    static float dequantizeWeight(byte b) {
+        return (b & 0xff) / 255f;
+    }
+
+    static void setBit(byte[] mask, int index) {
+        mask[index >> 3] |= 1 << (index & 7);
+    }
+
+    static boolean isBitSet(byte[] mask, int index) {
+        return (mask[index >> 3] & (1 << (index & 7))) != 0;
+    }
+
+    private static void clear(byte[] mask) {
+        for (int i = 0; i < mask.length; i++) {
+            mask[i] = 0;
+        }
+    }
+}
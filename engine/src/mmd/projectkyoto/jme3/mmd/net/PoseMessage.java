@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2010-2014, Kazuhiko Kobayashi
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package projectkyoto.jme3.mmd.net;
+
+import com.jme3.network.AbstractMessage;
+import com.jme3.network.serializing.Serializable;
+
+/**
+ * One pose snapshot of a replicated model, written by PoseEncoder and
+ * read by PoseDecoder. A keyframe holds every bone and skin, other
+ * snapshots only what changed since the snapshot baseSequence.
+ * The class has to be registered with the Serializer on both ends.
+ * @author kobayasi
+ */
+@Serializable
+public class PoseMessage extends AbstractMessage {
+
+    /**
+     * baseSequence of a keyframe.
+     */
+    public static final int KEYFRAME = -1;
+
+    private int modelId;
+    private int sequence;
+    private int baseSequence;
+    private float time;
+    private byte[] data;
+
+    public PoseMessage() {
+    }
+
+    public PoseMessage(int modelId, int sequence, int baseSequence, float time, byte[] data) {
+        this.modelId = modelId;
+        this.sequence = sequence;
+        this.baseSequence = baseSequence;
+        this.time = time;
+        this.data = data;
+    }
+
+    public int getModelId() {
+        return modelId;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public int getBaseSequence() {
+        return baseSequence;
+    }
+
+    public boolean isKeyframe() {
+        return baseSequence == KEYFRAME;
+    }
+
+    /**
+     * Sender time of the snapshot in seconds.
+     */
+    public float getTime() {
+        return time;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+}
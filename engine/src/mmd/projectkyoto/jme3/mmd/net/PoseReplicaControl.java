@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2010-2014, Kazuhiko Kobayashi
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package projectkyoto.jme3.mmd.net;
+
+import com.jme3.animation.AnimControl;
+import com.jme3.animation.Skeleton;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.control.AbstractControl;
+import com.jme3.scene.control.Control;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import projectkyoto.jme3.mmd.PMDNode;
+
+/**
+ * Plays the poses received from a PoseSenderControl on a client side
+ * PMDNode or Skeleton. The pose is shown interpolationDelay seconds behind
+ * the latest snapshot, interpolated between the snapshots around that
+ * time. receive() may be called from the network thread.
+ * @author kobayasi
+ */
+public class PoseReplicaControl extends AbstractControl {
+
+    private final PMDNode pmdNode;
+    private final Skeleton skeleton;
+    private final PoseDecoder decoder;
+    private final ConcurrentLinkedQueue<PoseMessage> queue = new ConcurrentLinkedQueue<PoseMessage>();
+    private final float[] skinWeights;
+    private float interpolationDelay = 0.1f;
+    private float time;
+    private boolean started;
+
+    public PoseReplicaControl(PMDNode pmdNode) {
+        this(pmdNode, pmdNode.getSkeleton(), pmdNode.getSkinArray().length);
+    }
+
+    /**
+     * Plays the poses on a skeleton without PMDNode. The skin weights are
+     * only stored, see getSkinWeights().
+     */
+    public PoseReplicaControl(Skeleton skeleton, int skinCount) {
+        this(null, skeleton, skinCount);
+    }
+
+    private PoseReplicaControl(PMDNode pmdNode, Skeleton skeleton, int skinCount) {
+        this.pmdNode = pmdNode;
+        this.skeleton = skeleton;
+        decoder = new PoseDecoder(skeleton.getBoneCount(), skinCount);
+        skinWeights = new float[skinCount];
+    }
+
+    /**
+     * Queues a snapshot for the next update.
+     */
+    public void receive(PoseMessage message) {
+        queue.add(message);
+    }
+
+    @Override
+    protected void controlUpdate(float tpf) {
+        PoseMessage message;
+        while ((message = queue.poll()) != null) {
+            decoder.apply(message);
+        }
+        if (!decoder.hasPose()) {
+            return;
+        }
+        float target = decoder.getTime() - interpolationDelay;
+        time += tpf;
+        if (!started || Math.abs(time - target) > interpolationDelay * 2) {
+            // first pose, or the sender's clock drifted too far
+            time = target;
+            started = true;
+        }
+        decoder.interpolate(time, skeleton, skinWeights);
+        skeleton.updateWorldVectors();
+        if (pmdNode != null) {
+            for (int i = 0; i < skinWeights.length; i++) {
+                pmdNode.setSkinWeight(i, skinWeights[i]);
+            }
+        }
+    }
+
+    @Override
+    protected void controlRender(RenderManager rm, ViewPort vp) {
+    }
+
+    /**
+     * The clone plays on the cloned PMDNode, or on the skeleton of the
+     * AnimControl of the cloned spatial. Without either it plays on the
+     * same skeleton as this control. Received snapshots are not copied.
+     */
+    @Override
+    public Control cloneForSpatial(Spatial spatial) {
+        PoseReplicaControl clone;
+        if (spatial instanceof PMDNode) {
+            clone = new PoseReplicaControl((PMDNode) spatial);
+        } else {
+            AnimControl animControl = spatial.getControl(AnimControl.class);
+            Skeleton s = animControl != null && animControl.getSkeleton() != null
+                    ? animControl.getSkeleton() : skeleton;
+            clone = new PoseReplicaControl(s, skinWeights.length);
+        }
+        clone.decoder.setPositionStep(decoder.getPositionStep());
+        clone.interpolationDelay = interpolationDelay;
+        clone.setEnabled(isEnabled());
+        clone.setSpatial(spatial);
+        return clone;
+    }
+
+    public PoseDecoder getDecoder() {
+        return decoder;
+    }
+
+    /**
+     * @return the PMDNode, or null if the control plays on a skeleton
+     */
+    public PMDNode getPmdNode() {
+        return pmdNode;
+    }
+
+    public Skeleton getSkeleton() {
+        return skeleton;
+    }
+
+    /**
+     * Sender time of the pose shown.
+     */
+    public float getPlaybackTime() {
+        return time;
+    }
+
+    /**
+     * Skin weights of the pose shown.
+     */
+    public float[] getSkinWeights() {
+        return skinWeights;
+    }
+
+    public float getInterpolationDelay() {
+        return interpolationDelay;
+    }
+
+    /**
+     * Seconds the shown pose lags behind the latest snapshot, usually
+     * a bit more than the send interval so that a snapshot after the shown
+     * time has arrived. It must be shorter than the time covered by the
+     * snapshots the decoder keeps.
+     */
+    public void setInterpolationDelay(float interpolationDelay) {
+        this.interpolationDelay = interpolationDelay;
+    }
+}
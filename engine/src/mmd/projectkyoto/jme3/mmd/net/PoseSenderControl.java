@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2010-2014, Kazuhiko Kobayashi
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package projectkyoto.jme3.mmd.net;
+
+import com.jme3.network.Server;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.control.AbstractControl;
+import com.jme3.scene.control.Control;
+import projectkyoto.jme3.mmd.PMDNode;
+
+/**
+ * Broadcasts the pose of a PMDNode to all clients at a fixed interval.
+ * Add it after the controls animating the model. PoseMessage must be
+ * registered with the Serializer on both sides, and is sent reliably
+ * because the deltas need every snapshot.
+ * @author kobayasi
+ */
+public class PoseSenderControl extends AbstractControl {
+
+    private final PMDNode pmdNode;
+    private final Server server;
+    private int modelId;
+    private final PoseEncoder encoder;
+    private float interval;
+    private float time;
+    private float elapsed;
+
+    /**
+     * @param interval seconds between snapshots
+     */
+    public PoseSenderControl(PMDNode pmdNode, Server server, int modelId, float interval) {
+        this.pmdNode = pmdNode;
+        this.server = server;
+        this.modelId = modelId;
+        this.interval = interval;
+        encoder = new PoseEncoder(pmdNode);
+    }
+
+    @Override
+    protected void controlUpdate(float tpf) {
+        time += tpf;
+        elapsed += tpf;
+        if (elapsed < interval) {
+            return;
+        }
+        elapsed = interval > 0 ? elapsed % interval : 0;
+        PoseMessage message = encoder.encode(pmdNode, modelId, time);
+        if (message != null) {
+            server.broadcast(message);
+        }
+    }
+
+    @Override
+    protected void controlRender(RenderManager rm, ViewPort vp) {
+    }
+
+    /**
+     * The clone sends the pose of the cloned PMDNode with the same settings
+     * and model id, use setModelId() to tell the models apart.
+     */
+    @Override
+    public Control cloneForSpatial(Spatial spatial) {
+        PoseSenderControl clone = new PoseSenderControl((PMDNode) spatial, server, modelId, interval);
+        PoseEncoder e = clone.encoder;
+        e.setRotationThreshold(encoder.getRotationThreshold());
+        e.setPositionThreshold(encoder.getPositionThreshold());
+        e.setSkinThreshold(encoder.getSkinThreshold());
+        e.setPositionStep(encoder.getPositionStep());
+        e.setKeyframeInterval(encoder.getKeyframeInterval());
+        clone.setEnabled(isEnabled());
+        clone.setSpatial(spatial);
+        return clone;
+    }
+
+    /**
+     * Call when a client joins so that it gets a keyframe.
+     */
+    public void requestKeyframe() {
+        encoder.requestKeyframe();
+    }
+
+    public PoseEncoder getEncoder() {
+        return encoder;
+    }
+
+    public PMDNode getPmdNode() {
+        return pmdNode;
+    }
+
+    public int getModelId() {
+        return modelId;
+    }
+
+    public void setModelId(int modelId) {
+        this.modelId = modelId;
+    }
+
+    public float getInterval() {
+        return interval;
+    }
+
+    public void setInterval(float interval) {
+        this.interval = interval;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2010-2014, Kazuhiko Kobayashi
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package projectkyoto.jme3.mmd.vmd;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import javax.vecmath.Point3f;
+import javax.vecmath.Quat4f;
+import projectkyoto.mmd.file.VMDFile;
+import projectkyoto.mmd.file.VMDMotion;
+
+/**
+ * Key frames of one bone, decoded from a VMDFile into plain arrays.
+ * Key i is stored at frameNos[i], rotations[i * 4] (x, y, z, w, normalized),
+ * locations[i * 3] and ipTable[ipOffsets[i]].
+ * @author kobayasi
+ */
+public final class BoneMotionTrack {
+
+    final String boneName;
+    final int[] frameNos;
+    final float[] rotations;
+    final float[] locations;
+    final int[] ipOffsets;
+    final float[] ipTable;
+
+    BoneMotionTrack(String boneName, int size, float[] ipTable) {
+        this.boneName = boneName;
+        frameNos = new int[size];
+        rotations = new float[size * 4];
+        locations = new float[size * 3];
+        ipOffsets = new int[size];
+        this.ipTable = ipTable;
+    }
+
+    public String getBoneName() {
+        return boneName;
+    }
+
+    public int size() {
+        return frameNos.length;
+    }
+
+    public int getFrameNo(int i) {
+        return frameNos[i];
+    }
+
+    public int getLastFrameNo() {
+        return frameNos.length == 0 ? 0 : frameNos[frameNos.length - 1];
+    }
+
+    /**
+     * Returns the index of the first key whose frame number is greater than
+     * frameNo, or size() if there is none.
+     */
+    public int upperBound(int frameNo) {
+        return upperBound(frameNos, frameNo);
+    }
+
+    static int upperBound(int[] frameNos, int frameNo) {
+        int low = 0;
+        int high = frameNos.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (frameNos[mid] <= frameNo) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Decodes all bone motions of vmdFile. Motions in a VMDFile are already
+     * sorted by frame number, so the keys of each track come out sorted.
+     */
+    public static Map<String, BoneMotionTrack> createTracks(VMDFile vmdFile) {
+        int boneCount = vmdFile.getBoneNames().size();
+        int motionCount = vmdFile.getMotionCount();
+        int[] sizes = new int[boneCount];
+        short[] boneIndexes = new short[motionCount];
+        VMDMotion m = new VMDMotion();
+        for (int motionNo = 0; motionNo < motionCount; motionNo++) {
+            vmdFile.getMotion(m, motionNo);
+            boneIndexes[motionNo] = m.getBoneIndex();
+            sizes[m.getBoneIndex()]++;
+        }
+        Map<ByteBuffer, Integer> ipOffsetMap = new HashMap<ByteBuffer, Integer>();
+        ArrayList<float[]> ipTableList = new ArrayList<float[]>();
+        int[] ipOffsets = new int[motionCount];
+        for (int motionNo = 0; motionNo < motionCount; motionNo++) {
+            vmdFile.getMotion(m, motionNo);
+            ByteBuffer ipKey = ByteBuffer.wrap(Arrays.copyOf(m.getInterpolation(), 16));
+            Integer offset = ipOffsetMap.get(ipKey);
+            if (offset == null) {
+                offset = ipTableList.size() * IPUtil.IPTABLE_STRIDE;
+                float[] table = new float[IPUtil.IPTABLE_STRIDE];
+                IPUtil.createInterpolationTable(m.getInterpolation(), table);
+                ipTableList.add(table);
+                ipOffsetMap.put(ipKey, offset);
+            }
+            ipOffsets[motionNo] = offset;
+        }
+        float[] ipTable = new float[ipTableList.size() * IPUtil.IPTABLE_STRIDE];
+        for (int i = 0; i < ipTableList.size(); i++) {
+            System.arraycopy(ipTableList.get(i), 0, ipTable, i * IPUtil.IPTABLE_STRIDE, IPUtil.IPTABLE_STRIDE);
+        }
+        BoneMotionTrack[] tracks = new BoneMotionTrack[boneCount];
+        for (int i = 0; i < boneCount; i++) {
+            tracks[i] = new BoneMotionTrack(vmdFile.getBoneNames().get(i), sizes[i], ipTable);
+        }
+        int[] counts = new int[boneCount];
+        Quat4f q = new Quat4f();
+        for (int motionNo = 0; motionNo < motionCount; motionNo++) {
+            vmdFile.getMotion(m, motionNo);
+            int boneIndex = boneIndexes[motionNo];
+            BoneMotionTrack track = tracks[boneIndex];
+            int i = counts[boneIndex]++;
+            track.frameNos[i] = m.getFrameNo();
+            q.set(m.getRotation());
+            float norm = q.x * q.x + q.y * q.y + q.z * q.z + q.w * q.w;
+            if (norm != 1f && norm != 0f) {
+                q.scale(1f / (float) Math.sqrt(norm));
+            }
+            track.rotations[i * 4] = q.x;
+            track.rotations[i * 4 + 1] = q.y;
+            track.rotations[i * 4 + 2] = q.z;
+            track.rotations[i * 4 + 3] = q.w;
+            Point3f p = m.getLocation();
+            track.locations[i * 3] = p.x;
+            track.locations[i * 3 + 1] = p.y;
+            track.locations[i * 3 + 2] = p.z;
+            track.ipOffsets[i] = ipOffsets[motionNo];
+        }
+        Map<String, BoneMotionTrack> map = new HashMap<String, BoneMotionTrack>();
+        for (BoneMotionTrack track : tracks) {
+            map.put(track.boneName, track);
+        }
+        return map;
+    }
+}
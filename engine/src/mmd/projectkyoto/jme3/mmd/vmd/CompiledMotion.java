@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2010-2014, Kazuhiko Kobayashi
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package projectkyoto.jme3.mmd.vmd;
+
+import com.jme3.asset.cache.SizedAsset;
+import java.util.Collections;
+import java.util.Map;
+import projectkyoto.mmd.file.VMDFile;
+
+/**
+ * Immutable, decoded form of a VMDFile. Bone and skin tracks are keyed by
+ * bone and skin name and are never modified after construction, so one
+ * instance can be shared by any number of VMDControls on any thread.
+ * Use CompiledMotionKey to have the AssetManager cache it.
+ * @author kobayasi
+ */
+public final class CompiledMotion implements SizedAsset {
+
+    private final String modelName;
+    private final Map<String, BoneMotionTrack> boneTracks;
+    private final Map<String, SkinMotionTrack> skinTracks;
+    private final int lastFrameNo;
+    private final long estimatedSize;
+
+    public CompiledMotion(VMDFile vmdFile) {
+        modelName = vmdFile.getVmdModelName();
+        boneTracks = Collections.unmodifiableMap(BoneMotionTrack.createTracks(vmdFile));
+        skinTracks = Collections.unmodifiableMap(SkinMotionTrack.createTracks(vmdFile));
+        int frameNo = 0;
+        long size = 0;
+        for (BoneMotionTrack track : boneTracks.values()) {
+            frameNo = Math.max(frameNo, track.getLastFrameNo());
+            size += 4L * (track.frameNos.length + track.rotations.length + track.locations.length
+                    + track.ipOffsets.length + track.ipTable.length);
+        }
+        for (SkinMotionTrack track : skinTracks.values()) {
+            frameNo = Math.max(frameNo, track.getLastFrameNo());
+            size += 4L * (track.frameNos.length + track.weights.length);
+        }
+        lastFrameNo = frameNo;
+        estimatedSize = size;
+    }
+
+    public String getModelName() {
+        return modelName;
+    }
+
+    public Map<String, BoneMotionTrack> getBoneTracks() {
+        return boneTracks;
+    }
+
+    public BoneMotionTrack getBoneTrack(String boneName) {
+        return boneTracks.get(boneName);
+    }
+
+    public Map<String, SkinMotionTrack> getSkinTracks() {
+        return skinTracks;
+    }
+
+    public SkinMotionTrack getSkinTrack(String skinName) {
+        return skinTracks.get(skinName);
+    }
+
+    public int getLastFrameNo() {
+        return lastFrameNo;
+    }
+
+    /**
+     * The key frame arrays of all tracks.
+     */
+    public long getEstimatedSize() {
+        return estimatedSize;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2010-2014, Kazuhiko Kobayashi
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package projectkyoto.jme3.mmd.vmd;
+
+import com.jme3.asset.AssetKey;
+import projectkyoto.mmd.file.VMDFile;
+
+/**
+ * Loads a .vmd file through the loader registered for "vmd" (VMDLoader)
+ * and caches the resulting CompiledMotion, so every VMDControl playing the
+ * same file shares one copy of the decoded tracks.
+ * <pre>
+ * CompiledMotion motion = assetManager.loadAsset(new CompiledMotionKey("dance.vmd"));
+ * </pre>
+ * @author kobayasi
+ */
+public class CompiledMotionKey extends AssetKey<CompiledMotion> {
+
+    public CompiledMotionKey() {
+        super();
+    }
+
+    public CompiledMotionKey(String name) {
+        super(name);
+    }
+
+    @Override
+    public Object postProcess(Object asset) {
+        if (asset instanceof VMDFile) {
+            return new CompiledMotion((VMDFile) asset);
+        }
+        return asset;
+    }
+
+    @Override
+    public boolean shouldCache() {
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        // must not collide with the plain AssetKey that caches the VMDFile
+        return other != null && other.getClass() == getClass() && super.equals(other);
+    }
+
+    /**
+     * Differs from the hash code of an AssetKey with the same name for
+     * every name (h * 31 + 1 == h would need the even h * 30 to be -1),
+     * so hashed caches never mix up the VMDFile and the CompiledMotion
+     * of one file even though AssetKey.equals() accepts subclasses.
+     */
+    @Override
+    public int hashCode() {
+        return super.hashCode() * 31 + 1;
+    }
+}
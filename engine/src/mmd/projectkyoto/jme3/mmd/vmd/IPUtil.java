@@ -41,66 +41,73 @@ public class IPUtil {
         return ((3 + 9 * p1 - 9 * p2) * t * t + (6 * p2 - 12 * p1) * t + 3 * p1);
     }
 
-    static float calcIp(final VMDControl.BoneMotionList bml, float x, int offset) {
+    static final int IPTABLESIZE = 16;
+    /**
+     * floats per interpolation table, [x, y, z, rotation][IPTABLESIZE][t, value]
+     */
+    static final int IPTABLE_STRIDE = 4 * IPTABLESIZE * 2;
+
+    static float calcIp(final float ipTable[], int tableOffset, float x, int offset) {
         if (x <= 0) {
             return 0f;
         }
-        if (x >=1) {
+        if (x >= 1) {
             return 1f;
         }
-        final float ipTable[][][] = bml.ipTable;
-        int ipTableSize = ipTable[offset].length;
-        for(int i=bml.ipTableIndex;i<ipTableSize;i++) {
-            if (bml.ipTable[offset][i][0] == x) {
-                bml.ipTableIndex = i;
-                return bml.ipTable[offset][i][1];
-            }
-            if (ipTable[offset][i][0] > x) {
-                float x1,x2,y1,y2;
-                if (i == 0) {
-                    x1 = 0;
-                    y1 = 0;
-                } else {
-                    x1 = ipTable[offset][i-1][0];
-                    y1 = ipTable[offset][i-1][1];
-                }
-                x2 = ipTable[offset][i][0];
-                y2 = ipTable[offset][i][1];
-                bml.ipTableIndex = i;
-                return y1 + (y2 - y1) * (x - x1) / (x2 - x1);
+        final int base = tableOffset + offset * IPTABLESIZE * 2;
+        // first entry whose t is >= x
+        int low = 0;
+        int high = IPTABLESIZE;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ipTable[base + mid * 2] < x) {
+                low = mid + 1;
+            } else {
+                high = mid;
             }
         }
-        bml.ipTableIndex = ipTableSize;
-        return 1f;
+        if (low == IPTABLESIZE) {
+            float x1 = ipTable[base + (IPTABLESIZE - 1) * 2];
+            float y1 = ipTable[base + (IPTABLESIZE - 1) * 2 + 1];
+            return y1 + (1f - y1) * (x - x1) / (1f - x1);
+        }
+        float x2 = ipTable[base + low * 2];
+        float y2 = ipTable[base + low * 2 + 1];
+        if (x2 == x) {
+            return y2;
+        }
+        float x1, y1;
+        if (low == 0) {
+            x1 = 0;
+            y1 = 0;
+        } else {
+            x1 = ipTable[base + (low - 1) * 2];
+            y1 = ipTable[base + (low - 1) * 2 + 1];
+        }
+        return y1 + (y2 - y1) * (x - x1) / (x2 - x1);
     }
-    static void createInterpolationTable(final byte ip[], final float ipTable[][][]) {
+
+    static void createInterpolationTable(final byte ip[], final float ipTable[]) {
         int i, d;
         float x1, x2, y1, y2;
-        float inval, t, v, tt;
-        /*
-         * check if they are just a linear function
-         */
+        float inval;
         for (i = 0; i < 4; i++) {
-            int ipTableSize = ipTable[i].length;
+            int base = i * IPTABLESIZE * 2;
             if (ip[0 + i] == ip[4 + i] && ip[8 + i] == ip[12 + i]) {
                 // linear
-                for (d = 0; d < ipTableSize; d++) {
-                    ipTable[i][d][0] = (float) d / ipTableSize;
-                    ipTable[i][d][1] = (float) d / ipTableSize;
+                for (d = 0; d < IPTABLESIZE; d++) {
+                    ipTable[base + d * 2] = (float) d / IPTABLESIZE;
+                    ipTable[base + d * 2 + 1] = (float) d / IPTABLESIZE;
                 }
             } else {
                 x1 = ip[   i] / 127.0f;
                 y1 = ip[ 4 + i] / 127.0f;
                 x2 = ip[ 8 + i] / 127.0f;
                 y2 = ip[12 + i] / 127.0f;
-                for (d = 0; d < ipTableSize; d++) {
-                    inval = ((float) d ) / (float) ipTableSize;
-                    /*
-                     * get Y value for given inval
-                     */
-                    t = inval;
-                    ipTable[i][d][0] = ipfunc(t, x1, x2);
-                    ipTable[i][d][1] = ipfunc(t, y1, y2);
+                for (d = 0; d < IPTABLESIZE; d++) {
+                    inval = ((float) d ) / (float) IPTABLESIZE;
+                    ipTable[base + d * 2] = ipfunc(inval, x1, x2);
+                    ipTable[base + d * 2 + 1] = ipfunc(inval, y1, y2);
                 }
             }
         }
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2010-2014, Kazuhiko Kobayashi
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package projectkyoto.jme3.mmd.vmd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import projectkyoto.mmd.file.VMDFile;
+import projectkyoto.mmd.file.VMDSkin;
+
+/**
+ * Key frames of one skin (morph), decoded from a VMDFile into plain arrays
+ * sorted by frame number.
+ * @author kobayasi
+ */
+public final class SkinMotionTrack {
+
+    final String skinName;
+    final int[] frameNos;
+    final float[] weights;
+
+    SkinMotionTrack(String skinName, int size) {
+        this.skinName = skinName;
+        frameNos = new int[size];
+        weights = new float[size];
+    }
+
+    public String getSkinName() {
+        return skinName;
+    }
+
+    public int size() {
+        return frameNos.length;
+    }
+
+    public int getFrameNo(int i) {
+        return frameNos[i];
+    }
+
+    public float getWeight(int i) {
+        return weights[i];
+    }
+
+    public int getLastFrameNo() {
+        return frameNos.length == 0 ? 0 : frameNos[frameNos.length - 1];
+    }
+
+    /**
+     * Returns the index of the first key whose frame number is greater than
+     * frameNo, or size() if there is none.
+     */
+    public int upperBound(int frameNo) {
+        return BoneMotionTrack.upperBound(frameNos, frameNo);
+    }
+
+    private static final Comparator<VMDSkin> SKIN_COMPARATOR = new Comparator<VMDSkin>() {
+
+        @Override
+        public int compare(VMDSkin o1, VMDSkin o2) {
+            if (o1.getFlameNo() < o2.getFlameNo()) {
+                return -1;
+            } else if (o1.getFlameNo() == o2.getFlameNo()) {
+                return 0;
+            } else {
+                return 1;
+            }
+        }
+    };
+
+    public static Map<String, SkinMotionTrack> createTracks(VMDFile vmdFile) {
+        Map<String, ArrayList<VMDSkin>> skinListMap = new HashMap<String, ArrayList<VMDSkin>>();
+        for (VMDSkin skin : vmdFile.getSkinArray()) {
+            ArrayList<VMDSkin> skinList = skinListMap.get(skin.getSkinName());
+            if (skinList == null) {
+                skinList = new ArrayList<VMDSkin>();
+                skinListMap.put(skin.getSkinName(), skinList);
+            }
+            skinList.add(skin);
+        }
+        Map<String, SkinMotionTrack> map = new HashMap<String, SkinMotionTrack>();
+        for (Map.Entry<String, ArrayList<VMDSkin>> entry : skinListMap.entrySet()) {
+            ArrayList<VMDSkin> skinList = entry.getValue();
+            SkinMotionTrack track = new SkinMotionTrack(entry.getKey(), skinList.size());
+            Collections.sort(skinList, SKIN_COMPARATOR);
+            for (int i = 0; i < skinList.size(); i++) {
+                track.frameNos[i] = skinList.get(i).getFlameNo();
+                track.weights[i] = skinList.get(i).getWeight();
+            }
+            map.put(track.skinName, track);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2010-2014, Kazuhiko Kobayashi
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package projectkyoto.jme3.mmd.vmd;
+
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.PhysicsTickListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import projectkyoto.jme3.mmd.PMDNode;
+import projectkyoto.jme3.mmd.nativebullet.PMDPhysicsWorld;
+
+/**
+ * Updates many VMDControls in parallel once per frame.
+ * Controls sharing a PMDPhysicsWorld are stepped together so the world is
+ * simulated once per frame, and independent worlds are stepped concurrently.
+ * Before each physics sub step the keyframes and IK of the controls in a
+ * world are evaluated in parallel. After the physics step the skins, offset matrices and morph buffers of
+ * every model are computed in parallel, and PMDNode.update() is called on
+ * the thread calling update(), like VMDControlMT does.
+ * <p>
+ * A control added to the scheduler ignores its own controlUpdate(), so it
+ * may stay attached to the PMDNode. Do not add an UpdateControl to the same
+ * PMDNode.
+ * @author kobayasi
+ */
+public class VMDAnimationScheduler {
+
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+    private final ArrayList<WorldGroup> groupList = new ArrayList<WorldGroup>();
+    private final ArrayList<VMDControl> controlList = new ArrayList<VMDControl>();
+    private final ArrayList<Callable<Void>> physicsTasks = new ArrayList<Callable<Void>>();
+    private final ArrayList<Callable<Void>> poseTasks = new ArrayList<Callable<Void>>();
+
+    public VMDAnimationScheduler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public VMDAnimationScheduler(int threadCount) {
+        this(Executors.newFixedThreadPool(threadCount, new SchedulerThreadFactory()), true);
+    }
+
+    /**
+     * @param executor the executor is not shut down by shutdown().
+     */
+    public VMDAnimationScheduler(ExecutorService executor) {
+        this(executor, false);
+    }
+
+    private VMDAnimationScheduler(ExecutorService executor, boolean ownExecutor) {
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+    }
+
+    public void add(VMDControl vmdControl) {
+        if (vmdControl.scheduler != null) {
+            throw new IllegalArgumentException("VMDControl is already scheduled.");
+        }
+        PMDPhysicsWorld world = vmdControl.getPhysicsControl().getWorld();
+        WorldGroup group = null;
+        for (WorldGroup g : groupList) {
+            if (g.world == world) {
+                group = g;
+                break;
+            }
+        }
+        if (group == null) {
+            group = new WorldGroup(world, executor);
+            groupList.add(group);
+            physicsTasks.add(group);
+            world.getPhysicsSpace().addTickListener(group);
+        }
+        group.controlList.add(vmdControl);
+        vmdControl.scheduler = this;
+        controlList.add(vmdControl);
+        poseTasks.add(new PoseTask(vmdControl));
+    }
+
+    public void remove(VMDControl vmdControl) {
+        int index = controlList.indexOf(vmdControl);
+        if (index < 0) {
+            return;
+        }
+        controlList.remove(index);
+        poseTasks.remove(index);
+        vmdControl.scheduler = null;
+        for (int i = 0; i < groupList.size(); i++) {
+            WorldGroup group = groupList.get(i);
+            if (group.controlList.remove(vmdControl)) {
+                if (group.controlList.isEmpty()) {
+                    group.world.getPhysicsSpace().removeTickListener(group);
+                    groupList.remove(i);
+                    physicsTasks.remove(i);
+                }
+                break;
+            }
+        }
+    }
+
+    public List<VMDControl> getControlList() {
+        return controlList;
+    }
+
+    /**
+     * Advances all scheduled controls by tpf. Returns when every model is
+     * ready to be rendered.
+     */
+    public void update(float tpf) {
+        for (WorldGroup group : groupList) {
+            group.tpf = tpf;
+        }
+        invokeAll(physicsTasks);
+        invokeAll(poseTasks);
+        for (VMDControl vmdControl : controlList) {
+            if (vmdControl.isEnabled()) {
+                vmdControl.pmdNode.update();
+            }
+        }
+    }
+
+    public void shutdown() {
+        while (!controlList.isEmpty()) {
+            remove(controlList.get(controlList.size() - 1));
+        }
+        if (ownExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private void invokeAll(List<Callable<Void>> tasks) {
+        if (tasks.size() == 1) {
+            try {
+                tasks.get(0).call();
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+            return;
+        }
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Controls sharing one physics world. The first running control decides
+     * the sub steps, and all of them are moved before each sub step.
+     */
+    static class WorldGroup implements Callable<Void>, PhysicsTickListener {
+
+        final PMDPhysicsWorld world;
+        final ExecutorService executor;
+        final ArrayList<VMDControl> controlList = new ArrayList<VMDControl>();
+        final ArrayList<VMDControl> runningList = new ArrayList<VMDControl>();
+        float tpf;
+
+        WorldGroup(PMDPhysicsWorld world, ExecutorService executor) {
+            this.world = world;
+            this.executor = executor;
+        }
+
+        public Void call() {
+            VMDControl leader = null;
+            float stepTpf = 0f;
+            for (VMDControl vmdControl : controlList) {
+                if (!vmdControl.isEnabled() || vmdControl.isPause()) {
+                    continue;
+                }
+                vmdControl.currentTime2 += tpf;
+                if (leader == null) {
+                    leader = vmdControl;
+                    stepTpf = vmdControl.currentTime2 - vmdControl.currentTime;
+                }
+            }
+            if (leader != null && stepTpf > 0) {
+                leader.stepPhysics(stepTpf, this);
+            }
+            return null;
+        }
+
+        public void prePhysicsTick(PhysicsSpace space, float f) {
+            runningList.clear();
+            for (VMDControl vmdControl : controlList) {
+                if (vmdControl.isEnabled() && !vmdControl.isPause()) {
+                    runningList.add(vmdControl);
+                }
+            }
+            if (runningList.size() == 1) {
+                runningList.get(0).advanceMotion(f);
+            } else if (!runningList.isEmpty()) {
+                MotionBatch batch = new MotionBatch(runningList, f);
+                for (int i = 1; i < runningList.size(); i++) {
+                    executor.execute(batch);
+                }
+                batch.run();
+                batch.await();
+            }
+            world.updateKinematicPos();
+        }
+
+        public void physicsTick(PhysicsSpace space, float f) {
+        }
+    }
+
+    /**
+     * Evaluates the keyframes and IK of several controls. Every thread
+     * running the batch claims controls until none are left. The thread
+     * stepping the physics runs it too, so the step does not wait for pool
+     * threads that are busy, e.g. with the other worlds.
+     */
+    static class MotionBatch implements Runnable {
+
+        final VMDControl[] controls;
+        final float tpf;
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done;
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+        MotionBatch(List<VMDControl> controlList, float tpf) {
+            controls = controlList.toArray(new VMDControl[controlList.size()]);
+            this.tpf = tpf;
+            done = new CountDownLatch(controls.length);
+        }
+
+        public void run() {
+            int i;
+            while ((i = next.getAndIncrement()) < controls.length) {
+                try {
+                    controls[i].advanceMotion(tpf);
+                } catch (Throwable t) {
+                    error.compareAndSet(null, t);
+                } finally {
+                    done.countDown();
+                }
+            }
+        }
+
+        void await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    // the bones must not change while the physics steps
+                    done.await();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            Throwable t = error.get();
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            if (t != null) {
+                throw new RuntimeException(t);
+            }
+        }
+    }
+
+    static class PoseTask implements Callable<Void> {
+
+        final VMDControl vmdControl;
+
+        PoseTask(VMDControl vmdControl) {
+            this.vmdControl = vmdControl;
+        }
+
+        public Void call() {
+            if (!vmdControl.isEnabled()) {
+                return null;
+            }
+            PMDNode pmdNode = vmdControl.pmdNode;
+            if (!vmdControl.isPause()) {
+                vmdControl.updateSkins();
+            }
+            pmdNode.calcOffsetMatrices();
+            pmdNode.updateSkinBackData();
+            return null;
+        }
+    }
+
+    static class SchedulerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "VMDAnimationScheduler-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
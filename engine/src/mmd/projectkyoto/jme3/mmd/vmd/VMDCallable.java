@@ -26,6 +26,14 @@ public class VMDCallable implements Callable<Void> {
         this.pmdNode = pmdNode;
         vmdControl = new VMDControl(pmdNode, vmdFile, physicsControl, addPmdNodeFlag);
     }
+    public VMDCallable(PMDNode pmdNode, CompiledMotion compiledMotion) {
+        this.pmdNode = pmdNode;
+        vmdControl = new VMDControl(pmdNode, compiledMotion);
+    }
+    public VMDCallable(PMDNode pmdNode, CompiledMotion compiledMotion, PhysicsControl physicsControl, boolean addPmdNodeFlag) {
+        this.pmdNode = pmdNode;
+        vmdControl = new VMDControl(pmdNode, compiledMotion, physicsControl, addPmdNodeFlag);
+    }
     
     public Void call() throws Exception {
         vmdControl.update(tpf);
@@ -40,23 +40,14 @@ import com.jme3.scene.control.AbstractControl;
 import com.jme3.scene.control.Control;
 import com.jme3.util.TempVars;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
 import java.util.logging.Logger;
 import javax.vecmath.Point3f;
-import javax.vecmath.Quat4f;
 import projectkyoto.jme3.mmd.PMDNode;
-import projectkyoto.jme3.mmd.Skin;
 import projectkyoto.jme3.mmd.ik.IKControl;
 import projectkyoto.jme3.mmd.nativebullet.PhysicsControl;
 import projectkyoto.mmd.file.PMDBone;
 import projectkyoto.mmd.file.PMDIKData;
 import projectkyoto.mmd.file.VMDFile;
-import projectkyoto.mmd.file.VMDMotion;
-import projectkyoto.mmd.file.VMDSkin;
 
 /**
  *
@@ -66,16 +57,13 @@ public class VMDControl extends AbstractControl {
 
     private static final Logger logger = Logger.getLogger(VMDControl.class.getName());
     final PMDNode pmdNode;
-    final VMDFile vmdFile;
+    final CompiledMotion compiledMotion;
     int currentFrameNo = 0;
-    final Map<String, BoneMotionList> motionMap = new HashMap<String, BoneMotionList>();
     BoneMotionList[] boneMotionListArray;
-    final Map<String, SkinList> skinMap = new HashMap<String, SkinList>();
     SkinList[] skinListArray;
+    int[] undrivenSkinIndexes;
     int lastFrameNo = 0;
     boolean pause = false;
-    final VMDMotionComparator vmc = new VMDMotionComparator();
-    static final VMDSkinComparator vmsc = new VMDSkinComparator();
     final PhysicsControl physicsControl;
     int boneEnabled[];
     final IKControl ikControl;
@@ -83,6 +71,7 @@ public class VMDControl extends AbstractControl {
     float currentTime = 0f;
     float currentTime2 = 0f;
     boolean fixedPhysics = false;
+    VMDAnimationScheduler scheduler;
 
     public VMDControl(PMDNode pmdNode, VMDFile vmdFile) {
         this(pmdNode, vmdFile, new PhysicsControl());
@@ -93,8 +82,20 @@ public class VMDControl extends AbstractControl {
     }
 
     public VMDControl(PMDNode pmdNode, VMDFile vmdFile, PhysicsControl physicsControl, boolean addPmdNodeFlag) {
+        this(pmdNode, new CompiledMotion(vmdFile), physicsControl, addPmdNodeFlag);
+    }
+
+    public VMDControl(PMDNode pmdNode, CompiledMotion compiledMotion) {
+        this(pmdNode, compiledMotion, new PhysicsControl());
+    }
+
+    public VMDControl(PMDNode pmdNode, CompiledMotion compiledMotion, PhysicsControl physicsControl) {
+        this(pmdNode, compiledMotion, physicsControl, true);
+    }
+
+    public VMDControl(PMDNode pmdNode, CompiledMotion compiledMotion, PhysicsControl physicsControl, boolean addPmdNodeFlag) {
         this.pmdNode = pmdNode;
-        this.vmdFile = vmdFile;
+        this.compiledMotion = compiledMotion;
         this.physicsControl = physicsControl;
         resetBonePos();
         if (addPmdNodeFlag) {
@@ -158,103 +159,71 @@ public class VMDControl extends AbstractControl {
     }
 
     private void initMotionMap() {
-        VMDMotion m = new VMDMotion();
-        for (int motionNo = 0; motionNo < vmdFile.getMotionCount(); motionNo++) {
-            vmdFile.getMotion(m, motionNo);
-//        }
-//        for (VMDMotion m : vmdFile.getMotionArray()) {
-            BoneMotionList motionList = motionMap.get(m.getBoneName());
-            if (motionList == null) {
-                motionList = new BoneMotionList();
-                motionList.boneName = m.getBoneName();
-//                for(int i=0;i<pmdNode.getSkeleton().getBoneCount();i++) {
-//                    if (pmdNode.getSkeleton().getBone(i).getName().equals(m.getBoneName())) {
-//                        motionList.boneIndex = i;
-//                        break;
-//                    }
-//                }
-                motionList.bone = pmdNode.getSkeleton().getBone(m.getBoneName());
-                motionList.boneIndex = pmdNode.getSkeleton().getBoneIndex(motionList.bone);
-                if (motionList.bone == null) {
-                    continue;
-                }
-                motionMap.put(m.getBoneName(), motionList);
-//logger.info("boneName = "+m.getBoneName()+" "+motionList.boneIndex+" "+motionList.bone);
-                PMDBone pmdBone = pmdNode.getPmdModel().getBoneList().getBones()[motionList.boneIndex];
-                if (pmdBone.getBoneType() == 9) {
-                    // FOLLOW_ROTATE
-                    for (int i = motionList.boneIndex + 1; i < pmdNode.getPmdModel().getBoneList().getBones().length; i++) {
-                        PMDBone b = pmdNode.getPmdModel().getBoneList().getBones()[i];
-                        if (b.getParentBoneIndex() == motionList.boneIndex) {
-                            motionList.childBone = pmdNode.getSkeleton().getBone(i);
-                            break;
-                        }
-                    }
-                    motionList.rotateCoef = (float)pmdBone.getTargetBone() / 100f;
-                }
+        ArrayList<BoneMotionList> motionLists = new ArrayList<BoneMotionList>();
+        for (BoneMotionTrack track : compiledMotion.getBoneTracks().values()) {
+            if (track.size() == 0) {
+                continue;
             }
-            motionList.add(motionNo);
-            if (m.getFrameNo() > lastFrameNo) {
-                lastFrameNo = m.getFrameNo();
+            BoneMotionList motionList = new BoneMotionList();
+            motionList.track = track;
+            motionList.bone = pmdNode.getSkeleton().getBone(track.getBoneName());
+            if (motionList.bone == null) {
+                continue;
             }
-        }
-        Iterator<BoneMotionList> it = motionMap.values().iterator();
-        while (it.hasNext()) {
-            BoneMotionList ml = it.next();
-            for (PMDBone pmdBone : pmdNode.getPmdModel().getBoneList().getBones()) {
-                if (pmdBone.getBoneName().equals(ml.boneName)) {
-                    ml.boneType = pmdBone.getBoneType();
-                }
+            if (track.getLastFrameNo() > lastFrameNo) {
+                lastFrameNo = track.getLastFrameNo();
             }
-        }
-        while (it.hasNext()) {
-            BoneMotionList ml = it.next();
-            for (PMDBone pmdBone : pmdNode.getPmdModel().getBoneList().getBones()) {
-                if (pmdBone.getBoneName().equals(ml.boneName)) {
+            motionList.boneIndex = pmdNode.getSkeleton().getBoneIndex(motionList.bone);
+            PMDBone pmdBone = pmdNode.getPmdModel().getBoneList().getBones()[motionList.boneIndex];
+            motionList.boneType = pmdBone.getBoneType();
+            if (pmdBone.getBoneType() == 9) {
+                // FOLLOW_ROTATE
+                for (int i = motionList.boneIndex + 1; i < pmdNode.getPmdModel().getBoneList().getBones().length; i++) {
+                    PMDBone b = pmdNode.getPmdModel().getBoneList().getBones()[i];
+                    if (b.getParentBoneIndex() == motionList.boneIndex) {
+                        motionList.childBone = pmdNode.getSkeleton().getBone(i);
+                        break;
+                    }
                 }
+                motionList.rotateCoef = (float)pmdBone.getTargetBone() / 100f;
             }
-        }
-        for (int i = 0; i < boneEnabled.length; i++) {
-            if (boneEnabled[i] == 0) {
-                motionMap.remove(pmdNode.getPmdModel().getBoneList().getBones()[i].getBoneName());
+            if (boneEnabled[motionList.boneIndex] == 0) {
+                continue;
             }
+            motionLists.add(motionList);
         }
-        for (BoneMotionList ml : motionMap.values()) {
-            Collections.sort(ml, vmc);
-            ml.setCurrentCount(0);
-//            for(int i=0;i<ml.size();i++) {
-//                System.out.print(ml.getVMDMotion(tmpMotion, i).getFrameNo());
-//                System.out.print(" ");
-//            }
-        }
-//        System.out.println();
-        for (VMDSkin skin : vmdFile.getSkinArray()) {
-            SkinList skinList = skinMap.get(skin.getSkinName());
-            if (skinList == null) {
-                skinList = new SkinList();
-                skinList.skinName = skin.getSkinName();
-                skinList.skin = pmdNode.getSkinMap().get(skin.getSkinName());
-                skinMap.put(skinList.skinName, skinList);
+        ArrayList<SkinList> skinLists = new ArrayList<SkinList>();
+        for (SkinMotionTrack track : compiledMotion.getSkinTracks().values()) {
+            if (track.getLastFrameNo() > lastFrameNo) {
+                lastFrameNo = track.getLastFrameNo();
             }
-            skinList.add(skin);
-            if (skin.getFlameNo() > lastFrameNo) {
-                lastFrameNo = skin.getFlameNo();
+            SkinList skinList = new SkinList();
+            skinList.track = track;
+            skinList.skinName = track.getSkinName();
+            skinList.skinIndex = pmdNode.getSkinIndex(track.getSkinName());
+            skinLists.add(skinList);
+        }
+        boneMotionListArray = motionLists.toArray(new BoneMotionList[motionLists.size()]);
+        skinListArray = skinLists.toArray(new SkinList[skinLists.size()]);
+        boolean[] driven = new boolean[pmdNode.getSkinArray().length];
+        int drivenCount = 0;
+        for (SkinList skinList : skinListArray) {
+            if (skinList.skinIndex >= 0 && !driven[skinList.skinIndex]) {
+                driven[skinList.skinIndex] = true;
+                drivenCount++;
             }
         }
-        for (SkinList skinList : skinMap.values()) {
-            Collections.sort(skinList, vmsc);
+        undrivenSkinIndexes = new int[driven.length - drivenCount];
+        for (int i = 0, j = 0; i < driven.length; i++) {
+            if (!driven[i]) {
+                undrivenSkinIndexes[j++] = i;
+            }
         }
-        boneMotionListArray = motionMap.values().toArray(new BoneMotionList[motionMap.size()]);
-        skinListArray = skinMap.values().toArray(new SkinList[skinMap.size()]);
         setFrameNo(0);
     }
-    Quat4f tmpq1 = new Quat4f();
-    Quat4f tmpq2 = new Quat4f();
-    Quat4f tmpq3 = new Quat4f();
     Quaternion tmpq4 = new Quaternion();
     Quaternion tmpq5 = new Quaternion();
     Point3f tmpp1 = new Point3f();
-    Point3f tmpp2 = new Point3f();
     float prevTpf = 0;
 //    float stepTime = 1f/30f;
 //    @Override
@@ -303,6 +272,10 @@ public class VMDControl extends AbstractControl {
 
     @Override
     protected void controlUpdate(float tpf) {
+        if (scheduler != null) {
+            // updated by VMDAnimationScheduler.update()
+            return;
+        }
         if (isPause()) {
             return;
         }
@@ -311,9 +284,18 @@ public class VMDControl extends AbstractControl {
         if (tpf <= 0) {
             return;
         }
+        stepPhysics(tpf, tl);
+        updateSkins();
+    }
+
+    /**
+     * Steps the physics world by tpf. The bones are moved in
+     * tickListener.prePhysicsTick() before each sub step.
+     */
+    void stepPhysics(float tpf, PhysicsTickListener tickListener) {
         if (accuracy <= 0 || tpf > accuracy * 50f) {
 //            logger.info("tpf = "+tpf+" accuracy * 8 = "+(accuracy * 50f));
-            controlUpdate2(tpf);
+            tickListener.prePhysicsTick(physicsControl.getWorld().getPhysicsSpace(), tpf);
             physicsControl.getWorld().resetRigidBodyPos();
             physicsControl.getWorld().resetRigidBodyPos();
         } else if (fixedPhysics || tpf < accuracy * 3) {
@@ -339,7 +321,13 @@ public class VMDControl extends AbstractControl {
             physicsControl.getWorld().getPhysicsSpace().distributeEvents();
             physicsControl.getWorld().setAccuracy(accuracy);
         }
-        resetSkins();
+    }
+
+    void updateSkins() {
+        // skins driven by the motion are overwritten by calcSkins()
+        for (int skinIndex : undrivenSkinIndexes) {
+            pmdNode.setSkinWeight(skinIndex, 0f);
+        }
         calcSkins();
     }
 
@@ -357,9 +345,7 @@ public class VMDControl extends AbstractControl {
 
     protected void controlUpdate2(float tpf) {
         if (!pause) {
-            currentTime += tpf;
-            currentFrameNo = (int) (currentTime * 30f);
-            calcBonePosition();
+            advanceMotion(tpf);
             physicsControl.getWorld().updateKinematicPos();
 //            pmdNode.getSkeleton().updateWorldVectors();
             // physicsControl.update(tpf);
@@ -379,6 +365,12 @@ public class VMDControl extends AbstractControl {
         }
     }
 
+    void advanceMotion(float tpf) {
+        currentTime += tpf;
+        currentFrameNo = (int) (currentTime * 30f);
+        calcBonePosition();
+    }
+
     void calcBonePosition() {
         for (int i = pmdNode.getSkeleton().getBoneCount() - 1; i >= 0; i--) {
             int i2 = i; //boneEnabled.length -1 - i;
@@ -390,89 +382,75 @@ public class VMDControl extends AbstractControl {
                 bone.getLocalRotation().loadIdentity();
             }
         }
-        boneLoop:
         for (BoneMotionList bml : boneMotionListArray) {
-            if (bml.size() == 0) {
-                continue;
-            }
+            final BoneMotionTrack track = bml.track;
+            final int size = track.size();
             Bone bone = bml.bone;
             if (bone != null && boneEnabled[bml.boneIndex] == 1) {
-                if (bml.size() - 1 < bml.currentCount) {
-                    VMDMotion m1 = bml.getVMDMotion(tmpMotion2, bml.size() - 1);
-                    Quat4f q = m1.getRotation();
+                final float[] rotations = track.rotations;
+                final float[] locations = track.locations;
+                if (size - 1 < bml.currentCount) {
+                    int k = size - 1;
                     if (bml.boneType == 9 && bml.childBone != null) {
                         TempVars t = TempVars.get();
-                        t.quat1.set(q.x, q.y, q.z,q.w);
+                        t.quat1.set(rotations[k * 4], rotations[k * 4 + 1], rotations[k * 4 + 2], rotations[k * 4 + 3]);
                         t.quat2.set(0,0,0,1);
                         t.quat2.slerp(bml.childBone.getLocalRotation(), bml.rotateCoef);
                         t.quat1.multLocal(t.quat2);
                         bone.getLocalRotation().set(t.quat1);
                         t.release();
                     } else {
-                        bone.getLocalRotation().set(q.x, q.y, q.z, q.w);
+                        bone.getLocalRotation().set(rotations[k * 4], rotations[k * 4 + 1], rotations[k * 4 + 2], rotations[k * 4 + 3]);
                     }
-                    Point3f p = m1.getLocation();
                     Vector3f v = bone.getWorldBindPosition();
-                    if (true || bml.boneType == 1 || bml.boneType == 2) {
-                        bone.getLocalPosition().set(v.x + p.x, v.y + p.y, v.z + p.z);
-                    }
+                    bone.getLocalPosition().set(v.x + locations[k * 3], v.y + locations[k * 3 + 1], v.z + locations[k * 3 + 2]);
                 } else {
-                    VMDMotion m1 = tmpMotion2, m2 = tmpMotion3;
+                    final int[] frameNos = track.frameNos;
                     int count = bml.currentCount;
-                    for (;;) {
-                        VMDMotion m = tmpMotion.set(bml.m2);
-                        if (m.getFrameNo() > currentFrameNo) {
-                            m1.set(bml.m1);
-                            m2.set(bml.m2);
-                            break;
-                        }
-                        if (count >= bml.size()) {
-                            m1.set(bml.m1);
-                            m2.set(bml.m2);
-                            break;
-                        }
+                    while (count < size && frameNos[count] <= currentFrameNo) {
                         count++;
-                        bml.setCurrentCount(count);
                     }
-                    if (m1.getFrameNo() > currentFrameNo) {
-                        tmpq1.set(m1.getRotation());
-                        tmpp1.set(m1.getLocation());
+                    bml.currentCount = count;
+                    int k1, k2;
+                    if (count == 0) {
+                        k1 = k2 = 0;
+                    } else if (count < size) {
+                        k1 = count - 1;
+                        k2 = count;
+                    } else {
+                        k1 = k2 = size - 1;
+                    }
+                    if (frameNos[k1] > currentFrameNo) {
                         continue;
                     }
-                    if (m2.getFrameNo() == m1.getFrameNo()) {
-                        tmpq1.set(m1.getRotation());
-                        tmpp1.set(m1.getLocation());
+                    if (frameNos[k2] == frameNos[k1]) {
+                        bone.getLocalRotation().set(rotations[k1 * 4], rotations[k1 * 4 + 1], rotations[k1 * 4 + 2], rotations[k1 * 4 + 3]);
+                        tmpp1.set(locations[k1 * 3], locations[k1 * 3 + 1], locations[k1 * 3 + 2]);
                     } else {
-                        float f = (float) (m2.getFrameNo() - m1.getFrameNo()) * 1f / 30f;
+                        float f = (float) (frameNos[k2] - frameNos[k1]) * 1f / 30f;
                         assert f >= 0;
-//                        float f2 = (float) (currentFrameNo - m1.getFrameNo()) * 1f / 30 + timeFromCurrentFrameNo;
-                        float f2 = currentTime - m1.getFrameNo() / 30f;
+                        float f2 = currentTime - frameNos[k1] / 30f;
                         assert (f2 >= 0);
                         float f3 = f2 / f;
                         assert (f3 >= 0 && f3 <= 1);
-                        float fx = IPUtil.calcIp(bml, f3, 0);//calcIp(m2.getInterpolation(), f3, 0);
-                        float fy = IPUtil.calcIp(bml, f3, 1); //calcIp(m2.getInterpolation(), f3, 1);
-                        float fz = IPUtil.calcIp(bml, f3, 2); //calcIp(m2.getInterpolation(), f3, 2);
-                        float fr = IPUtil.calcIp(bml, f3, 3); //calcIp(m2.getInterpolation(), f3, 3);
-                        tmpq4.set(m1.getRotation().x, m1.getRotation().y, m1.getRotation().z, m1.getRotation().w);
-                        tmpq4.normalizeLocal();
-                        tmpq5.set(m2.getRotation().x, m2.getRotation().y, m2.getRotation().z, m2.getRotation().w);
-                        tmpq5.normalizeLocal();
+                        final float[] ipTable = track.ipTable;
+                        final int ipOffset = track.ipOffsets[k2];
+                        float fx = IPUtil.calcIp(ipTable, ipOffset, f3, 0);
+                        float fy = IPUtil.calcIp(ipTable, ipOffset, f3, 1);
+                        float fz = IPUtil.calcIp(ipTable, ipOffset, f3, 2);
+                        float fr = IPUtil.calcIp(ipTable, ipOffset, f3, 3);
+                        tmpq4.set(rotations[k1 * 4], rotations[k1 * 4 + 1], rotations[k1 * 4 + 2], rotations[k1 * 4 + 3]);
+                        tmpq5.set(rotations[k2 * 4], rotations[k2 * 4 + 1], rotations[k2 * 4 + 2], rotations[k2 * 4 + 3]);
                         tmpq4.slerp(tmpq5, fr);
-                        tmpq1.set(tmpq4.getX(), tmpq4.getY(), tmpq4.getZ(), tmpq4.getW());
-                        tmpp1.x = m1.getLocation().x + (m2.getLocation().x - m1.getLocation().x) * fx;
-                        tmpp1.y = m1.getLocation().y + (m2.getLocation().y - m1.getLocation().y) * fy;
-                        tmpp1.z = m1.getLocation().z + (m2.getLocation().z - m1.getLocation().z) * fz;
-                    }
-                    if (true || bml.boneType == 0 || bml.boneType == 2 || bml.boneType == 1 || bml.boneType == 4) {
-                        bone.getLocalRotation().set(tmpq1.x, tmpq1.y, tmpq1.z, tmpq1.w);
-                        bone.getLocalRotation().normalizeLocal();
+                        bone.getLocalRotation().set(tmpq4);
+                        tmpp1.x = locations[k1 * 3] + (locations[k2 * 3] - locations[k1 * 3]) * fx;
+                        tmpp1.y = locations[k1 * 3 + 1] + (locations[k2 * 3 + 1] - locations[k1 * 3 + 1]) * fy;
+                        tmpp1.z = locations[k1 * 3 + 2] + (locations[k2 * 3 + 2] - locations[k1 * 3 + 2]) * fz;
                     }
+                    bone.getLocalRotation().normalizeLocal();
                     Point3f p = tmpp1;
                     Vector3f v = bone.getWorldBindPosition();
-                    if (true || bml.boneType == 1 || bml.boneType == 2) {
-                        bone.getLocalPosition().set(v.x + p.x, v.y + p.y, v.z + p.z);
-                    }
+                    bone.getLocalPosition().set(v.x + p.x, v.y + p.y, v.z + p.z);
                 }
             }
         }
@@ -496,18 +474,19 @@ public class VMDControl extends AbstractControl {
 
     public void calcSkins() {
         for (SkinList skinList : skinListArray) {
+            final SkinMotionTrack track = skinList.track;
+            final int[] frameNos = track.frameNos;
+            final float[] weights = track.weights;
             float w1 = 0f, w2 = 0f;
             int c1 = 0, c2 = 0;
-            int skinListSize = skinList.size();
+            int skinListSize = track.size();
             for (; skinList.currentCount < skinListSize; skinList.currentCount++) {
-                VMDSkin skin = skinList.get(skinList.currentCount);
-                if (skin.getFlameNo() > currentFrameNo) {
-                    w2 = skin.getWeight();
-                    c2 = skin.getFlameNo();
+                if (frameNos[skinList.currentCount] > currentFrameNo) {
+                    w2 = weights[skinList.currentCount];
+                    c2 = frameNos[skinList.currentCount];
                     if (skinList.currentCount > 0) {
-                        skin = skinList.get(skinList.currentCount - 1);
-                        w1 = skin.getWeight();
-                        c1 = skin.getFlameNo();
+                        w1 = weights[skinList.currentCount - 1];
+                        c1 = frameNos[skinList.currentCount - 1];
                     } else {
                         w1 = 0f;
                         c1 = 0;
@@ -517,10 +496,9 @@ public class VMDControl extends AbstractControl {
             }
             float weight;
             if (skinList.currentCount == skinListSize) {
-                weight = skinList.get(skinList.currentCount - 1).getWeight();
+                weight = weights[skinListSize - 1];
             } else {
                 float f1 = ((float) (c2 - c1)) * 1f / 30f;
-//                float f2 = ((float) (currentFrameNo - c1)) * 1f / 30f;
                 float f2 = currentTime - (float) c1 / 30f;
                 if (f1 > 0) {
                     weight = w1 + (w2 - w1) * f2 / f1;
@@ -528,31 +506,26 @@ public class VMDControl extends AbstractControl {
                     weight = w2;
                 }
             }
-//            pmdNode.setSkinWeight(skinList.skinName, weight);
-            if (skinList.skin != null) {
-                skinList.skin.setWeight(weight);
+            if (skinList.skinIndex >= 0) {
+                pmdNode.setSkinWeight(skinList.skinIndex, weight);
             }
         }
     }
 
     public void resetSkins() {
-        for (String skinName : pmdNode.getSkinSet()) {
-            pmdNode.setSkinWeight(skinName, 0f);
+        for (int i = pmdNode.getSkinArray().length - 1; i >= 0; i--) {
+            pmdNode.setSkinWeight(i, 0f);
         }
     }
 
     public void setFrameNo(int frameNo) {
         resetBonePos();
         for (BoneMotionList bml : boneMotionListArray) {
-            int count = bml.size() - 1;
-            for (int i = 0; i < bml.size(); i++) {
-                VMDMotion m = bml.getVMDMotion(tmpMotion, i);
-                if (m.getFrameNo() > frameNo) {
-                    count = i;
-                    break;
-                }
+            int count = bml.track.upperBound(frameNo);
+            if (count == bml.track.size()) {
+                count--;
             }
-            bml.setCurrentCount(count);
+            bml.currentCount = count;
         }
         currentFrameNo = frameNo;
         currentTime = frameNo / 30f;
@@ -560,14 +533,11 @@ public class VMDControl extends AbstractControl {
         prevTpf = 0;
         calcBonePosition();
         for (SkinList skinList : skinListArray) {
-            skinList.currentCount = skinList.size() - 1;
-            for (int i = 0; i < skinList.size(); i++) {
-                VMDSkin skin = skinList.get(i);
-                if (skin.getFlameNo() > frameNo) {
-                    skinList.currentCount = i;
-                    break;
-                }
+            int count = skinList.track.upperBound(frameNo);
+            if (count == skinList.track.size()) {
+                count--;
             }
+            skinList.currentCount = count;
         }
         calcSkins();
 //        resetSkins();
@@ -624,6 +594,14 @@ public class VMDControl extends AbstractControl {
     }
     /* ipfunc: t->value for 4-point (3-dim.) bezier curve */
 
+    public CompiledMotion getCompiledMotion() {
+        return compiledMotion;
+    }
+
+    public PMDNode getPmdNode() {
+        return pmdNode;
+    }
+
     public PhysicsControl getPhysicsControl() {
         return physicsControl;
     }
@@ -632,7 +610,9 @@ public class VMDControl extends AbstractControl {
 
         @Override
         public void prePhysicsTick(PhysicsSpace ps, float f) {
-            controlUpdate2(f);
+            if (scheduler == null) {
+                controlUpdate2(f);
+            }
         }
 
         @Override
@@ -649,95 +629,23 @@ public class VMDControl extends AbstractControl {
         this.accuracy = accuracy;
         physicsControl.getWorld().setAccuracy(accuracy);
     }
-    private final VMDMotion tmpMotion = new VMDMotion();
-    private final VMDMotion tmpMotion2 = new VMDMotion();
-    private final VMDMotion tmpMotion3 = new VMDMotion();
+    class BoneMotionList {
 
-    class BoneMotionList extends ArrayList<Integer> {
-
-        static final int IPTABLESIZE = 16;
-        String boneName;
+        BoneMotionTrack track;
         Bone bone;
         int boneIndex;
         int currentCount;
-        final VMDMotion m1 = new VMDMotion();
-        final VMDMotion m2 = new VMDMotion();
         int boneType;
-        final float ipTable[][][] = new float[4][IPTABLESIZE][2];
-        int ipTableIndex = 0;
-        int frame1, frame2;
-        final float val1[] = new float[4];
-        final float val2[] = new float[4];
         // for TWIST, FOLLOW_ROTATE
         Bone childBone;
         float rotateCoef ;
-
-        VMDMotion getVMDMotion(VMDMotion m, int i) {
-            vmdFile.getMotion(m, get(i));
-            return m;
-        }
-
-        void setCurrentCount(int newCount) {
-            if (currentCount != newCount) {
-                currentCount = newCount;
-                if (newCount >= 0 && newCount < size()) {
-                    IPUtil.createInterpolationTable(getVMDMotion(tmpMotion, currentCount).getInterpolation(), ipTable);
-                }
-            }
-            ipTableIndex = 0;
-            if (newCount == 0) {
-                getVMDMotion(m1, 0);
-                m2.set(m1);
-            } else if (newCount < size()) {
-                getVMDMotion(m1, newCount - 1);
-                getVMDMotion(m2, newCount);
-            } else if (size() > 0) {
-                getVMDMotion(m1, size() - 1);
-                m2.set(m1);
-            } else {
-//                m1 = null;
-//                m2 = null;
-            }
-        }
-    }
-
-    class VMDMotionComparator implements Comparator<Integer> {
-
-        final VMDMotion o1 = new VMDMotion();
-        final VMDMotion o2 = new VMDMotion();
-
-        @Override
-        public int compare(Integer i1, Integer i2) {
-            vmdFile.getMotion(o1, i1);
-            vmdFile.getMotion(o2, i2);
-            if (o1.getFrameNo() < o2.getFrameNo()) {
-                return -1;
-            } else if (o1.getFrameNo() == o2.getFrameNo()) {
-                return 0;
-            } else {
-                return 1;
-            }
-        }
     }
 }
 
-class SkinList extends ArrayList<VMDSkin> {
+class SkinList {
 
     String skinName;
-    Skin skin;
+    SkinMotionTrack track;
+    int skinIndex;
     int currentCount;
 }
-
-class VMDSkinComparator implements Comparator<VMDSkin> {
-
-    @Override
-    public int compare(VMDSkin o1, VMDSkin o2) {
-        if (o1.getFlameNo() < o2.getFlameNo()) {
-            return -1;
-        } else if (o1.getFlameNo() < o2.getFlameNo()) {
-            return 0;
-        } else {
-            return 1;
-        }
-    }
-}
@@ -67,6 +67,16 @@ public class VMDControlMT extends AbstractControl {
         callable = new VMDCallable(pmdNode, vmdFile, physicsControl, addPmdNodeFlag);
         this.pmdNode = pmdNode;
     }
+    public VMDControlMT(ScheduledThreadPoolExecutor executor, PMDNode pmdNode, CompiledMotion compiledMotion) {
+        this.executor = executor;
+        callable = new VMDCallable(pmdNode, compiledMotion);
+        this.pmdNode = pmdNode;
+    }
+    public VMDControlMT(ScheduledThreadPoolExecutor executor, PMDNode pmdNode, CompiledMotion compiledMotion, PhysicsControl physicsControl, boolean addPmdNodeFlag) {
+        this.executor = executor;
+        callable = new VMDCallable(pmdNode, compiledMotion, physicsControl, addPmdNodeFlag);
+        this.pmdNode = pmdNode;
+    }
 
     @Override
     protected void controlUpdate(float f) {
@@ -40,6 +40,7 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel.MapMode;
 import projectkyoto.mmd.file.util2.BufferUtil;
+import projectkyoto.mmd.file.util2.ByteBufferInputStream;
 
 /**
  *
@@ -56,6 +57,11 @@ public class PMDModel implements Serializable{
     private int vertCount; // 頂点数
 //    private PMDVertex[] vertexList;
     private ByteBuffer vertexBuffer;
+    /**
+     * true if vertexBuffer is a little endian region of the file, with the
+     * z axis not yet flipped.
+     */
+    private transient boolean fileVertexLayout;
     private int faceVertCount;
     private int faceVertIndex[];
     private int materialCount;
@@ -82,24 +88,55 @@ public class PMDModel implements Serializable{
         readFromFile(is);
     }
     public void readFromFile(InputStream is) throws IOException {
-        DataInputStreamLittleEndian dis = null;
         try {
-//            is = new DataInputStreamLittleEndian(new BufferedInputStream(
-//                    new FileInputStream(
-//                    file)));
-            dis = new DataInputStreamLittleEndian(new BufferedInputStream(is));
-            readFromStream(dis);
-            dis.close();
-//            this.url = url;
+            readFromBuffer(BufferUtil.readLittleEndian(is));
         } finally {
-            if (dis != null) {
-                dis.close();
-                dis = null;
-            }
+            is.close();
         }
 //        System.out.println(toString());
     }
 
+    /**
+     * Reads a PMD file from a little endian buffer, usually a mapped file.
+     * The vertices are not copied; vertexBuffer is a slice of bb.
+     */
+    public void readFromBuffer(ByteBuffer bb) throws IOException {
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        id = BufferUtil.readString(bb, 3).intern();
+        if (!"Pmd".equals(id)) {
+            throw new InvalidPMDFileException("Invalid ID:" + id);
+        }
+        version = bb.getFloat();
+        modelName = BufferUtil.readString(bb, 20).intern();
+        comment = BufferUtil.readString(bb, 256).intern();
+        vertCount = bb.getInt();
+        int vertexBytes = PMDVertex.size() * vertCount;
+        if (vertCount < 0 || vertexBytes > bb.remaining()) {
+            throw new InvalidPMDFileException("Invalid vertCount:" + vertCount);
+        }
+        ByteBuffer vb = bb.slice();
+        vb.limit(vertexBytes);
+        vertexBuffer = vb.order(ByteOrder.LITTLE_ENDIAN);
+        fileVertexLayout = true;
+        bb.position(bb.position() + vertexBytes);
+        faceVertCount = bb.getInt();
+        if (faceVertCount < 0 || faceVertCount * 2 > bb.remaining()) {
+            throw new InvalidPMDFileException("Invalid faceVertCount:" + faceVertCount);
+        }
+        faceVertIndex = new int[faceVertCount];
+        for (int i = 0; i < faceVertCount; i += 3) {
+            // 逆にする。
+            int i0 = bb.getShort() & 0xffff;
+            faceVertIndex[i] = bb.getShort() & 0xffff;
+            faceVertIndex[i + 1] = i0;
+            if (i + 2 < faceVertCount) {
+                faceVertIndex[i + 2] = bb.getShort() & 0xffff;
+            }
+        }
+        DataInputStreamLittleEndian is = new DataInputStreamLittleEndian(new ByteBufferInputStream(bb));
+        readSections(is);
+    }
+
     public void readFromStream(DataInputStreamLittleEndian is) throws
             IOException {
         readFromStream(is, false);
@@ -134,6 +171,7 @@ public class PMDModel implements Serializable{
                 tmpVertex.readFromStream(is);
                 tmpVertex.writeToBuffer(vertexBuffer);
             }
+            fileVertexLayout = false;
         }
         faceVertCount = is.readInt();
         if (skipVertFlag) {
@@ -156,6 +194,10 @@ public class PMDModel implements Serializable{
                 faceVertIndex[i + 1] = tmp;
             }
         }
+        readSections(is);
+    }
+
+    private void readSections(DataInputStreamLittleEndian is) throws IOException {
         materialCount = is.readInt();
         material = new PMDMaterial[materialCount];
         for (int i = 0; i < materialCount; i++) {
@@ -228,9 +270,24 @@ public class PMDModel implements Serializable{
     public PMDVertex getVertex(int i, PMDVertex in) {
         vertexBuffer.position(PMDVertex.size() * i);
         in.readFromBuffer(vertexBuffer);
+        if (fileVertexLayout) {
+            in.getPos().z = -in.getPos().z;
+            in.getNormal().z = -in.getNormal().z;
+        }
         return in;
     }
     public void setVertex(int i, PMDVertex in) {
+        if (fileVertexLayout) {
+            // the file region may be read only.
+            ByteBuffer bb = BufferUtil.createByteBuffer(PMDVertex.size() * vertCount);
+            PMDVertex tmpVertex = new PMDVertex();
+            for (int i2 = 0; i2 < vertCount; i2++) {
+                getVertex(i2, tmpVertex);
+                tmpVertex.writeToBuffer(bb);
+            }
+            vertexBuffer = bb;
+            fileVertexLayout = false;
+        }
         vertexBuffer.position(PMDVertex.size() * i);
         in.writeToBuffer(vertexBuffer);
     }
@@ -243,9 +300,8 @@ public class PMDModel implements Serializable{
                 + " comment = " + comment);
         sb.append(" vertexCount = " + vertCount);
         PMDVertex tmpVertex = new PMDVertex();
-        vertexBuffer.position(0);
         for (int i=0;i<vertCount;i++) {
-            tmpVertex.readFromBuffer(vertexBuffer);
+            getVertex(i, tmpVertex);
             sb.append(tmpVertex.toString());
         }
         sb.append(" faceVertCount = " + faceVertCount);
@@ -353,6 +409,7 @@ public class PMDModel implements Serializable{
 
     public void setVertexBuffer(ByteBuffer vertexBuffer) {
         this.vertexBuffer = vertexBuffer;
+        fileVertexLayout = false;
     }
 
 
@@ -27,22 +27,24 @@
 
 package projectkyoto.mmd.file;
 
-import java.io.BufferedInputStream;
+import com.jme3.asset.cache.SizedAsset;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import projectkyoto.mmd.file.util2.BufferUtil;
 
 /**
  *
  * @author kobayasi
  */
-public class VMDFile implements Serializable{
+public class VMDFile implements Serializable, SizedAsset{
     private String vmdHeader; // char[30] Vocaloid Motion Data 0002
     private String vmdModelName; // char[20]
     private int motionCount;
@@ -51,11 +53,22 @@ public class VMDFile implements Serializable{
     private VMDSkin skinArray[];
     protected final ArrayList<String> boneNames = new ArrayList<String>();
 //    protected final ArrayList<String> skinNames = new ArrayList<String>();
-    private ByteBuffer bb1;
+    /**
+     * Motion records as stored in the file (111 bytes each, little endian).
+     */
+    private ByteBuffer motionBuffer;
+    private short[] motionBoneIndexes;
+    /**
+     * Record indexes sorted by frame number.
+     */
+    private int[] motionOrder;
+    static final int MOTION_RECORD_SIZE = 111;
 //    private ByteBuffer bb2;
     public VMDFile() {
 //        motionArray = new VMDMotion[0];
         skinArray = new VMDSkin[0];
+        motionBoneIndexes = new short[0];
+        motionOrder = new int[0];
     }
     
     public VMDFile(URL url) throws IOException {
@@ -65,43 +78,68 @@ public class VMDFile implements Serializable{
         read(is2);
     }
     public void read(InputStream is2) throws IOException{
-        DataInputStreamLittleEndian is = null;
-        try {
-            is = new DataInputStreamLittleEndian(new BufferedInputStream(is2));
-            vmdHeader = is.readString(30);
-            if (!"Vocaloid Motion Data 0002".equals(vmdHeader)) {
-                throw new InvalidVMDFileException();
-            }
-            vmdModelName = is.readString(20);
-            motionCount = is.readInt();
-//            motionArray = new VMDMotion[motionCount];
-            bb1 = BufferUtil.createByteBuffer(98 * motionCount);
-            VMDMotion motion = new VMDMotion();
-            motion.vmdFile = this;
-            Integer indexes[] = new Integer[motionCount];
-            for(int i=0;i<motionCount;i++) {
-                motion.readFromStream(is);
-                motion.writeToBuffer(bb1);
-                indexes[i] = i;
-            }
-            Arrays.sort(indexes, new VMDComparator());
-            ByteBuffer bb2 = BufferUtil.createByteBuffer(98 * motionCount);
-            for(int i=0;i<motionCount;i++) {
-                getMotion(motion, indexes[i]);
-                bb2.position(98 * i);
-                motion.writeToBuffer(bb2);
-            }
-            bb1 = bb2;
-            skinCount = is.readInt();
-//            bb2 = BufferUtil.createByteBuffer(98 * skinCount);
-            skinArray = new VMDSkin[skinCount];
-            for(int i=0;i<skinCount;i++) {
-                skinArray[i] = new VMDSkin(is);
-            }
-        } finally {
-            if (is != null) {
-                is.close();
+        read(BufferUtil.readLittleEndian(is2));
+    }
+
+    /**
+     * Reads a VMD file from a little endian buffer, usually a mapped file.
+     * The motion records are not copied; getMotion() decodes them from bb
+     * through an index sorted by frame number.
+     */
+    public void read(ByteBuffer bb) throws IOException {
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        if (bb.remaining() < 54) {
+            throw new InvalidVMDFileException();
+        }
+        vmdHeader = BufferUtil.readString(bb, 30).intern();
+        if (!"Vocaloid Motion Data 0002".equals(vmdHeader)) {
+            throw new InvalidVMDFileException();
+        }
+        vmdModelName = BufferUtil.readString(bb, 20).intern();
+        motionCount = bb.getInt();
+        if (motionCount < 0 || (long) motionCount * MOTION_RECORD_SIZE > bb.remaining()) {
+            throw new InvalidVMDFileException("Invalid motionCount:" + motionCount);
+        }
+        motionBuffer = bb.slice();
+        motionBuffer.limit(motionCount * MOTION_RECORD_SIZE);
+        motionBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        motionBoneIndexes = new short[motionCount];
+        // bone names repeat, decode each distinct name once.
+        HashMap<ByteBuffer, Short> nameMap = new HashMap<ByteBuffer, Short>();
+        long keys[] = new long[motionCount];
+        for (int i = 0; i < motionCount; i++) {
+            int offset = i * MOTION_RECORD_SIZE;
+            ByteBuffer nameKey = motionBuffer.duplicate();
+            nameKey.limit(offset + 15).position(offset);
+            Short boneIndex = nameMap.get(nameKey);
+            if (boneIndex == null) {
+                String boneName = BufferUtil.readString(nameKey.duplicate(), 15).intern();
+                int index = boneNames.indexOf(boneName);
+                if (index < 0) {
+                    boneNames.add(boneName);
+                    index = boneNames.size() - 1;
+                }
+                boneIndex = (short) index;
+                nameMap.put(nameKey, boneIndex);
             }
+            motionBoneIndexes[i] = boneIndex;
+            int frameNo = motionBuffer.getInt(offset + 15);
+            // stable sort by frame number
+            keys[i] = ((long) frameNo << 32) | i;
+        }
+        Arrays.sort(keys);
+        motionOrder = new int[motionCount];
+        for (int i = 0; i < motionCount; i++) {
+            motionOrder[i] = (int) keys[i];
+        }
+        bb.position(bb.position() + motionCount * MOTION_RECORD_SIZE);
+        skinCount = bb.getInt();
+        if (skinCount < 0 || (long) skinCount * 23 > bb.remaining()) {
+            throw new InvalidVMDFileException("Invalid skinCount:" + skinCount);
+        }
+        skinArray = new VMDSkin[skinCount];
+        for(int i=0;i<skinCount;i++) {
+            skinArray[i] = new VMDSkin(bb);
         }
     }
 
@@ -114,7 +152,7 @@ public class VMDFile implements Serializable{
         sb.append("motionArray = {\n");
         VMDMotion m = new VMDMotion();
         for(int i=0;i<motionCount;i++) {
-            m.readFromBuffer(bb1);
+            getMotion(m, i);
             sb.append(m).append("\n");
         }
         sb.append("}\n");
@@ -134,12 +172,15 @@ public class VMDFile implements Serializable{
 //    public void setMotionArray(VMDMotion[] motionArray) {
 //        this.motionArray = motionArray;
 //    }
-    public synchronized VMDMotion getMotion(VMDMotion m, int i) {
+    public VMDMotion getMotion(VMDMotion m, int i) {
         m.vmdFile = this;
-        bb1.position(98 * i);
-        m.readFromBuffer(bb1);
+        int record = motionOrder[i];
+        m.readFromFileBuffer(motionBuffer, record * MOTION_RECORD_SIZE, motionBoneIndexes[record]);
         return m;
     }
+    public List<String> getBoneNames() {
+        return boneNames;
+    }
     public int getMotionCount() {
         return motionCount;
     }
@@ -179,20 +220,13 @@ public class VMDFile implements Serializable{
     public void setVmdModelName(String vmdModelName) {
         this.vmdModelName = vmdModelName;
     }
-    class VMDComparator implements Comparator<Integer> {
-        VMDMotion m1 = new VMDMotion();
-        VMDMotion m2 = new VMDMotion();
-        @Override
-        public int compare(Integer t, Integer t1) {
-            getMotion(m1, t);
-            getMotion(m2, t1);
-            if (m1.getFrameNo() < m2.getFrameNo()) {
-                return -1;
-            } else if (m1.getFrameNo() == m2.getFrameNo()) {
-                return 0;
-            }
-            return 1;
-        }
-        
+
+    /**
+     * The motion records with their bone and order indexes, and about 32
+     * bytes per VMDSkin (skin names are interned).
+     */
+    public long getEstimatedSize() {
+        return (long) motionCount * (MOTION_RECORD_SIZE + 2 + 4)
+                + (long) skinCount * 32;
     }
 }
@@ -89,6 +89,26 @@ public class VMDMotion implements Serializable{
         bb.get(interpolation);
         return this;
     }
+    /**
+     * Reads a motion record in the file layout with absolute gets,
+     * so the buffer may be shared by several threads.
+     */
+    public VMDMotion readFromFileBuffer(ByteBuffer bb, int offset, short boneIndex) {
+        this.boneIndex = boneIndex;
+        frameNo = bb.getInt(offset + 15);
+        location.x = bb.getFloat(offset + 19);
+        location.y = bb.getFloat(offset + 23);
+        location.z = -bb.getFloat(offset + 27);
+        rotation.x = bb.getFloat(offset + 31);
+        rotation.y = bb.getFloat(offset + 35);
+        rotation.z = -bb.getFloat(offset + 39);
+        rotation.w = -bb.getFloat(offset + 43);
+        rotation.normalize();
+        for (int i = 0; i < 64; i++) {
+            interpolation[i] = bb.get(offset + 47 + i);
+        }
+        return this;
+    }
     public VMDMotion writeToBuffer(ByteBuffer bb) {
         int startPos = bb.position();
 //        BufferUtil.writeString(bb, boneName, 15);
@@ -137,6 +157,10 @@ public class VMDMotion implements Serializable{
         this.boneName = boneName;
     }
 
+    public short getBoneIndex() {
+        return boneIndex;
+    }
+
     public int getFrameNo() {
         return frameNo;
     }
@@ -29,6 +29,8 @@ package projectkyoto.mmd.file;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import projectkyoto.mmd.file.util2.BufferUtil;
 
 /**
  *
@@ -43,6 +45,11 @@ public class VMDSkin implements Serializable{
     public VMDSkin(DataInputStreamLittleEndian is) throws IOException {
         readFromStream(is);
     }
+    public VMDSkin(ByteBuffer bb) {
+        skinName = BufferUtil.readString(bb, 15).intern();
+        flameNo = bb.getInt();
+        weight = bb.getFloat();
+    }
     public final void readFromStream(DataInputStreamLittleEndian is) throws IOException {
         skinName = is.readString(15);
         flameNo = is.readInt();
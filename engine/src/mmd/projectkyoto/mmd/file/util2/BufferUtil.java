@@ -28,10 +28,13 @@
 package projectkyoto.mmd.file.util2;
 
 import com.jme3.util.BufferUtils;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
@@ -88,6 +91,35 @@ public class BufferUtil {
             throw new RuntimeException(ex);
         }
     }
+    /**
+     * Returns the contents of the stream as a little endian buffer and
+     * closes the stream. A FileInputStream is mapped read only instead of
+     * being copied.
+     */
+    public static ByteBuffer readLittleEndian(InputStream is) throws IOException {
+        try {
+            if (is instanceof FileInputStream) {
+                FileChannel ch = ((FileInputStream) is).getChannel();
+                long size = ch.size() - ch.position();
+                if (size <= Integer.MAX_VALUE) {
+                    MappedByteBuffer bb = ch.map(MapMode.READ_ONLY, ch.position(), size);
+                    bb.order(ByteOrder.LITTLE_ENDIAN);
+                    return bb;
+                }
+            }
+            ByteArrayOutputStream os = new ByteArrayOutputStream(Math.max(is.available(), 8192));
+            byte[] buf = new byte[8192];
+            int size;
+            while ((size = is.read(buf)) >= 0) {
+                os.write(buf, 0, size);
+            }
+            ByteBuffer bb = ByteBuffer.wrap(os.toByteArray());
+            bb.order(ByteOrder.LITTLE_ENDIAN);
+            return bb;
+        } finally {
+            is.close();
+        }
+    }
     private static ThreadLocal<byte[]> threadLocalBuf = new ThreadLocal<byte[]>();
     private static byte[] getBuf(int size) {
         byte[] buf = threadLocalBuf.get();
@@ -126,7 +158,7 @@ public class BufferUtil {
                     return new String(buf,0,i,"Shift_JIS");
                 }
             }
-            return new String(buf,"Shift_JIS");
+            return new String(buf,0,size,"Shift_JIS");
         } catch (UnsupportedEncodingException ex) {
             throw new RuntimeException(ex);
         }
@@ -38,12 +38,8 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import projectkyoto.mmd.file.PMDMaterial;
 import projectkyoto.mmd.file.PMDModel;
 import projectkyoto.mmd.file.PMDSkinData;
@@ -64,8 +60,8 @@ public class MeshConverter implements Serializable{
     int maxBoneSize = DEFAULT_MAX_BONE_SIZE;
     List<MeshData> meshDataList = new ArrayList<MeshData>();
     SkinMeshData skinMeshData;
-    HashMap<Integer, Integer> meshTmpVertMap = new HashMap<Integer, Integer>();
-    HashMap<Integer, Integer> skinTmpVertMap = new HashMap<Integer, Integer>();
+    // model vertex index -> index in SkinMeshData.vertexList
+    IntIntHashMap skinTmpVertMap = new IntIntHashMap();
     public ByteBuffer interleavedBuffer;
     int currentVertIndex = 0;
     PMNData pmnData;
@@ -73,18 +69,20 @@ public class MeshConverter implements Serializable{
         
     }
     public MeshConverter(PMDModel model) {
+        this(model, DEFAULT_MAX_BONE_SIZE);
+    }
+    public MeshConverter(PMDModel model, int maxBoneSize) {
         this.model = model;
+        this.maxBoneSize = maxBoneSize;
         skinMeshData = new SkinMeshData(this, model);
         initSkinVertSet();
-//        removeUnusedSkinVertex();
     }
     private final void initSkinVertSet() {
         for(int skinCount = 0;skinCount<model.getSkinCount();skinCount++) {
             PMDSkinData skinData = model.getSkinData()[skinCount];
             if (skinData.getSkinType() == 0) {
                 for(int skinVertCount = 0;skinVertCount<skinData.getSkinVertCount();skinVertCount++) {
-                    VertIndex vi = new VertIndex(skinData.getIndexBuf().get(skinVertCount));
-                    skinVertSet.add(vi);
+                    skinVertSet.put(skinData.getIndexBuf().get(skinVertCount) & 0xffff, 0);
                 }
                 break;
             }
@@ -106,50 +104,55 @@ public class MeshConverter implements Serializable{
             PMDSkinData skinData = model.getSkinData()[skinCount];
         }
     }
+    /**
+     * Splits the triangles of each material into MeshData whose bones fit
+     * in maxBoneSize. A triangle goes to the current MeshData if it fits,
+     * otherwise to the MeshData of the same material that needs the fewest
+     * new bones, and a new MeshData is created only when none can take it.
+     */
     public void convertMesh() {
         int faceVertNo = 0;
+        int[] faceVertIndex = model.getFaceVertIndex();
+        PMDVertex tmpVert = new PMDVertex();
+        int[] triangleBones = new int[6];
+        List<MeshData> materialMeshList = new ArrayList<MeshData>();
         for(int materialNo = 0; materialNo < model.getMaterialCount(); materialNo++) {
-            meshTmpVertMap.clear();
             PMDMaterial material = model.getMaterial()[materialNo];
-            // find same material
-            MeshData meshData = new MeshData(model, maxBoneSize, material);
-            for(int meshIndex = meshDataList.size()-1;meshIndex >=0;meshIndex--) {
-                PMDMaterial material2 = meshDataList.get(meshIndex).getMaterial();
-                if (material.equals(material2)) {
-                    meshData = meshDataList.get(meshIndex);
-                    for(int i=meshData.getVertIndexList().size()-1;i>=0;i--) {
-                        Integer vertIndex = meshData.getVertIndexList().get(i);
-                        meshTmpVertMap.put(vertIndex, i);
-                    }
-                    break;
-                }
-            }
             if (material.getFaceVertCount() == 0) {
                 continue;
             }
-            if (!meshDataList.contains(meshData)) {
-                meshDataList.add(meshData);
+            // find same material
+            materialMeshList.clear();
+            for(MeshData md : meshDataList) {
+                if (material.equals(md.getMaterial())) {
+                    materialMeshList.add(md);
+                }
             }
+            MeshData meshData = materialMeshList.isEmpty() ? null
+                    : materialMeshList.get(materialMeshList.size() - 1);
             for (int materialFaceVertNo = 0; materialFaceVertNo < material.getFaceVertCount(); materialFaceVertNo += 3) {
-                int i1 = model.getFaceVertIndex()[faceVertNo++];
-                int i2 = model.getFaceVertIndex()[faceVertNo++];
-                int i3 = model.getFaceVertIndex()[faceVertNo++];
+                int i1 = faceVertIndex[faceVertNo++];
+                int i2 = faceVertIndex[faceVertNo++];
+                int i3 = faceVertIndex[faceVertNo++];
                 if (containsSkin(i1, i2, i3)) {
                     addSkinTriangle(material, i1, i2, i3);
-                } else {
-                    if (!meshData.addTriangle(this, i1, i2, i3)) {
+                    continue;
+                }
+                int boneCount = MeshData.collectBones(model, tmpVert, i1, i2, i3, triangleBones);
+                if (meshData == null || !meshData.canAdd(triangleBones, boneCount)) {
+                    meshData = findMeshData(materialMeshList, triangleBones, boneCount);
+                    if (meshData == null) {
+                        if (boneCount > maxBoneSize) {
+                            continue;
+                        }
                         meshData = new MeshData(model, maxBoneSize, material);
-                        meshTmpVertMap.clear();
                         meshDataList.add(meshData);
-                        meshData.addTriangle(this, i1, i2, i3);
+                        materialMeshList.add(meshData);
                     }
                 }
-            }
-            if (meshData.material.getFaceVertCount() == 0) {
-                meshDataList.remove(meshDataList.size()-1);
+                meshData.addTriangle(i1, i2, i3, triangleBones, boneCount);
             }
         }
-//        meshTmpVertMap = null;
         skinTmpVertMap = null;
 //        createInterleavedBuffer();
         Iterator<MeshData> it = meshDataList.iterator();
@@ -162,28 +165,27 @@ public class MeshConverter implements Serializable{
             }
         }
         skinMeshData.createSkinCommonVertData();
-        meshTmpVertMap = null;
         skinTmpVertMap = null;
     }
-    void removeUnusedSkinVertex() {
-        HashSet<Integer> tmpSet = new HashSet<Integer>();
-        PMDSkinData skinData0 = null;
-        for(PMDSkinData skinData : model.getSkinData()) {
-            if (skinData.getSkinType() == 0) {
-                skinData0 = skinData;
+    /**
+     * Best fit: the MeshData needing the fewest new bones, and the one with
+     * the most bones on a tie.
+     */
+    private MeshData findMeshData(List<MeshData> list, int[] bones, int boneCount) {
+        MeshData result = null;
+        int resultNewBones = Integer.MAX_VALUE;
+        for(MeshData md : list) {
+            int newBones = md.countNewBones(bones, boneCount);
+            if (md.getBoneList().size() + newBones > maxBoneSize) {
                 continue;
             }
-//            for(PMDSkinVertData svd : skinData.getSkinVertData()) {
-//                tmpSet.add(svd.getSkinVertIndex());
-//            }
-        }
-        Iterator<VertIndex> it = skinVertSet.iterator();
-        while(it.hasNext()) {
-            VertIndex vi = it.next();
-            if (!tmpSet.contains(vi.index)) {
-                it.remove();
+            if (newBones < resultNewBones
+                    || (newBones == resultNewBones && md.getBoneList().size() > result.getBoneList().size())) {
+                result = md;
+                resultNewBones = newBones;
             }
         }
+        return result;
     }
     void printMeshData(MeshData meshData) {
 //            System.out.println("vertSize = " + meshData.getVertexList().size()
@@ -198,10 +200,8 @@ public class MeshConverter implements Serializable{
         }
         return false;
     }
-    VertIndex tmpvi = new VertIndex(0);
     boolean containsSkin(int i) {
-        tmpvi.index = i;
-        return skinVertSet.contains(tmpvi);
+        return skinVertSet.containsKey(i);
     }
 //    boolean _containsSkin(int i) {
 //        for(int skinCount = 0;skinCount<model.getSkinCount();skinCount++) {
@@ -216,7 +216,8 @@ public class MeshConverter implements Serializable{
 //        }
 //        return false;
 //    }
-    Set<VertIndex> skinVertSet = new java.util.HashSet<VertIndex> ();
+    // vertices moved by the base skin
+    IntIntHashMap skinVertSet = new IntIntHashMap();
     
     void addSkinTriangle(PMDMaterial material, int i1,int i2,int i3) {
         skinMeshData.addTriangle(this, material, i1, i2, i3);
@@ -259,12 +260,12 @@ public class MeshConverter implements Serializable{
                     .putFloat(v.getNormal().z);
             texCoordBuffer.putFloat(v.getUv().getU())
                     .putFloat(v.getUv().getV());
-            short boneIndex = (short)skinMeshData.boneList.indexOf(v.getBoneNum1());
+            short boneIndex = (short)skinMeshData.boneMap.get(v.getBoneNum1());
             if (boneIndex < 0) {
                 boneIndex = 0;
             }
             boneIndexBuffer.putShort(boneIndex);
-            boneIndex = (short)skinMeshData.boneList.indexOf(v.getBoneNum2());
+            boneIndex = (short)skinMeshData.boneMap.get(v.getBoneNum2());
             if (boneIndex < 0) {
                 boneIndex = 0;
             }
@@ -276,11 +277,11 @@ public class MeshConverter implements Serializable{
         pmnSkinMesh.setMaterialIndexArray(new int[skinMeshData.indexMap.size()]);
         int i=0;
         for(PMDMaterial m : skinMeshData.indexMap.keySet()) {
-            List<Integer>indexList = skinMeshData.indexMap.get(m);
+            IntArrayList indexList = skinMeshData.indexMap.get(m);
             ByteBuffer indexBuffer = ByteBuffer.allocateDirect(2 * indexList.size());
             indexBuffer.order(ByteOrder.nativeOrder());
-            for(Integer index : indexList) {
-                indexBuffer.putShort(index.shortValue());
+            for(int index = 0; index < indexList.size(); index++) {
+                indexBuffer.putShort((short)indexList.get(index));
             }
             pmnSkinMesh.getIndexBufferArray()[i] = indexBuffer.asShortBuffer();
             for(int mi=0;mi<model.getMaterialCount();mi++) {
@@ -325,8 +326,8 @@ public class MeshConverter implements Serializable{
         interleavedBuffer.order(ByteOrder.nativeOrder());
         pmnMesh.setInterleavedBuffer(interleavedBuffer);
         PMDVertex v = new PMDVertex();
-        for(Integer vertIndex : md.getVertIndexList()) {
-            model.getVertex(vertIndex, v);
+        for(int vi = 0; vi < md.getVertIndexList().size(); vi++) {
+            model.getVertex(md.getVertIndexList().get(vi), v);
             interleavedBuffer.putFloat(v.getPos().x)
                     .putFloat(v.getPos().y)
                     .putFloat(v.getPos().z);
@@ -337,12 +338,12 @@ public class MeshConverter implements Serializable{
                 interleavedBuffer.putFloat(v.getUv().getU())
                         .putFloat(v.getUv().getV());
             }
-            short boneIndex = (short)md.boneList.indexOf(v.getBoneNum1());
+            short boneIndex = (short)md.boneMap.get(v.getBoneNum1());
             if (boneIndex < 0) {
                 boneIndex = 0;
             }
             interleavedBuffer.putShort(boneIndex);
-            boneIndex = (short)md.boneList.indexOf(v.getBoneNum2());
+            boneIndex = (short)md.boneMap.get(v.getBoneNum2());
             if (boneIndex < 0) {
                 boneIndex = 0;
             }
@@ -352,8 +353,8 @@ public class MeshConverter implements Serializable{
         }
         ByteBuffer indexBuffer = ByteBuffer.allocateDirect(2 * md.getIndexList().size());
         indexBuffer.order(ByteOrder.nativeOrder());
-        for(Integer index : md.getIndexList()) {
-            indexBuffer.putShort(index.shortValue());
+        for(int i = 0; i < md.getIndexList().size(); i++) {
+            indexBuffer.putShort((short)md.getIndexList().get(i));
         }
         pmnMesh.setIndexBuffer(indexBuffer.asShortBuffer());
         for(int i=0;i<model.getMaterialCount();i++) {
@@ -363,7 +364,7 @@ public class MeshConverter implements Serializable{
             }
         }
         for(int i=0;i<boneIndexArray.length;i++) {
-            boneIndexArray[i] = md.boneList.get(i).shortValue();
+            boneIndexArray[i] = (short)md.boneList.get(i);
         }
     }
     public int calcPMNSize() {
@@ -443,32 +444,3 @@ public class MeshConverter implements Serializable{
     
     
 }
-class VertIndex implements Serializable{
-    int index;
-
-    public VertIndex(int index) {
-        this.index = index & 0xffff;
-    }
-
-    @Override
-    public boolean equals(Object obj) {
-//        if (obj == null) {
-//            return false;
-//        }
-//        if (getClass() != obj.getClass()) {
-//            return false;
-//        }
-        final VertIndex other = (VertIndex) obj;
-        if (this.index != other.index) {
-            return false;
-        }
-        return true;
-    }
-
-    @Override
-    public int hashCode() {
-        int hash = 7;
-        hash = 53 * hash + this.index;
-        return hash;
-    }
-}
@@ -37,9 +37,7 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
-import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 import javax.vecmath.Point3f;
 import projectkyoto.mmd.file.PMDMaterial;
@@ -54,12 +52,17 @@ public class MeshData {
     PMDModel model;
     int maxBoneSize;
     PMDMaterial material;
-    List<Integer>boneList = new ArrayList<Integer>();
+    IntArrayList boneList = new IntArrayList();
+    // bone index -> index in boneList
+    IntIntHashMap boneMap = new IntIntHashMap();
 //    List<PMDVertex> vertexList = new ArrayList<PMDVertex>();
-    List<Integer> indexList = new ArrayList<Integer>();
+    IntArrayList indexList = new IntArrayList();
 //    public ByteBuffer indexBuffer;
-    List<Integer> vertIndexList = new ArrayList<Integer>();
+    IntArrayList vertIndexList = new IntArrayList();
+    // model vertex index -> index in vertIndexList
+    IntIntHashMap vertMap = new IntIntHashMap();
     private PMDVertex tmpVert = new PMDVertex();
+    private int[] tmpBones = new int[6];
     public MeshData(PMDModel model, int maxBoneSize, PMDMaterial material) {
         this.model = model;
         this.maxBoneSize = maxBoneSize;
@@ -68,54 +71,75 @@ public class MeshData {
 //        indexBuffer.order(ByteOrder.nativeOrder());
     }
     public boolean addTriangle(MeshConverter mc, int i1,int i2,int i3) {
-        int boneListSizeBefore = boneList.size();
-        addBoneList(i1);
-        addBoneList(i2);
-        addBoneList(i3);
-        if (boneList.size() <= maxBoneSize) {
-            addVertex(mc, i1);
-            addVertex(mc, i2);
-            addVertex(mc, i3);
-            return true;
+        int boneCount = collectBones(model, tmpVert, i1, i2, i3, tmpBones);
+        if (!canAdd(tmpBones, boneCount)) {
+            return false;
+        }
+        addTriangle(i1, i2, i3, tmpBones, boneCount);
+        return true;
+    }
+    /**
+     * Stores the distinct bones used by a triangle in bones and returns
+     * the count. bones must have room for 6 elements.
+     */
+    static int collectBones(PMDModel model, PMDVertex tmpVert, int i1, int i2, int i3, int[] bones) {
+        int count = 0;
+        count = collectBones(model.getVertex(i1, tmpVert), bones, count);
+        count = collectBones(model.getVertex(i2, tmpVert), bones, count);
+        count = collectBones(model.getVertex(i3, tmpVert), bones, count);
+        return count;
+    }
+    private static int collectBones(PMDVertex v, int[] bones, int count) {
+        if (v.getBoneWeight() != 0) {
+            count = addBone(bones, count, v.getBoneNum1());
         }
-        for(int i=boneList.size();i>boneListSizeBefore;i--) {
-            boneList.remove(i-1);
+        if (v.getBoneWeight() != 100) {
+            count = addBone(bones, count, v.getBoneNum2());
         }
-//        System.out.println("bone remove:size = "+boneListSizeBefore+" "+boneList.size());
-        return false;
+        return count;
     }
-    private void addBoneList(int vertIndex) {
-        PMDVertex v = model.getVertex(vertIndex, tmpVert);
-        if (v.getBoneWeight() != 0 && !boneList.contains(v.getBoneNum1()))
-            boneList.add(v.getBoneNum1());
-        if (v.getBoneWeight() != 100 && !boneList.contains(v.getBoneNum2()))
-            boneList.add(v.getBoneNum2());
+    private static int addBone(int[] bones, int count, int bone) {
+        for(int i=0;i<count;i++) {
+            if (bones[i] == bone) {
+                return count;
+            }
+        }
+        bones[count] = bone;
+        return count + 1;
     }
-    private void addVertex(MeshConverter mc, int vertIndex) {
-        int newVertIndex;
-        Integer index = mc.meshTmpVertMap.get(vertIndex);
-        if (index != null /*vertexList.contains(v)*/) {
-            newVertIndex = index.intValue();//vertexList.indexOf(v);
-        } else {
+    /**
+     * Number of bones not yet in this mesh.
+     */
+    int countNewBones(int[] bones, int boneCount) {
+        int count = 0;
+        for(int i=0;i<boneCount;i++) {
+            if (!boneMap.containsKey(bones[i])) {
+                count++;
+            }
+        }
+        return count;
+    }
+    boolean canAdd(int[] bones, int boneCount) {
+        return boneList.size() + countNewBones(bones, boneCount) <= maxBoneSize;
+    }
+    void addTriangle(int i1, int i2, int i3, int[] bones, int boneCount) {
+        for(int i=0;i<boneCount;i++) {
+            if (!boneMap.containsKey(bones[i])) {
+                boneMap.put(bones[i], boneList.size());
+                boneList.add(bones[i]);
+            }
+        }
+        addVertex(i1);
+        addVertex(i2);
+        addVertex(i3);
+    }
+    private void addVertex(int vertIndex) {
+        int newVertIndex = vertMap.get(vertIndex);
+        if (newVertIndex < 0) {
             newVertIndex = vertIndexList.size();
             vertIndexList.add(vertIndex);
-            mc.meshTmpVertMap.put(vertIndex, newVertIndex);
-            
-//            PMDVertex v = model.getVertex(vertIndex, tmpVert);
-//            mc.currentVertIndex++;
-//            mc.interleavedBuffer.putFloat(v.getPos().x);
-//            mc.interleavedBuffer.putFloat(v.getPos().y);
-//            mc.interleavedBuffer.putFloat(v.getPos().z);
-//            mc.interleavedBuffer.putFloat(v.getNormal().x);
-//            mc.interleavedBuffer.putFloat(v.getNormal().y);
-//            mc.interleavedBuffer.putFloat(v.getNormal().z);
-//            mc.interleavedBuffer.putFloat(v.getUv().getU()).putFloat(1f - v.getUv().getV());
-//            float weight = (float) v.getBoneWeight() / 100.0f;
-//            mc.interleavedBuffer.putFloat(weight).putFloat(1f - weight)
-//                    .putFloat(0).putFloat(0);
-//            mc.interleavedBuffer.putShort((short)v.getBoneNum1()).putShort((short)v.getBoneNum2());
+            vertMap.put(vertIndex, newVertIndex);
         }
-//        indexBuffer.putShort((short)newVertIndex);
         indexList.add(newVertIndex);
     }
     ByteBuffer vfbb;
@@ -182,7 +206,8 @@ public class MeshData {
         if (getMaterial().getTextureFileName().length() == 0) {
             textureFlag = false;
         }
-        vfbb = BufferUtils.createByteBuffer(4 * getVertIndexList().size() * 3);
+        int vertCount = getVertIndexList().size();
+        vfbb = BufferUtils.createByteBuffer(4 * vertCount * 3);
         vfb = vfbb.asFloatBuffer();
 //        vfb = BufferUtils.createFloatBuffer(getVertIndexList().size() * 3);
         nfbb = BufferUtils.createByteBuffer(4 * getVertIndexList().size() * 3);
@@ -205,8 +230,8 @@ public class MeshData {
         bisb = bisbb.asShortBuffer();
 //        bisb = BufferUtils.createShortBuffer(getVertIndexList().size() * 2);
         PMDVertex v = new PMDVertex();
-        for (Integer vertIndex : getVertIndexList()) {
-            model.getVertex(vertIndex, v);
+        for (int i = 0; i < vertCount; i++) {
+            model.getVertex(vertIndexList.get(i), v);
             vfb.put(v.getPos().x).put(v.getPos().y).put(v.getPos().z);
             v.getNormal().normalize();
             nfb.put(v.getNormal().x).put(v.getNormal().y).put(v.getNormal().z);
@@ -224,8 +249,8 @@ public class MeshData {
             }
             float weight = (float) v.getBoneWeight() / 100.0f;
             wfb.put(weight).put(1f - weight);
-            short b1 = (short)getBoneList().indexOf(v.getBoneNum1());
-            short b2 = (short)getBoneList().indexOf(v.getBoneNum2());
+            short b1 = (short)boneMap.get(v.getBoneNum1());
+            short b2 = (short)boneMap.get(v.getBoneNum2());
             if (b1 < 0) b1 = 0;
             if (b2 < 0) b2 = 0;
             bisb.put(b1).put(b2);
@@ -237,8 +262,8 @@ public class MeshData {
 //                System.out.println("weight = "+weight);
 //            }
         }
-        for (Integer index : getIndexList()) {
-            isb.put(index.shortValue());
+        for (int i = 0; i < indexList.size(); i++) {
+            isb.put((short)indexList.get(i));
 //            System.out.println("index = "+index);
         }
 //        System.out.println("isb.capacity() = " + isb.capacity());
@@ -252,22 +277,23 @@ public class MeshData {
 //        indexBuffer = BufferUtils.createShortBuffer(getBoneList().size());
         for (int i = 0; i < indexArray.length; i++) {
             if (i < getBoneList().size()) {
-                indexArray[i] = getBoneList().get(i).shortValue();
+                indexArray[i] = (short)getBoneList().get(i);
             } else {
                 indexArray[i] = 0;
             }
             indexBuffer.put((short)indexArray[i]);
         }
         boneList = null;
+        boneMap = null;
         vertIndexList = null;
-        vertIndexList = null;
+        vertMap = null;
     }
-    List<Integer> getBoneList() {
+    IntArrayList getBoneList() {
         return boneList;
     }
 
-    public void setBoneList(List<Integer> boneList) {
-        this.boneList = boneList;
+    IntIntHashMap getBoneMap() {
+        return boneMap;
     }
 
     public PMDMaterial getMaterial() {
@@ -298,11 +324,11 @@ public class MeshData {
 //        return indexBuffer;
 //    }
 
-    List<Integer> getVertIndexList() {
+    IntArrayList getVertIndexList() {
         return vertIndexList;
     }
 
-    List<Integer> getIndexList() {
+    IntArrayList getIndexList() {
         return indexList;
     }
 
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2010-2014, Kazuhiko Kobayashi
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package projectkyoto.mmd.file.util2;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import projectkyoto.mmd.file.PMDModel;
+
+/**
+ * Directory of pmdcache2 files named by the SHA-1 of the PMD file and the
+ * bone limit, so a changed or renamed PMD file never reads a stale cache.
+ * The least recently used files are deleted when the directory grows over
+ * maxCacheSize.
+ * @author kobayasi
+ */
+public class PMDCacheManager {
+
+    private static final Logger logger = Logger.getLogger(PMDCacheManager.class.getName());
+    static final String SUFFIX = ".pmdcache2";
+    private final File cacheDir;
+    private long maxCacheSize;
+
+    public PMDCacheManager(File cacheDir, long maxCacheSize) {
+        this.cacheDir = cacheDir;
+        this.maxCacheSize = maxCacheSize;
+    }
+
+    /**
+     * Reads a PMD file and returns its converted meshes, from the cache if
+     * possible. The stream is closed.
+     */
+    public MeshConverter load(InputStream pmdStream, int maxBoneSize) throws IOException {
+        ByteBuffer pmdBuffer = BufferUtil.readLittleEndian(pmdStream);
+        byte[] hash = PMDFileUtil.sha1(pmdBuffer);
+        File cacheFile = getCacheFile(hash, maxBoneSize);
+        MeshConverter mc = readCache(cacheFile, hash);
+        if (mc != null) {
+            return mc;
+        }
+        PMDModel model = new PMDModel();
+        model.readFromBuffer(pmdBuffer);
+        mc = new MeshConverter(model, maxBoneSize);
+        mc.convertMesh();
+        try {
+            writeCache(mc, hash, cacheFile);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed to write " + cacheFile, ex);
+        }
+        return mc;
+    }
+
+    public File getCacheFile(byte[] hash, int maxBoneSize) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        sb.append('.').append(maxBoneSize).append(SUFFIX);
+        return new File(cacheDir, sb.toString());
+    }
+
+    MeshConverter readCache(File cacheFile, byte[] hash) {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        RandomAccessFile raf = null;
+        try {
+            ByteBuffer bb;
+            boolean copyBuffers = false;
+            if (cacheFile.canWrite()) {
+                // copy on write, the meshes may be modified by software skinning
+                raf = new RandomAccessFile(cacheFile, "rw");
+                bb = raf.getChannel().map(MapMode.PRIVATE, 0, raf.length());
+            } else {
+                raf = new RandomAccessFile(cacheFile, "r");
+                bb = raf.getChannel().map(MapMode.READ_ONLY, 0, raf.length());
+                copyBuffers = true;
+            }
+            bb.order(ByteOrder.LITTLE_ENDIAN);
+            if (!Arrays.equals(hash, PMDFileUtil.readPMDCache2Hash(bb))) {
+                return null;
+            }
+            MeshConverter mc = PMDFileUtil.readPMDCache2(bb, copyBuffers);
+            cacheFile.setLastModified(System.currentTimeMillis());
+            return mc;
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Invalid cache " + cacheFile, ex);
+            return null;
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ex) {
+                }
+            }
+        }
+    }
+
+    synchronized void writeCache(MeshConverter mc, byte[] hash, File cacheFile) throws IOException {
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            throw new IOException("Failed to create " + cacheDir);
+        }
+        File tmpFile = File.createTempFile("pmd", ".tmp", cacheDir);
+        OutputStream os = null;
+        try {
+            os = new BufferedOutputStream(new FileOutputStream(tmpFile));
+            PMDFileUtil.writePMDCache2(mc, hash, os);
+            os.close();
+            os = null;
+            cacheFile.delete();
+            if (!tmpFile.renameTo(cacheFile)) {
+                throw new IOException("Failed to rename " + tmpFile + " to " + cacheFile);
+            }
+        } finally {
+            if (os != null) {
+                os.close();
+            }
+            tmpFile.delete();
+        }
+        evict(cacheFile);
+    }
+
+    /**
+     * Deletes the least recently used cache files until the directory is
+     * not larger than maxCacheSize. keep is never deleted.
+     */
+    public synchronized void evict(File keep) {
+        File[] files = listCacheFiles();
+        long size = 0;
+        for (File f : files) {
+            size += f.length();
+        }
+        if (size <= maxCacheSize) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long l1 = f1.lastModified();
+                long l2 = f2.lastModified();
+                return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+            }
+        });
+        for (File f : files) {
+            if (size <= maxCacheSize) {
+                break;
+            }
+            if (f.equals(keep)) {
+                continue;
+            }
+            long length = f.length();
+            if (f.delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    public long getCacheSize() {
+        long size = 0;
+        for (File f : listCacheFiles()) {
+            size += f.length();
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (File f : listCacheFiles()) {
+            f.delete();
+        }
+    }
+
+    File[] listCacheFiles() {
+        File[] files = cacheDir.listFiles(new FileFilter() {
+            public boolean accept(File f) {
+                return f.isFile() && f.getName().endsWith(SUFFIX);
+            }
+        });
+        return files != null ? files : new File[0];
+    }
+
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
+    public long getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    public synchronized void setMaxCacheSize(long maxCacheSize) {
+        this.maxCacheSize = maxCacheSize;
+        evict(null);
+    }
+}
@@ -27,8 +27,10 @@
 
 package projectkyoto.mmd.file.util2;
 
+import com.jme3.util.BufferUtils;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -36,11 +38,19 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 import projectkyoto.mmd.file.DataInputStreamLittleEndian;
 import projectkyoto.mmd.file.DataOutputStreamLittleEndian;
+import projectkyoto.mmd.file.PMDMaterial;
 import projectkyoto.mmd.file.PMDModel;
 import projectkyoto.mmd.file.PMDUtil;
 
@@ -50,6 +60,8 @@ import projectkyoto.mmd.file.PMDUtil;
  */
 public class PMDFileUtil {
     public static final String PMDCACHE1HEADER = "PMDCACHEVer1";
+    public static final String PMDCACHE2HEADER = "PMDCACHEVer2";
+    public static final int PMDCACHE2VERSION = 1;
     public static void makeMeshCache(PMDModel pmdModel, OutputStream os) throws IOException {
         MeshConverter mc = new MeshConverter(pmdModel);
         mc.convertMesh();
@@ -77,7 +89,10 @@ public class PMDFileUtil {
         }
     }
     public static void writePMDCache1(PMDModel model, OutputStream os) throws IOException {
-        MeshConverter mc = new MeshConverter(model);
+        writePMDCache1(model, os, MeshConverter.DEFAULT_MAX_BONE_SIZE);
+    }
+    public static void writePMDCache1(PMDModel model, OutputStream os, int maxBoneSize) throws IOException {
+        MeshConverter mc = new MeshConverter(model, maxBoneSize);
         model.setFaceVertCount(0);
         model.setVertCount(0);
         DataOutputStreamLittleEndian dos = null;
@@ -91,10 +106,13 @@ public class PMDFileUtil {
         dos.flush();
     }
     public static void writePMDCache1(PMDModel model, File file) throws IOException {
+        writePMDCache1(model, file, MeshConverter.DEFAULT_MAX_BONE_SIZE);
+    }
+    public static void writePMDCache1(PMDModel model, File file, int maxBoneSize) throws IOException {
         OutputStream os = null;
         try {
             os = new BufferedOutputStream(new FileOutputStream(file));
-            writePMDCache1(model, os);
+            writePMDCache1(model, os, maxBoneSize);
         } finally {
             if (os != null) {
                 os.close();
@@ -136,10 +154,9 @@ public class PMDFileUtil {
                 if (!pmdFile.exists()) {
                     throw new FileNotFoundException(file.getAbsolutePath());
                 }
-                MeshConverter.DEFAULT_MAX_BONE_SIZE = boneSize;
                 is = new FileInputStream(pmdFile);
                 PMDModel pmdModel = new PMDModel(is);
-                writePMDCache1(pmdModel, file);
+                writePMDCache1(pmdModel, file, boneSize);
                 return;
             }
         } catch(NumberFormatException ex) {
@@ -180,7 +197,6 @@ public class PMDFileUtil {
                 }
             }
             if (pmdFile != null) {
-                MeshConverter.DEFAULT_MAX_BONE_SIZE = boneSize;
                 return pmdFile;
             }
         } catch(NumberFormatException ex) {
@@ -191,4 +207,284 @@ public class PMDFileUtil {
         }
         throw new FileNotFoundException(file.getAbsolutePath());
     }
+
+    /**
+     * Returns the bone size encoded in a pmdcache1 file name
+     * (name.pmd.20.pmdcache1).
+     */
+    public static int getPMDCache1BoneSize(File file) throws IOException {
+        String name = file.getName();
+        if (!name.endsWith(".pmdcache1")) {
+            throw new FileNotFoundException(file.getAbsolutePath());
+        }
+        name = name.substring(0, name.length() - ".pmdcache1".length());
+        try {
+            return Integer.parseInt(name.substring(name.lastIndexOf('.') + 1));
+        } catch (NumberFormatException ex) {
+            throw new FileNotFoundException(file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * pmdcache2 layout, little endian, every item 4 byte aligned:
+     * header(20) formatVersion maxBoneSize sha1(20) pmdLength pmd(padded)
+     * meshDataCount {materialNo vfb nfb tfb wfb isb bisb indexBuffer indexArray}
+     * skinvfb skinnfb skintfb wfb skinbisb skinIndexArray
+     * indexCount {materialNo indexBuffer}.
+     * A buffer is its byte length (-1 for null) followed by the data padded
+     * to 4 bytes, so a mapped file can be sliced into vertex buffers.
+     */
+    public static void writePMDCache2(MeshConverter mc, byte[] pmdHash, OutputStream os) throws IOException {
+        PMDModel model = mc.getModel();
+        CacheOutput co = new CacheOutput();
+        DataOutputStreamLittleEndian dos = new DataOutputStreamLittleEndian(co);
+        PMDUtil.writeString(dos, PMDCACHE2HEADER, 20);
+        dos.writeInt(PMDCACHE2VERSION);
+        dos.writeInt(mc.getMaxBoneSize());
+        if (pmdHash.length != 20) {
+            throw new IllegalArgumentException("pmdHash length = " + pmdHash.length);
+        }
+        dos.write(pmdHash);
+        // vertices and faces are in the mesh buffers
+        int vertCount = model.getVertCount();
+        int faceVertCount = model.getFaceVertCount();
+        CacheOutput pmdOut = new CacheOutput();
+        try {
+            model.setVertCount(0);
+            model.setFaceVertCount(0);
+            model.writeToStream(new DataOutputStreamLittleEndian(pmdOut));
+        } finally {
+            model.setVertCount(vertCount);
+            model.setFaceVertCount(faceVertCount);
+        }
+        dos.writeInt(pmdOut.size());
+        pmdOut.writeTo(dos);
+        co.pad();
+        dos.writeInt(mc.getMeshDataList().size());
+        for (MeshData md : mc.getMeshDataList()) {
+            dos.writeInt(md.getMaterial().getMaterialNo());
+            writeBuffer(co, dos, md.vfbb, 4);
+            writeBuffer(co, dos, md.nfbb, 4);
+            writeBuffer(co, dos, md.tfbb, 4);
+            writeBuffer(co, dos, md.wfbb, 4);
+            writeBuffer(co, dos, md.isbb, 2);
+            writeBuffer(co, dos, md.bisbb, 2);
+            writeBuffer(co, dos, md.indexBufferb, 2);
+            writeIntArray(dos, md.indexArray);
+        }
+        SkinMeshData smd = mc.getSkinMeshData();
+        writeBuffer(co, dos, smd.skinvfbb, 4);
+        writeBuffer(co, dos, smd.skinnfbb, 4);
+        writeBuffer(co, dos, smd.skintfbb, 4);
+        writeBuffer(co, dos, smd.wfbb, 4);
+        writeBuffer(co, dos, smd.skinbisbb, 2);
+        writeIntArray(dos, smd.skinIndexArray);
+        dos.writeInt(smd.indexShortBufferMap.size());
+        for (Map.Entry<PMDMaterial, ShortBuffer> entry : smd.indexShortBufferMap.entrySet()) {
+            dos.writeInt(entry.getKey().getMaterialNo());
+            ShortBuffer sb = entry.getValue();
+            ByteBuffer bb = ByteBuffer.allocate(sb.capacity() * 2).order(ByteOrder.nativeOrder());
+            ShortBuffer sb2 = sb.duplicate();
+            sb2.clear();
+            bb.asShortBuffer().put(sb2);
+            writeBuffer(co, dos, bb, 2);
+        }
+        dos.flush();
+        co.writeTo(os);
+        os.flush();
+    }
+
+    /**
+     * Reads a pmdcache2 file from a little endian buffer.
+     * @param copyBuffers if false and the platform is little endian, the
+     * vertex buffers are slices of bb. bb must then be writable (e.g. a
+     * private mapping) because software skinning may write to them.
+     */
+    public static MeshConverter readPMDCache2(ByteBuffer bb, boolean copyBuffers) throws IOException {
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        String header = BufferUtil.readString(bb, 20);
+        if (!PMDCACHE2HEADER.equals(header)) {
+            throw new IllegalArgumentException("Invalid header " + header);
+        }
+        int version = bb.getInt();
+        if (version != PMDCACHE2VERSION) {
+            throw new IllegalArgumentException("Unsupported pmdcache2 version " + version);
+        }
+        int maxBoneSize = bb.getInt();
+        bb.position(bb.position() + 20);
+        int pmdLength = bb.getInt();
+        ByteBuffer pmdBuffer = bb.slice();
+        pmdBuffer.limit(pmdLength);
+        PMDModel model = new PMDModel();
+        model.readFromStream(new DataInputStreamLittleEndian(new ByteBufferInputStream(pmdBuffer)));
+        bb.position(bb.position() + align(pmdLength));
+        if (copyBuffers || !ByteOrder.nativeOrder().equals(ByteOrder.LITTLE_ENDIAN)) {
+            copyBuffers = true;
+        }
+        MeshConverter mc = new MeshConverter();
+        mc.setModel(model);
+        mc.setMaxBoneSize(maxBoneSize);
+        int meshDataSize = bb.getInt();
+        List<MeshData> meshDataList = new ArrayList<MeshData>(meshDataSize);
+        for (int i = 0; i < meshDataSize; i++) {
+            MeshData md = new MeshData(model, maxBoneSize, model.getMaterial()[bb.getInt()]);
+            md.vfbb = readBuffer(bb, 4, copyBuffers);
+            md.vfb = md.vfbb.asFloatBuffer();
+            md.nfbb = readBuffer(bb, 4, copyBuffers);
+            md.nfb = md.nfbb.asFloatBuffer();
+            md.tfbb = readBuffer(bb, 4, copyBuffers);
+            md.tfb = md.tfbb != null ? md.tfbb.asFloatBuffer() : null;
+            md.wfbb = readBuffer(bb, 4, copyBuffers);
+            md.wfb = md.wfbb.asFloatBuffer();
+            md.isbb = readBuffer(bb, 2, copyBuffers);
+            md.isb = md.isbb.asShortBuffer();
+            md.bisbb = readBuffer(bb, 2, copyBuffers);
+            md.bisb = md.bisbb.asShortBuffer();
+            md.indexBufferb = readBuffer(bb, 2, copyBuffers);
+            md.indexBuffer = md.indexBufferb.asShortBuffer();
+            md.indexArray = readIntArray(bb);
+            meshDataList.add(md);
+        }
+        mc.setMeshDataList(meshDataList);
+        SkinMeshData smd = new SkinMeshData();
+        smd.model = model;
+        smd.skinvfbb = readBuffer(bb, 4, copyBuffers);
+        smd.skinvfb = smd.skinvfbb.asFloatBuffer();
+        smd.skinnfbb = readBuffer(bb, 4, copyBuffers);
+        smd.skinnfb = smd.skinnfbb.asFloatBuffer();
+        smd.skintfbb = readBuffer(bb, 4, copyBuffers);
+        smd.skintfb = smd.skintfbb != null ? smd.skintfbb.asFloatBuffer() : null;
+        smd.wfbb = readBuffer(bb, 4, copyBuffers);
+        smd.wfb = smd.wfbb.asFloatBuffer();
+        smd.skinbisbb = readBuffer(bb, 2, copyBuffers);
+        smd.skinbisb = smd.skinbisbb.asShortBuffer();
+        smd.skinIndexArray = readIntArray(bb);
+        int size = bb.getInt();
+        smd.indexShortBufferMap = new HashMap<PMDMaterial, ShortBuffer>();
+        for (int i = 0; i < size; i++) {
+            PMDMaterial mat = model.getMaterial()[bb.getInt()];
+            smd.indexShortBufferMap.put(mat, readBuffer(bb, 2, copyBuffers).asShortBuffer());
+        }
+        // morph target buffer, written every frame
+        smd.skinvfb2 = BufferUtils.createFloatBuffer(smd.skinvfb.capacity());
+        smd.skinvfb.position(0);
+        smd.skinvfb2.put(smd.skinvfb);
+        smd.skinvfb.position(0);
+        smd.skinvfb2.position(0);
+        mc.setSkinMeshData(smd);
+        return mc;
+    }
+
+    public static MeshConverter readPMDCache2(InputStream is) throws IOException {
+        return readPMDCache2(BufferUtil.readLittleEndian(is), true);
+    }
+
+    /**
+     * Returns the SHA-1 stored in a pmdcache2 header, or null if bb is not
+     * a pmdcache2 of the current version.
+     */
+    public static byte[] readPMDCache2Hash(ByteBuffer bb) {
+        ByteBuffer b = bb.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (b.remaining() < 48 || !PMDCACHE2HEADER.equals(BufferUtil.readString(b, 20))
+                || b.getInt() != PMDCACHE2VERSION) {
+            return null;
+        }
+        b.getInt();
+        byte[] hash = new byte[20];
+        b.get(hash);
+        return hash;
+    }
+
+    public static byte[] sha1(ByteBuffer bb) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(bb.duplicate());
+            return md.digest();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    static int align(int size) {
+        return (size + 3) & ~3;
+    }
+
+    private static void writeBuffer(CacheOutput co, DataOutputStreamLittleEndian dos, ByteBuffer bb, int elementSize) throws IOException {
+        if (bb == null) {
+            dos.writeInt(-1);
+            return;
+        }
+        ByteBuffer b = bb.duplicate();
+        b.clear();
+        int size = b.capacity();
+        dos.writeInt(size);
+        if (bb.order().equals(ByteOrder.LITTLE_ENDIAN)) {
+            byte[] buf = new byte[Math.min(size, 16 * 1024)];
+            while (b.hasRemaining()) {
+                int len = Math.min(buf.length, b.remaining());
+                b.get(buf, 0, len);
+                dos.write(buf, 0, len);
+            }
+        } else {
+            for (int i = 0; i < size; i += elementSize) {
+                for (int j = elementSize - 1; j >= 0; j--) {
+                    dos.write(b.get(i + j));
+                }
+            }
+        }
+        co.pad();
+    }
+
+    private static ByteBuffer readBuffer(ByteBuffer bb, int elementSize, boolean copy) {
+        int size = bb.getInt();
+        if (size < 0) {
+            return null;
+        }
+        ByteBuffer slice = bb.slice();
+        slice.limit(size);
+        bb.position(bb.position() + align(size));
+        if (!copy) {
+            return slice.order(ByteOrder.nativeOrder());
+        }
+        ByteBuffer result = BufferUtils.createByteBuffer(size);
+        if (ByteOrder.nativeOrder().equals(ByteOrder.LITTLE_ENDIAN)) {
+            result.put(slice);
+        } else {
+            for (int i = 0; i < size; i += elementSize) {
+                for (int j = elementSize - 1; j >= 0; j--) {
+                    result.put(slice.get(i + j));
+                }
+            }
+        }
+        result.clear();
+        return result;
+    }
+
+    private static void writeIntArray(DataOutputStreamLittleEndian dos, int[] array) throws IOException {
+        dos.writeInt(array.length);
+        for (int i : array) {
+            dos.writeInt(i);
+        }
+    }
+
+    private static int[] readIntArray(ByteBuffer bb) {
+        int[] array = new int[bb.getInt()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = bb.getInt();
+        }
+        return array;
+    }
+
+    static class CacheOutput extends ByteArrayOutputStream {
+
+        CacheOutput() {
+            super(64 * 1024);
+        }
+
+        void pad() {
+            while ((count & 3) != 0) {
+                write(0);
+            }
+        }
+    }
 }
@@ -53,9 +53,12 @@ import projectkyoto.mmd.file.PMDVertex;
 public class SkinMeshData implements Serializable {
 
     PMDModel model;
-    List<Integer> boneList = new ArrayList<Integer>();
+    IntArrayList boneList = new IntArrayList();
+    // bone index -> index in boneList
+    IntIntHashMap boneMap = new IntIntHashMap();
     List<PMDVertex> vertexList = new ArrayList<PMDVertex>();
-    Map<PMDMaterial, List<Integer>> indexMap = new HashMap<PMDMaterial, List<Integer>>();
+    Map<PMDMaterial, IntArrayList> indexMap = new HashMap<PMDMaterial, IntArrayList>();
+    private PMDVertex tmpVert = new PMDVertex();
     public SkinMeshData() {
         
     }
@@ -83,9 +86,9 @@ public class SkinMeshData implements Serializable {
         addBoneList(i1);
         addBoneList(i2);
         addBoneList(i3);
-        List<Integer> indexList = indexMap.get(material);
+        IntArrayList indexList = indexMap.get(material);
         if (indexList == null) {
-            indexList = new ArrayList<Integer>();
+            indexList = new IntArrayList();
             indexMap.put(material, indexList);
         }
         addVertex(mc, indexList, i1);
@@ -94,28 +97,26 @@ public class SkinMeshData implements Serializable {
     }
 
     private void addBoneList(int vertIndex) {
-        PMDVertex v = model.getVertex(vertIndex);
-        if (!boneList.contains(v.getBoneNum1())) {
-            boneList.add(v.getBoneNum1());
-        }
-        if (!boneList.contains(v.getBoneNum2())) {
-            boneList.add(v.getBoneNum2());
+        PMDVertex v = model.getVertex(vertIndex, tmpVert);
+        addBone(v.getBoneNum1());
+        addBone(v.getBoneNum2());
+    }
+
+    private void addBone(int bone) {
+        if (!boneMap.containsKey(bone)) {
+            boneMap.put(bone, boneList.size());
+            boneList.add(bone);
         }
     }
 
-    private void addVertex(MeshConverter mc, List<Integer> indexList, int vertIndex) {
-        PMDVertex v = model.getVertex(vertIndex);
-        Integer index = mc.skinTmpVertMap.get(vertIndex);
-        int newVertIndex;
-        if (index != null /*vertexList.contains(v)*/) {
-            newVertIndex = index.intValue(); //vertexList.indexOf(v);
-        } else {
+    private void addVertex(MeshConverter mc, IntArrayList indexList, int vertIndex) {
+        int newVertIndex = mc.skinTmpVertMap.get(vertIndex);
+        if (newVertIndex < 0) {
             newVertIndex = vertexList.size();
-            vertexList.add(v);
+            vertexList.add(model.getVertex(vertIndex));
             mc.skinTmpVertMap.put(vertIndex, newVertIndex);
-            index = newVertIndex;
         }
-        indexList.add(index/*newVertIndex*/);
+        indexList.add(newVertIndex);
     }
     public ByteBuffer skinvfbb;
     public ByteBuffer skinnfbb;
@@ -232,8 +233,8 @@ public class SkinMeshData implements Serializable {
 //                    .getBoneList().indexOf(v.getBoneNum1()))
 //                    .put((short) meshConverter.getSkinMeshData()
 //                    .getBoneList().indexOf(v.getBoneNum2()));
-            short b1 = (short) getBoneList().indexOf(v.getBoneNum1());
-            short b2 = (short) getBoneList().indexOf(v.getBoneNum2());
+            short b1 = (short) boneMap.get(v.getBoneNum1());
+            short b2 = (short) boneMap.get(v.getBoneNum2());
             if (b1 < 0) {
                 b1 = 0;
             }
@@ -253,30 +254,31 @@ public class SkinMeshData implements Serializable {
         skinIndexArray = new int[getBoneList().size()];
         for (int i = 0; i < skinIndexArray.length; i++) {
             if (i < getBoneList().size()) {
-                skinIndexArray[i] = getBoneList().get(i).shortValue();
+                skinIndexArray[i] = (short) getBoneList().get(i);
             } else {
                 skinIndexArray[i] = 0;
             }
         }
         for (PMDMaterial key : indexMap.keySet()) {
-            List<Integer> indexList = indexMap.get(key);
+            IntArrayList indexList = indexMap.get(key);
             ShortBuffer isb = BufferUtils.createShortBuffer(indexList.size());
-            for (Integer index : indexList) {
-                isb.put(index.shortValue());
+            for (int i = 0; i < indexList.size(); i++) {
+                isb.put((short) indexList.get(i));
             }
             indexShortBufferMap.put(key, isb);
         }
         indexMap = null;
         boneList = null;
+        boneMap = null;
         vertexList = null;
     }
 
-    List<Integer> getBoneList() {
+    IntArrayList getBoneList() {
         return boneList;
     }
 
-    public void setBoneList(List<Integer> boneList) {
-        this.boneList = boneList;
+    IntIntHashMap getBoneMap() {
+        return boneMap;
     }
 
     public PMDModel getModel() {
@@ -295,11 +297,11 @@ public class SkinMeshData implements Serializable {
         this.vertexList = vertexList;
     }
 
-    Map<PMDMaterial, List<Integer>> getIndexMap() {
+    Map<PMDMaterial, IntArrayList> getIndexMap() {
         return indexMap;
     }
 
-    public void setIndexMap(Map<PMDMaterial, List<Integer>> indexMap) {
+    public void setIndexMap(Map<PMDMaterial, IntArrayList> indexMap) {
         this.indexMap = indexMap;
     }
 }
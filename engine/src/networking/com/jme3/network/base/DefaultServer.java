@@ -77,6 +77,10 @@ public class DefaultServer implements Server
     private MessageListenerRegistry<HostedConnection> messageListeners 
                             = new MessageListenerRegistry<HostedConnection>();                        
     private List<ConnectionListener> connectionListeners = new CopyOnWriteArrayList<ConnectionListener>();
+
+    // Messages are serialized into a per-thread buffer that the
+    // kernels copy the data out of
+    private ThreadLocal<ByteBuffer> dataBuffer = new ThreadLocal<ByteBuffer>();
     
     public DefaultServer( String gameName, int version, Kernel reliable, Kernel fast )
     {
@@ -154,20 +158,35 @@ public class DefaultServer implements Server
 
     public void broadcast( Filter<? super HostedConnection> filter, Message message )
     {
-        ByteBuffer buffer = MessageProtocol.messageToBuffer(message, null);
+        ByteBuffer buffer = messageToBuffer(message);
  
         FilterAdapter adapter = filter == null ? null : new FilterAdapter(filter);
                
         // Ignore the filter for the moment
         if( message.isReliable() || fast == null ) {
-            // Don't need to copy the data because message protocol is already
-            // giving us a fresh buffer
-            reliable.broadcast( adapter, buffer, true, false );
+            // The kernel copies the data once and shares the copy
+            // between the endpoints
+            reliable.broadcast( adapter, buffer, true, true );
         } else {
-            fast.broadcast( adapter, buffer, false, false );
+            fast.broadcast( adapter, buffer, false, true );
         }               
     }
 
+    /**
+     *  Serializes the message into this thread's data buffer.  The
+     *  returned buffer is reused by the next call on the same thread.
+     */
+    protected ByteBuffer messageToBuffer( Message message )
+    {
+        ByteBuffer buffer = dataBuffer.get();
+        if( buffer == null ) {
+            buffer = ByteBuffer.allocate( 32767 + 2 );
+            dataBuffer.set(buffer);
+        }
+        buffer.clear();
+        return MessageProtocol.messageToBuffer(message, buffer);
+    }
+
     public HostedConnection getConnection( int id )
     {
         return connections.get(id);
@@ -394,11 +413,16 @@ public class DefaultServer implements Server
        
         public void send( Message message )
         {
-            ByteBuffer buffer = MessageProtocol.messageToBuffer(message, null);
+            ByteBuffer buffer = messageToBuffer(message);
             if( message.isReliable() || fast == null ) {
+                // The endpoint copies the data
                 reliable.send( buffer );
             } else {
-                fast.send( buffer );
+                // The datagram is sent later from the buffer's array
+                ByteBuffer temp = ByteBuffer.allocate( buffer.remaining() );
+                temp.put( buffer );
+                temp.flip();
+                fast.send( temp );
             }
         }
  
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jme3.network.kernel;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  A pool of direct byte buffers for outbound data.  Buffers
+ *  are handed out as reference counted SharedBuffers in a few
+ *  size classes and come back to the pool when the last reference
+ *  is released.  Requests larger than the largest size class get
+ *  a buffer that is not pooled.
+ *
+ *  <p>This is thread safe.</p>
+ *
+ *  @version   $Revision$
+ */
+public class BufferPool
+{
+    private static final int MIN_SHIFT = 9;
+    private static final int MAX_SHIFT = 16;
+
+    private final int maxFree;
+    private final List<ConcurrentLinkedQueue<SharedBuffer>> free;
+    private final AtomicInteger[] freeCounts;
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    public BufferPool()
+    {
+        this( 64 );
+    }
+
+    /**
+     *  Creates a pool that keeps at most maxFree unused buffers
+     *  of each size class.
+     */
+    public BufferPool( int maxFree )
+    {
+        this.maxFree = maxFree;
+        int classes = MAX_SHIFT - MIN_SHIFT + 1;
+        free = new ArrayList<ConcurrentLinkedQueue<SharedBuffer>>( classes );
+        freeCounts = new AtomicInteger[classes];
+        for( int i = 0; i < classes; i++ ) {
+            free.add( new ConcurrentLinkedQueue<SharedBuffer>() );
+            freeCounts[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     *  Returns the size of the largest pooled buffers.
+     */
+    public int getMaxBufferSize()
+    {
+        return 1 << MAX_SHIFT;
+    }
+
+    /**
+     *  Returns the number of buffers this pool has allocated.
+     */
+    public int getAllocatedCount()
+    {
+        return allocated.get();
+    }
+
+    /**
+     *  Returns the number of unused buffers held by this pool.
+     */
+    public int getFreeCount()
+    {
+        int count = 0;
+        for( AtomicInteger c : freeCounts ) {
+            count += c.get();
+        }
+        return count;
+    }
+
+    /**
+     *  Returns a cleared buffer with room for at least size bytes
+     *  and a reference count of one.
+     */
+    public SharedBuffer acquire( int size )
+    {
+        int index = sizeClass(size);
+        if( index < 0 ) {
+            allocated.incrementAndGet();
+            return new SharedBuffer( null, -1, ByteBuffer.allocateDirect(size) );
+        }
+
+        SharedBuffer result = free.get(index).poll();
+        if( result != null ) {
+            freeCounts[index].decrementAndGet();
+            result.reset();
+            return result;
+        }
+        allocated.incrementAndGet();
+        return new SharedBuffer( this, index, ByteBuffer.allocateDirect(1 << (index + MIN_SHIFT)) );
+    }
+
+    /**
+     *  Acquires a buffer and copies the remaining bytes of data
+     *  into it.  The buffer is flipped, ready to be written.
+     */
+    public SharedBuffer copy( ByteBuffer data )
+    {
+        SharedBuffer result = acquire( data.remaining() );
+        result.getBuffer().put( data );
+        result.getBuffer().flip();
+        return result;
+    }
+
+    /**
+     *  Called by SharedBuffer when its last reference is released.
+     */
+    void recycle( SharedBuffer buffer, int index )
+    {
+        if( freeCounts[index].incrementAndGet() > maxFree ) {
+            // Let the collector have it
+            freeCounts[index].decrementAndGet();
+            return;
+        }
+        free.get(index).offer( buffer );
+    }
+
+    private static int sizeClass( int size )
+    {
+        for( int shift = MIN_SHIFT; shift <= MAX_SHIFT; shift++ ) {
+            if( size <= 1 << shift )
+                return shift - MIN_SHIFT;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jme3.network.kernel;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  A reference counted byte buffer from a BufferPool.  Data that
+ *  goes to several endpoints is written once into a shared buffer
+ *  and each endpoint retains it and writes from its own read-only
+ *  view.  The buffer goes back to the pool when the last reference
+ *  is released, after which it must not be used.
+ *
+ *  @version   $Revision$
+ */
+public class SharedBuffer
+{
+    private final BufferPool pool;
+    private final int sizeClass;
+    private final ByteBuffer buffer;
+    private final AtomicInteger refs = new AtomicInteger(1);
+
+    SharedBuffer( BufferPool pool, int sizeClass, ByteBuffer buffer )
+    {
+        this.pool = pool;
+        this.sizeClass = sizeClass;
+        this.buffer = buffer;
+    }
+
+    /**
+     *  Returns the underlying buffer, used by the owner to fill it
+     *  before it is shared.
+     */
+    public ByteBuffer getBuffer()
+    {
+        return buffer;
+    }
+
+    /**
+     *  Returns a read-only view of the bytes from the buffer's current
+     *  position to its limit with its own position and limit.
+     */
+    public ByteBuffer view()
+    {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     *  Adds a reference to this buffer.
+     */
+    public SharedBuffer retain()
+    {
+        if( refs.getAndIncrement() <= 0 )
+            throw new IllegalStateException( "Buffer has already been released." );
+        return this;
+    }
+
+    /**
+     *  Removes a reference from this buffer and returns it to its pool
+     *  if it was the last one.
+     */
+    public void release()
+    {
+        int count = refs.decrementAndGet();
+        if( count < 0 )
+            throw new IllegalStateException( "Buffer has already been released." );
+        if( count == 0 && pool != null )
+            pool.recycle( this, sizeClass );
+    }
+
+    public int getReferenceCount()
+    {
+        return refs.get();
+    }
+
+    void reset()
+    {
+        buffer.clear();
+        refs.set(1);
+    }
+
+    public String toString()
+    {
+        return "SharedBuffer[" + buffer + ", refs=" + refs.get() + "]";
+    }
+}
@@ -55,7 +55,7 @@ public class NioEndpoint implements Endpoint
     private long id;
     private SocketChannel socket;
     private SelectorKernel kernel;
-    private ConcurrentLinkedQueue<ByteBuffer> outbound = new ConcurrentLinkedQueue<ByteBuffer>();
+    private ConcurrentLinkedQueue<Pending> outbound = new ConcurrentLinkedQueue<Pending>();
     private boolean closing = false;
 
     public NioEndpoint( SelectorKernel kernel, long id, SocketChannel socket )
@@ -116,21 +116,30 @@ public class NioEndpoint implements Endpoint
      */
     protected void send( ByteBuffer data, boolean copy, boolean wakeup )
     {
-        // We create a ByteBuffer per endpoint since we
-        // use it to track the data sent to each endpoint
-        // separately.
-        ByteBuffer buffer;
-        if( !copy ) {
-            buffer = data;
-        } else {
-            // Copy the buffer
-            buffer = ByteBuffer.allocate(data.remaining());
-            buffer.put(data);
-            buffer.flip();
+        if( copy && data != CLOSE_MARKER ) {
+            // Copy the buffer into a pooled one that is released
+            // once it has been written
+            SharedBuffer shared = kernel.getBufferPool().copy(data);
+            send( shared, wakeup );
+            shared.release();
+            return;
         }
 
         // Queue it up
-        outbound.add(buffer);
+        outbound.add(new Pending(data, null));
+
+        if( wakeup )
+            kernel.wakeupSelector();
+    }
+
+    /**
+     *  Queues the contents of a shared buffer.  The endpoint writes
+     *  from its own view of the buffer and holds a reference to it
+     *  until the data has been written.
+     */
+    protected void send( SharedBuffer data, boolean wakeup )
+    {
+        outbound.add(new Pending(data.view(), data.retain()));
 
         if( wakeup )
             kernel.wakeupSelector();
@@ -142,7 +151,29 @@ public class NioEndpoint implements Endpoint
      */
     protected ByteBuffer peekPending()
     {
-        return outbound.peek();
+        Pending p = outbound.peek();
+        return p == null ? null : p.data;
+    }
+
+    /**
+     *  Called by the SelectorKernel to get the buffers at the
+     *  top of the queue for a gathering write.  Fills the array
+     *  with up to target.length buffers and returns how many were
+     *  added.  The close marker is only ever returned on its own.
+     */
+    protected int peekPending( ByteBuffer[] target )
+    {
+        int count = 0;
+        for( Pending p : outbound ) {
+            if( count == target.length )
+                break;
+            if( p.data == CLOSE_MARKER && count > 0 )
+                break;
+            target[count++] = p.data;
+            if( p.data == CLOSE_MARKER )
+                break;
+        }
+        return count;
     }
 
     /**
@@ -151,7 +182,12 @@ public class NioEndpoint implements Endpoint
      */
     protected ByteBuffer removePending()
     {
-        return outbound.poll();
+        Pending p = outbound.poll();
+        if( p == null )
+            return null;
+        if( p.owner != null )
+            p.owner.release();
+        return p.data;
     }
 
     protected boolean hasPending()
@@ -159,6 +195,16 @@ public class NioEndpoint implements Endpoint
         return !outbound.isEmpty();
     }
 
+    /**
+     *  Called by the SelectorKernel when the endpoint has been
+     *  closed to release any data that will never be written.
+     */
+    protected void clearPending()
+    {
+        while( removePending() != null ) {
+        }
+    }
+
     public void send( ByteBuffer data )
     {   
         if( data == null ) {
@@ -174,4 +220,20 @@ public class NioEndpoint implements Endpoint
     {
         return "NioEndpoint[" + id + ", " + socket + "]";
     }
+
+    /**
+     *  An outbound buffer and the shared buffer it is a view of,
+     *  if any.
+     */
+    private static class Pending
+    {
+        final ByteBuffer data;
+        final SharedBuffer owner;
+
+        Pending( ByteBuffer data, SharedBuffer owner )
+        {
+            this.data = data;
+            this.owner = owner;
+        }
+    }
 }
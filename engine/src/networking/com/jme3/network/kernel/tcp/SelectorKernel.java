@@ -59,11 +59,15 @@ public class SelectorKernel extends AbstractKernel
 {
     static Logger log = Logger.getLogger(SelectorKernel.class.getName());
 
+    private static final int MAX_GATHER = 32;
+
     private InetSocketAddress address;
     private SelectorThread thread;
 
     private Map<Long,NioEndpoint> endpoints = new ConcurrentHashMap<Long,NioEndpoint>();
 
+    private BufferPool bufferPool = new BufferPool();
+
     public SelectorKernel( InetAddress host, int port )
     {
         this( new InetSocketAddress(host, port) );
@@ -120,10 +124,13 @@ public class SelectorKernel extends AbstractKernel
 
         if( copy )
             {
-            // Copy the data just once
-            byte[] temp = new byte[data.remaining()];
-            System.arraycopy(data.array(), data.position(), temp, 0, data.remaining());
-            data = ByteBuffer.wrap(temp);
+            // Copy the data just once into a pooled buffer that
+            // goes back to the pool when the last endpoint has
+            // written it
+            SharedBuffer shared = bufferPool.copy(data);
+            broadcast( filter, shared );
+            shared.release();
+            return;
             }
 
         // Hand it to all of the endpoints that match our routing
@@ -143,6 +150,30 @@ public class SelectorKernel extends AbstractKernel
         wakeupSelector();
     }
 
+    /**
+     *  Dispatches the shared buffer to all endpoints that match the
+     *  filter.  Each endpoint retains the buffer until it has written
+     *  it, the caller still has to release its own reference.
+     */
+    public void broadcast( Filter<? super Endpoint> filter, SharedBuffer data )
+    {
+        for( NioEndpoint p : endpoints.values() ) {
+            if( filter != null && !filter.apply(p) )
+                continue;
+            p.send( data, false );
+        }
+
+        wakeupSelector();
+    }
+
+    /**
+     *  Returns the pool holding the outbound data of the endpoints.
+     */
+    public BufferPool getBufferPool()
+    {
+        return bufferPool;
+    }
+
     protected NioEndpoint addEndpoint( SocketChannel c )
     {
         // Note: we purposely do NOT put the key in the endpoint.
@@ -162,6 +193,9 @@ public class SelectorKernel extends AbstractKernel
     {
         endpoints.remove( p.getId() );
 
+        // Anything left will never be written
+        p.clearPending();
+
         // Enqueue an endpoint event for the listeners
         addEvent( EndpointEvent.createRemove( this, p ) );
 
@@ -226,6 +260,12 @@ public class SelectorKernel extends AbstractKernel
         private AtomicBoolean go = new AtomicBoolean(true);
         private ByteBuffer working = ByteBuffer.allocate( 8192 );
 
+        /**
+         *  The buffers of one gathering write.  Several queued
+         *  messages go out in one call.
+         */
+        private ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+
         /**
          *  Because we want to keep the keys to ourselves, we'll do
          *  the endpoint -> key mapping internally.
@@ -380,8 +420,10 @@ public class SelectorKernel extends AbstractKernel
             SocketChannel c = (SocketChannel)key.channel();
 
             // We will send what we can and move on.
-            ByteBuffer current = p.peekPending();
-            if( current == NioEndpoint.CLOSE_MARKER ) {
+            int count = p.peekPending( gather );
+            if( count > 0 && gather[0] == NioEndpoint.CLOSE_MARKER ) {
+                gather[0] = null;
+
                 // This connection wants to be closed now
                 closeEndpoint(p);
 
@@ -389,11 +431,15 @@ public class SelectorKernel extends AbstractKernel
                 return;
             }
 
-            c.write( current );
+            try {
+                c.write( gather, 0, count );
 
-            // If we wrote all of that packet then we need to remove it
-            if( current.remaining() == 0 ) {
-                p.removePending();
+                // Remove the packets we wrote all of
+                for( int i = 0; i < count && gather[i].remaining() == 0; i++ ) {
+                    p.removePending();
+                }
+            } finally {
+                Arrays.fill( gather, 0, count, null );
             }
 
             // If we happened to empty the pending queue then let's read
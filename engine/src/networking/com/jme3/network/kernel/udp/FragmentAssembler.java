@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2011 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jme3.network.kernel.udp;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *  Splits messages that do not fit in one datagram into fragments
+ *  and puts them back together on the receiving end.
+ *
+ *  <p>A fragment starts with a zero length prefix, which no regular
+ *  message has, followed by the message id, the fragment index and
+ *  count, the offset of the fragment's data and the total message
+ *  size.  The reassembled message is the original length prefixed
+ *  message data.  Messages missing a fragment are eventually dropped
+ *  as there is no retransmission.</p>
+ *
+ *  <p>This is not thread safe, each receiving thread uses its own
+ *  assembler per source.</p>
+ *
+ *  @version   $Revision$
+ */
+public class FragmentAssembler
+{
+    public static final int HEADER_SIZE = 2 + 4 + 2 + 2 + 4 + 4;
+
+    /**
+     *  The number of partially received messages kept per source
+     *  before the oldest is dropped.
+     */
+    private static final int MAX_PARTIALS = 16;
+
+    /**
+     *  The largest message a fragment can belong to, the short length
+     *  prefix plus its maximum value.
+     */
+    public static final int MAX_MESSAGE_SIZE = Short.MAX_VALUE + 2;
+
+    private Map<Integer,Partial> partials = new PartialMap();
+
+    /**
+     *  Returns true if the datagram holds a fragment.
+     */
+    public static boolean isFragment( byte[] data, int offset, int length )
+    {
+        return length >= HEADER_SIZE && data[offset] == 0 && data[offset + 1] == 0;
+    }
+
+    /**
+     *  Returns the number of fragments a message of the given size is
+     *  split into for datagrams of maxDatagramSize bytes.
+     */
+    public static int getFragmentCount( int size, int maxDatagramSize )
+    {
+        int chunk = maxDatagramSize - HEADER_SIZE;
+        return (size + chunk - 1) / chunk;
+    }
+
+    /**
+     *  Creates the datagram data of one fragment of the remaining bytes
+     *  of message.
+     */
+    public static byte[] createFragment( int messageId, int index, ByteBuffer message, int maxDatagramSize )
+    {
+        int total = message.remaining();
+        int count = getFragmentCount( total, maxDatagramSize );
+        int offset = index * (maxDatagramSize - HEADER_SIZE);
+        int length = Math.min( maxDatagramSize - HEADER_SIZE, total - offset );
+
+        ByteBuffer fragment = ByteBuffer.allocate( HEADER_SIZE + length );
+        fragment.putShort( (short)0 );
+        fragment.putInt( messageId );
+        fragment.putShort( (short)index );
+        fragment.putShort( (short)count );
+        fragment.putInt( offset );
+        fragment.putInt( total );
+
+        ByteBuffer chunk = message.duplicate();
+        chunk.position( message.position() + offset );
+        chunk.limit( chunk.position() + length );
+        fragment.put( chunk );
+        return fragment.array();
+    }
+
+    /**
+     *  Adds a fragment and returns the complete message once all of its
+     *  fragments have arrived, or null.  Malformed and duplicate
+     *  fragments are ignored.  The header is checked against the size
+     *  limit and the way createFragment() splits messages before
+     *  anything is allocated, so a forged header cannot claim more
+     *  memory than the largest message.
+     */
+    public byte[] add( byte[] data, int offset, int length )
+    {
+        ByteBuffer buffer = ByteBuffer.wrap( data, offset, length );
+        buffer.getShort();
+        int messageId = buffer.getInt();
+        int index = buffer.getShort();
+        int count = buffer.getShort();
+        int dataOffset = buffer.getInt();
+        int total = buffer.getInt();
+        int size = buffer.remaining();
+
+        if( total <= 0 || total > MAX_MESSAGE_SIZE || size <= 0
+            || count <= 0 || count > total || index < 0 || index >= count ) {
+            return null;
+        }
+        if( index < count - 1 ) {
+            // All but the last fragment are full and set the chunk size
+            if( dataOffset != index * size || getFragmentCount( total, size + HEADER_SIZE ) != count )
+                return null;
+        } else if( dataOffset < 0 || dataOffset != total - size ) {
+            return null;
+        }
+
+        Partial p = partials.get( messageId );
+        if( p == null || p.data.length != total || p.received.length != count ) {
+            p = new Partial( total, count );
+            partials.put( messageId, p );
+        }
+        if( p.received[index] ) {
+            return null;
+        }
+        p.received[index] = true;
+        p.missing--;
+        buffer.get( p.data, dataOffset, size );
+
+        if( p.missing > 0 ) {
+            return null;
+        }
+        partials.remove( messageId );
+        return p.data;
+    }
+
+    private static class Partial
+    {
+        final byte[] data;
+        final boolean[] received;
+        int missing;
+
+        Partial( int total, int count )
+        {
+            data = new byte[total];
+            received = new boolean[count];
+            missing = count;
+        }
+    }
+
+    /**
+     *  Drops the oldest partial message once more than MAX_PARTIALS
+     *  are pending.
+     */
+    private static class PartialMap extends LinkedHashMap<Integer,Partial>
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<Integer,Partial> eldest )
+        {
+            return size() > MAX_PARTIALS;
+        }
+    }
+}
@@ -36,6 +36,8 @@ import java.io.*;
 import java.net.*;
 import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.jme3.network.kernel.*;
 
@@ -49,11 +51,18 @@ import com.jme3.network.kernel.*;
  */
 public class UdpConnector implements Connector
 {
+    static Logger log = Logger.getLogger(UdpConnector.class.getName());
+
     private DatagramSocket sock = new DatagramSocket();
     private SocketAddress remoteAddress;
     private byte[] buffer = new byte[65535];
     private AtomicBoolean connected = new AtomicBoolean(false);
 
+    /**
+     *  Puts together the messages a UdpKernel sent as fragments.
+     */
+    private FragmentAssembler assembler = new FragmentAssembler();
+
     /**
      *  In order to provide proper available() checking, we
      *  potentially queue one datagram.
@@ -116,11 +125,29 @@ public class UdpConnector implements Connector
         checkClosed();
         
         try {
-            DatagramPacket packet = new DatagramPacket( buffer, buffer.length );
-            sock.receive(packet);
-            
-            // Wrap it in a ByteBuffer for the caller
-            return ByteBuffer.wrap( buffer, 0, packet.getLength() ); 
+            while( true ) {
+                DatagramPacket packet = new DatagramPacket( buffer, buffer.length );
+                sock.receive(packet);
+
+                if( FragmentAssembler.isFragment( buffer, 0, packet.getLength() ) ) {
+                    byte[] message;
+                    try {
+                        message = assembler.add( buffer, 0, packet.getLength() );
+                    } catch( RuntimeException e ) {
+                        log.log( Level.WARNING, "Dropping bad fragment from:" + remoteAddress, e );
+                        continue;
+                    } catch( Error e ) {
+                        log.log( Level.WARNING, "Dropping bad fragment from:" + remoteAddress, e );
+                        continue;
+                    }
+                    if( message == null )
+                        continue;  // wait for the rest of the message
+                    return ByteBuffer.wrap( message );
+                }
+
+                // Wrap it in a ByteBuffer for the caller
+                return ByteBuffer.wrap( buffer, 0, packet.getLength() ); 
+            }
         } catch( IOException e ) {
             if( !connected.get() ) {
                 // Nothing to see here... just move along
@@ -35,6 +35,7 @@ package com.jme3.network.kernel.udp;
 import java.io.IOException;
 import java.net.*;
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.jme3.network.kernel.*;
 
@@ -55,6 +56,22 @@ public class UdpEndpoint implements Endpoint
     private UdpKernel kernel;
     private boolean connected = true; // it's connectionless but we track logical state
 
+    // Messages waiting to be sent as one datagram when the kernel
+    // batches them
+    private byte[] batch;
+    private int batchSize;
+    private boolean flushQueued;
+    private int nextMessageId;
+
+    // Only used by the kernel's receiving thread
+    private FragmentAssembler assembler;
+
+    private AtomicLong messagesSent = new AtomicLong();
+    private AtomicLong packetsSent = new AtomicLong();
+    private AtomicLong bytesSent = new AtomicLong();
+    private AtomicLong packetsReceived = new AtomicLong();
+    private AtomicLong bytesReceived = new AtomicLong();
+
     public UdpEndpoint( UdpKernel kernel, long id, SocketAddress address, DatagramSocket socket )
     {
         this.id = id;
@@ -114,7 +131,13 @@ public class UdpEndpoint implements Endpoint
         if( !isConnected() ) {
             throw new KernelException( "Endpoint is not connected:" + this );
         }
-        
+        messagesSent.incrementAndGet();
+
+        int maxSize = kernel.getMaxDatagramSize();
+        if( maxSize > 0 ) {
+            sendBatched( data, maxSize );
+            return;
+        }
         
         try {
             DatagramPacket p = new DatagramPacket( data.array(), data.position(), 
@@ -122,7 +145,7 @@ public class UdpEndpoint implements Endpoint
                                                    
             // Just queue it up for the kernel threads to write
             // out
-            kernel.enqueueWrite( this, p );
+            write( p );
                                                                
             //socket.send(p);
         } catch( IOException e ) {
@@ -130,6 +153,131 @@ public class UdpEndpoint implements Endpoint
         }
     }
 
+    /**
+     *  Adds the message to the current batch, which is sent when it
+     *  is full or when the kernel flushes it.  Messages that do not fit
+     *  in a datagram are sent as fragments.
+     */
+    protected void sendBatched( ByteBuffer data, int maxSize )
+    {
+        boolean newBatch = false;
+        try {
+            synchronized( this ) {
+                int size = data.remaining();
+                if( size > maxSize ) {
+                    // Keep the order of the messages
+                    flushBatch();
+                    int messageId = nextMessageId++;
+                    int count = FragmentAssembler.getFragmentCount( size, maxSize );
+                    for( int i = 0; i < count; i++ ) {
+                        byte[] fragment = FragmentAssembler.createFragment( messageId, i, data, maxSize );
+                        write( new DatagramPacket( fragment, fragment.length, address ) );
+                    }
+                    return;
+                }
+
+                if( batchSize + size > maxSize ) {
+                    flushBatch();
+                }
+                if( batch == null ) {
+                    batch = new byte[maxSize];
+                    newBatch = !flushQueued;
+                    flushQueued = true;
+                }
+                data.duplicate().get( batch, batchSize, size );
+                batchSize += size;
+            }
+        } catch( IOException e ) {
+            throw new KernelException( "Error sending datagram to:" + address, e );
+        }
+
+        if( newBatch ) {
+            kernel.enqueueFlush( this );
+        }
+    }
+
+    /**
+     *  Sends the current batch, if any.
+     */
+    protected void flush()
+    {
+        try {
+            synchronized( this ) {
+                flushQueued = false;
+                flushBatch();
+            }
+        } catch( IOException e ) {
+            throw new KernelException( "Error sending datagram to:" + address, e );
+        }
+    }
+
+    private void flushBatch() throws IOException
+    {
+        if( batchSize == 0 )
+            return;
+
+        // The packet keeps the array so the next batch gets a new one
+        write( new DatagramPacket( batch, batchSize, address ) );
+        batch = null;
+        batchSize = 0;
+    }
+
+    private void write( DatagramPacket p )
+    {
+        packetsSent.incrementAndGet();
+        bytesSent.addAndGet( p.getLength() );
+        kernel.enqueueWrite( this, p );
+    }
+
+    /**
+     *  Called by the kernel for every datagram received from
+     *  this endpoint.
+     */
+    protected void dataReceived( int size )
+    {
+        packetsReceived.incrementAndGet();
+        bytesReceived.addAndGet( size );
+    }
+
+    protected FragmentAssembler getAssembler()
+    {
+        if( assembler == null )
+            assembler = new FragmentAssembler();
+        return assembler;
+    }
+
+    /**
+     *  Returns the number of messages sent to this endpoint.
+     */
+    public long getMessagesSent()
+    {
+        return messagesSent.get();
+    }
+
+    /**
+     *  Returns the number of datagrams sent to this endpoint, which
+     *  is lower than the number of messages when they are batched.
+     */
+    public long getPacketsSent()
+    {
+        return packetsSent.get();
+    }
+
+    public long getBytesSent()
+    {
+        return bytesSent.get();
+    }
+
+    public long getPacketsReceived()
+    {
+        return packetsReceived.get();
+    }
+
+    public long getBytesReceived()
+    {
+        return bytesReceived.get();
+    }
+
     public String toString()
     {
         return "UdpEndpoint[" + id + ", " + address + "]";
@@ -38,7 +38,8 @@ import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -59,7 +60,10 @@ public class UdpKernel extends AbstractKernel
     private InetSocketAddress address;
     private HostThread thread;
 
-    private ExecutorService writer;
+    private ScheduledExecutorService writer;
+
+    private volatile int maxDatagramSize = 0;
+    private volatile long batchDelay = 0;
     
     // The nature of UDP means that even through a firewall,
     // a user would have to have a unique address+port since UDP
@@ -91,7 +95,7 @@ public class UdpKernel extends AbstractKernel
         if( thread != null )
             throw new IllegalStateException( "Kernel already initialized." );
 
-        writer = Executors.newFixedThreadPool(2, new NamedThreadFactory(toString() + "-writer"));
+        writer = Executors.newScheduledThreadPool(2, new NamedThreadFactory(toString() + "-writer"));
         
         thread = createHostThread();
 
@@ -117,6 +121,53 @@ public class UdpKernel extends AbstractKernel
         }
     }
 
+    /**
+     *  Sets the largest datagram the endpoints send.  When greater than
+     *  zero, the messages sent to an endpoint are packed together into
+     *  datagrams of up to this many bytes and larger messages are split
+     *  into fragments that are reassembled by the receiving UdpKernel or
+     *  UdpConnector.  The default of zero sends every message as its own
+     *  datagram, which any receiver understands.
+     */
+    public void setMaxDatagramSize( int size )
+    {
+        if( size != 0 && size < FragmentAssembler.HEADER_SIZE * 4 )
+            throw new IllegalArgumentException( "Datagram size too small:" + size );
+        this.maxDatagramSize = size;
+    }
+
+    public int getMaxDatagramSize()
+    {
+        return maxDatagramSize;
+    }
+
+    /**
+     *  Sets how long, in milliseconds, the first message of a batch waits
+     *  for more messages to the same endpoint before it is sent.  With the
+     *  default of zero, a batch holds the messages sent while the writer
+     *  threads were busy.  Only used when a maximum datagram size is set.
+     */
+    public void setBatchDelay( long millis )
+    {
+        this.batchDelay = millis;
+    }
+
+    public long getBatchDelay()
+    {
+        return batchDelay;
+    }
+
+    /**
+     *  Sends the batched messages of all endpoints right away, for
+     *  example at the end of a server tick.
+     */
+    public void flush()
+    {
+        for( UdpEndpoint p : socketEndpoints.values() ) {
+            p.flush();
+        }
+    }
+
     /**
      *  Dispatches the data to all endpoints managed by the
      *  kernel.  'routing' is currently ignored.
@@ -129,10 +180,12 @@ public class UdpKernel extends AbstractKernel
 
         if( copy )
             {
-            // Copy the data just once
-            byte[] temp = new byte[data.remaining()];
-            System.arraycopy(data.array(), data.position(), temp, 0, data.remaining());
-            data = ByteBuffer.wrap(temp);
+            // Copy the data just once, the datagrams are sent
+            // from its array
+            ByteBuffer temp = ByteBuffer.allocate(data.remaining());
+            temp.put(data.duplicate());
+            temp.flip();
+            data = temp;
             }
 
         // Hand it to all of the endpoints that match our routing
@@ -179,11 +232,29 @@ public class UdpKernel extends AbstractKernel
         // to be ported back to a specific machine so we will consider
         // the address + port (ie: SocketAddress) the defacto unique
         // ID.
-        Endpoint p = getEndpoint( packet.getSocketAddress(), true );
+        UdpEndpoint p = (UdpEndpoint)getEndpoint( packet.getSocketAddress(), true );
+        p.dataReceived( packet.getLength() );
 
-        // We'll copy the data to trim it.
-        byte[] data = new byte[packet.getLength()];
-        System.arraycopy(packet.getData(), 0, data, 0, data.length);
+        byte[] data;
+        if( FragmentAssembler.isFragment( packet.getData(), packet.getOffset(), packet.getLength() ) ) {
+            // The receive thread serves every client, a bad datagram
+            // must not stop it
+            try {
+                data = p.getAssembler().add( packet.getData(), packet.getOffset(), packet.getLength() );
+            } catch( RuntimeException e ) {
+                log.log( Level.WARNING, "Dropping bad fragment from:" + p, e );
+                return;
+            } catch( Error e ) {
+                log.log( Level.WARNING, "Dropping bad fragment from:" + p, e );
+                return;
+            }
+            if( data == null )
+                return;  // still waiting for the rest
+        } else {
+            // We'll copy the data to trim it.
+            data = new byte[packet.getLength()];
+            System.arraycopy(packet.getData(), 0, data, 0, data.length);
+        }
 
         Envelope env = new Envelope( p, data, false );
         addEnvelope( env );
@@ -194,6 +265,19 @@ public class UdpKernel extends AbstractKernel
         writer.execute( new MessageWriter(endpoint, packet) );
     } 
 
+    /**
+     *  Called by an endpoint when it has started a new batch.
+     */
+    protected void enqueueFlush( final UdpEndpoint endpoint )
+    {
+        writer.schedule( new Runnable() {
+                public void run()
+                {
+                    endpoint.flush();
+                }
+            }, batchDelay, TimeUnit.MILLISECONDS );
+    }
+
     protected class MessageWriter implements Runnable
     {
         private Endpoint endpoint;
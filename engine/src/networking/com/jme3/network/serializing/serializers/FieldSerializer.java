@@ -64,21 +64,10 @@ public class FieldSerializer extends Serializer {
 
         checkClass(clazz);   
     
-        List<Field> fields = new ArrayList<Field>();
-
-        Class processingClass = clazz;
-        while (processingClass != Object.class ) {
-            Collections.addAll(fields, processingClass.getDeclaredFields());
-            processingClass = processingClass.getSuperclass();
-        }
+        List<Field> fields = SerializedFields.getFields(clazz);
 
         List<SavedField> cachedFields = new ArrayList<SavedField>(fields.size());
         for (Field field : fields) {
-            int modifiers = field.getModifiers();
-            if (Modifier.isTransient(modifiers)) continue;
-            if (Modifier.isFinal(modifiers)) continue;
-            if (Modifier.isStatic(modifiers)) continue;
-            if (field.isSynthetic()) continue;
             field.setAccessible(true);
 
             SavedField cachedField = new SavedField();
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2009-2010 jMonkeyEngine, Java Game Networking
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jme3.network.serializing.serializers;
+
+import com.jme3.network.serializing.Serializer;
+import com.jme3.network.serializing.SerializerException;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Base class of the serializers written by SerializerGenerator. A generated
+ * serializer reads and writes the fields of one class with straight-line
+ * code and produces the same data as FieldSerializer, so either end of a
+ * connection can use either serializer. It is registered in place of
+ * the field serializer:
+ * <pre>
+ * Serializer.registerClass(MyMessage.class, new MyMessageSerializer());
+ * </pre>
+ * Registration fails if the class has changed since the serializer was
+ * generated.
+ */
+public abstract class GeneratedSerializer<M> extends Serializer {
+
+    private static final Map<Class<?>, Class<?>> defaultSerializers = new HashMap<Class<?>, Class<?>>();
+
+    static {
+        defaultSerializers.put(boolean.class, BooleanSerializer.class);
+        defaultSerializers.put(byte.class, ByteSerializer.class);
+        defaultSerializers.put(char.class, CharSerializer.class);
+        defaultSerializers.put(short.class, ShortSerializer.class);
+        defaultSerializers.put(int.class, IntSerializer.class);
+        defaultSerializers.put(long.class, LongSerializer.class);
+        defaultSerializers.put(float.class, FloatSerializer.class);
+        defaultSerializers.put(double.class, DoubleSerializer.class);
+    }
+
+    private final Class<M> type;
+    private final String signature;
+    private Constructor<M> constructor;
+
+    /**
+     * The serialized fields in the order they are written.
+     */
+    protected Field[] fields;
+    protected Class<?>[] types;
+    /**
+     * The serializers of fields with a final type, null for the other fields.
+     */
+    protected Serializer[] serializers;
+
+    protected GeneratedSerializer(Class<M> type, String signature) {
+        this.type = type;
+        this.signature = signature;
+    }
+
+    public void initialize(Class clazz) {
+        if (clazz != type) {
+            throw new RuntimeException("Registration error: " + getClass().getName()
+                    + " was generated for " + type + ", not " + clazz);
+        }
+        try {
+            constructor = type.getConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException("Registration error: no-argument constructor not found on:" + clazz);
+        }
+
+        List<Field> list = SerializedFields.getFields(clazz);
+        Map<Field, Serializer> fieldSerializers = new HashMap<Field, Serializer>();
+        for (Field field : list) {
+            field.setAccessible(true);
+            // Same lookup order as FieldSerializer, which may register
+            // the field types.
+            if (Modifier.isFinal(field.getType().getModifiers())) {
+                fieldSerializers.put(field, Serializer.getSerializer(field.getType(), false));
+            }
+        }
+        SerializedFields.sort(list);
+        if (!signature.equals(SerializedFields.getSignature(list))) {
+            throw new RuntimeException("Registration error: " + getClass().getName()
+                    + " is out of date, the fields of " + clazz + " have changed");
+        }
+
+        fields = list.toArray(new Field[list.size()]);
+        types = new Class<?>[fields.length];
+        serializers = new Serializer[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            types[i] = fields[i].getType();
+            serializers[i] = fieldSerializers.get(fields[i]);
+            // Primitive fields are read and written inline
+            Class<?> defaultSerializer = defaultSerializers.get(types[i]);
+            if (defaultSerializer != null && serializers[i].getClass() != defaultSerializer) {
+                throw new RuntimeException("Registration error: " + getClass().getName()
+                        + " requires the default serializer of " + types[i]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T readObject(ByteBuffer data, Class<T> c) throws IOException {
+
+        // Read the null/non-null marker
+        if (data.get() == 0x0)
+            return null;
+
+        return (T) read(data);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void writeObject(ByteBuffer buffer, Object object) throws IOException {
+
+        // Add the null/non-null marker
+        buffer.put( (byte)(object != null ? 0x1 : 0x0) );
+        if (object == null) {
+            // Nothing left to do
+            return;
+        }
+        if (fields == null)
+            throw new IOException("The " + object.getClass() + " is not registered"
+                                + " in the serializer!");
+
+        try {
+            write(buffer, (M) object);
+        } catch (BufferOverflowException boe) {
+            throw boe;
+        } catch (Exception e) {
+            log.log(Level.WARNING, "[GeneratedSerializer][???] Exception occurred on writing. Maybe you've forgotten to register a class, or maybe a class member does not have a serializer.");
+            throw new SerializerException( "Error writing object", e);
+        }
+    }
+
+    /**
+     * Reads the fields of a new object, the null marker has been read.
+     */
+    protected abstract M read(ByteBuffer data) throws IOException;
+
+    /**
+     * Writes the fields of a non-null object.
+     */
+    protected abstract void write(ByteBuffer buffer, M object) throws IOException;
+
+    /**
+     * Creates an object through the public constructor, for classes the
+     * generated code cannot instantiate directly.
+     */
+    protected M newInstance() throws IOException {
+        try {
+            return constructor.newInstance();
+        } catch (Exception e) {
+            throw new SerializerException( "Error creating object of type:" + type, e );
+        }
+    }
+
+    // Access to the fields the generated code cannot reach directly
+
+    protected Object get(int index, M object) throws IOException {
+        try {
+            return fields[index].get(object);
+        } catch (IllegalAccessException e) {
+            throw new SerializerException( "Error writing object", e);
+        }
+    }
+
+    protected boolean getBoolean(int index, M object) throws IOException {
+        try {
+            return fields[index].getBoolean(object);
+        } catch (IllegalAccessException e) {
+            throw new SerializerException( "Error writing object", e);
+        }
+    }
+
+    protected byte getByte(int index, M object) throws IOException {
+        try {
+            return fields[index].getByte(object);
+        } catch (IllegalAccessException e) {
+            throw new SerializerException( "Error writing object", e);
+        }
+    }
+
+    protected char getChar(int index, M object) throws IOException {
+        try {
+            return fields[index].getChar(object);
+        } catch (IllegalAccessException e) {
+            throw new SerializerException( "Error writing object", e);
+        }
+    }
+
+    protected short getShort(int index, M object) throws IOException {
+        try {
+            return fields[index].getShort(object);
+        } catch (IllegalAccessException e) {
+            throw new SerializerException( "Error writing object", e);
+        }
+    }
+
+    protected int getInt(int index, M object) throws IOException {
+        try {
+            return fields[index].getInt(object);
+        } catch (IllegalAccessException e) {
+            throw new SerializerException( "Error writing object", e);
+        }
+    }
+
+    protected long getLong(int index, M object) throws IOException {
+        try {
+            return fields[index].getLong(object);
+        } catch (IllegalAccessException e) {
+            throw new SerializerException( "Error writing object", e);
+        }
+    }
+
+    protected float getFloat(int index, M object) throws IOException {
+        try {
+            return fields[index].getFloat(object);
+        } catch (IllegalAccessException e) {
+            throw new SerializerException( "Error writing object", e);
+        }
+    }
+
+    protected double getDouble(int index, M object) throws IOException {
+        try {
+            return fields[index].getDouble(object);
+        } catch (IllegalAccessException e) {
+            throw new SerializerException( "Error writing object", e);
+        }
+    }
+
+    protected void set(int index, M object, Object value) throws IOException {
+        try {
+            fields[index].set(object, value);
+        } catch (IllegalAccessException e) {
+            throw new SerializerException( "Error reading object", e);
+        }
+    }
+
+    protected void setBoolean(int index, M object, boolean value) throws IOException {
+        try {
+            fields[index].setBoolean(object, value);
+        } catch (IllegalAccessException e) {
+            throw new SerializerException( "Error reading object", e);
+        }
+    }
+
+    protected void setByte(int index, M object, byte value) throws IOException {
+        try {
+            fields[index].setByte(object, value);
+        } catch (IllegalAccessException e) {
+            throw new SerializerException( "Error reading object", e);
+        }
+    }
+
+    protected void setChar(int index, M object, char value) throws IOException {
+        try {
+            fields[index].setChar(object, value);
+        } catch (IllegalAccessException e) {
+            throw new SerializerException( "Error reading object", e);
+        }
+    }
+
+    protected void setShort(int index, M object, short value) throws IOException {
+        try {
+            fields[index].setShort(object, value);
+        } catch (IllegalAccessException e) {
+            throw new SerializerException( "Error reading object", e);
+        }
+    }
+
+    protected void setInt(int index, M object, int value) throws IOException {
+        try {
+            fields[index].setInt(object, value);
+        } catch (IllegalAccessException e) {
+            throw new SerializerException( "Error reading object", e);
+        }
+    }
+
+    protected void setLong(int index, M object, long value) throws IOException {
+        try {
+            fields[index].setLong(object, value);
+        } catch (IllegalAccessException e) {
+            throw new SerializerException( "Error reading object", e);
+        }
+    }
+
+    protected void setFloat(int index, M object, float value) throws IOException {
+        try {
+            fields[index].setFloat(object, value);
+        } catch (IllegalAccessException e) {
+            throw new SerializerException( "Error reading object", e);
+        }
+    }
+
+    protected void setDouble(int index, M object, double value) throws IOException {
+        try {
+            fields[index].setDouble(object, value);
+        } catch (IllegalAccessException e) {
+            throw new SerializerException( "Error reading object", e);
+        }
+    }
+}
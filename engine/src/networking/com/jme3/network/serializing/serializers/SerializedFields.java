@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2009-2010 jMonkeyEngine, Java Game Networking
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jme3.network.serializing.serializers;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The fields written by FieldSerializer, shared with GeneratedSerializer
+ * and SerializerGenerator which must write the same data.
+ */
+final class SerializedFields {
+
+    private SerializedFields() {
+    }
+
+    /**
+     * Returns the fields of the class that are serialized, in declaration
+     * order, the class's own fields first. The serializers of final field
+     * types have to be looked up in this order since the lookup may
+     * register the type.
+     */
+    static List<Field> getFields(Class<?> clazz) {
+        List<Field> fields = new ArrayList<Field>();
+
+        Class<?> processingClass = clazz;
+        while (processingClass != Object.class ) {
+            for (Field field : processingClass.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isTransient(modifiers)) continue;
+                if (Modifier.isFinal(modifiers)) continue;
+                if (Modifier.isStatic(modifiers)) continue;
+                if (field.isSynthetic()) continue;
+                fields.add(field);
+            }
+            processingClass = processingClass.getSuperclass();
+        }
+        return fields;
+    }
+
+    /**
+     * Sorts fields into the order they are written.
+     */
+    static void sort(List<Field> fields) {
+        Collections.sort(fields, new Comparator<Field>() {
+            public int compare (Field o1, Field o2) {
+                    return o1.getName().compareTo(o2.getName());
+            }
+        });
+    }
+
+    /**
+     * Returns the field list a generated serializer is checked against,
+     * "name:type" for each field in the order they are written.
+     */
+    static String getSignature(List<Field> fields) {
+        StringBuilder sb = new StringBuilder();
+        for (Field field : fields) {
+            if (sb.length() > 0) {
+                sb.append(';');
+            }
+            sb.append(field.getName()).append(':').append(field.getType().getName());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2009-2010 jMonkeyEngine, Java Game Networking
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.jme3.network.serializing.serializers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+/**
+ * Writes the source of a GeneratedSerializer for a message class. The
+ * generated serializer reads and writes primitive fields inline and
+ * accesses the fields directly where the language allows it, falling back
+ * to reflection for private fields. It is placed in the package of the
+ * message class and named after it, e.g. MyMessageSerializer or
+ * Outer_MyMessageSerializer for a nested class.
+ * <p>
+ * Run as part of the build:
+ * <pre>
+ * java com.jme3.network.serializing.serializers.SerializerGenerator outputDir className...
+ * </pre>
+ * The serializer has to be generated again when the fields of the class
+ * change, registering a stale serializer fails.
+ */
+public class SerializerGenerator {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: SerializerGenerator outputDir className...");
+            return;
+        }
+        File outputDir = new File(args[0]);
+        for (int i = 1; i < args.length; i++) {
+            File file = generate(Class.forName(args[i]), outputDir);
+            System.out.println("Wrote " + file);
+        }
+    }
+
+    /**
+     * Returns the fully qualified name of the serializer generated for
+     * the class.
+     */
+    public static String getSerializerName(Class<?> type) {
+        String name = type.getName();
+        int packageLength = name.lastIndexOf('.') + 1;
+        return name.substring(0, packageLength)
+                + name.substring(packageLength).replace('$', '_') + "Serializer";
+    }
+
+    /**
+     * Writes the serializer source for the class below the output
+     * directory and returns the file.
+     */
+    public static File generate(Class<?> type, File outputDir) throws IOException {
+        File file = new File(outputDir, getSerializerName(type).replace('.', File.separatorChar) + ".java");
+        file.getParentFile().mkdirs();
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write(generate(type));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Returns the serializer source for the class.
+     */
+    public static String generate(Class<?> type) {
+        String packageName = getPackageName(type);
+        if (type.isArray() || type.isPrimitive() || type.isInterface() || type.isEnum()) {
+            throw new IllegalArgumentException(type + " is not serialized by FieldSerializer");
+        }
+        if (!isAccessible(type, packageName)) {
+            throw new IllegalArgumentException(type + " is not accessible from its package");
+        }
+        boolean construct;
+        try {
+            type.getConstructor();
+            construct = !Modifier.isAbstract(type.getModifiers())
+                    && (type.getEnclosingClass() == null || Modifier.isStatic(type.getModifiers()));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("No-argument constructor not found on:" + type);
+        }
+
+        List<Field> fields = SerializedFields.getFields(type);
+        SerializedFields.sort(fields);
+
+        String typeName = type.getCanonicalName();
+        String serializerName = getSerializerName(type);
+        String simpleName = serializerName.substring(serializerName.lastIndexOf('.') + 1);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("/*\n");
+        sb.append(" * Generated by SerializerGenerator from ").append(typeName).append(".\n");
+        sb.append(" * Do not edit, generate it again when the fields of the class change.\n");
+        sb.append(" */\n");
+        if (packageName.length() > 0) {
+            sb.append("package ").append(packageName).append(";\n");
+        }
+        sb.append("\n");
+        sb.append("import com.jme3.network.serializing.Serializer;\n");
+        sb.append("import com.jme3.network.serializing.serializers.GeneratedSerializer;\n");
+        sb.append("import java.io.IOException;\n");
+        sb.append("import java.nio.ByteBuffer;\n");
+        sb.append("\n");
+        sb.append("@SuppressWarnings(\"unchecked\")\n");
+        sb.append("public class ").append(simpleName)
+                .append(" extends GeneratedSerializer<").append(typeName).append("> {\n");
+        sb.append("\n");
+        sb.append("    public ").append(simpleName).append("() {\n");
+        sb.append("        super(").append(typeName).append(".class,\n");
+        sb.append("                \"").append(SerializedFields.getSignature(fields)).append("\");\n");
+        sb.append("    }\n");
+        sb.append("\n");
+
+        sb.append("    protected ").append(typeName).append(" read(ByteBuffer data) throws IOException {\n");
+        if (construct) {
+            sb.append("        ").append(typeName).append(" object = new ").append(typeName).append("();\n");
+        } else {
+            sb.append("        ").append(typeName).append(" object = newInstance();\n");
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            appendRead(sb, type, packageName, fields.get(i), i);
+        }
+        sb.append("        return object;\n");
+        sb.append("    }\n");
+        sb.append("\n");
+
+        sb.append("    protected void write(ByteBuffer buffer, ").append(typeName).append(" object) throws IOException {\n");
+        for (int i = 0; i < fields.size(); i++) {
+            appendWrite(sb, type, packageName, fields.get(i), i);
+        }
+        sb.append("    }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static void appendRead(StringBuilder sb, Class<?> type, String packageName, Field field, int index) {
+        Class<?> fieldType = field.getType();
+        String value;
+        if (fieldType == boolean.class) {
+            value = "data.get() == 1";
+        } else if (fieldType == byte.class) {
+            value = "data.get()";
+        } else if (fieldType.isPrimitive()) {
+            value = "data.get" + getAccessorSuffix(fieldType) + "()";
+        } else if (Modifier.isFinal(fieldType.getModifiers())) {
+            value = "serializers[" + index + "].readObject(data, types[" + index + "])";
+        } else {
+            value = "Serializer.readClassAndObject(data)";
+        }
+        sb.append("        ");
+        if (isAccessible(field, packageName)
+                && (fieldType.isPrimitive() || isAccessible(fieldType, packageName))) {
+            sb.append(getFieldExpression(type, field)).append(" = ");
+            if (!fieldType.isPrimitive() && fieldType != Object.class) {
+                sb.append("(").append(fieldType.getCanonicalName()).append(") ");
+            }
+            sb.append(value).append(";\n");
+        } else if (fieldType.isPrimitive()) {
+            sb.append("set").append(getAccessorSuffix(fieldType))
+                    .append("(").append(index).append(", object, ").append(value).append(");\n");
+        } else {
+            sb.append("set(").append(index).append(", object, ").append(value).append(");\n");
+        }
+    }
+
+    private static void appendWrite(StringBuilder sb, Class<?> type, String packageName, Field field, int index) {
+        Class<?> fieldType = field.getType();
+        String value;
+        if (isAccessible(field, packageName)) {
+            value = getFieldExpression(type, field);
+        } else if (fieldType.isPrimitive()) {
+            value = "get" + getAccessorSuffix(fieldType) + "(" + index + ", object)";
+        } else {
+            value = "get(" + index + ", object)";
+        }
+        sb.append("        ");
+        if (fieldType == boolean.class) {
+            sb.append("buffer.put(").append(value).append(" ? (byte) 1 : (byte) 0);\n");
+        } else if (fieldType == byte.class) {
+            sb.append("buffer.put(").append(value).append(");\n");
+        } else if (fieldType.isPrimitive()) {
+            sb.append("buffer.put").append(getAccessorSuffix(fieldType))
+                    .append("(").append(value).append(");\n");
+        } else if (Modifier.isFinal(fieldType.getModifiers())) {
+            sb.append("serializers[").append(index).append("].writeObject(buffer, ")
+                    .append(value).append(");\n");
+        } else {
+            sb.append("Serializer.writeClassAndObject(buffer, ").append(value).append(");\n");
+        }
+    }
+
+    private static String getFieldExpression(Class<?> type, Field field) {
+        if (field.getDeclaringClass() == type) {
+            return "object." + field.getName();
+        }
+        // The field may be hidden by a field of a subclass
+        return "((" + field.getDeclaringClass().getCanonicalName() + ") object)." + field.getName();
+    }
+
+    private static String getAccessorSuffix(Class<?> primitive) {
+        String name = primitive.getName();
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static String getPackageName(Class<?> type) {
+        String name = type.getName();
+        int index = name.lastIndexOf('.');
+        return index < 0 ? "" : name.substring(0, index);
+    }
+
+    /**
+     * Returns true if the field can be accessed from code in the package.
+     */
+    private static boolean isAccessible(Field field, String packageName) {
+        int modifiers = field.getModifiers();
+        if (Modifier.isPrivate(modifiers)) {
+            return false;
+        }
+        if (!Modifier.isPublic(modifiers) && !getPackageName(field.getDeclaringClass()).equals(packageName)) {
+            return false;
+        }
+        return isAccessible(field.getDeclaringClass(), packageName);
+    }
+
+    /**
+     * Returns true if the class can be named in code in the package.
+     */
+    private static boolean isAccessible(Class<?> type, String packageName) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (type.isPrimitive()) {
+            return true;
+        }
+        if (type.getCanonicalName() == null) {
+            return false;
+        }
+        for (Class<?> c = type; c != null; c = c.getEnclosingClass()) {
+            int modifiers = c.getModifiers();
+            if (Modifier.isPrivate(modifiers)) {
+                return false;
+            }
+            if (!Modifier.isPublic(modifiers) && !getPackageName(c).equals(packageName)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -39,7 +39,10 @@ import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Mesh;
 import com.jme3.scene.Mesh.Mode;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Format;
 import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.scene.VertexBuffer.Usage;
 import com.jme3.scene.mesh.IndexBuffer;
 import com.jme3.terrain.GeoMap;
 import com.jme3.util.BufferUtils;
@@ -67,6 +70,12 @@ import java.nio.ShortBuffer;
  */
 public class LODGeomap extends GeoMap {
 
+    /**
+     * Index buffers shared by all patches. The indexes only depend on the
+     * patch size, the LOD of the patch and the LODs of its neighbours.
+     */
+    private static final LRUCache<Long, VertexBuffer> indexBufferPool = new LRUCache<Long, VertexBuffer>(512);
+
     public LODGeomap() {
     }
 
@@ -112,6 +121,49 @@ public class LODGeomap extends GeoMap {
         return m;
     }
 
+    /**
+     * Returns the index buffer for the given LOD levels (not powers of two)
+     * of a patch and its neighbours from a pool shared by all patches of the
+     * same size, creating it if needed. The returned buffer is shared, it
+     * must not be modified.
+     * 
+     * @param variableLod true to stitch the edges with
+     * {@link #writeIndexArrayLodVariable(int, int, int, int, int, int) },
+     * false for {@link #writeIndexArrayLodDiff(int, boolean, boolean, boolean, boolean, int) }
+     * @return the shared index buffer
+     */
+    public VertexBuffer getIndexBuffer(int lod, int rightLod, int topLod, int leftLod, int bottomLod, boolean variableLod, int totalSize) {
+        if (!variableLod) {
+            // only a higher neighbour LOD changes the edges
+            rightLod = rightLod > lod ? 1 : 0;
+            topLod = topLod > lod ? 1 : 0;
+            leftLod = leftLod > lod ? 1 : 0;
+            bottomLod = bottomLod > lod ? 1 : 0;
+        }
+        long key = getWidth();
+        key = (key << 5) | lod;
+        key = (key << 5) | rightLod;
+        key = (key << 5) | topLod;
+        key = (key << 5) | leftLod;
+        key = (key << 5) | bottomLod;
+        key = (key << 1) | (variableLod ? 1 : 0);
+
+        VertexBuffer vb = indexBufferPool.get(key);
+        if (vb == null) {
+            IndexBuffer idxB;
+            if (variableLod)
+                idxB = writeIndexArrayLodVariable(1 << lod, 1 << rightLod, 1 << topLod, 1 << leftLod, 1 << bottomLod, totalSize);
+            else
+                idxB = writeIndexArrayLodDiff(1 << lod, rightLod != 0, topLod != 0, leftLod != 0, bottomLod != 0, totalSize);
+            Buffer b = idxB.getBuffer();
+            b.clear();
+            vb = new VertexBuffer(Type.Index);
+            vb.setupData(Usage.Static, 3, b instanceof IntBuffer ? Format.UnsignedInt : Format.UnsignedShort, b);
+            indexBufferPool.put(key, vb);
+        }
+        return vb;
+    }
+
     public FloatBuffer writeTexCoordArray(FloatBuffer store, Vector2f offset, Vector2f scale, float offsetAmount, int totalSize) {
         if (store != null) {
             if (store.remaining() < getWidth() * getHeight() * 2) {
@@ -245,23 +245,8 @@ public class TerrainPatch extends Geometry {
         UpdatedTerrainPatch utp = updated.get(getName());
 
         if (utp != null && utp.isReIndexNeeded() ) {
-            int pow = (int) Math.pow(2, utp.getNewLod());
-            boolean left = utp.getLeftLod() > utp.getNewLod();
-            boolean top = utp.getTopLod() > utp.getNewLod();
-            boolean right = utp.getRightLod() > utp.getNewLod();
-            boolean bottom = utp.getBottomLod() > utp.getNewLod();
-
-            IndexBuffer idxB;
-            if (useVariableLod)
-                idxB = geomap.writeIndexArrayLodVariable(pow, (int) Math.pow(2, utp.getRightLod()), (int) Math.pow(2, utp.getTopLod()), (int) Math.pow(2, utp.getLeftLod()), (int) Math.pow(2, utp.getBottomLod()), totalSize);
-            else
-                idxB = geomap.writeIndexArrayLodDiff(pow, right, top, left, bottom, totalSize);
-            
-            Buffer b;
-            if (idxB.getBuffer() instanceof IntBuffer)
-                b = (IntBuffer)idxB.getBuffer();
-            else
-                b = (ShortBuffer)idxB.getBuffer();
+            // patches with the same size and stitching share the index buffer
+            VertexBuffer b = geomap.getIndexBuffer(utp.getNewLod(), utp.getRightLod(), utp.getTopLod(), utp.getLeftLod(), utp.getBottomLod(), useVariableLod, totalSize);
             utp.setNewIndexBuffer(b);
         }
 
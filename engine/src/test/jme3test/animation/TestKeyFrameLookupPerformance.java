@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2009-2010 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package jme3test.animation;
+
+import com.jme3.animation.AnimChannel;
+import com.jme3.animation.AnimControl;
+import com.jme3.animation.Animation;
+import com.jme3.animation.Bone;
+import com.jme3.animation.BoneTrack;
+import com.jme3.animation.CompactQuaternionArray;
+import com.jme3.animation.CompactVector3Array;
+import com.jme3.animation.LoopMode;
+import com.jme3.animation.Skeleton;
+import com.jme3.animation.Track;
+import com.jme3.export.JmeExporter;
+import com.jme3.export.JmeImporter;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Node;
+import com.jme3.util.TempVars;
+import java.util.Random;
+
+/**
+ * Measures AnimControl updates with long keyframe tracks, comparing a linear
+ * keyframe scan (the former BoneTrack lookup), the cursor lookup of
+ * BoneTrack, baked tracks and random seeking.
+ * Usage: TestKeyFrameLookupPerformance [channelCount bonesPerChannel keyFrameCount frameCount]
+ */
+public class TestKeyFrameLookupPerformance {
+
+    private static final float TPF = 1f / 60f;
+
+    /**
+     * BoneTrack as it sampled keyframes before the cursor lookup, finding
+     * the interval with a linear scan from the first frame.
+     */
+    private static class LinearBoneTrack implements Track {
+
+        private final int targetBoneIndex;
+        private final float[] times;
+        private final CompactVector3Array translations = new CompactVector3Array();
+        private final CompactQuaternionArray rotations = new CompactQuaternionArray();
+
+        LinearBoneTrack(int targetBoneIndex, float[] times, Vector3f[] translations, Quaternion[] rotations) {
+            this.targetBoneIndex = targetBoneIndex;
+            this.times = times;
+            this.translations.add(translations);
+            this.translations.freeze();
+            this.rotations.add(rotations);
+            this.rotations.freeze();
+        }
+
+        public void setTime(float time, float weight, AnimControl control, AnimChannel channel, TempVars vars) {
+            Bone target = control.getSkeleton().getBone(targetBoneIndex);
+            Vector3f tempV = vars.vect1;
+            Quaternion tempQ = vars.quat1;
+            Vector3f tempV2 = vars.vect3;
+            Quaternion tempQ2 = vars.quat2;
+
+            int lastFrame = times.length - 1;
+            if (time < 0 || lastFrame == 0) {
+                rotations.get(0, tempQ);
+                translations.get(0, tempV);
+            } else if (time >= times[lastFrame]) {
+                rotations.get(lastFrame, tempQ);
+                translations.get(lastFrame, tempV);
+            } else {
+                int startFrame = 0;
+                int endFrame = 1;
+                for (int i = 0; i < lastFrame && times[i] < time; i++) {
+                    startFrame = i;
+                    endFrame = i + 1;
+                }
+                float blend = (time - times[startFrame]) / (times[endFrame] - times[startFrame]);
+                rotations.get(startFrame, tempQ);
+                translations.get(startFrame, tempV);
+                rotations.get(endFrame, tempQ2);
+                translations.get(endFrame, tempV2);
+                tempQ.nlerp(tempQ2, blend);
+                tempV.interpolate(tempV2, blend);
+            }
+            // blendAnimTransforms is not visible here, set the transform directly
+            target.getLocalPosition().set(tempV);
+            target.getLocalRotation().set(tempQ);
+        }
+
+        public float getLength() {
+            return times[times.length - 1] - times[0];
+        }
+
+        @Override
+        public Track clone() {
+            return this;
+        }
+
+        public void write(JmeExporter ex) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void read(JmeImporter im) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static AnimControl createControl(int channelCount, int bonesPerChannel,
+            int keyFrameCount, boolean linear, boolean bake) {
+        Random random = new Random(1);
+        Bone[] bones = new Bone[channelCount * bonesPerChannel];
+        for (int i = 0; i < bones.length; i++) {
+            bones[i] = new Bone("bone" + i);
+            if (i % bonesPerChannel != 0) {
+                bones[i - 1].addChild(bones[i]);
+            }
+        }
+        Skeleton skeleton = new Skeleton(bones);
+        AnimControl control = new AnimControl(skeleton);
+        new Node("model").addControl(control);
+
+        float[] times = new float[keyFrameCount];
+        for (int i = 0; i < keyFrameCount; i++) {
+            times[i] = i / 120f;
+        }
+        for (int c = 0; c < channelCount; c++) {
+            Animation anim = new Animation("clip" + c, times[keyFrameCount - 1]);
+            for (int b = c * bonesPerChannel; b < (c + 1) * bonesPerChannel; b++) {
+                Vector3f[] translations = new Vector3f[keyFrameCount];
+                Quaternion[] rotations = new Quaternion[keyFrameCount];
+                for (int i = 0; i < keyFrameCount; i++) {
+                    translations[i] = new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat());
+                    rotations[i] = new Quaternion().fromAngles(random.nextFloat() * FastMath.PI,
+                            random.nextFloat() * FastMath.PI, random.nextFloat() * FastMath.PI);
+                }
+                if (linear) {
+                    anim.addTrack(new LinearBoneTrack(b, times, translations, rotations));
+                } else {
+                    anim.addTrack(new BoneTrack(b, times, translations, rotations));
+                }
+            }
+            if (bake) {
+                anim.bake();
+            }
+            control.addAnim(anim);
+            AnimChannel channel = control.createChannel();
+            channel.setAnim(anim.getName(), 0f);
+            channel.setLoopMode(LoopMode.Loop);
+            channel.setTime(c * anim.getLength() / channelCount);
+        }
+        return control;
+    }
+
+    private static void run(String name, AnimControl control, int frameCount, boolean seek) {
+        Random random = new Random(2);
+        float length = control.getChannel(0).getAnimMaxTime();
+        // warm up
+        for (int frame = 0; frame < frameCount / 4; frame++) {
+            control.update(TPF);
+        }
+        long time = System.nanoTime();
+        for (int frame = 0; frame < frameCount; frame++) {
+            if (seek) {
+                for (int c = 0; c < control.getNumChannels(); c++) {
+                    control.getChannel(c).setTime(random.nextFloat() * length);
+                }
+            }
+            control.update(TPF);
+        }
+        time = System.nanoTime() - time;
+        System.out.println(name + ": " + (time / 1000 / frameCount) + " us/update");
+    }
+
+    public static void main(String[] args) {
+        int channelCount = 8;
+        int bonesPerChannel = 8;
+        int keyFrameCount = 4000;
+        int frameCount = 2000;
+        if (args.length == 4) {
+            channelCount = Integer.parseInt(args[0]);
+            bonesPerChannel = Integer.parseInt(args[1]);
+            keyFrameCount = Integer.parseInt(args[2]);
+            frameCount = Integer.parseInt(args[3]);
+        }
+        System.out.println("channels = " + channelCount + " bones = " + channelCount * bonesPerChannel
+                + " keyframes = " + keyFrameCount + " updates = " + frameCount);
+        run("linear scan", createControl(channelCount, bonesPerChannel, keyFrameCount, true, false), frameCount, false);
+        run("cursor", createControl(channelCount, bonesPerChannel, keyFrameCount, false, false), frameCount, false);
+        run("cursor, baked", createControl(channelCount, bonesPerChannel, keyFrameCount, false, true), frameCount, false);
+        run("linear scan, seeking", createControl(channelCount, bonesPerChannel, keyFrameCount, true, false), frameCount, true);
+        run("binary search, seeking", createControl(channelCount, bonesPerChannel, keyFrameCount, false, false), frameCount, true);
+        run("binary search, seeking, baked", createControl(channelCount, bonesPerChannel, keyFrameCount, false, true), frameCount, true);
+    }
+}
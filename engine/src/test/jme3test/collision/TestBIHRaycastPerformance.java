@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2009-2010 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package jme3test.collision;
+
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.collision.CollisionResults;
+import com.jme3.collision.bih.BIHTree;
+import com.jme3.math.FastMath;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.shape.Sphere;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares casting rays through the BIHNode graph, as BIHTree did before it
+ * was flattened, with the flattened BIHTree, one ray at a time through
+ * collideWith and in batches through intersectRays.
+ * Usage: TestBIHRaycastPerformance [rayCount threadCount]
+ */
+public class TestBIHRaycastPerformance {
+
+    private static final int ITERATIONS = 10;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int BATCH_SIZE = 1024;
+
+    public static void main(String[] args) throws Exception {
+        int rayCount = 20000;
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        if (args.length == 2) {
+            rayCount = Integer.parseInt(args[0]);
+            threadCount = Integer.parseInt(args[1]);
+        }
+
+        Mesh mesh = new Sphere(256, 256, 10f);
+        BIHTree tree = new BIHTree(mesh);
+        tree.construct();
+        Matrix4f worldMatrix = new Matrix4f();
+        worldMatrix.setTranslation(5f, -3f, 2f);
+        worldMatrix.setRotationQuaternion(new Quaternion().fromAngles(0.3f, 1.1f, -0.4f));
+        worldMatrix.scale(new Vector3f(1.5f, 1.5f, 1.5f));
+        mesh.updateBound();
+        BoundingVolume worldBound = mesh.getBound().transform(worldMatrix, null);
+        System.out.println("triangles = " + mesh.getTriangleCount() + " rays = " + rayCount
+                + " threads = " + threadCount);
+
+        Random random = new Random(1);
+        final float[] rays = new float[rayCount * 6];
+        Ray[] rayObjects = new Ray[rayCount];
+        for (int i = 0; i < rayCount; i++) {
+            Vector3f target = new Vector3f(5f, -3f, 2f).addLocal(
+                    random.nextFloat() * 30f - 15f, random.nextFloat() * 30f - 15f, random.nextFloat() * 30f - 15f);
+            Vector3f origin = new Vector3f(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f,
+                    random.nextFloat() - 0.5f).normalizeLocal().multLocal(60f).addLocal(5f, -3f, 2f);
+            Vector3f direction = target.subtract(origin).normalizeLocal();
+            rays[i * 6] = origin.x;
+            rays[i * 6 + 1] = origin.y;
+            rays[i * 6 + 2] = origin.z;
+            rays[i * 6 + 3] = direction.x;
+            rays[i * 6 + 4] = direction.y;
+            rays[i * 6 + 5] = direction.z;
+            rayObjects[i] = new Ray(origin, direction);
+        }
+
+        // check that all paths find the same closest hits
+        CollisionResults results = new CollisionResults();
+        float[] distances = new float[rayCount];
+        tree.intersectRays(rays, 0, rayCount, Float.POSITIVE_INFINITY, worldMatrix, distances, null);
+        int hits = 0;
+        int nodeGraphMisses = 0;
+        for (int i = 0; i < rayCount; i++) {
+            results.clear();
+            castNodeGraph(tree, rayObjects[i], worldMatrix, worldBound, results);
+            float oldDistance = results.size() > 0
+                    ? results.getClosestCollision().getDistance() : Float.POSITIVE_INFINITY;
+            results.clear();
+            tree.collideWith(rayObjects[i], worldMatrix, worldBound, results);
+            float newDistance = results.size() > 0
+                    ? results.getClosestCollision().getDistance() : Float.POSITIVE_INFINITY;
+            if (!same(newDistance, distances[i])) {
+                throw new IllegalStateException("Different hit for ray " + i + ": "
+                        + newDistance + " " + distances[i]);
+            }
+            if (!same(oldDistance, newDistance)) {
+                // rays through shared edges can miss both triangles
+                float exact = castBruteForce(mesh, rayObjects[i], worldMatrix);
+                if (!same(exact, newDistance)) {
+                    throw new IllegalStateException("Different hit for ray " + i + ": "
+                            + oldDistance + " " + newDistance + " " + exact);
+                }
+                nodeGraphMisses++;
+            }
+            if (oldDistance != Float.POSITIVE_INFINITY) {
+                hits++;
+            }
+        }
+        System.out.println("hits = " + hits + ", closest hits missed by the BIHNode graph = "
+                + nodeGraphMisses);
+
+        long nodeGraph = 0, collideWith = 0, batch = 0, parallel = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        for (int iteration = 0; iteration < WARMUP_ITERATIONS + ITERATIONS; iteration++) {
+            long time = System.nanoTime();
+            for (int i = 0; i < rayCount; i++) {
+                results.clear();
+                castNodeGraph(tree, rayObjects[i], worldMatrix, worldBound, results);
+            }
+            long t1 = System.nanoTime();
+            for (int i = 0; i < rayCount; i++) {
+                results.clear();
+                tree.collideWith(rayObjects[i], worldMatrix, worldBound, results);
+            }
+            long t2 = System.nanoTime();
+            tree.intersectRays(rays, 0, rayCount, Float.POSITIVE_INFINITY, worldMatrix, distances, null);
+            long t3 = System.nanoTime();
+            castParallel(executor, tree, rays, rayCount, worldMatrix, distances);
+            long t4 = System.nanoTime();
+            if (iteration >= WARMUP_ITERATIONS) {
+                nodeGraph += t1 - time;
+                collideWith += t2 - t1;
+                batch += t3 - t2;
+                parallel += t4 - t3;
+            }
+        }
+        executor.shutdown();
+        print("BIHNode graph", nodeGraph, rayCount);
+        print("collideWith", collideWith, rayCount);
+        print("intersectRays", batch, rayCount);
+        print("intersectRays, " + threadCount + " threads", parallel, rayCount);
+    }
+
+    /**
+     * Casts a ray like BIHTree.collideWith did before the tree was flattened.
+     */
+    private static void castNodeGraph(BIHTree tree, Ray r, Matrix4f worldMatrix,
+            BoundingVolume worldBound, CollisionResults results) {
+        CollisionResults boundResults = new CollisionResults();
+        worldBound.collideWith(r, boundResults);
+        if (boundResults.size() > 0) {
+            float tMin = boundResults.getClosestCollision().getDistance();
+            float tMax = boundResults.getFarthestCollision().getDistance();
+            if (tMax <= 0) {
+                tMax = Float.POSITIVE_INFINITY;
+            } else if (tMin == tMax) {
+                tMin = 0;
+            }
+            if (tMin <= 0) {
+                tMin = 0;
+            }
+            tree.getRoot().intersectWhere(r, worldMatrix, tree, tMin, tMax, results);
+        }
+    }
+
+    private static float castBruteForce(Mesh mesh, Ray r, Matrix4f worldMatrix) {
+        Vector3f v1 = new Vector3f(), v2 = new Vector3f(), v3 = new Vector3f();
+        float closest = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < mesh.getTriangleCount(); i++) {
+            mesh.getTriangle(i, v1, v2, v3);
+            worldMatrix.mult(v1, v1);
+            worldMatrix.mult(v2, v2);
+            worldMatrix.mult(v3, v3);
+            closest = Math.min(closest, r.intersects(v1, v2, v3));
+        }
+        return closest;
+    }
+
+    private static void castParallel(ExecutorService executor, final BIHTree tree, final float[] rays,
+            int rayCount, final Matrix4f worldMatrix, final float[] distances) throws Exception {
+        int batchCount = (rayCount + BATCH_SIZE - 1) / BATCH_SIZE;
+        Future<?>[] futures = new Future<?>[batchCount];
+        for (int b = 0; b < batchCount; b++) {
+            final int offset = b * BATCH_SIZE;
+            final int count = Math.min(BATCH_SIZE, rayCount - offset);
+            futures[b] = executor.submit(new Runnable() {
+
+                public void run() {
+                    tree.intersectRays(rays, offset, count, Float.POSITIVE_INFINITY,
+                            worldMatrix, distances, null);
+                }
+            });
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    private static boolean same(float a, float b) {
+        if (a == Float.POSITIVE_INFINITY || b == Float.POSITIVE_INFINITY) {
+            return a == b;
+        }
+        return FastMath.abs(a - b) < 1e-3f * Math.max(1f, a);
+    }
+
+    private static void print(String name, long nanos, int rayCount) {
+        double seconds = nanos / 1000000000.0 / ITERATIONS;
+        System.out.println(name + ": " + (int) (rayCount / seconds) + " rays/s");
+    }
+}
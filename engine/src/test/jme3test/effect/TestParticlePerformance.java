@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2009-2010 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package jme3test.effect;
+
+import com.jme3.effect.ParticleEmitter;
+import com.jme3.effect.ParticleMesh.Type;
+import com.jme3.effect.shapes.EmitterSphereShape;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.ViewPort;
+
+/**
+ * Measures the update and vertex buffer time of a large emitter with
+ * Particle objects and with packed particles, without rendering.
+ * Usage: TestParticlePerformance [numParticles threadCount frameCount]
+ */
+public class TestParticlePerformance {
+
+    private static final float TPF = 1f / 60f;
+
+    public static void main(String[] args) {
+        int numParticles = 50000;
+        int threadCount = Math.min(4, Runtime.getRuntime().availableProcessors());
+        int frameCount = 600;
+        if (args.length == 3) {
+            numParticles = Integer.parseInt(args[0]);
+            threadCount = Integer.parseInt(args[1]);
+            frameCount = Integer.parseInt(args[2]);
+        }
+        ViewPort vp = new ViewPort("vp", new Camera(1280, 720));
+        System.out.println("particles = " + numParticles + " threads = " + threadCount
+                + " frames = " + frameCount);
+        for (int round = 0; round < 2; round++) {
+            // the first round warms up the JIT
+            run("objects", createEmitter(numParticles, false, 1), vp, frameCount);
+            run("packed", createEmitter(numParticles, true, 1), vp, frameCount);
+            run("packed parallel", createEmitter(numParticles, true, threadCount), vp, frameCount);
+        }
+    }
+
+    private static ParticleEmitter createEmitter(int numParticles, boolean packed, int threadCount) {
+        ParticleEmitter emitter = new ParticleEmitter("emitter", Type.Triangle, numParticles);
+        emitter.setPacked(packed);
+        emitter.setUpdateThreadCount(threadCount);
+        emitter.setShape(new EmitterSphereShape(Vector3f.ZERO, 2f));
+        emitter.setParticlesPerSec(numParticles / 4);
+        emitter.setLowLife(3f);
+        emitter.setHighLife(5f);
+        emitter.setInitialVelocity(new Vector3f(0f, 2f, 0f));
+        emitter.setVelocityVariation(1f);
+        emitter.setRotateSpeed(1f);
+        emitter.emitAllParticles();
+        return emitter;
+    }
+
+    private static void run(String name, ParticleEmitter emitter, ViewPort vp, int frameCount) {
+        long updateNanos = 0;
+        long meshNanos = 0;
+        for (int i = 0; i < frameCount; i++) {
+            long time = System.nanoTime();
+            emitter.updateFromControl(TPF);
+            long time2 = System.nanoTime();
+            // updates the particle state with tpf 0 and fills the buffers
+            emitter.preload(null, vp);
+            updateNanos += time2 - time;
+            meshNanos += System.nanoTime() - time2;
+        }
+        System.out.println(name + ": update " + (updateNanos / 1000 / frameCount) + " us/frame, mesh "
+                + (meshNanos / 1000 / frameCount) + " us/frame, visible = " + emitter.getNumVisibleParticles());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2010-2014, Kazuhiko Kobayashi
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package jme3test.mmd;
+
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.asset.plugins.FileLocator;
+import java.io.File;
+import projectkyoto.jme3.mmd.PMDLoaderGLSLSkinning2;
+import projectkyoto.jme3.mmd.PMDNode;
+import projectkyoto.jme3.mmd.VMDLoader;
+import projectkyoto.jme3.mmd.vmd.CompiledMotion;
+import projectkyoto.jme3.mmd.vmd.CompiledMotionKey;
+import projectkyoto.jme3.mmd.vmd.VMDAnimationScheduler;
+import projectkyoto.jme3.mmd.vmd.VMDControl;
+
+/**
+ * Measures how many animated models can be updated per second, updating the
+ * models one by one and with VMDAnimationScheduler.
+ * Usage: TestAnimationSchedulerThroughput pmdFile vmdFile [modelCount threadCount frameCount]
+ * Requires the bulletjme native library.
+ * @author kobayasi
+ */
+public class TestAnimationSchedulerThroughput {
+
+    private static final float TPF = 1f / 60f;
+    private static final int NANOS_TO_MS = 1000000;
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: TestAnimationSchedulerThroughput pmdFile vmdFile [modelCount threadCount frameCount]");
+            return;
+        }
+        File pmdFile = new File(args[0]).getAbsoluteFile();
+        File vmdFile = new File(args[1]).getAbsoluteFile();
+        int modelCount = 16;
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        int frameCount = 600;
+        if (args.length == 5) {
+            modelCount = Integer.parseInt(args[2]);
+            threadCount = Integer.parseInt(args[3]);
+            frameCount = Integer.parseInt(args[4]);
+        }
+        DesktopAssetManager assetManager = new DesktopAssetManager(true);
+        assetManager.registerLoader(PMDLoaderGLSLSkinning2.class, "pmd");
+        assetManager.registerLoader(VMDLoader.class, "vmd");
+        assetManager.registerLocator(pmdFile.getParent(), FileLocator.class);
+        assetManager.registerLocator(vmdFile.getParent(), FileLocator.class);
+        CompiledMotion motion = assetManager.loadAsset(new CompiledMotionKey(vmdFile.getName()));
+
+        VMDControl[] controls = new VMDControl[modelCount];
+        for (int i = 0; i < modelCount; i++) {
+            PMDNode pmdNode = (PMDNode) assetManager.loadModel(pmdFile.getName());
+            controls[i] = new VMDControl(pmdNode, motion);
+            pmdNode.addControl(controls[i]);
+        }
+        int boneCount = controls[0].getPmdNode().getSkeleton().getBoneCount();
+        System.out.println("models = " + modelCount + " bones = " + boneCount
+                + " threads = " + threadCount + " frames = " + frameCount);
+
+        long time = System.nanoTime();
+        for (int frame = 0; frame < frameCount; frame++) {
+            for (VMDControl control : controls) {
+                control.update(TPF);
+                control.getPmdNode().calcOffsetMatrices();
+                control.getPmdNode().updateSkinBackData();
+                control.getPmdNode().update();
+            }
+        }
+        print("sequential", System.nanoTime() - time, modelCount, boneCount, frameCount);
+
+        VMDAnimationScheduler scheduler = new VMDAnimationScheduler(threadCount);
+        for (VMDControl control : controls) {
+            control.setFrameNo(0);
+            scheduler.add(control);
+        }
+        time = System.nanoTime();
+        for (int frame = 0; frame < frameCount; frame++) {
+            scheduler.update(TPF);
+        }
+        print("scheduler", System.nanoTime() - time, modelCount, boneCount, frameCount);
+        scheduler.shutdown();
+    }
+
+    private static void print(String name, long nanos, int modelCount, int boneCount, int frameCount) {
+        double seconds = (double) nanos / 1000000000.0;
+        System.out.println(name + ": " + (nanos / NANOS_TO_MS / frameCount) + " ms/frame, "
+                + (int) (modelCount * frameCount / seconds) + " model updates/s, "
+                + (long) (modelCount * boneCount * frameCount / seconds) + " bone updates/s");
+    }
+}
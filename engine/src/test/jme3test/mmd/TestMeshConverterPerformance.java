@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2010-2014, Kazuhiko Kobayashi
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package jme3test.mmd;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import projectkyoto.mmd.file.PMDMaterial;
+import projectkyoto.mmd.file.PMDModel;
+import projectkyoto.mmd.file.PMDSkinData;
+import projectkyoto.mmd.file.PMDVertex;
+import projectkyoto.mmd.file.XMaterial;
+import projectkyoto.mmd.file.util2.BufferUtil;
+import projectkyoto.mmd.file.util2.MeshConverter;
+import projectkyoto.mmd.file.util2.MeshData;
+
+/**
+ * Measures MeshConverter.convertMesh() and the number of batches it makes.
+ * Usage: TestMeshConverterPerformance [pmdFile | gridWidth gridHeight] [maxBoneSize]
+ * Without a PMD file a grid model of 400 x 300 vertices is generated, with
+ * bones arranged in 16 x 16 vertex cells and triangles in scanline order.
+ * @author kobayasi
+ */
+public class TestMeshConverterPerformance {
+
+    private static final int ITERATIONS = 10;
+    private static final int CELL_SIZE = 16;
+    private static final int MATERIAL_COUNT = 4;
+    private static final int NANOS_TO_MS = 1000000;
+
+    public static void main(String[] args) throws IOException {
+        PMDModel model;
+        int maxBoneSize = MeshConverter.DEFAULT_MAX_BONE_SIZE;
+        if (args.length == 1 || args.length == 2) {
+            model = new PMDModel(new FileInputStream(args[0]));
+            if (args.length == 2) {
+                maxBoneSize = Integer.parseInt(args[1]);
+            }
+        } else {
+            int width = 400;
+            int height = 300;
+            if (args.length >= 3) {
+                width = Integer.parseInt(args[0]);
+                height = Integer.parseInt(args[1]);
+                maxBoneSize = Integer.parseInt(args[2]);
+            }
+            model = createGridModel(width, height);
+        }
+        System.out.println("vertices = " + model.getVertCount()
+                + " triangles = " + model.getFaceVertCount() / 3
+                + " materials = " + model.getMaterialCount()
+                + " maxBoneSize = " + maxBoneSize);
+        MeshConverter mc = null;
+        long time = 0;
+        for (int i = 0; i < ITERATIONS + 1; i++) {
+            long start = System.nanoTime();
+            mc = new MeshConverter(model, maxBoneSize);
+            mc.convertMesh();
+            // the first run is warm up
+            if (i > 0) {
+                time += System.nanoTime() - start;
+            }
+        }
+        int vertexCount = 0;
+        for (MeshData md : mc.getMeshDataList()) {
+            vertexCount += md.vfb.capacity() / 3;
+        }
+        System.out.println("convertMesh: " + (time / NANOS_TO_MS / ITERATIONS) + " ms");
+        System.out.println("batches = " + mc.getMeshDataList().size()
+                + " batch vertices = " + vertexCount
+                + " skin vertices = " + mc.getSkinMeshData().skinvfb.capacity() / 3);
+    }
+
+    static PMDModel createGridModel(int width, int height) {
+        int vertCount = width * height;
+        int cellsX = (width + CELL_SIZE - 1) / CELL_SIZE;
+        ByteBuffer vb = BufferUtil.createByteBuffer(PMDVertex.size() * vertCount);
+        PMDVertex v = new PMDVertex();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                v.getPos().set(x, y, 0);
+                v.getNormal().set(0, 0, 1);
+                v.getUv().setU((float) x / width);
+                v.getUv().setV((float) y / height);
+                int cx = x / CELL_SIZE;
+                int cy = y / CELL_SIZE;
+                v.setBoneNum1(cy * cellsX + cx);
+                // blend with the next cell near the right edge of a cell
+                if (x % CELL_SIZE >= CELL_SIZE - 2 && cx + 1 < cellsX) {
+                    v.setBoneNum2(cy * cellsX + cx + 1);
+                    v.setBoneWeight((byte) 50);
+                } else {
+                    v.setBoneNum2(0);
+                    v.setBoneWeight((byte) 100);
+                }
+                v.writeToBuffer(vb);
+            }
+        }
+        int[] faceVertIndex = new int[(width - 1) * (height - 1) * 6];
+        int n = 0;
+        for (int y = 0; y < height - 1; y++) {
+            for (int x = 0; x < width - 1; x++) {
+                int i = y * width + x;
+                faceVertIndex[n++] = i;
+                faceVertIndex[n++] = i + width;
+                faceVertIndex[n++] = i + 1;
+                faceVertIndex[n++] = i + 1;
+                faceVertIndex[n++] = i + width;
+                faceVertIndex[n++] = i + width + 1;
+            }
+        }
+        PMDMaterial[] materials = new PMDMaterial[MATERIAL_COUNT];
+        int rowsPerMaterial = (height - 1 + MATERIAL_COUNT - 1) / MATERIAL_COUNT;
+        for (int i = 0; i < MATERIAL_COUNT; i++) {
+            int rows = Math.max(0, Math.min(rowsPerMaterial, height - 1 - i * rowsPerMaterial));
+            materials[i] = new PMDMaterial();
+            materials[i].setMaterial(new XMaterial());
+            materials[i].setTextureFileName("texture" + i + ".png");
+            materials[i].setFaceVertCount(rows * (width - 1) * 6);
+            materials[i].setMaterialNo(i);
+        }
+        PMDModel model = new PMDModel();
+        model.setVertCount(vertCount);
+        model.setVertexBuffer(vb);
+        model.setFaceVertCount(faceVertIndex.length);
+        model.setFaceVertIndex(faceVertIndex);
+        model.setMaterialCount(MATERIAL_COUNT);
+        model.setMaterial(materials);
+        model.setSkinCount(0);
+        model.setSkinData(new PMDSkinData[0]);
+        return model;
+    }
+}
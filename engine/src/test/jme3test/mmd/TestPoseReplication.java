@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2010-2014, Kazuhiko Kobayashi
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package jme3test.mmd;
+
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.asset.plugins.FileLocator;
+import java.io.File;
+import projectkyoto.jme3.mmd.PMDLoaderGLSLSkinning2;
+import projectkyoto.jme3.mmd.PMDNode;
+import projectkyoto.jme3.mmd.VMDLoader;
+import projectkyoto.jme3.mmd.net.PoseDecoder;
+import projectkyoto.jme3.mmd.net.PoseEncoder;
+import projectkyoto.jme3.mmd.net.PoseMessage;
+import projectkyoto.jme3.mmd.vmd.CompiledMotion;
+import projectkyoto.jme3.mmd.vmd.CompiledMotionKey;
+import projectkyoto.jme3.mmd.vmd.VMDControl;
+
+/**
+ * Plays a motion and replicates the pose of the model through PoseEncoder
+ * and PoseDecoder, printing the bandwidth compared to sending every bone
+ * and skin as floats, and the encode and decode time.
+ * Usage: TestPoseReplication pmdFile vmdFile [sendRate frameCount]
+ * Requires the bulletjme native library.
+ * @author kobayasi
+ */
+public class TestPoseReplication {
+
+    private static final float TPF = 1f / 60f;
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: TestPoseReplication pmdFile vmdFile [sendRate frameCount]");
+            return;
+        }
+        File pmdFile = new File(args[0]).getAbsoluteFile();
+        File vmdFile = new File(args[1]).getAbsoluteFile();
+        int sendRate = 20;
+        int frameCount = 1800;
+        if (args.length == 4) {
+            sendRate = Integer.parseInt(args[2]);
+            frameCount = Integer.parseInt(args[3]);
+        }
+        DesktopAssetManager assetManager = new DesktopAssetManager(true);
+        assetManager.registerLoader(PMDLoaderGLSLSkinning2.class, "pmd");
+        assetManager.registerLoader(VMDLoader.class, "vmd");
+        assetManager.registerLocator(pmdFile.getParent(), FileLocator.class);
+        assetManager.registerLocator(vmdFile.getParent(), FileLocator.class);
+        CompiledMotion motion = assetManager.loadAsset(new CompiledMotionKey(vmdFile.getName()));
+        PMDNode source = (PMDNode) assetManager.loadModel(pmdFile.getName());
+        PMDNode replica = (PMDNode) assetManager.loadModel(pmdFile.getName());
+        VMDControl control = new VMDControl(source, motion);
+        source.addControl(control);
+
+        int boneCount = source.getSkeleton().getBoneCount();
+        int skinCount = source.getSkinArray().length;
+        PoseEncoder encoder = new PoseEncoder(source);
+        PoseDecoder decoder = new PoseDecoder(replica);
+        float[] skinWeights = new float[skinCount];
+        int framesPerSend = Math.max(1, 60 / sendRate);
+        int sendCount = 0;
+        float time = 0;
+        for (int frame = 0; frame < frameCount; frame++) {
+            control.update(TPF);
+            time += TPF;
+            if (frame % framesPerSend != 0) {
+                continue;
+            }
+            sendCount++;
+            PoseMessage message = encoder.encode(source, 0, time);
+            if (message != null) {
+                decoder.apply(message);
+            }
+            decoder.interpolate(time, replica.getSkeleton(), skinWeights);
+        }
+
+        float seconds = frameCount * TPF;
+        long naiveBytes = (long) sendCount * (boneCount * 7 + skinCount) * 4;
+        System.out.println("bones = " + boneCount + " skins = " + skinCount
+                + " snapshots = " + sendCount + " sent = " + encoder.getMessageCount()
+                + " keyframes = " + encoder.getKeyframeCount());
+        System.out.println("bandwidth: " + (long) (encoder.getByteCount() / seconds) + " bytes/s, "
+                + "floats: " + (long) (naiveBytes / seconds) + " bytes/s ("
+                + (100 * encoder.getByteCount() / Math.max(1, naiveBytes)) + "%)");
+        System.out.println("bone updates/snapshot = "
+                + (float) encoder.getBoneUpdateCount() / Math.max(1, encoder.getMessageCount()));
+        System.out.println("encode: " + encoder.getEncodeNanos() / 1000 / Math.max(1, sendCount)
+                + " us/snapshot, decode: " + decoder.getDecodeNanos() / 1000 / Math.max(1, decoder.getMessageCount())
+                + " us/snapshot, dropped = " + decoder.getDroppedCount());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2010-2014, Kazuhiko Kobayashi
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package jme3test.mmd;
+
+import com.jme3.util.BufferUtils;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Random;
+import projectkyoto.jme3.mmd.nativelib.JavaSkinUtil;
+import projectkyoto.jme3.mmd.nativelib.NativeSkinUtil;
+import projectkyoto.jme3.mmd.nativelib.SkinUtilBackend;
+
+/**
+ * Compares the SkinUtil backends on buffers sized like a typical PMD model.
+ * Usage: TestSkinUtilBackends [skinVertexCount morphCount morphVertexCount boneCount]
+ * The native backend is measured only if the bulletjme library can be loaded.
+ * @author kobayasi
+ */
+public class TestSkinUtilBackends {
+
+    private static final int ITERATIONS = 2000;
+    private static final int NANOS_TO_MS = 1000000;
+
+    public static void main(String[] args) {
+        int skinVertexCount = 3000;
+        int morphCount = 60;
+        int morphVertexCount = 200;
+        int boneCount = 120;
+        if (args.length == 4) {
+            skinVertexCount = Integer.parseInt(args[0]);
+            morphCount = Integer.parseInt(args[1]);
+            morphVertexCount = Integer.parseInt(args[2]);
+            boneCount = Integer.parseInt(args[3]);
+        }
+        System.out.println("skin vertices = " + skinVertexCount + " morphs = " + morphCount
+                + " vertices per morph = " + morphVertexCount + " bones = " + boneCount);
+        Random random = new Random(0);
+        FloatBuffer skinPosBuffer = BufferUtils.createFloatBuffer(skinVertexCount * 3);
+        FloatBuffer fvb = BufferUtils.createFloatBuffer(skinVertexCount * 3);
+        for (int i = 0; i < skinVertexCount * 3; i++) {
+            skinPosBuffer.put(i, random.nextFloat());
+        }
+        ShortBuffer[] indexBufs = new ShortBuffer[morphCount];
+        FloatBuffer[] skinBufs = new FloatBuffer[morphCount];
+        for (int m = 0; m < morphCount; m++) {
+            indexBufs[m] = BufferUtils.createShortBuffer(morphVertexCount);
+            skinBufs[m] = BufferUtils.createFloatBuffer(morphVertexCount * 3);
+            for (int i = 0; i < morphVertexCount; i++) {
+                indexBufs[m].put(i, (short) random.nextInt(skinVertexCount));
+                skinBufs[m].put(i * 3, random.nextFloat());
+                skinBufs[m].put(i * 3 + 1, random.nextFloat());
+                skinBufs[m].put(i * 3 + 2, random.nextFloat());
+            }
+        }
+        FloatBuffer offsetMatrixBuffer = BufferUtils.createFloatBuffer(boneCount * 16);
+        for (int i = 0; i < boneCount * 16; i++) {
+            offsetMatrixBuffer.put(i, random.nextFloat());
+        }
+        // PMDMesh batches hold at most 20 bones each
+        int meshBoneCount = Math.min(20, boneCount);
+        ShortBuffer boneIndexBuffer = BufferUtils.createShortBuffer(meshBoneCount);
+        for (int i = 0; i < meshBoneCount; i++) {
+            boneIndexBuffer.put(i, (short) random.nextInt(boneCount));
+        }
+        FloatBuffer boneMatrixBuffer = BufferUtils.createFloatBuffer(meshBoneCount * 16);
+        int meshCount = (boneCount + meshBoneCount - 1) / meshBoneCount;
+
+        try {
+            System.loadLibrary("bulletjme");
+        } catch (UnsatisfiedLinkError e) {
+        }
+        SkinUtilBackend[] backends;
+        if (NativeSkinUtil.isAvailable()) {
+            backends = new SkinUtilBackend[]{new JavaSkinUtil(), new NativeSkinUtil()};
+        } else {
+            System.out.println("native backend not available, measuring java only");
+            backends = new SkinUtilBackend[]{new JavaSkinUtil()};
+        }
+        for (int pass = 0; pass < 2; pass++) {
+            // first pass is warm-up
+            for (SkinUtilBackend backend : backends) {
+                long nanos = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    backend.copy(skinPosBuffer, fvb, fvb.limit() * 4);
+                    for (int m = 0; m < morphCount; m++) {
+                        backend.setSkin(fvb, indexBufs[m], skinBufs[m], 0.5f);
+                    }
+                }
+                long morphNanos = System.nanoTime() - nanos;
+                nanos = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    for (int m = 0; m < meshCount; m++) {
+                        backend.copyBoneMatrix(offsetMatrixBuffer, boneMatrixBuffer, boneIndexBuffer);
+                    }
+                }
+                long boneNanos = System.nanoTime() - nanos;
+                if (pass == 1) {
+                    System.out.println(backend.getName()
+                            + ": morphs " + (morphNanos / ITERATIONS) + " ns/frame"
+                            + ", bone matrices " + (boneNanos / ITERATIONS) + " ns/frame"
+                            + ", total " + ((morphNanos + boneNanos) / NANOS_TO_MS) + " ms");
+                }
+            }
+        }
+    }
+}
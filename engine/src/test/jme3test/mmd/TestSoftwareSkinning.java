@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2010-2014, Kazuhiko Kobayashi
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package jme3test.mmd;
+
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.util.BufferUtils;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Random;
+import projectkyoto.jme3.mmd.SoftwareSkinner;
+
+/**
+ * Measures SoftwareSkinner on meshes sized like a PMD model split by
+ * MeshConverter, and the former per vertex Matrix4f[] loop of PMDNode.
+ * Usage: TestSoftwareSkinning [meshCount verticesPerMesh bonesPerMesh [threadCount]]
+ * @author kobayasi
+ */
+public class TestSoftwareSkinning {
+
+    private static final int ITERATIONS = 200;
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    public static void main(String[] args) {
+        int meshCount = 40;
+        int verticesPerMesh = 5000;
+        int bonesPerMesh = 20;
+        int cores = Runtime.getRuntime().availableProcessors();
+        if (args.length >= 3) {
+            meshCount = Integer.parseInt(args[0]);
+            verticesPerMesh = Integer.parseInt(args[1]);
+            bonesPerMesh = Integer.parseInt(args[2]);
+            if (args.length == 4) {
+                cores = Integer.parseInt(args[3]);
+            }
+        }
+        System.out.println("meshes = " + meshCount + " vertices per mesh = " + verticesPerMesh
+                + " bones per mesh = " + bonesPerMesh + " threads = " + cores);
+        Random random = new Random(0);
+        int[] boneIndexArray = new int[bonesPerMesh];
+        for (int i = 0; i < bonesPerMesh; i++) {
+            boneIndexArray[i] = i;
+        }
+        Matrix4f[][] matrices = new Matrix4f[meshCount][bonesPerMesh];
+        FloatBuffer[] pos = new FloatBuffer[meshCount];
+        FloatBuffer[] norm = new FloatBuffer[meshCount];
+        ShortBuffer[] boneIndex = new ShortBuffer[meshCount];
+        FloatBuffer[] boneWeight = new FloatBuffer[meshCount];
+        FloatBuffer[] outPos = new FloatBuffer[meshCount];
+        FloatBuffer[] outNorm = new FloatBuffer[meshCount];
+        FloatBuffer[] refPos = new FloatBuffer[meshCount];
+        FloatBuffer[] refNorm = new FloatBuffer[meshCount];
+        SoftwareSkinner.SkinJob[] jobs = new SoftwareSkinner.SkinJob[meshCount];
+        for (int m = 0; m < meshCount; m++) {
+            pos[m] = BufferUtils.createFloatBuffer(verticesPerMesh * 3);
+            norm[m] = BufferUtils.createFloatBuffer(verticesPerMesh * 3);
+            boneIndex[m] = BufferUtils.createShortBuffer(verticesPerMesh * 2);
+            boneWeight[m] = BufferUtils.createFloatBuffer(verticesPerMesh * 2);
+            for (int i = 0; i < verticesPerMesh; i++) {
+                pos[m].put(random.nextFloat() * 10f).put(random.nextFloat() * 10f).put(random.nextFloat() * 10f);
+                Vector3f n = new Vector3f(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, 1f).normalizeLocal();
+                norm[m].put(n.x).put(n.y).put(n.z);
+                boneIndex[m].put((short) random.nextInt(bonesPerMesh)).put((short) random.nextInt(bonesPerMesh));
+                float w = random.nextFloat();
+                boneWeight[m].put(w).put(1f - w);
+            }
+            outPos[m] = BufferUtils.createFloatBuffer(verticesPerMesh * 3);
+            outNorm[m] = BufferUtils.createFloatBuffer(verticesPerMesh * 3);
+            refPos[m] = BufferUtils.createFloatBuffer(verticesPerMesh * 3);
+            refNorm[m] = BufferUtils.createFloatBuffer(verticesPerMesh * 3);
+            for (int i = 0; i < bonesPerMesh; i++) {
+                Quaternion q = new Quaternion().fromAngles(random.nextFloat(), random.nextFloat(), random.nextFloat());
+                matrices[m][i] = new Matrix4f();
+                matrices[m][i].setTransform(new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()),
+                        Vector3f.UNIT_XYZ, q.toRotationMatrix());
+            }
+            jobs[m] = new SoftwareSkinner.SkinJob(bonesPerMesh, pos[m], norm[m], boneIndex[m], boneWeight[m],
+                    outPos[m], outNorm[m]);
+            SoftwareSkinner.fillPalette(matrices[m], boneIndexArray, jobs[m].getPalette());
+        }
+        long vertices = (long) meshCount * verticesPerMesh * ITERATIONS;
+
+        long time = 0;
+        for (int i = 0; i < ITERATIONS * 2; i++) {
+            long start = System.nanoTime();
+            for (int m = 0; m < meshCount; m++) {
+                matrixArraySkin(matrices[m], pos[m], norm[m], boneIndex[m], boneWeight[m], refPos[m], refNorm[m]);
+            }
+            // the first half is warm up
+            if (i >= ITERATIONS) {
+                time += System.nanoTime() - start;
+            }
+        }
+        print("Matrix4f[] loop, 1 thread", vertices, time, 1);
+
+        int[] threadCounts = cores > 1 ? new int[]{1, cores} : new int[]{1};
+        for (int threads : threadCounts) {
+            SoftwareSkinner skinner = new SoftwareSkinner(threads);
+            time = 0;
+            for (int i = 0; i < ITERATIONS * 2; i++) {
+                long start = System.nanoTime();
+                skinner.skin(jobs);
+                if (i >= ITERATIONS) {
+                    time += System.nanoTime() - start;
+                }
+            }
+            skinner.shutdown();
+            print("SoftwareSkinner, " + threads + " threads", vertices, time, threads);
+        }
+
+        float maxError = 0f;
+        for (int m = 0; m < meshCount; m++) {
+            for (int i = 0; i < verticesPerMesh * 3; i++) {
+                maxError = Math.max(maxError, Math.abs(refPos[m].get(i) - outPos[m].get(i)));
+                maxError = Math.max(maxError, Math.abs(refNorm[m].get(i) - outNorm[m].get(i)));
+            }
+        }
+        System.out.println("max difference = " + maxError);
+    }
+
+    private static void print(String name, long vertices, long nanos, int threads) {
+        double verticesPerSecond = vertices * NANOS_PER_SECOND / nanos;
+        System.out.println(name + ": " + (long) verticesPerSecond + " vertices/s, "
+                + (long) (verticesPerSecond / threads) + " vertices/s per core");
+    }
+
+    /**
+     * The loop PMDNode.softwareSkinUpdate used before SoftwareSkinner.
+     */
+    private static void matrixArraySkin(Matrix4f[] boneMatrixArray, FloatBuffer fvb2, FloatBuffer fnb2,
+            ShortBuffer ib, FloatBuffer wb, FloatBuffer fvb, FloatBuffer fnb) {
+        int idxWeights = 0;
+        int vertCount = fvb2.capacity() / 3;
+        for (int vert = 0; vert < vertCount; vert++) {
+            float vtx = fvb2.get(vert * 3);
+            float vty = fvb2.get(vert * 3 + 1);
+            float vtz = fvb2.get(vert * 3 + 2);
+            float nmx = fnb2.get(vert * 3);
+            float nmy = fnb2.get(vert * 3 + 1);
+            float nmz = fnb2.get(vert * 3 + 2);
+            float rx = 0, ry = 0, rz = 0, rnx = 0, rny = 0, rnz = 0;
+            for (int w = 0; w < 2; w++) {
+                float weight = wb.get(idxWeights);
+                Matrix4f mat = boneMatrixArray[ib.get(idxWeights++)];
+                rx += (mat.m00 * vtx + mat.m01 * vty + mat.m02 * vtz + mat.m03) * weight;
+                ry += (mat.m10 * vtx + mat.m11 * vty + mat.m12 * vtz + mat.m13) * weight;
+                rz += (mat.m20 * vtx + mat.m21 * vty + mat.m22 * vtz + mat.m23) * weight;
+                rnx += (nmx * mat.m00 + nmy * mat.m01 + nmz * mat.m02) * weight;
+                rny += (nmx * mat.m10 + nmy * mat.m11 + nmz * mat.m12) * weight;
+                rnz += (nmx * mat.m20 + nmy * mat.m21 + nmz * mat.m22) * weight;
+            }
+            fvb.put(vert * 3, rx).put(vert * 3 + 1, ry).put(vert * 3 + 2, rz);
+            fnb.put(vert * 3, rnx).put(vert * 3 + 1, rny).put(vert * 3 + 2, rnz);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2009-2010 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package jme3test.network;
+
+import com.jme3.math.Vector3f;
+import com.jme3.network.AbstractMessage;
+import com.jme3.network.serializing.Serializer;
+import com.jme3.network.serializing.serializers.FieldSerializer;
+import com.jme3.network.serializing.serializers.SerializerGenerator;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Compares the time to write and read a message with FieldSerializer and
+ * with a serializer written by SerializerGenerator. The generated
+ * serializer is compiled at startup, so this has to run on a JDK.
+ * Usage: TestSerializerPerformance [messageCount]
+ */
+public class TestSerializerPerformance {
+
+    private static final int ROUNDS = 5;
+
+    public static class StateMessage extends AbstractMessage {
+        public int entityId;
+        public long timestamp;
+        public float x, y, z;
+        public float qx, qy, qz, qw;
+        public short health;
+        public boolean grounded;
+        public byte animation;
+        public Vector3f velocity;
+        public String name;
+        private int flags;
+
+        public StateMessage() {
+        }
+
+        public void setFlags(int flags) {
+            this.flags = flags;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int messageCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Serializer generated = compileSerializer(StateMessage.class);
+
+        StateMessage m = new StateMessage();
+        m.entityId = 12;
+        m.timestamp = System.currentTimeMillis();
+        m.x = 1;
+        m.y = 2;
+        m.z = 3;
+        m.qw = 1;
+        m.health = 100;
+        m.grounded = true;
+        m.animation = 4;
+        m.velocity = new Vector3f(0.5f, 0, -0.5f);
+        m.name = "player";
+        m.setFlags(0x55);
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        Serializer.registerClass(StateMessage.class, new FieldSerializer());
+        byte[] fieldBytes = run("FieldSerializer", m, buffer, messageCount);
+        Serializer.registerClass(StateMessage.class, generated);
+        byte[] generatedBytes = run("generated", m, buffer, messageCount);
+        System.out.println("same data: " + Arrays.equals(fieldBytes, generatedBytes)
+                + ", " + fieldBytes.length + " bytes/message");
+    }
+
+    private static byte[] run(String name, StateMessage m, ByteBuffer buffer, int messageCount) throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            long time = System.nanoTime();
+            for (int i = 0; i < messageCount; i++) {
+                buffer.clear();
+                Serializer.writeClassAndObject(buffer, m);
+                buffer.flip();
+                Serializer.readClassAndObject(buffer);
+            }
+            long nanos = System.nanoTime() - time;
+            System.out.println(name + " round " + round + ": "
+                    + (nanos / messageCount) + " ns/message");
+        }
+        buffer.clear();
+        Serializer.writeClassAndObject(buffer, m);
+        buffer.flip();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static Serializer compileSerializer(Class<?> type) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("A JDK is required to compile the serializer");
+        }
+        File dir = File.createTempFile("serializer", "");
+        dir.delete();
+        File source = SerializerGenerator.generate(type, dir);
+        if (compiler.run(null, null, null, "-nowarn", "-d", dir.getPath(),
+                "-cp", System.getProperty("java.class.path"), source.getPath()) != 0) {
+            throw new IllegalStateException("Compiling " + source + " failed");
+        }
+        ClassLoader loader = new URLClassLoader(new URL[]{dir.toURI().toURL()},
+                TestSerializerPerformance.class.getClassLoader());
+        return (Serializer) loader.loadClass(SerializerGenerator.getSerializerName(type)).newInstance();
+    }
+}
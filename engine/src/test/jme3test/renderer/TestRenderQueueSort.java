@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2009-2010 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package jme3test.renderer;
+
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.asset.plugins.FileLocator;
+import com.jme3.material.Material;
+import com.jme3.material.plugins.J3MLoader;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.Caps;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.renderer.queue.GeometryComparator;
+import com.jme3.renderer.queue.GeometryList;
+import com.jme3.renderer.queue.OpaqueComparator;
+import com.jme3.renderer.queue.RenderQueue.Bucket;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.shape.Box;
+import com.jme3.shader.plugins.GLSLLoader;
+import com.jme3.system.NullRenderer;
+import com.jme3.texture.Image;
+import com.jme3.texture.Image.Format;
+import com.jme3.texture.Texture2D;
+import com.jme3.util.BufferUtils;
+import java.util.EnumSet;
+import java.util.Random;
+
+/**
+ * Compares sorting the opaque bucket with the merge sort and
+ * {@link OpaqueComparator#compare(com.jme3.scene.Geometry, com.jme3.scene.Geometry) }
+ * against the radix sort of packed sort keys, with scenes of 10k to 50k
+ * geometries rendered through a {@link NullRenderer}.
+ * Usage: TestRenderQueueSort [coreDataDir]
+ * coreDataDir defaults to src/core-data.
+ */
+public class TestRenderQueueSort {
+
+    private static final int[] GEOMETRY_COUNTS = {10000, 25000, 50000};
+    private static final int MATERIAL_COUNT = 64;
+    private static final int WARMUP_FRAMES = 20;
+    private static final int FRAMES = 100;
+
+    /**
+     * Reports GLSL100 so that materials select their techniques.
+     */
+    private static class GLSLNullRenderer extends NullRenderer {
+
+        private final EnumSet<Caps> caps = EnumSet.of(Caps.GLSL100);
+
+        @Override
+        public EnumSet<Caps> getCaps() {
+            return caps;
+        }
+    }
+
+    /**
+     * Hides the sort key of the wrapped comparator, so that the list uses
+     * the merge sort.
+     */
+    private static class MergeSortComparator implements GeometryComparator {
+
+        private final OpaqueComparator comparator = new OpaqueComparator();
+
+        public int compare(Geometry o1, Geometry o2) {
+            return comparator.compare(o1, o2);
+        }
+
+        public void setCamera(Camera cam) {
+            comparator.setCamera(cam);
+        }
+    }
+
+    public static void main(String[] args) {
+        String coreData = args.length > 0 ? args[0] : "src/core-data";
+        DesktopAssetManager assetManager = new DesktopAssetManager();
+        assetManager.registerLocator(coreData, FileLocator.class);
+        assetManager.registerLoader(J3MLoader.class, "j3m", "j3md");
+        assetManager.registerLoader(GLSLLoader.class, "vert", "frag", "glsllib");
+
+        Material[] materials = new Material[MATERIAL_COUNT];
+        for (int i = 0; i < MATERIAL_COUNT; i++) {
+            Image image = new Image(Format.RGBA8, 1, 1, BufferUtils.createByteBuffer(4));
+            // distinct texture ids give distinct material sort ids
+            image.setId(i + 1);
+            materials[i] = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
+            materials[i].setTexture("ColorMap", new Texture2D(image));
+        }
+
+        RenderManager rm = new RenderManager(new GLSLNullRenderer());
+        Camera cam = new Camera(1280, 720);
+        cam.setFrustumPerspective(60f, 1280f / 720f, 1f, 1000f);
+        ViewPort vp = rm.createMainView("Default", cam);
+
+        for (int count : GEOMETRY_COUNTS) {
+            Node root = createScene(count, materials);
+            vp.clearScenes();
+            vp.attachScene(root);
+            root.updateGeometricState();
+
+            checkOrder(root, cam);
+
+            vp.getQueue().setGeometryComparator(Bucket.Opaque, new MergeSortComparator());
+            long mergeFrame = renderFrames(rm, vp, cam);
+            long mergeSort = sortFrames(root, cam, new MergeSortComparator());
+            vp.getQueue().setGeometryComparator(Bucket.Opaque, new OpaqueComparator());
+            long radixFrame = renderFrames(rm, vp, cam);
+            long radixSort = sortFrames(root, cam, new OpaqueComparator());
+
+            System.out.println(count + " geometries:");
+            System.out.println("  merge sort: " + format(mergeSort) + " ms/sort, "
+                    + format(mergeFrame) + " ms/frame");
+            System.out.println("  radix sort: " + format(radixSort) + " ms/sort, "
+                    + format(radixFrame) + " ms/frame");
+        }
+    }
+
+    private static Node createScene(int count, Material[] materials) {
+        Random random = new Random(count);
+        Box box = new Box(0.5f, 0.5f, 0.5f);
+        Node root = new Node("root");
+        for (int i = 0; i < count; i++) {
+            Geometry g = new Geometry("box" + i, box);
+            g.setMaterial(materials[random.nextInt(materials.length)]);
+            g.setLocalTranslation(random.nextFloat() * 400f - 200f,
+                    random.nextFloat() * 400f - 200f,
+                    random.nextFloat() * -400f - 10f);
+            root.attachChild(g);
+        }
+        return root;
+    }
+
+    private static void moveCamera(Camera cam, int frame) {
+        float angle = frame * 0.01f;
+        cam.setLocation(new Vector3f(FastMath.sin(angle) * 20f, 0f, FastMath.cos(angle) * 20f));
+        cam.lookAt(new Vector3f(0f, 0f, -200f), Vector3f.UNIT_Y);
+        cam.update();
+    }
+
+    private static long renderFrames(RenderManager rm, ViewPort vp, Camera cam) {
+        for (int frame = 0; frame < WARMUP_FRAMES; frame++) {
+            moveCamera(cam, frame);
+            rm.renderViewPort(vp, 0.016f);
+        }
+        long time = System.nanoTime();
+        for (int frame = 0; frame < FRAMES; frame++) {
+            moveCamera(cam, frame);
+            rm.renderViewPort(vp, 0.016f);
+        }
+        return (System.nanoTime() - time) / FRAMES;
+    }
+
+    private static GeometryList fillList(Node root, GeometryComparator comparator) {
+        GeometryList list = new GeometryList(comparator);
+        for (int i = 0; i < root.getQuantity(); i++) {
+            Geometry g = (Geometry) root.getChild(i);
+            g.queueDistance = Float.NEGATIVE_INFINITY;
+            list.add(g);
+        }
+        return list;
+    }
+
+    private static long sortFrames(Node root, Camera cam, GeometryComparator comparator) {
+        long total = 0;
+        for (int frame = 0; frame < WARMUP_FRAMES + FRAMES; frame++) {
+            moveCamera(cam, frame);
+            GeometryList list = fillList(root, comparator);
+            list.setCamera(cam);
+            long time = System.nanoTime();
+            list.sort();
+            if (frame >= WARMUP_FRAMES) {
+                total += System.nanoTime() - time;
+            }
+        }
+        return total / FRAMES;
+    }
+
+    private static void checkOrder(Node root, Camera cam) {
+        moveCamera(cam, 0);
+        GeometryList merge = fillList(root, new MergeSortComparator());
+        merge.setCamera(cam);
+        merge.sort();
+        GeometryList radix = fillList(root, new OpaqueComparator());
+        radix.setCamera(cam);
+        radix.sort();
+        for (int i = 0; i < merge.size(); i++) {
+            if (merge.get(i) != radix.get(i)) {
+                throw new IllegalStateException("Different order at " + i);
+            }
+        }
+    }
+
+    private static String format(long nanos) {
+        return String.valueOf((double) (nanos / 1000) / 1000.0);
+    }
+}
@@ -0,0 +1,96 @@
+package com.jme3.animation;
+
+import static org.junit.Assert.*;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Node;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BoneTrackTest {
+
+    private static int findFrameLinear(float[] times, float time) {
+        int startFrame = 0;
+        for (int i = 0; i < times.length - 1 && times[i] < time; i++) {
+            startFrame = i;
+        }
+        return startFrame;
+    }
+
+    @Test
+    public void testFindFrame() {
+        float[] times = {0f, 0.5f, 0.5f, 1f, 1.25f, 2f, 3f};
+        Random random = new Random(1);
+        int cursor = 0;
+        for (int i = 0; i < 10000; i++) {
+            float time = i % 3 == 0 ? random.nextFloat() * 3f : times[random.nextInt(times.length - 1)];
+            int frame = KeyFrames.findFrame(times, time, random.nextBoolean() ? cursor : random.nextInt(times.length));
+            assertEquals("time " + time, findFrameLinear(times, time), frame);
+            cursor = frame;
+        }
+    }
+
+    private static AnimControl createControl(int boneCount, int frameCount, boolean bake) {
+        Random random = new Random(7);
+        Bone[] bones = new Bone[boneCount];
+        for (int i = 0; i < boneCount; i++) {
+            bones[i] = new Bone("bone" + i);
+            if (i > 0) {
+                bones[i - 1].addChild(bones[i]);
+            }
+        }
+        Skeleton skeleton = new Skeleton(bones);
+        float[] times = new float[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            times[i] = i / 30f;
+        }
+        Animation anim = new Animation("anim", times[frameCount - 1]);
+        for (int b = 0; b < boneCount; b++) {
+            Vector3f[] translations = new Vector3f[frameCount];
+            Quaternion[] rotations = new Quaternion[frameCount];
+            Vector3f[] scales = new Vector3f[frameCount];
+            for (int i = 0; i < frameCount; i++) {
+                translations[i] = new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat());
+                rotations[i] = new Quaternion().fromAngles(random.nextFloat(), random.nextFloat(), random.nextFloat());
+                scales[i] = new Vector3f(1f + random.nextFloat(), 1f, 1f);
+            }
+            anim.addTrack(new BoneTrack(b, times, translations, rotations, scales));
+        }
+        if (bake) {
+            anim.bake();
+        }
+        AnimControl control = new AnimControl(skeleton);
+        control.addAnim(anim);
+        new Node("model").addControl(control);
+        return control;
+    }
+
+    @Test
+    public void testBakedMatchesCompact() {
+        AnimControl compact = createControl(4, 90, false);
+        AnimControl baked = createControl(4, 90, true);
+        for (Track track : baked.getAnim("anim").getTracks()) {
+            assertTrue(((BoneTrack) track).isBaked());
+            assertTrue(((BoneTrack) track.clone()).isBaked());
+        }
+        AnimChannel compactChannel = compact.createChannel();
+        AnimChannel bakedChannel = baked.createChannel();
+        compactChannel.setAnim("anim", 0f);
+        bakedChannel.setAnim("anim", 0f);
+        Random random = new Random(3);
+        for (int frame = 0; frame < 500; frame++) {
+            float tpf = frame % 50 == 49 ? random.nextFloat() * 2f : 1f / 60f;
+            compact.update(tpf);
+            baked.update(tpf);
+            for (int b = 0; b < 4; b++) {
+                Bone a = compact.getSkeleton().getBone(b);
+                Bone c = baked.getSkeleton().getBone(b);
+                assertEquals(a.getLocalPosition(), c.getLocalPosition());
+                assertEquals(a.getLocalRotation(), c.getLocalRotation());
+                assertEquals(a.getLocalScale(), c.getLocalScale());
+            }
+        }
+    }
+}
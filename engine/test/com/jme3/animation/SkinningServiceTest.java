@@ -0,0 +1,190 @@
+package com.jme3.animation;
+
+import static org.junit.Assert.*;
+
+import com.jme3.material.Material;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial.CullHint;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.system.NullRenderer;
+import com.jme3.util.BufferUtils;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SkinningServiceTest {
+
+    private static final int VERTEX_COUNT = SkinningService.VERTICES_PER_TASK * 2 + 100;
+
+    private static Mesh createMesh() {
+        Random random = new Random(5);
+        float[] positions = new float[VERTEX_COUNT * 3];
+        float[] normals = new float[VERTEX_COUNT * 3];
+        float[] tangents = new float[VERTEX_COUNT * 4];
+        byte[] indices = new byte[VERTEX_COUNT * 4];
+        float[] weights = new float[VERTEX_COUNT * 4];
+        for (int v = 0; v < VERTEX_COUNT; v++) {
+            for (int i = 0; i < 3; i++) {
+                positions[v * 3 + i] = random.nextFloat() * 2f - 1f;
+                normals[v * 3 + i] = random.nextFloat() * 2f - 1f;
+                tangents[v * 4 + i] = random.nextFloat() * 2f - 1f;
+            }
+            tangents[v * 4 + 3] = v % 2 == 0 ? 1f : -1f;
+            if (v % 10 == 0) {
+                // not weighted
+                continue;
+            }
+            indices[v * 4] = (byte) random.nextInt(3);
+            indices[v * 4 + 1] = (byte) random.nextInt(3);
+            weights[v * 4] = random.nextFloat();
+            weights[v * 4 + 1] = 1f - weights[v * 4];
+        }
+        Mesh mesh = new Mesh();
+        mesh.setBuffer(Type.Position, 3, positions);
+        mesh.setBuffer(Type.Normal, 3, normals);
+        mesh.setBuffer(Type.Tangent, 4, tangents);
+        mesh.setBuffer(Type.BoneIndex, 4, BufferUtils.createByteBuffer(indices));
+        mesh.setBuffer(Type.BoneWeight, 4, weights);
+        mesh.setMaxNumWeights(2);
+        mesh.generateBindPose(true);
+        mesh.prepareForAnim(true);
+        return mesh;
+    }
+
+    private static Skeleton createSkeleton() {
+        Bone[] bones = {new Bone("root"), new Bone("arm"), new Bone("hand")};
+        bones[0].addChild(bones[1]);
+        bones[1].addChild(bones[2]);
+        bones[1].setBindTransforms(new Vector3f(0, 1, 0), Quaternion.IDENTITY, Vector3f.UNIT_XYZ);
+        bones[2].setBindTransforms(new Vector3f(0, 1, 0), Quaternion.IDENTITY, Vector3f.UNIT_XYZ);
+        Skeleton skeleton = new Skeleton(bones);
+        skeleton.setBindingPose();
+        return skeleton;
+    }
+
+    private static void pose(Skeleton skeleton, float angle) {
+        skeleton.getBone(1).getLocalRotation().fromAngles(angle, 0, angle * 0.5f);
+        skeleton.getBone(2).getLocalPosition().set(0.5f, 1f, angle);
+        skeleton.getBone(2).getLocalScale().set(1f, 1f + angle, 1f);
+        skeleton.updateWorldVectors();
+    }
+
+    /**
+     * Skins the bind pose like the serial SkeletonControl did.
+     */
+    private static void assertSkinned(Mesh mesh, Matrix4f[] offsetMatrices) {
+        FloatBuffer bindPos = mesh.getFloatBuffer(Type.BindPosePosition);
+        FloatBuffer bindNorm = mesh.getFloatBuffer(Type.BindPoseNormal);
+        FloatBuffer bindTan = mesh.getFloatBuffer(Type.BindPoseTangent);
+        FloatBuffer pos = mesh.getFloatBuffer(Type.Position);
+        FloatBuffer norm = mesh.getFloatBuffer(Type.Normal);
+        FloatBuffer tan = mesh.getFloatBuffer(Type.Tangent);
+        ByteBuffer indices = (ByteBuffer) mesh.getBuffer(Type.BoneIndex).getData();
+        FloatBuffer weights = mesh.getFloatBuffer(Type.BoneWeight);
+        Vector3f v = new Vector3f();
+        Vector3f n = new Vector3f();
+        Vector3f t = new Vector3f();
+        for (int i = 0; i < VERTEX_COUNT; i++) {
+            Vector3f p = new Vector3f(bindPos.get(i * 3), bindPos.get(i * 3 + 1), bindPos.get(i * 3 + 2));
+            Vector3f bn = new Vector3f(bindNorm.get(i * 3), bindNorm.get(i * 3 + 1), bindNorm.get(i * 3 + 2));
+            Vector3f bt = new Vector3f(bindTan.get(i * 4), bindTan.get(i * 4 + 1), bindTan.get(i * 4 + 2));
+            if (weights.get(i * 4) == 0) {
+                v.set(p);
+                n.set(bn);
+                t.set(bt);
+            } else {
+                v.zero();
+                n.zero();
+                t.zero();
+                for (int w = 0; w < 2; w++) {
+                    Matrix4f m = offsetMatrices[indices.get(i * 4 + w)];
+                    float weight = weights.get(i * 4 + w);
+                    v.addLocal(m.mult(p).multLocal(weight));
+                    n.addLocal(m.multNormal(bn, null).multLocal(weight));
+                    t.addLocal(m.multNormal(bt, null).multLocal(weight));
+                }
+            }
+            assertEquals(v.x, pos.get(i * 3), 1e-4f);
+            assertEquals(v.y, pos.get(i * 3 + 1), 1e-4f);
+            assertEquals(v.z, pos.get(i * 3 + 2), 1e-4f);
+            assertEquals(n.x, norm.get(i * 3), 1e-4f);
+            assertEquals(n.y, norm.get(i * 3 + 1), 1e-4f);
+            assertEquals(n.z, norm.get(i * 3 + 2), 1e-4f);
+            assertEquals(t.x, tan.get(i * 4), 1e-4f);
+            assertEquals(t.y, tan.get(i * 4 + 1), 1e-4f);
+            assertEquals(t.z, tan.get(i * 4 + 2), 1e-4f);
+            assertEquals(bindTan.get(i * 4 + 3), tan.get(i * 4 + 3), 0f);
+        }
+    }
+
+    @Test
+    public void testParallelSkinning() throws Exception {
+        Skeleton skeleton = createSkeleton();
+        pose(skeleton, 0.7f);
+        Matrix4f[] offsetMatrices = skeleton.computeSkinningMatrices();
+        float[] palette = new float[offsetMatrices.length * SkinningService.PALETTE_STRIDE];
+        assertTrue(SkinningService.fillPalette(offsetMatrices, palette));
+        assertFalse(SkinningService.fillPalette(offsetMatrices, palette));
+
+        Mesh serialMesh = createMesh();
+        Mesh mesh1 = createMesh();
+        Mesh mesh2 = createMesh();
+        SkinningService serial = new SkinningService(1);
+        SkinningService parallel = new SkinningService(3);
+        serial.skin(new Mesh[]{serialMesh}, palette).get();
+        parallel.skin(new Mesh[]{mesh1, mesh2}, palette).get();
+        parallel.shutdown();
+        assertSkinned(serialMesh, offsetMatrices);
+        assertSkinned(mesh1, offsetMatrices);
+        assertSkinned(mesh2, offsetMatrices);
+    }
+
+    @Test
+    public void testSkeletonControl() {
+        Mesh mesh = createMesh();
+        Skeleton skeleton = createSkeleton();
+        Node model = new Node("model");
+        model.setCullHint(CullHint.Never);
+        Geometry geom = new Geometry("geom", mesh);
+        geom.setMaterial(new Material());
+        model.attachChild(geom);
+        SkeletonControl control = new SkeletonControl(skeleton);
+        SkinningService service = new SkinningService(3);
+        control.setSkinningService(service);
+        model.addControl(control);
+
+        RenderManager rm = new RenderManager(new NullRenderer());
+        ViewPort vp = rm.createMainView("Default", new Camera(640, 480));
+        pose(skeleton, 0.3f);
+        model.updateGeometricState();
+        rm.renderScene(model, vp);
+        // the skinning has been waited for
+        assertSkinned(mesh, skeleton.computeSkinningMatrices());
+
+        // the pose did not change, the mesh is not skinned again
+        FloatBuffer pos = mesh.getFloatBuffer(Type.Position);
+        float x = pos.get(3);
+        pos.put(3, 100f);
+        model.updateLogicalState(0f);
+        model.updateGeometricState();
+        rm.renderScene(model, vp);
+        assertEquals(100f, pos.get(3), 0f);
+        pos.put(3, x);
+
+        pose(skeleton, -0.4f);
+        model.updateLogicalState(0f);
+        control.render(rm, vp);
+        assertSkinned(mesh, skeleton.computeSkinningMatrices());
+        service.shutdown();
+    }
+}
@@ -0,0 +1,181 @@
+package com.jme3.asset;
+
+import static org.junit.Assert.*;
+
+import com.jme3.app.Application;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncAssetLoadingTest {
+
+    static final List<String> loadOrder = Collections.synchronizedList(new ArrayList<String>());
+    static volatile CountDownLatch started;
+    static volatile CountDownLatch gate;
+
+    public static class TestLocator implements AssetLocator {
+
+        public void setRootPath(String rootPath) {
+        }
+
+        public AssetInfo locate(AssetManager manager, AssetKey key) {
+            if (key.getName().startsWith("missing")) {
+                return null;
+            }
+            return new AssetInfo(manager, key) {
+
+                @Override
+                public InputStream openStream() {
+                    return new ByteArrayInputStream(new byte[0]);
+                }
+            };
+        }
+    }
+
+    public static class TestLoader implements AssetLoader {
+
+        public Object load(AssetInfo assetInfo) throws IOException {
+            String name = assetInfo.getKey().getName();
+            loadOrder.add(name);
+            started.countDown();
+            try {
+                gate.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                throw new IOException(ex.toString());
+            }
+            return name;
+        }
+    }
+
+    static class Listener implements AssetLoadListener<Object> {
+
+        final List<Object> loaded = new ArrayList<Object>();
+        final List<Throwable> failed = new ArrayList<Throwable>();
+
+        public void assetLoaded(AssetKey<Object> key, Object asset) {
+            loaded.add(asset);
+        }
+
+        public void assetFailed(AssetKey<Object> key, Throwable cause) {
+            failed.add(cause);
+        }
+    }
+
+    private DesktopAssetManager assetManager;
+
+    @Before
+    public void setUp() throws Exception {
+        loadOrder.clear();
+        started = new CountDownLatch(1);
+        gate = new CountDownLatch(1);
+        assetManager = new DesktopAssetManager();
+        assetManager.registerLocator("/", TestLocator.class);
+        assetManager.registerLoader(TestLoader.class, "test");
+        assetManager.getThreadingManager().setThreadCount(1);
+    }
+
+    @Test
+    public void testPriorityAndCoalescing() throws Exception {
+        AssetFuture<Object> blocker = assetManager.loadAssetAsync(new AssetKey<Object>("blocker.test"));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        AssetFuture<Object> prefetch = assetManager.loadAssetAsync(
+                new AssetKey<Object>("level.test"), AssetLoadPriority.PREFETCH);
+        AssetFuture<Object> normal = assetManager.loadAssetAsync(
+                new AssetKey<Object>("other.test"), AssetLoadPriority.NORMAL);
+        AssetFuture<Object> visible = assetManager.loadAssetAsync(
+                new AssetKey<Object>("visible.test"), AssetLoadPriority.VISIBLE);
+        Listener listener = new Listener();
+        // joins the queued load and moves it before "other.test"
+        AssetFuture<Object> level = assetManager.loadAssetAsync(
+                new AssetKey<Object>("level.test"), AssetLoadPriority.VISIBLE, listener);
+        assertEquals(4, assetManager.getThreadingManager().getPendingCount());
+        gate.countDown();
+
+        assertEquals("blocker.test", blocker.get(10, TimeUnit.SECONDS));
+        assertEquals("level.test", prefetch.get(10, TimeUnit.SECONDS));
+        assertEquals("level.test", level.get(10, TimeUnit.SECONDS));
+        assertEquals("visible.test", visible.get(10, TimeUnit.SECONDS));
+        assertEquals("other.test", normal.get(10, TimeUnit.SECONDS));
+        assertEquals(4, loadOrder.size());
+        assertEquals("blocker.test", loadOrder.get(0));
+        assertEquals("visible.test", loadOrder.get(1));
+        assertEquals("level.test", loadOrder.get(2));
+        assertEquals("other.test", loadOrder.get(3));
+
+        // listeners are only called from update()
+        assertTrue(listener.loaded.isEmpty());
+        assetManager.update();
+        assertEquals(1, listener.loaded.size());
+        assetManager.update();
+        assertEquals(1, listener.loaded.size());
+
+        // cached
+        Listener listener2 = new Listener();
+        AssetFuture<Object> cached = assetManager.loadAssetAsync(
+                new AssetKey<Object>("level.test"), AssetLoadPriority.NORMAL, listener2);
+        assertTrue(cached.isDone());
+        assertEquals(4, loadOrder.size());
+        assetManager.update();
+        assertEquals(1, listener2.loaded.size());
+    }
+
+    @Test
+    public void testFailureAndCancel() throws Exception {
+        gate.countDown();
+        Listener listener = new Listener();
+        AssetFuture<Object> missing = assetManager.loadAssetAsync(
+                new AssetKey<Object>("missing.test"), AssetLoadPriority.NORMAL, listener);
+        try {
+            missing.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof AssetNotFoundException);
+        }
+        assetManager.update();
+        assertEquals(1, listener.failed.size());
+
+        gate = new CountDownLatch(1);
+        started = new CountDownLatch(1);
+        AssetFuture<Object> blocker = assetManager.loadAssetAsync(new AssetKey<Object>("blocker.test"));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        AssetFuture<Object> cancelled = assetManager.loadAssetAsync(new AssetKey<Object>("cancelled.test"));
+        assertTrue(cancelled.cancel(false));
+        assertTrue(cancelled.isCancelled());
+        gate.countDown();
+        blocker.get(10, TimeUnit.SECONDS);
+        assertFalse(loadOrder.contains("cancelled.test"));
+        assertEquals(0, assetManager.getThreadingManager().getPendingCount());
+    }
+
+    @Test
+    public void testApplicationUpdate() throws Exception {
+        gate.countDown();
+        Application app = new Application() {
+
+            {
+                // there is no timer, only the queued work runs
+                paused = true;
+            }
+        };
+        app.setAssetManager(assetManager);
+        AssetManager manager = app.getAssetManager();
+        Listener listener = new Listener();
+        Future<Object> future = manager.loadAssetAsync(
+                new AssetKey<Object>("app.test"), AssetLoadPriority.NORMAL, listener);
+        assertEquals("app.test", future.get(10, TimeUnit.SECONDS));
+        assertTrue(listener.loaded.isEmpty());
+        app.update();
+        assertEquals(1, listener.loaded.size());
+        assertEquals("app.test", listener.loaded.get(0));
+    }
+}
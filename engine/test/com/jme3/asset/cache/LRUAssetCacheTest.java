@@ -0,0 +1,136 @@
+package com.jme3.asset.cache;
+
+import static org.junit.Assert.*;
+
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.TextureKey;
+import com.jme3.texture.Image;
+import com.jme3.texture.Image.Format;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class LRUAssetCacheTest {
+
+    private static Image image(int bytes) {
+        return new Image(Format.Luminance8, bytes, 1, ByteBuffer.allocate(bytes));
+    }
+
+    @Test
+    public void testLRUEviction() {
+        LRUAssetCache cache = new LRUAssetCache(3 * 4096);
+        AssetKey<Image> a = new AssetKey<Image>("a.png");
+        AssetKey<Image> b = new AssetKey<Image>("b.png");
+        AssetKey<Image> c = new AssetKey<Image>("c.png");
+        AssetKey<Image> d = new AssetKey<Image>("d.png");
+        cache.addToCache(a, image(4096));
+        cache.addToCache(b, image(4096));
+        cache.addToCache(c, image(4096));
+        assertEquals(3 * 4096, cache.getSize());
+
+        // a becomes the most recently used, b is evicted
+        assertNotNull(cache.getFromCache(a));
+        cache.addToCache(d, image(4096));
+        assertEquals(3, cache.getAssetCount());
+        assertNull(cache.getFromCache(b));
+        assertNotNull(cache.getFromCache(a));
+        assertNotNull(cache.getFromCache(c));
+        assertNotNull(cache.getFromCache(d));
+
+        // larger than the budget, not cached
+        AssetKey<Image> e = new AssetKey<Image>("e.png");
+        cache.addToCache(e, image(4 * 4096));
+        assertNull(cache.getFromCache(e));
+        assertEquals(3 * 4096, cache.getSize());
+
+        cache.setMaxBytes(4096);
+        assertEquals(1, cache.getAssetCount());
+        assertNotNull(cache.getFromCache(d));
+
+        assertTrue(cache.deleteFromCache(d));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testLFUEviction() {
+        LRUAssetCache cache = new LRUAssetCache(2 * 4096);
+        cache.setEvictionPolicy(LRUAssetCache.EvictionPolicy.LFU);
+        AssetKey<Image> a = new AssetKey<Image>("a.png");
+        AssetKey<Image> b = new AssetKey<Image>("b.png");
+        cache.addToCache(a, image(4096));
+        cache.addToCache(b, image(4096));
+        cache.getFromCache(a);
+        cache.getFromCache(a);
+        cache.getFromCache(a);
+        // b is more recent but used less often
+        cache.getFromCache(b);
+        cache.getFromCache(b);
+        cache.addToCache(new AssetKey<Image>("c.png"), image(4096));
+        assertNotNull(cache.getFromCache(a));
+        assertNull(cache.getFromCache(b));
+    }
+
+    @Test
+    public void testAssetSizes() {
+        LRUAssetCache cache = new LRUAssetCache(3 * 4096);
+        AssetKey<SizedAsset> sized = new AssetKey<SizedAsset>("a.vmd");
+        cache.addToCache(sized, new SizedAsset() {
+
+            public long getEstimatedSize() {
+                return 2 * 4096;
+            }
+        });
+        assertEquals(2 * 4096, cache.getSize());
+
+        // not measurable, held softly and counted at the default size
+        AssetKey<Object> other = new AssetKey<Object>("b.bin");
+        Object asset = new Object();
+        cache.addToCache(other, asset);
+        assertEquals(2 * 4096 + LRUAssetCache.DEFAULT_ASSET_SIZE, cache.getSize());
+        assertSame(asset, cache.getFromCache(other));
+
+        // a reported size larger than the budget is not cached
+        cache.addToCache(sized, new SizedAsset() {
+
+            public long getEstimatedSize() {
+                return 4 * 4096;
+            }
+        });
+        assertNull(cache.getFromCache(sized));
+        assertEquals(LRUAssetCache.DEFAULT_ASSET_SIZE, cache.getSize());
+    }
+
+    @Test
+    public void testStats() {
+        LRUAssetCache cache = new LRUAssetCache(4096);
+        TextureKey texKey = new TextureKey("a.png");
+        AssetKey<String> key = new AssetKey<String>("a.txt");
+        assertNull(cache.getFromCache(texKey));
+        cache.recordLoad(texKey, 5000000L);
+        cache.addToCache(key, "text");
+        assertEquals("text", cache.getFromCache(key));
+        assertEquals("text", cache.getFromCache(key));
+
+        AssetCacheStats texStats = cache.getStats(TextureKey.class);
+        assertEquals(0, texStats.getHitCount());
+        assertEquals(1, texStats.getMissCount());
+        assertEquals(1, texStats.getLoadCount());
+        assertEquals(5000000L, texStats.getTotalLoadTime());
+
+        AssetCacheStats stats = cache.getStats(AssetKey.class);
+        assertEquals(2, stats.getHitCount());
+        assertEquals(0, stats.getMissCount());
+        assertEquals(1.0, stats.getHitRate(), 0.0);
+
+        cache.addToCache(new AssetKey<String>("b.txt"), "text");
+        cache.addToCache(new AssetKey<String>("c.txt"), "text");
+        assertEquals(0, stats.getEvictionCount());
+        cache.setMaxBytes(0);
+        assertEquals(3, stats.getEvictionCount());
+        assertEquals(0, cache.getSize());
+        assertEquals(2, cache.getStats().size());
+
+        cache.resetStats();
+        assertEquals(0, stats.getHitCount());
+    }
+}
@@ -0,0 +1,138 @@
+package com.jme3.collision.bih;
+
+import static org.junit.Assert.*;
+
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.collision.CollisionResults;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.shape.Sphere;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BIHTreeTest {
+
+    private static float castBruteForce(Mesh mesh, Ray r, Matrix4f worldMatrix) {
+        Vector3f v1 = new Vector3f(), v2 = new Vector3f(), v3 = new Vector3f();
+        float closest = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < mesh.getTriangleCount(); i++) {
+            mesh.getTriangle(i, v1, v2, v3);
+            worldMatrix.mult(v1, v1);
+            worldMatrix.mult(v2, v2);
+            worldMatrix.mult(v3, v3);
+            closest = Math.min(closest, r.intersects(v1, v2, v3));
+        }
+        return closest;
+    }
+
+    @Test
+    public void testRaysMatchBruteForce() throws Exception {
+        final Mesh mesh = new Sphere(24, 24, 2f);
+        final BIHTree tree = new BIHTree(mesh, 4);
+        tree.construct();
+        final Matrix4f worldMatrix = new Matrix4f();
+        worldMatrix.setTranslation(1f, 2f, 3f);
+        worldMatrix.setRotationQuaternion(new Quaternion().fromAngles(0.5f, 0.2f, 0.1f));
+        mesh.updateBound();
+        final BoundingVolume worldBound = mesh.getBound().transform(worldMatrix, null);
+
+        Random random = new Random(3);
+        final int rayCount = 200;
+        final float[] rays = new float[rayCount * 6];
+        for (int i = 0; i < rayCount; i++) {
+            Vector3f origin = new Vector3f(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f,
+                    random.nextFloat() - 0.5f).normalizeLocal().multLocal(10f).addLocal(1f, 2f, 3f);
+            Vector3f target = new Vector3f(1f + random.nextFloat() * 4f - 2f,
+                    2f + random.nextFloat() * 4f - 2f, 3f + random.nextFloat() * 4f - 2f);
+            Vector3f direction = target.subtractLocal(origin).normalizeLocal();
+            rays[i * 6] = origin.x;
+            rays[i * 6 + 1] = origin.y;
+            rays[i * 6 + 2] = origin.z;
+            rays[i * 6 + 3] = direction.x;
+            rays[i * 6 + 4] = direction.y;
+            rays[i * 6 + 5] = direction.z;
+        }
+
+        // the same tree from several threads at once
+        final float[] distances = new float[rayCount];
+        final int[] triangles = new int[rayCount];
+        final Throwable[] errors = new Throwable[4];
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        int offset = thread * rayCount / 4;
+                        int end = (thread + 1) * rayCount / 4;
+                        for (int n = 0; n < 20; n++) {
+                            tree.intersectRays(rays, offset, end - offset, Float.POSITIVE_INFINITY,
+                                    worldMatrix, distances, triangles);
+                            CollisionResults results = new CollisionResults();
+                            for (int i = offset; i < end; i++) {
+                                results.clear();
+                                Ray r = new Ray(new Vector3f(rays[i * 6], rays[i * 6 + 1], rays[i * 6 + 2]),
+                                        new Vector3f(rays[i * 6 + 3], rays[i * 6 + 4], rays[i * 6 + 5]));
+                                tree.collideWith(r, worldMatrix, worldBound, results);
+                            }
+                        }
+                    } catch (Throwable ex) {
+                        errors[thread] = ex;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (Throwable error : errors) {
+            if (error != null) {
+                throw new AssertionError(error);
+            }
+        }
+
+        int hits = 0;
+        CollisionResults results = new CollisionResults();
+        for (int i = 0; i < rayCount; i++) {
+            Ray r = new Ray(new Vector3f(rays[i * 6], rays[i * 6 + 1], rays[i * 6 + 2]),
+                    new Vector3f(rays[i * 6 + 3], rays[i * 6 + 4], rays[i * 6 + 5]));
+            float expected = castBruteForce(mesh, r, worldMatrix);
+            assertEquals(expected, distances[i], 1e-3f);
+            results.clear();
+            tree.collideWith(r, worldMatrix, worldBound, results);
+            if (expected == Float.POSITIVE_INFINITY) {
+                assertEquals(-1, triangles[i]);
+                assertEquals(0, results.size());
+            } else {
+                hits++;
+                assertTrue(triangles[i] >= 0);
+                assertEquals(expected, results.getClosestCollision().getDistance(), 1e-3f);
+            }
+        }
+        assertTrue(hits > 50);
+
+        // limited distance
+        float[] limited = new float[rayCount];
+        tree.intersectRays(rays, 0, rayCount, 8f, worldMatrix, limited, null);
+        for (int i = 0; i < rayCount; i++) {
+            assertEquals(distances[i] <= 8f ? distances[i] : Float.POSITIVE_INFINITY, limited[i], 0f);
+        }
+
+        // bounding volumes
+        results.clear();
+        int count = tree.collideWith(new BoundingSphere(0.5f, new Vector3f(1f, 2f, 5f)),
+                worldMatrix, worldBound, results);
+        assertTrue(count > 0);
+        results.clear();
+        assertEquals(0, tree.collideWith(new BoundingSphere(0.5f, new Vector3f(1f, 2f, 3f)),
+                worldMatrix, worldBound, results));
+    }
+}
@@ -0,0 +1,140 @@
+package com.jme3.effect;
+
+import static org.junit.Assert.*;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.effect.shapes.EmitterSphereShape;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.VertexBuffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import org.junit.Test;
+
+public class ParticleDataTest {
+
+    private static final float TPF = 1f / 60f;
+
+    private static ParticleEmitter createEmitter(int numParticles, boolean packed) {
+        ParticleEmitter emitter = new ParticleEmitter("emitter", ParticleMesh.Type.Triangle, numParticles);
+        emitter.setPacked(packed);
+        emitter.setShape(new EmitterSphereShape(Vector3f.ZERO, 2f));
+        emitter.setParticlesPerSec(numParticles);
+        emitter.setLowLife(0.5f);
+        emitter.setHighLife(1.5f);
+        emitter.setGravity(0f, 2f, 0f);
+        emitter.setInitialVelocity(new Vector3f(0f, 3f, 0f));
+        emitter.setVelocityVariation(0.5f);
+        emitter.setRandomAngle(true);
+        emitter.setRotateSpeed(2f);
+        emitter.setImagesX(2);
+        emitter.setImagesY(2);
+        return emitter;
+    }
+
+    private static ParticleEmitter run(int numParticles, boolean packed, int threads, int frames) {
+        FastMath.rand.setSeed(1234);
+        ParticleEmitter emitter = createEmitter(numParticles, packed);
+        emitter.setUpdateThreadCount(threads);
+        emitter.emitAllParticles();
+        for (int i = 0; i < frames; i++) {
+            emitter.updateFromControl(TPF);
+        }
+        return emitter;
+    }
+
+    private static void assertParticle(Particle expected, Particle actual) {
+        assertEquals(expected.life, actual.life, 0f);
+        assertEquals(expected.startlife, actual.startlife, 0f);
+        assertEquals(expected.size, actual.size, 0f);
+        assertEquals(expected.angle, actual.angle, 0f);
+        assertEquals(expected.imageIndex, actual.imageIndex);
+        assertEquals(expected.position, actual.position);
+        assertEquals(expected.velocity, actual.velocity);
+        assertEquals(expected.color, actual.color);
+    }
+
+    @Test
+    public void testPackedMatchesObjects() {
+        ParticleEmitter objects = run(500, false, 1, 90);
+        ParticleEmitter packed = run(500, true, 1, 90);
+        assertTrue(packed.isPacked());
+        int count = objects.getNumVisibleParticles();
+        assertTrue(count > 0);
+        assertEquals(count, packed.getNumVisibleParticles());
+        for (int i = 0; i < count; i++) {
+            assertParticle(objects.getParticles()[i], packed.getParticles()[i]);
+        }
+        BoundingBox b1 = (BoundingBox) objects.getMesh().getBound();
+        BoundingBox b2 = (BoundingBox) packed.getMesh().getBound();
+        assertEquals(b1.getCenter(), b2.getCenter());
+        assertEquals(b1.getExtent(null), b2.getExtent(null));
+
+        ViewPort vp = new ViewPort("test", new Camera(640, 480));
+        objects.preload(null, vp);
+        packed.preload(null, vp);
+        count = objects.getNumVisibleParticles();
+        assertEquals(count, packed.getNumVisibleParticles());
+        FloatBuffer p1 = (FloatBuffer) objects.getMesh().getBuffer(VertexBuffer.Type.Position).getData();
+        FloatBuffer p2 = (FloatBuffer) packed.getMesh().getBuffer(VertexBuffer.Type.Position).getData();
+        assertEquals(p1, p2);
+        FloatBuffer t1 = (FloatBuffer) objects.getMesh().getBuffer(VertexBuffer.Type.TexCoord).getData();
+        FloatBuffer t2 = (FloatBuffer) packed.getMesh().getBuffer(VertexBuffer.Type.TexCoord).getData();
+        for (int i = 0; i < count * 8; i++) {
+            assertEquals(t1.get(i), t2.get(i), 0f);
+        }
+        ByteBuffer c1 = (ByteBuffer) objects.getMesh().getBuffer(VertexBuffer.Type.Color).getData();
+        ByteBuffer c2 = (ByteBuffer) packed.getMesh().getBuffer(VertexBuffer.Type.Color).getData();
+        for (int i = 0; i < count * 16; i++) {
+            assertEquals(c1.get(i), c2.get(i));
+        }
+    }
+
+    @Test
+    public void testParallelUpdate() {
+        ParticleEmitter serial = run(20000, true, 1, 30);
+        ParticleEmitter parallel = run(20000, true, 4, 30);
+        ParticleData d1 = serial.getParticleData();
+        ParticleData d2 = parallel.getParticleData();
+        assertTrue(d1.getCount() > 4096);
+        assertEquals(d1.getCount(), d2.getCount());
+        for (int i = 0; i < d1.getCount(); i++) {
+            assertEquals(d1.positionX[i], d2.positionX[i], 0f);
+            assertEquals(d1.positionY[i], d2.positionY[i], 0f);
+            assertEquals(d1.positionZ[i], d2.positionZ[i], 0f);
+            assertEquals(d1.life[i], d2.life[i], 0f);
+            assertEquals(d1.colorA[i], d2.colorA[i], 0f);
+        }
+        BoundingBox b1 = (BoundingBox) serial.getMesh().getBound();
+        BoundingBox b2 = (BoundingBox) parallel.getMesh().getBound();
+        assertEquals(b1.getCenter(), b2.getCenter());
+        assertEquals(b1.getExtent(null), b2.getExtent(null));
+    }
+
+    @Test
+    public void testKillParticle() {
+        FastMath.rand.setSeed(1234);
+        ParticleEmitter emitter = createEmitter(100, true);
+        emitter.setParticlesPerSec(0);
+        emitter.emitAllParticles();
+        ParticleData data = emitter.getParticleData();
+        assertEquals(100, data.getCount());
+        float x = data.positionX[4];
+
+        emitter.killParticle(3);
+        assertEquals(0f, data.life[3], 0f);
+        assertEquals(0, data.getColorABGR(3));
+        assertEquals(100, emitter.getNumVisibleParticles());
+
+        emitter.updateFromControl(0.001f);
+        assertEquals(99, emitter.getNumVisibleParticles());
+        // the order is kept
+        assertEquals(x + data.velocityX[3] * 0.001f, data.positionX[3], 1e-6f);
+
+        emitter.killAllParticles();
+        assertEquals(0, emitter.getNumVisibleParticles());
+    }
+}
@@ -0,0 +1,85 @@
+package com.jme3.export.binary;
+
+import static org.junit.Assert.*;
+
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.scene.shape.Box;
+import com.jme3.util.BufferUtils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import org.junit.Test;
+
+public class BinaryImporterTest {
+
+    private static Node createScene() {
+        Node root = new Node("root");
+        Mesh box = new Box(Vector3f.ZERO, 1f, 2f, 3f);
+        for (int i = 0; i < 3; i++) {
+            Geometry geom = new Geometry("box" + i, box);
+            geom.setLocalTranslation(i, 0f, 0f);
+            root.attachChild(geom);
+        }
+        root.setUserData("name", "ミク");
+        return root;
+    }
+
+    private static void check(Node loaded, Node expected) {
+        assertEquals(expected.getQuantity(), loaded.getQuantity());
+        assertEquals("ミク", loaded.getUserData("name"));
+        Mesh mesh = ((Geometry) loaded.getChild(0)).getMesh();
+        // shared meshes are read once
+        assertSame(mesh, ((Geometry) loaded.getChild(2)).getMesh());
+        assertEquals(new Vector3f(2f, 0f, 0f), loaded.getChild(2).getLocalTranslation());
+
+        Mesh expectedMesh = ((Geometry) expected.getChild(0)).getMesh();
+        FloatBuffer positions = (FloatBuffer) mesh.getBuffer(Type.Position).getData();
+        FloatBuffer expectedPositions = (FloatBuffer) expectedMesh.getBuffer(Type.Position).getData();
+        assertTrue(positions.isDirect());
+        expectedPositions.rewind();
+        positions.rewind();
+        assertEquals(expectedPositions, positions);
+        assertEquals(expectedMesh.getTriangleCount(), mesh.getTriangleCount());
+
+        // buffers must stay writable, for example for software skinning
+        positions.put(0, 42f);
+        assertEquals(42f, positions.get(0), 0f);
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        Node scene = createScene();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryExporter.getInstance().save(scene, out);
+        byte[] data = out.toByteArray();
+
+        check((Node) BinaryImporter.getInstance().load(new ByteArrayInputStream(data)), scene);
+        check((Node) BinaryImporter.getInstance().load(new ByteArrayInputStream(data), null,
+                new ByteArrayOutputStream()), scene);
+        check((Node) BinaryImporter.getInstance().load(data), scene);
+
+        // writable direct buffers are sliced
+        ByteBuffer direct = BufferUtils.createByteBuffer(data.length);
+        direct.put(data).flip();
+        check((Node) BinaryImporter.getInstance().load(direct, null), scene);
+        assertEquals(0, direct.position());
+
+        File file = File.createTempFile("BinaryImporterTest", ".j3o");
+        try {
+            FileOutputStream fos = new FileOutputStream(file);
+            fos.write(data);
+            fos.close();
+            check((Node) BinaryImporter.getInstance().load(file), scene);
+        } finally {
+            file.delete();
+        }
+    }
+}
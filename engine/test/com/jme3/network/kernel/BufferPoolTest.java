@@ -0,0 +1,60 @@
+package com.jme3.network.kernel;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class BufferPoolTest {
+
+    @Test
+    public void testReuse() {
+        BufferPool pool = new BufferPool();
+        SharedBuffer a = pool.acquire(100);
+        assertTrue(a.getBuffer().isDirect());
+        assertEquals(512, a.getBuffer().capacity());
+        a.release();
+
+        SharedBuffer b = pool.acquire(300);
+        assertSame(a, b);
+        assertEquals(0, b.getBuffer().position());
+        assertEquals(1, b.getReferenceCount());
+        assertEquals(1, pool.getAllocatedCount());
+
+        SharedBuffer c = pool.acquire(1000);
+        assertNotSame(b, c);
+        assertEquals(1024, c.getBuffer().capacity());
+    }
+
+    @Test
+    public void testReferences() {
+        BufferPool pool = new BufferPool();
+        SharedBuffer a = pool.copy(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        ByteBuffer view = a.retain().view();
+        assertTrue(view.isReadOnly());
+        assertEquals(3, view.remaining());
+        assertEquals(2, view.get(1));
+
+        a.release();
+        assertNotSame(a, pool.acquire(10));
+        a.release();
+        assertSame(a, pool.acquire(10));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDoubleRelease() {
+        SharedBuffer a = new BufferPool().acquire(10);
+        a.release();
+        a.release();
+    }
+
+    @Test
+    public void testLargeBuffer() {
+        BufferPool pool = new BufferPool();
+        SharedBuffer a = pool.acquire(pool.getMaxBufferSize() + 1);
+        assertEquals(pool.getMaxBufferSize() + 1, a.getBuffer().capacity());
+        a.release();
+        assertNotSame(a, pool.acquire(pool.getMaxBufferSize() + 1));
+    }
+}
@@ -0,0 +1,86 @@
+package com.jme3.network.kernel.tcp;
+
+import static org.junit.Assert.*;
+
+import com.jme3.network.kernel.BufferPool;
+import com.jme3.network.kernel.EndpointEvent;
+import java.io.DataInputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class SelectorKernelTest {
+
+    private static void waitForRelease(BufferPool pool) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (pool.getFreeCount() < pool.getAllocatedCount() && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(pool.getAllocatedCount(), pool.getFreeCount());
+    }
+
+    @Test
+    public void testBroadcast() throws Exception {
+        ServerSocket probe = new ServerSocket(0);
+        int port = probe.getLocalPort();
+        probe.close();
+
+        InetAddress host = InetAddress.getByName("127.0.0.1");
+        SelectorKernel kernel = new SelectorKernel(new InetSocketAddress(host, port));
+        kernel.initialize();
+        Socket[] sockets = new Socket[3];
+        try {
+            for (int i = 0; i < sockets.length; i++) {
+                sockets[i] = new Socket(host, port);
+                sockets[i].setSoTimeout(5000);
+            }
+            int added = 0;
+            long end = System.currentTimeMillis() + 5000;
+            while (added < sockets.length && System.currentTimeMillis() < end) {
+                EndpointEvent event = kernel.nextEvent();
+                if (event == null) {
+                    Thread.sleep(10);
+                } else if (event.getType() == EndpointEvent.Type.ADD) {
+                    added++;
+                }
+            }
+            assertEquals(sockets.length, added);
+
+            ByteBuffer data = ByteBuffer.allocate(100);
+            for (int round = 0; round < 2; round++) {
+                for (int m = 0; m < 20; m++) {
+                    data.clear();
+                    for (int i = 0; i < 100; i++) {
+                        data.put((byte) (m + i));
+                    }
+                    data.flip();
+                    kernel.broadcast(null, data, true, true);
+                }
+                for (Socket socket : sockets) {
+                    DataInputStream in = new DataInputStream(socket.getInputStream());
+                    byte[] bytes = new byte[100];
+                    for (int m = 0; m < 20; m++) {
+                        in.readFully(bytes);
+                        for (int i = 0; i < 100; i++) {
+                            assertEquals((byte) (m + i), bytes[i]);
+                        }
+                    }
+                }
+                waitForRelease(kernel.getBufferPool());
+            }
+            // The buffers of the first round have been reused
+            assertTrue(kernel.getBufferPool().getAllocatedCount() <= 20);
+        } finally {
+            for (Socket socket : sockets) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+            kernel.terminate();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.jme3.network.kernel.udp;
+
+import static org.junit.Assert.*;
+
+import com.jme3.network.kernel.EndpointEvent;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class UdpKernelTest {
+
+    private static ByteBuffer createMessage(int size, int seed) {
+        ByteBuffer buffer = ByteBuffer.allocate(size + 2);
+        buffer.putShort((short) size);
+        for (int i = 0; i < size; i++) {
+            buffer.put((byte) (seed + i));
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void assertMessage(ByteBuffer buffer, int size, int seed) {
+        assertEquals(size, buffer.getShort());
+        for (int i = 0; i < size; i++) {
+            assertEquals((byte) (seed + i), buffer.get());
+        }
+    }
+
+    @Test
+    public void testFragments() {
+        ByteBuffer message = createMessage(1000, 3);
+        int count = FragmentAssembler.getFragmentCount(message.remaining(), 256);
+        assertEquals(5, count);
+
+        FragmentAssembler assembler = new FragmentAssembler();
+        byte[] result = null;
+        // Out of order with a duplicate
+        int[] order = {4, 0, 2, 2, 1, 3};
+        for (int i = 0; i < order.length; i++) {
+            byte[] fragment = FragmentAssembler.createFragment(7, order[i], message, 256);
+            assertTrue(fragment.length <= 256);
+            assertTrue(FragmentAssembler.isFragment(fragment, 0, fragment.length));
+            byte[] data = assembler.add(fragment, 0, fragment.length);
+            if (i < order.length - 1) {
+                assertNull(data);
+            } else {
+                result = data;
+            }
+        }
+        assertNotNull(result);
+        assertMessage(ByteBuffer.wrap(result), 1000, 3);
+        assertFalse(FragmentAssembler.isFragment(message.array(), 0, message.limit()));
+    }
+
+    private static byte[] createHeader(int index, int count, int offset, int total, int size) {
+        ByteBuffer fragment = ByteBuffer.allocate(FragmentAssembler.HEADER_SIZE + size);
+        fragment.putShort((short) 0);
+        fragment.putInt(1);
+        fragment.putShort((short) index);
+        fragment.putShort((short) count);
+        fragment.putInt(offset);
+        fragment.putInt(total);
+        return fragment.array();
+    }
+
+    @Test
+    public void testForgedFragments() {
+        FragmentAssembler assembler = new FragmentAssembler();
+        // Larger than any message
+        byte[] huge = createHeader(0, 2, 0, Integer.MAX_VALUE, 0);
+        assertTrue(FragmentAssembler.isFragment(huge, 0, huge.length));
+        assertNull(assembler.add(huge, 0, huge.length));
+        huge = createHeader(1, 2, 0, FragmentAssembler.MAX_MESSAGE_SIZE + 1, 4);
+        assertNull(assembler.add(huge, 0, huge.length));
+        // More fragments than bytes
+        byte[] count = createHeader(0, 30000, 0, 100, 4);
+        assertNull(assembler.add(count, 0, count.length));
+        // Count and offset that do not match the fragment size
+        count = createHeader(0, 2, 0, 100, 10);
+        assertNull(assembler.add(count, 0, count.length));
+        byte[] offset = createHeader(1, 2, 40, 100, 50);
+        assertNull(assembler.add(offset, 0, offset.length));
+
+        // A real message still goes through
+        ByteBuffer message = createMessage(300, 5);
+        byte[] result = null;
+        for (int i = 0; i < 2; i++) {
+            byte[] fragment = FragmentAssembler.createFragment(9, i, message, 256);
+            result = assembler.add(fragment, 0, fragment.length);
+        }
+        assertNotNull(result);
+        assertMessage(ByteBuffer.wrap(result), 300, 5);
+    }
+
+    @Test
+    public void testBatching() throws Exception {
+        DatagramSocket probe = new DatagramSocket(0);
+        int port = probe.getLocalPort();
+        probe.close();
+
+        InetAddress host = InetAddress.getByName("127.0.0.1");
+        UdpKernel kernel = new UdpKernel(new InetSocketAddress(host, port));
+        kernel.setMaxDatagramSize(512);
+        kernel.setBatchDelay(50);
+        kernel.initialize();
+        UdpConnector connector = new UdpConnector(host, port);
+        try {
+            connector.write(createMessage(4, 0));
+            UdpEndpoint endpoint = null;
+            long end = System.currentTimeMillis() + 5000;
+            while (endpoint == null && System.currentTimeMillis() < end) {
+                EndpointEvent event = kernel.nextEvent();
+                if (event == null) {
+                    Thread.sleep(10);
+                } else if (event.getType() == EndpointEvent.Type.ADD) {
+                    endpoint = (UdpEndpoint) event.getEndpoint();
+                }
+            }
+            assertNotNull(endpoint);
+            assertEquals(1, endpoint.getPacketsReceived());
+            assertEquals(6, endpoint.getBytesReceived());
+
+            // 20 messages of 52 bytes fit in 3 datagrams, the large
+            // message takes 3 fragments that arrive as one message
+            for (int m = 0; m < 20; m++) {
+                endpoint.send(createMessage(50, m));
+            }
+            endpoint.send(createMessage(1200, 100));
+            kernel.flush();
+
+            // The writer threads may send the datagrams in any order
+            boolean[] received = new boolean[21];
+            for (int datagrams = 0; datagrams < 4; datagrams++) {
+                ByteBuffer datagram = connector.read();
+                while (datagram.hasRemaining()) {
+                    int seed = datagram.get(datagram.position() + 2);
+                    if (seed == 100) {
+                        assertMessage(datagram, 1200, seed);
+                        received[20] = true;
+                    } else {
+                        assertMessage(datagram, 50, seed);
+                        received[seed] = true;
+                    }
+                }
+            }
+            for (boolean b : received) {
+                assertTrue(b);
+            }
+
+            assertEquals(21, endpoint.getMessagesSent());
+            assertEquals(6, endpoint.getPacketsSent());
+            assertEquals(20 * 52 + 1202 + 3 * FragmentAssembler.HEADER_SIZE, endpoint.getBytesSent());
+        } finally {
+            connector.close();
+            kernel.terminate();
+        }
+    }
+}
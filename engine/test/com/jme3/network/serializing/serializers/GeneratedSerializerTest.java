@@ -0,0 +1,150 @@
+package com.jme3.network.serializing.serializers;
+
+import static org.junit.Assert.*;
+
+import com.jme3.math.Vector3f;
+import com.jme3.network.AbstractMessage;
+import com.jme3.network.serializing.Serializer;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class GeneratedSerializerTest {
+
+    public enum State { IDLE, RUNNING }
+
+    public static class BaseMessage extends AbstractMessage {
+        public int id;
+        private long time;
+
+        public long getTime() {
+            return time;
+        }
+
+        public void setTime(long time) {
+            this.time = time;
+        }
+    }
+
+    public static class TestMessage extends BaseMessage {
+        public boolean flag;
+        public byte b;
+        public char c;
+        public short s;
+        public float f;
+        public double d;
+        private int hidden;
+        public String name;
+        public Vector3f position;
+        public int[] values;
+        public State state;
+        public Object payload;
+
+        public int getHidden() {
+            return hidden;
+        }
+
+        public void setHidden(int hidden) {
+            this.hidden = hidden;
+        }
+    }
+
+    private static TestMessage createMessage() {
+        TestMessage m = new TestMessage();
+        m.id = 42;
+        m.setTime(1234567890123L);
+        m.flag = true;
+        m.b = -3;
+        m.c = 'x';
+        m.s = 1000;
+        m.f = 1.5f;
+        m.d = -2.25;
+        m.setHidden(7);
+        m.name = "miku";
+        m.position = new Vector3f(1, 2, 3);
+        m.values = new int[]{1, 2, 3};
+        m.state = State.RUNNING;
+        m.payload = Integer.valueOf(5);
+        return m;
+    }
+
+    private static void assertMessage(TestMessage expected, TestMessage m) {
+        assertEquals(expected.id, m.id);
+        assertEquals(expected.getTime(), m.getTime());
+        assertEquals(expected.flag, m.flag);
+        assertEquals(expected.b, m.b);
+        assertEquals(expected.c, m.c);
+        assertEquals(expected.s, m.s);
+        assertEquals(expected.f, m.f, 0f);
+        assertEquals(expected.d, m.d, 0.0);
+        assertEquals(expected.getHidden(), m.getHidden());
+        assertEquals(expected.name, m.name);
+        assertEquals(expected.position, m.position);
+        assertTrue(Arrays.equals(expected.values, m.values));
+        assertEquals(expected.state, m.state);
+        assertEquals(expected.payload, m.payload);
+    }
+
+    private static byte[] write(TestMessage m) throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        Serializer.writeClassAndObject(buffer, m);
+        buffer.flip();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static Serializer compileSerializer(Class<?> type) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeTrue(compiler != null);
+        File dir = File.createTempFile("serializer", "");
+        dir.delete();
+        File source = SerializerGenerator.generate(type, dir);
+        int result = compiler.run(null, null, null, "-nowarn", "-d", dir.getPath(),
+                "-cp", System.getProperty("java.class.path"), source.getPath());
+        assertEquals(0, result);
+        ClassLoader loader = new URLClassLoader(new URL[]{dir.toURI().toURL()},
+                GeneratedSerializerTest.class.getClassLoader());
+        return (Serializer) loader.loadClass(SerializerGenerator.getSerializerName(type)).newInstance();
+    }
+
+    @Test
+    public void testSource() {
+        String source = SerializerGenerator.generate(TestMessage.class);
+        assertTrue(source.contains("object.flag = data.get() == 1;"));
+        assertTrue(source.contains("buffer.putInt(((com.jme3.network.serializing.serializers.GeneratedSerializerTest.BaseMessage) object).id);"));
+        assertTrue(source.contains("setInt(5, object, data.getInt());"));
+        assertTrue(source.contains("buffer.putLong(getLong(12, object));"));
+        assertTrue(source.contains("Serializer.writeClassAndObject(buffer, object.payload);"));
+    }
+
+    @Test
+    public void testWireCompatibility() throws Exception {
+        Serializer generated = compileSerializer(TestMessage.class);
+        TestMessage m = createMessage();
+
+        Serializer.registerClass(TestMessage.class, new FieldSerializer());
+        byte[] fieldBytes = write(m);
+
+        Serializer.registerClass(TestMessage.class, generated);
+        byte[] generatedBytes = write(m);
+        assertTrue(Arrays.equals(fieldBytes, generatedBytes));
+        assertMessage(m, (TestMessage) Serializer.readClassAndObject(ByteBuffer.wrap(fieldBytes)));
+
+        Serializer.registerClass(TestMessage.class, new FieldSerializer());
+        assertMessage(m, (TestMessage) Serializer.readClassAndObject(ByteBuffer.wrap(generatedBytes)));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testWrongClass() throws Exception {
+        Serializer generated = compileSerializer(TestMessage.class);
+        Serializer.registerClass(BaseMessage.class, generated);
+    }
+}
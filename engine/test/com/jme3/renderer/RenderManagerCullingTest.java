@@ -0,0 +1,95 @@
+package com.jme3.renderer;
+
+import static org.junit.Assert.*;
+
+import com.jme3.material.Material;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.queue.GeometryList;
+import com.jme3.renderer.queue.RenderQueue.ShadowMode;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.shape.Box;
+import com.jme3.system.NullRenderer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RenderManagerCullingTest {
+
+    private static Node createScene() {
+        Random random = new Random(1);
+        Box box = new Box(0.5f, 0.5f, 0.5f);
+        Material material = new Material();
+        Node root = new Node("root");
+        for (int n = 0; n < 10; n++) {
+            Node node = new Node("node" + n);
+            for (int i = 0; i < 500; i++) {
+                Geometry g = new Geometry("box" + i, box);
+                g.setMaterial(material);
+                g.setLocalTranslation(random.nextFloat() * 200f - 100f,
+                        random.nextFloat() * 200f - 100f,
+                        random.nextFloat() * 200f - 100f);
+                node.attachChild(g);
+            }
+            root.attachChild(node);
+        }
+        root.setShadowMode(ShadowMode.CastAndReceive);
+        root.updateGeometricState();
+        return root;
+    }
+
+    private static List<Geometry> cull(Node root, int threadCount, List<Geometry> casters) {
+        RenderManager rm = new RenderManager(new NullRenderer());
+        rm.setCullingThreadCount(threadCount);
+        Camera cam = new Camera(640, 480);
+        cam.setFrustumPerspective(45f, 640f / 480f, 1f, 100f);
+        cam.setLocation(new Vector3f(0, 0, 0));
+        cam.lookAt(new Vector3f(1, 0.2f, -1), Vector3f.UNIT_Y);
+        cam.update();
+        ViewPort vp = rm.createMainView("Default", cam);
+        rm.renderScene(root, vp);
+
+        List<Geometry> visible = new ArrayList<Geometry>();
+        GeometryList receivers = vp.getQueue().getShadowQueueContent(ShadowMode.Receive);
+        for (int i = 0; i < receivers.size(); i++) {
+            visible.add(receivers.get(i));
+        }
+        GeometryList cast = vp.getQueue().getShadowQueueContent(ShadowMode.Cast);
+        for (int i = 0; i < cast.size(); i++) {
+            casters.add(cast.get(i));
+        }
+        return visible;
+    }
+
+    @Test
+    public void testParallelCullingMatchesSerial() {
+        Node root = createScene();
+        List<Geometry> serialCasters = new ArrayList<Geometry>();
+        List<Geometry> serial = cull(root, 1, serialCasters);
+        List<Geometry> parallelCasters = new ArrayList<Geometry>();
+        List<Geometry> parallel = cull(root, 4, parallelCasters);
+
+        assertTrue(serial.size() > 0);
+        assertTrue(serial.size() < 5000);
+        assertEquals(serial, parallel);
+        // culled casters are still queued for shadows
+        assertEquals(5000, serialCasters.size());
+        assertEquals(5000, parallelCasters.size());
+
+        Camera cam = new Camera(640, 480);
+        cam.setFrustumPerspective(45f, 640f / 480f, 1f, 100f);
+        cam.lookAt(new Vector3f(1, 0.2f, -1), Vector3f.UNIT_Y);
+        cam.update();
+        for (int n = 0; n < root.getQuantity(); n++) {
+            Node node = (Node) root.getChild(n);
+            for (int i = 0; i < node.getQuantity(); i++) {
+                Geometry g = (Geometry) node.getChild(i);
+                cam.setPlaneState(0);
+                boolean inside = cam.contains(g.getWorldBound()) != Camera.FrustumIntersect.Outside;
+                assertEquals(inside, serial.contains(g));
+            }
+        }
+    }
+}
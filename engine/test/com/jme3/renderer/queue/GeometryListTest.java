@@ -0,0 +1,86 @@
+package com.jme3.renderer.queue;
+
+import static org.junit.Assert.*;
+
+import com.jme3.renderer.Camera;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.shape.Box;
+import com.jme3.util.SortUtil;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GeometryListTest {
+
+    /**
+     * Hides the sort key, so that the list uses the merge sort.
+     */
+    private static class MergeSortComparator implements GeometryComparator {
+
+        private final GeometryComparator comparator;
+
+        MergeSortComparator(GeometryComparator comparator) {
+            this.comparator = comparator;
+        }
+
+        public int compare(Geometry o1, Geometry o2) {
+            return comparator.compare(o1, o2);
+        }
+
+        public void setCamera(Camera cam) {
+            comparator.setCamera(cam);
+        }
+    }
+
+    @Test
+    public void testRadixSortMatchesMergeSort() {
+        Random random = new Random(1);
+        Box box = new Box(1, 1, 1);
+        GeometryList radix = new GeometryList(new GuiComparator());
+        GeometryList merge = new GeometryList(new MergeSortComparator(new GuiComparator()));
+        for (int i = 0; i < 1000; i++) {
+            Geometry g = new Geometry("g" + i, box);
+            // few distinct values to check stability, with -0 and 0
+            float z = (random.nextInt(41) - 20) * 0.25f;
+            if (z == 0f && random.nextBoolean()) {
+                z = -0f;
+            }
+            g.setLocalTranslation(0, 0, z);
+            g.updateGeometricState();
+            radix.add(g);
+            merge.add(g);
+        }
+        radix.sort();
+        merge.sort();
+        for (int i = 0; i < radix.size(); i++) {
+            assertSame(merge.get(i), radix.get(i));
+        }
+    }
+
+    @Test
+    public void testRadixSortUnsignedKeys() {
+        Random random = new Random(2);
+        int size = 500;
+        long[] keys = new long[size];
+        Long[] values = new Long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = random.nextLong();
+            values[i] = Long.valueOf(keys[i]);
+        }
+        SortUtil.rsort(keys, new long[size], values, new Object[size], size,
+                new int[SortUtil.RADIX_COUNTS_SIZE]);
+        for (int i = 0; i < size; i++) {
+            assertEquals(keys[i], values[i].longValue());
+            if (i > 0) {
+                long a = keys[i - 1] ^ Long.MIN_VALUE;
+                long b = keys[i] ^ Long.MIN_VALUE;
+                assertTrue(a <= b);
+            }
+        }
+        assertTrue(SortUtil.floatToSortKey(-1f) < SortUtil.floatToSortKey(-0.5f));
+        assertTrue(SortUtil.floatToSortKey(-0.5f) < SortUtil.floatToSortKey(0f));
+        assertEquals(SortUtil.floatToSortKey(-0f), SortUtil.floatToSortKey(0f));
+        assertTrue(SortUtil.floatToSortKey(0f) < SortUtil.floatToSortKey(Float.MIN_VALUE));
+        assertTrue(SortUtil.floatToSortKey(1f) < SortUtil.floatToSortKey(Float.POSITIVE_INFINITY));
+    }
+}
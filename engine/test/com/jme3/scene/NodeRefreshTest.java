@@ -0,0 +1,187 @@
+package com.jme3.scene;
+
+import static org.junit.Assert.*;
+
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.asset.ModelKey;
+import com.jme3.asset.plugins.FileLocator;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.export.binary.BinaryExporter;
+import com.jme3.export.binary.BinaryImporter;
+import com.jme3.light.PointLight;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.shape.Box;
+import java.io.File;
+
+import org.junit.Test;
+
+public class NodeRefreshTest {
+
+    private static class CountingNode extends Node {
+
+        int updates;
+
+        CountingNode(String name) {
+            super(name);
+        }
+
+        @Override
+        public void updateGeometricState() {
+            updates++;
+            super.updateGeometricState();
+        }
+    }
+
+    private static CountingNode[] groups;
+
+    private static Node createScene() {
+        Box box = new Box(0.5f, 0.5f, 0.5f);
+        Node root = new Node("root");
+        groups = new CountingNode[20];
+        for (int n = 0; n < groups.length; n++) {
+            groups[n] = new CountingNode("group" + n);
+            groups[n].setLocalTranslation(n * 10f, 0, 0);
+            for (int i = 0; i < 50; i++) {
+                Geometry g = new Geometry("box" + i, box);
+                g.setLocalTranslation(0, i, 0);
+                groups[n].attachChild(g);
+            }
+            root.attachChild(groups[n]);
+        }
+        return root;
+    }
+
+    private static void resetCounts() {
+        for (CountingNode group : groups) {
+            group.updates = 0;
+        }
+    }
+
+    @Test
+    public void testOnlyChangedSubtreesAreUpdated() {
+        Node root = createScene();
+        root.updateGeometricState();
+        resetCounts();
+
+        root.updateGeometricState();
+        for (CountingNode group : groups) {
+            assertEquals(0, group.updates);
+        }
+
+        Geometry moved = (Geometry) groups[3].getChild(49);
+        moved.setLocalTranslation(0, 100, 0);
+        root.updateGeometricState();
+        for (int n = 0; n < groups.length; n++) {
+            assertEquals(n == 3 ? 1 : 0, groups[n].updates);
+        }
+        assertEquals(new Vector3f(30, 100, 0), moved.getWorldTranslation());
+        BoundingBox bound = (BoundingBox) root.getWorldBound();
+        assertEquals(100.5f, bound.getMax(null).y, 0f);
+        assertEquals(new Vector3f(30.5f, 100.5f, 0.5f), ((BoundingBox) groups[3].getWorldBound()).getMax(null));
+
+        // checkCulling fails if a refresh flag was left behind
+        root.getWorldBound();
+        assertEquals(0, root.refreshFlags);
+        for (CountingNode group : groups) {
+            assertEquals(0, group.refreshFlags);
+            for (Spatial child : group.getChildren()) {
+                assertEquals(0, child.refreshFlags);
+            }
+        }
+    }
+
+    @Test
+    public void testMovedNodeUpdatesChildren() {
+        Node root = createScene();
+        root.updateGeometricState();
+        groups[5].setLocalTranslation(0, 0, 7);
+        groups[5].getChild(2).addLight(new PointLight());
+        root.updateGeometricState();
+        for (Spatial child : groups[5].getChildren()) {
+            assertEquals(7f, child.getWorldTranslation().z, 0f);
+            assertEquals(0, child.refreshFlags);
+        }
+        assertEquals(1, groups[5].getChild(2).getWorldLightList().size());
+        assertEquals(7.5f, ((BoundingBox) root.getWorldBound()).getMax(null).z, 0f);
+    }
+
+    @Test
+    public void testReattachAndClone() {
+        Node root = createScene();
+        root.updateGeometricState();
+
+        Spatial child = groups[1].getChild(10);
+        child.setName("moved");
+        child.setLocalTranslation(0, -20, 0);
+        // queued in group1, then moved to group2
+        groups[2].attachChild(child);
+        root.updateGeometricState();
+        assertEquals(new Vector3f(20, -20, 0), child.getWorldTranslation());
+        assertEquals(-20.5f, ((BoundingBox) groups[2].getWorldBound()).getMin(null).y, 0f);
+        assertEquals(0f - 0.5f, ((BoundingBox) groups[1].getWorldBound()).getMin(null).y, 0f);
+
+        child.setLocalTranslation(0, -30, 0);
+        groups[1].attachChild(child);
+        child.move(0, -1, 0);
+        groups[2].detachChild(child);
+        groups[2].attachChild(child);
+        root.updateGeometricState();
+        assertEquals(new Vector3f(20, -31, 0), child.getWorldTranslation());
+        assertEquals(0, child.refreshFlags);
+
+        Node clone = (Node) root.clone();
+        clone.updateGeometricState();
+        assertEquals(new Vector3f(20, -31, 0),
+                ((Node) clone.getChild(2)).getChild(child.getName()).getWorldTranslation());
+        ((Node) clone.getChild(4)).getChild(0).move(0, 0, 50);
+        clone.updateGeometricState();
+        assertEquals(50.5f, ((BoundingBox) clone.getWorldBound()).getMax(null).z, 0f);
+        root.updateGeometricState();
+        assertEquals(0.5f, ((BoundingBox) root.getWorldBound()).getMax(null).z, 0f);
+    }
+
+    @Test
+    public void testAssetLinkNodeRead() throws Exception {
+        File dir = File.createTempFile("link", "");
+        dir.delete();
+        dir.mkdir();
+        File childFile = new File(dir, "child.j3o");
+        File linkFile = new File(dir, "link.j3o");
+        try {
+            Node child = new Node("linked");
+            child.setLocalTranslation(1, 2, 3);
+            child.attachChild(new Node("leaf"));
+            BinaryExporter.getInstance().save(child, childFile);
+            AssetLinkNode link = new AssetLinkNode(new ModelKey("child.j3o"));
+            link.setLocalTranslation(10, 0, 0);
+            BinaryExporter.getInstance().save(link, linkFile);
+
+            DesktopAssetManager assetManager = new DesktopAssetManager();
+            assetManager.registerLocator(dir.getAbsolutePath(), FileLocator.class);
+            assetManager.registerLoader(BinaryImporter.class, "j3o");
+            // loadModel() would return a clone
+            BinaryImporter importer = BinaryImporter.getInstance();
+            importer.setAssetManager(assetManager);
+            Node loaded = (Node) importer.load(linkFile);
+            Spatial linked = loaded.getChild("linked");
+            assertNotNull(linked);
+            Spatial leaf = loaded.getChild("leaf");
+            loaded.updateGeometricState();
+            // checkCulling fails if the linked child was never visited
+            leaf.move(0, 5, 0);
+            leaf.addLight(new PointLight());
+            loaded.updateGeometricState();
+            assertEquals(0, leaf.refreshFlags);
+
+            Node root = new Node("root");
+            root.attachChild(loaded);
+            root.updateGeometricState();
+            assertEquals(new Vector3f(11, 7, 3), leaf.getWorldTranslation());
+            assertEquals(0, leaf.refreshFlags);
+        } finally {
+            childFile.delete();
+            linkFile.delete();
+            dir.delete();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.jme3.terrain.geomipmap;
+
+import static org.junit.Assert.*;
+
+import com.jme3.math.Vector3f;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.scene.mesh.IndexBuffer;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LODGeomapTest {
+
+    private static float[] heights(int size, long seed) {
+        Random random = new Random(seed);
+        float[] heights = new float[size * size];
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = random.nextFloat() * 10f;
+        }
+        return heights;
+    }
+
+    private static void assertIndexes(IndexBuffer expected, VertexBuffer actual) {
+        IndexBuffer indexes = IndexBuffer.wrapIndexBuffer(actual.getData());
+        assertEquals(expected.size(), indexes.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), indexes.get(i));
+        }
+    }
+
+    @Test
+    public void testSharedIndexBuffers() {
+        LODGeomap a = new LODGeomap(33, heights(33, 1));
+        LODGeomap b = new LODGeomap(33, heights(33, 2));
+        LODGeomap other = new LODGeomap(17, heights(17, 3));
+
+        VertexBuffer vb = a.getIndexBuffer(2, 3, 2, 1, 3, false, 129);
+        assertSame(vb, b.getIndexBuffer(2, 3, 2, 1, 3, false, 129));
+        // only higher neighbour LODs stitch the edges
+        assertSame(vb, b.getIndexBuffer(2, 4, 0, 2, 3, false, 129));
+        assertNotSame(vb, b.getIndexBuffer(2, 3, 3, 1, 3, false, 129));
+        assertNotSame(vb, b.getIndexBuffer(2, 3, 2, 1, 3, true, 129));
+        assertNotSame(vb, other.getIndexBuffer(2, 3, 2, 1, 3, false, 129));
+        assertEquals(Type.Index, vb.getBufferType());
+
+        assertIndexes(a.writeIndexArrayLodDiff(4, true, false, false, true, 129), vb);
+        assertIndexes(a.writeIndexArrayLodVariable(4, 8, 4, 2, 8, 129),
+                b.getIndexBuffer(2, 3, 2, 1, 3, true, 129));
+        assertIndexes(other.writeIndexArrayLodDiff(2, false, true, false, false, 129),
+                other.getIndexBuffer(1, 0, 2, 1, 0, false, 129));
+    }
+
+    @Test
+    public void testPatchesShareIndexBuffer() {
+        TerrainPatch p1 = new TerrainPatch("p1", 33, Vector3f.UNIT_XYZ, heights(33, 4), Vector3f.ZERO);
+        TerrainPatch p2 = new TerrainPatch("p2", 33, Vector3f.UNIT_XYZ, heights(33, 5), Vector3f.ZERO);
+        HashMap<String, UpdatedTerrainPatch> updated = new HashMap<String, UpdatedTerrainPatch>();
+        for (TerrainPatch patch : new TerrainPatch[]{p1, p2}) {
+            UpdatedTerrainPatch utp = new UpdatedTerrainPatch(patch, 2);
+            utp.setRightLod(2);
+            utp.setTopLod(3);
+            utp.setLeftLod(2);
+            utp.setBottomLod(1);
+            updated.put(patch.getName(), utp);
+            patch.reIndexGeometry(updated, false);
+            utp.updateAll();
+        }
+        VertexBuffer index = p1.getMesh().getBuffer(Type.Index);
+        assertSame(index, p2.getMesh().getBuffer(Type.Index));
+        assertIndexes(new LODGeomap(33, heights(33, 6)).writeIndexArrayLodDiff(4, false, true, false, false, 129), index);
+        assertEquals(2, p1.getLod());
+    }
+}
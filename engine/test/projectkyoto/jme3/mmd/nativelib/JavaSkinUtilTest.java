@@ -0,0 +1,46 @@
+package projectkyoto.jme3.mmd.nativelib;
+
+import static org.junit.Assert.assertEquals;
+
+import com.jme3.util.BufferUtils;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import org.junit.Test;
+
+public class JavaSkinUtilTest {
+
+    private final JavaSkinUtil skinUtil = new JavaSkinUtil();
+
+    @Test
+    public void testCopyAndSetSkin() {
+        FloatBuffer src = BufferUtils.createFloatBuffer(new float[]{1, 2, 3, 4, 5, 6});
+        FloatBuffer dist = BufferUtils.createFloatBuffer(6);
+        skinUtil.copy(src, dist, 6 * 4);
+        ShortBuffer indexBuf = BufferUtils.createShortBuffer(new short[]{1});
+        FloatBuffer skinBuf = BufferUtils.createFloatBuffer(new float[]{10, 20, 30});
+        skinUtil.setSkin(dist, indexBuf, skinBuf, 0.5f);
+        float[] result = new float[6];
+        dist.get(result);
+        assertEquals(1f, result[0], 0f);
+        assertEquals(3f, result[2], 0f);
+        assertEquals(9f, result[3], 0f);
+        assertEquals(15f, result[4], 0f);
+        assertEquals(21f, result[5], 0f);
+    }
+
+    @Test
+    public void testCopyBoneMatrix() {
+        FloatBuffer src = BufferUtils.createFloatBuffer(3 * 16);
+        for (int i = 0; i < 3 * 16; i++) {
+            src.put(i, i);
+        }
+        FloatBuffer dist = BufferUtils.createFloatBuffer(2 * 16);
+        ShortBuffer indexBuf = BufferUtils.createShortBuffer(new short[]{2, 0});
+        skinUtil.copyBoneMatrix(src, dist, indexBuf);
+        assertEquals(32f, dist.get(0), 0f);
+        assertEquals(47f, dist.get(15), 0f);
+        assertEquals(0f, dist.get(16), 0f);
+        assertEquals(15f, dist.get(31), 0f);
+        assertEquals(0, dist.position());
+    }
+}
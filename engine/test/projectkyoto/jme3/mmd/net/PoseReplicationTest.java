@@ -0,0 +1,227 @@
+package projectkyoto.jme3.mmd.net;
+
+import static org.junit.Assert.*;
+
+import com.jme3.animation.AnimControl;
+import com.jme3.animation.Bone;
+import com.jme3.animation.Skeleton;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Node;
+
+import org.junit.Test;
+
+public class PoseReplicationTest {
+
+    private static final int BONE_COUNT = 20;
+
+    private static Skeleton createSkeleton() {
+        Bone[] bones = new Bone[BONE_COUNT];
+        for (int i = 0; i < BONE_COUNT; i++) {
+            bones[i] = new Bone("bone" + i);
+            if (i > 0) {
+                bones[i - 1].addChild(bones[i]);
+            }
+        }
+        return new Skeleton(bones);
+    }
+
+    private static void pose(Skeleton skeleton, float angle) {
+        for (int i = 0; i < BONE_COUNT; i++) {
+            Bone bone = skeleton.getBone(i);
+            bone.getLocalRotation().fromAngles(angle * i * 0.1f, -angle, angle * 0.5f);
+            bone.getLocalPosition().set(i * 0.25f, angle, -i);
+        }
+    }
+
+    private static void assertPose(Skeleton expected, Skeleton actual) {
+        for (int i = 0; i < BONE_COUNT; i++) {
+            Quaternion q1 = expected.getBone(i).getLocalRotation();
+            Quaternion q2 = actual.getBone(i).getLocalRotation();
+            assertEquals(1f, FastMath.abs(q1.dot(q2)), 1e-4f);
+            Vector3f v1 = expected.getBone(i).getLocalPosition();
+            Vector3f v2 = actual.getBone(i).getLocalPosition();
+            assertEquals(0f, v1.distance(v2), 0.002f);
+        }
+    }
+
+    @Test
+    public void testKeyframeRoundTrip() {
+        Skeleton source = createSkeleton();
+        Skeleton target = createSkeleton();
+        pose(source, 0.7f);
+        PoseEncoder encoder = new PoseEncoder(BONE_COUNT, 2);
+        PoseDecoder decoder = new PoseDecoder(BONE_COUNT, 2);
+
+        PoseMessage message = encoder.encode(source, new float[] {0.25f, 1f}, 3, 1.5f);
+        assertTrue(message.isKeyframe());
+        assertEquals(3, message.getModelId());
+        assertTrue(decoder.apply(message));
+
+        float[] weights = new float[2];
+        decoder.interpolate(1.5f, target, weights);
+        assertPose(source, target);
+        assertEquals(0.25f, weights[0], 1f / 255f);
+        assertEquals(1f, weights[1], 0f);
+    }
+
+    @Test
+    public void testDelta() {
+        Skeleton source = createSkeleton();
+        Skeleton target = createSkeleton();
+        pose(source, 0.3f);
+        PoseEncoder encoder = new PoseEncoder(BONE_COUNT, 0);
+        PoseDecoder decoder = new PoseDecoder(BONE_COUNT, 0);
+        PoseMessage keyframe = encoder.encode(source, null, 0, 0f);
+        assertTrue(decoder.apply(keyframe));
+
+        // below the thresholds nothing is sent
+        source.getBone(5).getLocalPosition().x += 0.0001f;
+        assertNull(encoder.encode(source, null, 0, 0.1f));
+
+        source.getBone(5).getLocalRotation().fromAngles(1f, 0f, 0f);
+        PoseMessage delta = encoder.encode(source, null, 0, 0.2f);
+        assertFalse(delta.isKeyframe());
+        assertEquals(keyframe.getSequence(), delta.getBaseSequence());
+        // counts, rotation and position masks, one rotation
+        assertEquals(4 + 3 + 3 + 6, delta.getData().length);
+        assertTrue(delta.getData().length < keyframe.getData().length / 10);
+        assertEquals(BONE_COUNT + 1, encoder.getBoneUpdateCount());
+
+        assertTrue(decoder.apply(delta));
+        decoder.interpolate(0.2f, target, null);
+        assertPose(source, target);
+    }
+
+    @Test
+    public void testMissingSnapshot() {
+        Skeleton source = createSkeleton();
+        PoseEncoder encoder = new PoseEncoder(BONE_COUNT, 0);
+        PoseDecoder decoder = new PoseDecoder(BONE_COUNT, 0);
+        pose(source, 0.1f);
+        PoseMessage keyframe = encoder.encode(source, null, 0, 0f);
+        pose(source, 0.2f);
+        encoder.encode(source, null, 0, 0.1f);
+        pose(source, 0.3f);
+        PoseMessage delta = encoder.encode(source, null, 0, 0.2f);
+
+        // no keyframe yet
+        assertFalse(decoder.apply(delta));
+        assertTrue(decoder.apply(keyframe));
+        // the snapshot in between is missing
+        assertFalse(decoder.apply(delta));
+        assertEquals(2, decoder.getDroppedCount());
+
+        encoder.requestKeyframe();
+        assertTrue(decoder.apply(encoder.encode(source, null, 0, 0.3f)));
+    }
+
+    @Test
+    public void testInterpolate() {
+        Skeleton source = createSkeleton();
+        Skeleton target = createSkeleton();
+        PoseEncoder encoder = new PoseEncoder(BONE_COUNT, 1);
+        PoseDecoder decoder = new PoseDecoder(BONE_COUNT, 1);
+        pose(source, 0f);
+        assertTrue(decoder.apply(encoder.encode(source, new float[] {0f}, 0, 1f)));
+        pose(source, 0.4f);
+        assertTrue(decoder.apply(encoder.encode(source, new float[] {1f}, 0, 2f)));
+
+        float[] weights = new float[1];
+        decoder.interpolate(1.5f, target, weights);
+        pose(source, 0.2f);
+        for (int i = 0; i < BONE_COUNT; i++) {
+            assertEquals(source.getBone(i).getLocalPosition().y,
+                    target.getBone(i).getLocalPosition().y, 0.002f);
+        }
+        assertEquals(0.5f, weights[0], 1e-6f);
+
+        // clamped to the latest snapshot
+        decoder.interpolate(5f, target, weights);
+        pose(source, 0.4f);
+        assertPose(source, target);
+        assertEquals(1f, weights[0], 0f);
+    }
+
+    @Test
+    public void testSnapshotRing() {
+        PoseEncoder encoder = new PoseEncoder(BONE_COUNT, 0);
+        PoseDecoder decoder = new PoseDecoder(BONE_COUNT, 0, 4);
+        Skeleton source = createSkeleton();
+        Skeleton target = createSkeleton();
+        for (int i = 0; i < 6; i++) {
+            pose(source, i * 0.1f);
+            assertTrue(decoder.apply(encoder.encode(source, null, 0, i)));
+        }
+        assertEquals(4, decoder.getSnapshotCount());
+        assertEquals(2f, decoder.getOldestTime(), 0f);
+        assertEquals(5f, decoder.getTime(), 0f);
+
+        // between the second and third snapshot kept
+        decoder.interpolate(3.5f, target, null);
+        assertEquals(0.35f, target.getBone(0).getLocalPosition().y, 0.003f);
+        // clamped to the oldest snapshot kept
+        decoder.interpolate(0f, target, null);
+        assertEquals(0.2f, target.getBone(0).getLocalPosition().y, 0.003f);
+    }
+
+    @Test
+    public void testReplicaControl() {
+        Skeleton source = createSkeleton();
+        Skeleton target = createSkeleton();
+        PoseEncoder encoder = new PoseEncoder(BONE_COUNT, 1);
+        PoseReplicaControl control = new PoseReplicaControl(target, 1);
+        // longer than the send interval of 0.1 seconds
+        control.setInterpolationDelay(0.15f);
+        float[] weights = new float[1];
+        float tpf = 0.05f;
+        int between = 0;
+        for (int frame = 0; frame < 40; frame++) {
+            float time = frame * tpf;
+            if (frame % 2 == 0) {
+                pose(source, time);
+                weights[0] = time / 2f;
+                control.receive(encoder.encode(source, weights, 0, time));
+            }
+            control.controlUpdate(tpf);
+            float playback = control.getPlaybackTime();
+            assertEquals(time - 0.15f, playback, 1e-4f);
+            if (playback < 0f) {
+                continue;
+            }
+            // the pose follows the playback time between snapshots
+            for (int i = 0; i < BONE_COUNT; i++) {
+                assertEquals(playback, target.getBone(i).getLocalPosition().y, 0.003f);
+            }
+            assertEquals(playback / 2f, control.getSkinWeights()[0], 1f / 255f);
+            if (frame % 2 == 0) {
+                between++;
+            }
+        }
+        assertTrue(between > 10);
+        assertEquals(0, control.getDecoder().getDroppedCount());
+    }
+
+    @Test
+    public void testCloneReplicaControl() {
+        Skeleton target = createSkeleton();
+        Node model = new Node("model");
+        model.addControl(new AnimControl(target));
+        PoseReplicaControl control = new PoseReplicaControl(target, 1);
+        control.setInterpolationDelay(0.3f);
+        control.getDecoder().setPositionStep(0.5f);
+        model.addControl(control);
+
+        Node clone = (Node) model.clone();
+        PoseReplicaControl cloned = clone.getControl(PoseReplicaControl.class);
+        assertNotSame(control, cloned);
+        assertSame(clone, cloned.getSpatial());
+        assertSame(clone.getControl(AnimControl.class).getSkeleton(), cloned.getSkeleton());
+        assertNotSame(target, cloned.getSkeleton());
+        assertNotSame(control.getDecoder(), cloned.getDecoder());
+        assertEquals(0.3f, cloned.getInterpolationDelay(), 0f);
+        assertEquals(0.5f, cloned.getDecoder().getPositionStep(), 0f);
+        assertEquals(1, cloned.getSkinWeights().length);
+    }
+}
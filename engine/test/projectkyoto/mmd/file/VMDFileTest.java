@@ -0,0 +1,86 @@
+package projectkyoto.mmd.file;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+
+public class VMDFileTest {
+
+    private static byte[] createVMD() throws Exception {
+        ByteBuffer bb = ByteBuffer.allocate(30 + 20 + 4 + 111 * 3 + 4 + 23);
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        bb.put("Vocaloid Motion Data 0002".getBytes("Shift_JIS"));
+        bb.position(30);
+        bb.put("model".getBytes("Shift_JIS"));
+        bb.position(50);
+        bb.putInt(3);
+        putMotion(bb, "center", 10, 1f);
+        putMotion(bb, "head", 0, 2f);
+        putMotion(bb, "center", 0, 3f);
+        bb.putInt(1);
+        int start = bb.position();
+        bb.put("smile".getBytes("Shift_JIS"));
+        bb.position(start + 15);
+        bb.putInt(5);
+        bb.putFloat(0.5f);
+        return bb.array();
+    }
+
+    private static void putMotion(ByteBuffer bb, String boneName, int frameNo, float x) throws Exception {
+        int start = bb.position();
+        bb.put(boneName.getBytes("Shift_JIS"));
+        bb.position(start + 15);
+        bb.putInt(frameNo);
+        bb.putFloat(x).putFloat(0f).putFloat(4f);
+        bb.putFloat(0f).putFloat(0f).putFloat(0f).putFloat(2f);
+        for (int i = 0; i < 64; i++) {
+            bb.put((byte) i);
+        }
+    }
+
+    private static void check(VMDFile vmdFile) {
+        assertEquals("model", vmdFile.getVmdModelName());
+        assertEquals(3, vmdFile.getMotionCount());
+        VMDMotion m = new VMDMotion();
+        vmdFile.getMotion(m, 0);
+        assertEquals("head", m.getBoneName());
+        assertEquals(0, m.getFrameNo());
+        assertEquals(2f, m.getLocation().x, 0f);
+        assertEquals(-4f, m.getLocation().z, 0f);
+        assertEquals(-1f, m.getRotation().w, 0f);
+        assertEquals(63, m.getInterpolation()[63]);
+        vmdFile.getMotion(m, 1);
+        assertEquals("center", m.getBoneName());
+        assertEquals(0, m.getFrameNo());
+        assertEquals(3f, m.getLocation().x, 0f);
+        vmdFile.getMotion(m, 2);
+        assertEquals("center", m.getBoneName());
+        assertEquals(10, m.getFrameNo());
+        assertEquals(2, vmdFile.getBoneNames().size());
+        assertEquals(1, vmdFile.getSkinCount());
+        assertEquals("smile", vmdFile.getSkinArray()[0].getSkinName());
+        assertEquals(5, vmdFile.getSkinArray()[0].getFlameNo());
+        assertEquals(0.5f, vmdFile.getSkinArray()[0].getWeight(), 0f);
+    }
+
+    @Test
+    public void testReadStream() throws Exception {
+        check(new VMDFile(new ByteArrayInputStream(createVMD())));
+    }
+
+    @Test
+    public void testReadMappedFile() throws Exception {
+        File file = File.createTempFile("test", ".vmd");
+        file.deleteOnExit();
+        FileOutputStream os = new FileOutputStream(file);
+        os.write(createVMD());
+        os.close();
+        check(new VMDFile(new FileInputStream(file)));
+    }
+}
@@ -0,0 +1,116 @@
+package projectkyoto.mmd.file.util2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+
+public class PMDCacheManagerTest {
+
+    private static void putString(ByteBuffer bb, String s, int size) throws Exception {
+        int start = bb.position();
+        bb.put(s.getBytes("Shift_JIS"));
+        bb.position(start + size);
+    }
+
+    private static byte[] createPMD() throws Exception {
+        ByteBuffer bb = ByteBuffer.allocate(4096);
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        putString(bb, "Pmd", 3);
+        bb.putFloat(1f);
+        putString(bb, "model", 20);
+        putString(bb, "comment", 256);
+        bb.putInt(4);
+        for (int i = 0; i < 4; i++) {
+            bb.putFloat(i).putFloat(i * 2).putFloat(i * 3);
+            bb.putFloat(0f).putFloat(1f).putFloat(0f);
+            bb.putFloat(0f).putFloat(0f);
+            bb.putShort((short) 0).putShort((short) 0);
+            bb.put((byte) 100).put((byte) 0);
+        }
+        bb.putInt(6);
+        bb.putShort((short) 0).putShort((short) 1).putShort((short) 2);
+        bb.putShort((short) 0).putShort((short) 2).putShort((short) 3);
+        bb.putInt(1);
+        for (int i = 0; i < 11; i++) {
+            bb.putFloat(1f);
+        }
+        bb.put((byte) 0).put((byte) 0);
+        bb.putInt(6);
+        putString(bb, "", 20);
+        bb.putShort((short) 1);
+        putString(bb, "center", 20);
+        bb.putShort((short) 0xffff).putShort((short) 0);
+        bb.put((byte) 0).putShort((short) 0);
+        bb.putFloat(0f).putFloat(0f).putFloat(0f);
+        bb.putShort((short) 0);
+        bb.putShort((short) 0);
+        bb.put((byte) 0);
+        bb.put((byte) 0);
+        bb.putInt(0);
+        bb.put((byte) 0);
+        bb.position(bb.position() + 1000);
+        bb.putInt(0);
+        bb.putInt(0);
+        byte[] result = new byte[bb.position()];
+        System.arraycopy(bb.array(), 0, result, 0, result.length);
+        return result;
+    }
+
+    private static File createTempDir() throws Exception {
+        File dir = File.createTempFile("pmdcache", "");
+        dir.delete();
+        dir.mkdirs();
+        return dir;
+    }
+
+    @Test
+    public void testCacheRoundTrip() throws Exception {
+        File dir = createTempDir();
+        PMDCacheManager cm = new PMDCacheManager(dir, Long.MAX_VALUE);
+        byte[] pmd = createPMD();
+        MeshConverter mc1 = cm.load(new ByteArrayInputStream(pmd), 20);
+        assertEquals(1, cm.listCacheFiles().length);
+        assertTrue(cm.getCacheFile(PMDFileUtil.sha1(ByteBuffer.wrap(pmd)), 20).isFile());
+        MeshConverter mc2 = cm.load(new ByteArrayInputStream(pmd), 20);
+        assertEquals(20, mc2.getMaxBoneSize());
+        assertEquals(1, mc1.getMeshDataList().size());
+        assertEquals(1, mc2.getMeshDataList().size());
+        MeshData md1 = mc1.getMeshDataList().get(0);
+        MeshData md2 = mc2.getMeshDataList().get(0);
+        assertEquals(12, md2.vfb.capacity());
+        for (int i = 0; i < 12; i++) {
+            assertEquals(md1.vfb.get(i), md2.vfb.get(i), 0f);
+        }
+        // z axis is flipped
+        assertEquals(-9f, md2.vfb.get(11), 0f);
+        assertEquals(6, md2.isb.capacity());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(md1.isb.get(i), md2.isb.get(i));
+        }
+        assertEquals("center", mc2.getModel().getBoneList().getBones()[0].getBoneName());
+        cm.clear();
+        dir.delete();
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        File dir = createTempDir();
+        PMDCacheManager cm = new PMDCacheManager(dir, Long.MAX_VALUE);
+        byte[] pmd = createPMD();
+        cm.load(new ByteArrayInputStream(pmd), 20);
+        File oldFile = cm.listCacheFiles()[0];
+        oldFile.setLastModified(System.currentTimeMillis() - 100000);
+        cm.setMaxCacheSize(oldFile.length());
+        cm.load(new ByteArrayInputStream(pmd), 30);
+        assertFalse(oldFile.exists());
+        assertEquals(1, cm.listCacheFiles().length);
+        cm.clear();
+        dir.delete();
+    }
+}